@@ -4,25 +4,35 @@ echo Compiling Fruit Service Engine with Java 8 compatibility...
 REM Create target directory if it doesn't exist
 if not exist "target\classes" mkdir "target\classes"
 
+REM Copy runtime libraries (slf4j logging) to target\lib
+echo Copying libraries...
+call mvn -q dependency:copy-dependencies -DincludeScope=runtime -DoutputDirectory=target\lib
+if errorlevel 1 exit /b 1
+xcopy /y /q src\main\resources\* target\classes\ > nul
+
 REM Compile interfaces first with Java 8 compatibility
 echo Compiling interfaces...
-javac -source 8 -target 8 -cp src\main\java -d target\classes src\main\java\server\interfaces\*.java
+javac -source 8 -target 8 -cp "src\main\java;target\lib\*" -d target\classes src\main\java\server\interfaces\*.java
 
 REM Compile model classes
 echo Compiling model classes...
-javac -source 8 -target 8 -cp src\main\java -d target\classes src\main\java\model\*.java
+javac -source 8 -target 8 -cp "src\main\java;target\lib\*" -d target\classes src\main\java\model\*.java
 
 REM Compile server tasks
 echo Compiling server tasks...
-javac -source 8 -target 8 -cp "src\main\java;target\classes" -d target\classes src\main\java\server\tasks\*.java
+javac -source 8 -target 8 -cp "src\main\java;target\classes;target\lib\*" -d target\classes src\main\java\server\tasks\*.java
 
 REM Compile server classes
 echo Compiling server classes...
-javac -source 8 -target 8 -cp "src\main\java;target\classes" -d target\classes src\main\java\server\*.java
+javac -source 8 -target 8 -cp "src\main\java;target\classes;target\lib\*" -d target\classes src\main\java\server\*.java
+
+REM Compile bulk transfer and cluster routing
+echo Compiling bulk transfer and cluster classes...
+javac -source 8 -target 8 -cp "src\main\java;target\classes;target\lib\*" -d target\classes src\main\java\server\bulk\*.java src\main\java\server\cluster\*.java
 
 REM Compile client classes
 echo Compiling client classes...
-javac -source 8 -target 8 -cp "src\main\java;target\classes" -d target\classes src\main\java\client\*.java
+javac -source 8 -target 8 -cp "src\main\java;target\classes;target\lib\*" -d target\classes src\main\java\client\*.java
 
 echo Compilation complete!
 echo Note: Using Java 8 compatibility mode for Java 8 runtime
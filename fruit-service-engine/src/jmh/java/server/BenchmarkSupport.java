@@ -0,0 +1,44 @@
+package server;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+
+// Shared setup for the JMH benchmarks: a populated engine with console output silenced,
+// so the forked benchmark JVM does not flood the JMH log with per-call println output
+final class BenchmarkSupport {
+    static final String[] FRUITS = {"apple", "banana", "mango", "orange", "pear", "kiwi", "grape", "melon"};
+
+    private static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+    private static PrintStream originalOut;
+
+    private BenchmarkSupport() {
+    }
+
+    static FruitComputeEngine newEngine() throws RemoteException {
+        originalOut = System.out;
+        System.setOut(NULL_OUT);
+        FruitComputeEngine engine = new FruitComputeEngine();
+        for (int i = 0; i < FRUITS.length; i++) {
+            engine.addFruitPrice(FRUITS[i], 10.0 + i);
+        }
+        return engine;
+    }
+
+    static void close(FruitComputeEngine engine) throws NoSuchObjectException {
+        UnicastRemoteObject.unexportObject(engine, true);
+        if (originalOut != null) {
+            System.setOut(originalOut);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.CartLine;
+import model.Sale;
+import model.PriceBatch;
+
+// In-process cost of the engine's pricing and receipt paths, without any RMI transport
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    private static final int IMPORT_BATCH = 4096;
+
+    private FruitComputeEngine engine;
+    private int next;
+    private final PriceBatch importBatch = new PriceBatch(IMPORT_BATCH);
+    private final List<CartLine> saleLines = Collections.singletonList(new CartLine("apple", 3));
+
+    @Setup
+    public void setUp() throws Exception {
+        engine = BenchmarkSupport.newEngine();
+        for (int i = 0; i < IMPORT_BATCH; i++) {
+            importBatch.add("sku-" + i, 100 + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkSupport.close(engine);
+    }
+
+    @Benchmark
+    public double calculateFruitCost() throws Exception {
+        String fruit = BenchmarkSupport.FRUITS[next++ & 7];
+        return engine.calculateFruitCost(fruit, 3);
+    }
+
+    @Benchmark
+    public long calculateFruitCostCents() throws Exception {
+        String fruit = BenchmarkSupport.FRUITS[next++ & 7];
+        return engine.calculateFruitCostCents(fruit, 3);
+    }
+
+    @Benchmark
+    public double calculateFruitCostMissing() throws Exception {
+        return engine.calculateFruitCost("dragonfruit", 3);
+    }
+
+    @Benchmark
+    public String generateReceipt() throws Exception {
+        return engine.generateReceipt("Ann", 123.45, 200.0);
+    }
+
+    // A one-line checkout as CalculateCost sells it: priced, journaled if the engine keeps a journal,
+    // and counted in the sales aggregates
+    @Benchmark
+    public Sale sellCart() throws Exception {
+        return engine.sellCart("Ann", saleLines, 5000);
+    }
+
+    // Per row, for one chunk of a bulk import
+    @Benchmark
+    @OperationsPerInvocation(IMPORT_BATCH)
+    public int importPrices() throws Exception {
+        return engine.importPrices(importBatch);
+    }
+}
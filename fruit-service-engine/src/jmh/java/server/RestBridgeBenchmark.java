@@ -0,0 +1,60 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// FruitRestBridge.processRequest form parsing and dispatch, against an in-process engine
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RestBridgeBenchmark {
+    private static final String CALCULATE_COST =
+            "action=calculateCost&fruitName=apple&quantity=3&amountGiven=100&cashier=Ann+Wanjiru";
+    private static final String CART = "action=calculateCartCost&fruitName=apple&quantity=3&fruitName=kiwi"
+            + "&quantity=2&fruitName=mango&quantity=1&fruitName=pear&quantity=6&amountGiven=500&cashier=Ann";
+    private static final String UNKNOWN_ACTION = "action=ping&fruitName=apple";
+
+    private FruitComputeEngine engine;
+
+    @Setup
+    public void setUp() throws Exception {
+        engine = BenchmarkSupport.newEngine();
+        FruitRestBridge.computeEngine = engine;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        FruitRestBridge.computeEngine = null;
+        BenchmarkSupport.close(engine);
+    }
+
+    @Benchmark
+    public String calculateCost() {
+        return FruitRestBridge.processRequest("POST", "/api", CALCULATE_COST);
+    }
+
+    @Benchmark
+    public String calculateCartCost() {
+        return FruitRestBridge.processRequest("POST", "/api", CART);
+    }
+
+    // Parsing only: the action is rejected before any engine call
+    @Benchmark
+    public String parseOnly() {
+        return FruitRestBridge.processRequest("POST", "/api", UNKNOWN_ACTION);
+    }
+}
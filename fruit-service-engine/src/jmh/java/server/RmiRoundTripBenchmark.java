@@ -0,0 +1,59 @@
+package server;
+
+import java.rmi.server.RemoteObject;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Receipt;
+import server.interfaces.Compute;
+import server.tasks.CalculateCost;
+
+// Full loopback RMI round trips: marshalling, TCP transport and dispatch through the engine's stub
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RmiRoundTripBenchmark {
+    private FruitComputeEngine engine;
+    private Compute stub;
+
+    @Setup
+    public void setUp() throws Exception {
+        System.setProperty("java.rmi.server.hostname", "localhost");
+        engine = BenchmarkSupport.newEngine();
+        stub = (Compute) RemoteObject.toStub(engine);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkSupport.close(engine);
+    }
+
+    @Benchmark
+    public double calculateFruitCost() throws Exception {
+        return stub.calculateFruitCost("apple", 3);
+    }
+
+    @Benchmark
+    public Receipt executeCalculateCostTask() throws Exception {
+        return stub.executeTask(new CalculateCost("mango", 4, 100.0, "Ann"));
+    }
+
+    @Benchmark
+    public String generateReceipt() throws Exception {
+        return stub.generateReceipt("Ann", 123.45, 200.0);
+    }
+}
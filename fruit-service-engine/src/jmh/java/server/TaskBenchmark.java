@@ -0,0 +1,64 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.FruitPrice;
+import model.Receipt;
+import server.tasks.AddFruitPrice;
+import server.tasks.CalculateCost;
+import server.tasks.DeleteFruitPrice;
+import server.tasks.UpdateFruitPrice;
+
+// executeTask for each Task type, run in-process the way the engine runs a deserialized task
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskBenchmark {
+    private FruitComputeEngine engine;
+
+    @Setup
+    public void setUp() throws Exception {
+        engine = BenchmarkSupport.newEngine();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkSupport.close(engine);
+    }
+
+    @Benchmark
+    public String addFruitPrice() throws Exception {
+        return engine.executeTask(new AddFruitPrice(new FruitPrice("papaya", 42.0)));
+    }
+
+    @Benchmark
+    public String updateFruitPrice() throws Exception {
+        return engine.executeTask(new UpdateFruitPrice("apple", 11.0));
+    }
+
+    @Benchmark
+    public String addThenDeleteFruitPrice() throws Exception {
+        engine.addFruitPrice("plum", 7.0);
+        return engine.executeTask(new DeleteFruitPrice("plum"));
+    }
+
+    @Benchmark
+    public Receipt calculateCost() throws Exception {
+        return engine.executeTask(new CalculateCost("mango", 4, 100.0, "Ann"));
+    }
+}
@@ -0,0 +1,116 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.FruitPrice;
+import model.Receipt;
+import server.tasks.AddFruitPrice;
+import server.tasks.CalculateCost;
+import server.tasks.DeleteFruitPrice;
+import server.tasks.UpdateFruitPrice;
+import server.util.WireFormat;
+
+// Serializes and deserializes each object sent per call, with a fresh stream per call as RMI does,
+// in the compact wire format and (compact=false) with default serialization. Each fork prints the
+// bytes per call for every type before it starts measuring.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+    // JMH forks a JVM per value, so the property is read fresh by WireFormat in each fork
+    @Param({"true", "false"})
+    public boolean compact;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+    private AddFruitPrice addFruitPrice;
+    private UpdateFruitPrice updateFruitPrice;
+    private DeleteFruitPrice deleteFruitPrice;
+    private CalculateCost calculateCost;
+    private FruitPrice fruitPrice;
+    private Receipt receipt;
+
+    @Setup
+    public void setUp() throws Exception {
+        System.setProperty("fruit.wire.compact", Boolean.toString(compact));
+        if (WireFormat.COMPACT != compact) {
+            throw new IllegalStateException("WireFormat was initialized before the property was set");
+        }
+        addFruitPrice = new AddFruitPrice(new FruitPrice("papaya", 42.0));
+        updateFruitPrice = new UpdateFruitPrice("apple", 11.5);
+        deleteFruitPrice = new DeleteFruitPrice("plum");
+        calculateCost = new CalculateCost("mango", 4, 100.0, "Ann");
+        fruitPrice = new FruitPrice("banana", 12.5);
+        receipt = Receipt.ofCents(4600, 10000, 5400, "Ann");
+
+        Object[] values = {addFruitPrice, updateFruitPrice, deleteFruitPrice, calculateCost, fruitPrice, receipt};
+        StringBuilder sizes = new StringBuilder("Bytes per call (compact=" + compact + "):");
+        for (Object value : values) {
+            sizes.append(' ').append(value.getClass().getSimpleName()).append('=').append(write(value).length);
+        }
+        System.out.println(sizes);
+    }
+
+    private byte[] write(Object value) throws IOException {
+        buffer.reset();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(value);
+        }
+        return buffer.toByteArray();
+    }
+
+    private Object roundTrip(Object value) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(write(value)))) {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public Object addFruitPrice() throws Exception {
+        return roundTrip(addFruitPrice);
+    }
+
+    @Benchmark
+    public Object updateFruitPrice() throws Exception {
+        return roundTrip(updateFruitPrice);
+    }
+
+    @Benchmark
+    public Object deleteFruitPrice() throws Exception {
+        return roundTrip(deleteFruitPrice);
+    }
+
+    @Benchmark
+    public Object calculateCost() throws Exception {
+        return roundTrip(calculateCost);
+    }
+
+    @Benchmark
+    public Object fruitPrice() throws Exception {
+        return roundTrip(fruitPrice);
+    }
+
+    @Benchmark
+    public Object receipt() throws Exception {
+        return roundTrip(receipt);
+    }
+}
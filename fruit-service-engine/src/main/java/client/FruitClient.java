@@ -1,14 +1,19 @@
 package client;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
+import model.CartLine;
 import model.FruitPrice;
 import server.FruitComputeTaskRegistry;
+import server.bulk.PriceBulkTransfer;
 import server.interfaces.Compute;
+import server.util.RMIConnectionHelper;
 
 public class FruitClient {
     private Compute computeEngine;
@@ -16,8 +21,7 @@ public class FruitClient {
 
     public FruitClient(String host, int port) {
         try {
-            Registry registry = LocateRegistry.getRegistry(host, port);
-            computeEngine = (Compute) registry.lookup("FruitComputeEngine");
+            computeEngine = RMIConnectionHelper.getCompute(host, port);
             // Create a single instance of taskRegistry to maintain shopping cart state
             taskRegistry = new FruitComputeTaskRegistry(computeEngine);
         } catch (RemoteException e) {
@@ -50,6 +54,10 @@ public class FruitClient {
         taskRegistry.calculateFruitCost(fruitName, quantity);
     }
 
+    public void calculateCartCost(List<CartLine> cartLines) {
+        taskRegistry.calculateCartCost(cartLines);
+    }
+
     public void viewCart() {
         taskRegistry.viewCart();
     }
@@ -62,6 +70,27 @@ public class FruitClient {
         taskRegistry.printReceipt(cashierName, amountGiven);
     }
 
+    // Loads a CSV or JSON price file into the catalog in chunks
+    public void importPrices(String fileName) {
+        try {
+            long start = System.currentTimeMillis();
+            long rows = PriceBulkTransfer.importFile(computeEngine, Paths.get(fileName));
+            System.out.println("Imported " + rows + " price(s) in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.err.println("Import failed: " + e.getMessage());
+        }
+    }
+
+    public void exportPrices(String fileName) {
+        try {
+            long start = System.currentTimeMillis();
+            long rows = PriceBulkTransfer.exportFile(computeEngine, Paths.get(fileName));
+            System.out.println("Exported " + rows + " price(s) in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+        }
+    }
+
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
         
@@ -105,10 +134,13 @@ public class FruitClient {
             System.out.println("2. Update Fruit Price");
             System.out.println("3. Delete Fruit Price");
             System.out.println("4. Calculate Fruit Cost (Add to Cart)");
-            System.out.println("5. View Shopping Cart");
-            System.out.println("6. Clear Shopping Cart");
-            System.out.println("7. Print Receipt");
-            System.out.println("8. Exit");
+            System.out.println("5. Calculate Cart Cost (Add Multiple Items)");
+            System.out.println("6. View Shopping Cart");
+            System.out.println("7. Clear Shopping Cart");
+            System.out.println("8. Print Receipt");
+            System.out.println("9. Import Prices from File (CSV/JSON)");
+            System.out.println("10. Export Prices to File (CSV/JSON)");
+            System.out.println("11. Exit");
             System.out.print("Choose option: ");
             
             int choice = scanner.nextInt();
@@ -142,21 +174,45 @@ public class FruitClient {
                     client.calculateFruitCost(calcName, quantity);
                     break;
                 case 5:
-                    client.viewCart();
+                    System.out.println("Enter one item per line as '<fruit name> <quantity>', blank line to finish:");
+                    List<CartLine> cartLines = new ArrayList<>();
+                    String itemLine;
+                    while (!(itemLine = scanner.nextLine().trim()).isEmpty()) {
+                        int split = itemLine.lastIndexOf(' ');
+                        try {
+                            cartLines.add(new CartLine(itemLine.substring(0, split).trim(),
+                                    Integer.parseInt(itemLine.substring(split + 1))));
+                        } catch (RuntimeException e) {
+                            System.out.println("Invalid item line, skipped: " + itemLine);
+                        }
+                    }
+                    client.calculateCartCost(cartLines);
                     break;
                 case 6:
-                    client.clearCart();
+                    client.viewCart();
                     break;
                 case 7:
+                    client.clearCart();
+                    break;
+                case 8:
                     System.out.print("Enter cashier name: ");
                     String cashier = scanner.nextLine();
                     System.out.print("Enter amount given: ");
                     double amountGiven = scanner.nextDouble();
                     client.printReceipt(cashier, amountGiven);
                     break;
-                case 8:
+                case 9:
+                    System.out.print("Enter file to import (.csv or .json): ");
+                    client.importPrices(scanner.nextLine().trim());
+                    break;
+                case 10:
+                    System.out.print("Enter file to export to (.csv or .json): ");
+                    client.exportPrices(scanner.nextLine().trim());
+                    break;
+                case 11:
                     System.out.println("Exiting...");
                     scanner.close();
+                    client.taskRegistry.close();
                     System.exit(0);
                     break;
                 default:
@@ -0,0 +1,28 @@
+package model;
+
+import java.io.Serializable;
+
+//One scanned line of a basket: a fruit and how many of it
+public class CartLine implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String fruitName;
+    private final int quantity;
+
+    public CartLine(String fruitName, int quantity) {
+        this.fruitName = fruitName;
+        this.quantity = quantity;
+    }
+
+    public String getFruitName() {
+        return fruitName;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    @Override
+    public String toString() {
+        return fruitName + " x " + quantity;
+    }
+}
@@ -0,0 +1,69 @@
+package model;
+
+import java.io.Serializable;
+
+//Prices for a whole basket, returned by a single remote call.
+//Index i of each array describes line i of the submitted cart; amounts are in cents.
+//Every line is priced from the same catalog version, which is recorded on receipts
+public class CartQuote implements Serializable {
+    private static final long serialVersionUID = 3L;
+    //Lines priced by several engines (a sharded cluster), which each have their own versions
+    public static final long MIXED_VERSIONS = -1;
+    private final long[] lineCents;
+    private final boolean[] missing;
+    private final long totalCents;
+    private final long catalogVersion;
+
+    public CartQuote(long[] lineCents, boolean[] missing, long totalCents, long catalogVersion) {
+        this.lineCents = lineCents;
+        this.missing = missing;
+        this.totalCents = totalCents;
+        this.catalogVersion = catalogVersion;
+    }
+
+    public int size() {
+        return lineCents.length;
+    }
+
+    public long getLinePriceCents(int line) {
+        return lineCents[line];
+    }
+
+    public double getLinePrice(int line) {
+        return Money.toDouble(lineCents[line]);
+    }
+
+    public boolean isMissing(int line) {
+        return missing[line];
+    }
+
+    public boolean hasMissingItems() {
+        for (boolean lineMissing : missing) {
+            if (lineMissing) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasPricedItems() {
+        for (boolean lineMissing : missing) {
+            if (!lineMissing) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    public double getTotalCost() {
+        return Money.toDouble(totalCents);
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+}
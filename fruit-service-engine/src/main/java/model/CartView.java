@@ -0,0 +1,89 @@
+package model;
+
+import java.io.Serializable;
+import java.util.List;
+
+//A session's cart as kept on the engine (see server.store.CartSessionStore), priced in one call:
+//line i of the quote prices line i of the cart. Lines whose fruit is not in the catalog are kept,
+//marked missing, and left out of the total and of a checkout
+public class CartView implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String sessionId;
+    private final List<CartLine> lines;
+    private final CartQuote quote;
+
+    public CartView(String sessionId, List<CartLine> lines, CartQuote quote) {
+        this.sessionId = sessionId;
+        this.lines = lines;
+        this.quote = quote;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public List<CartLine> getLines() {
+        return lines;
+    }
+
+    public CartQuote getQuote() {
+        return quote;
+    }
+
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    public long getTotalCents() {
+        return quote.getTotalCents();
+    }
+
+    @Override
+    public String toString() {
+        if (lines.isEmpty()) {
+            return "Shopping cart is empty.";
+        }
+        StringBuilder text = new StringBuilder("===== SHOPPING CART =====\n");
+        for (int i = 0; i < lines.size(); i++) {
+            CartLine line = lines.get(i);
+            if (quote.isMissing(i)) {
+                text.append("Not found: ").append(line.getFruitName()).append('\n');
+            } else {
+                new Item(line, quote.getLinePriceCents(i)).appendTo(text).append('\n');
+            }
+        }
+        text.append("=========================\nTotal: Ksh");
+        return Money.appendMoney(text, quote.getTotalCents()).toString();
+    }
+
+    //A priced line, as rendered on the cart and its receipt
+    public static class Item implements LineItem {
+        private final CartLine line;
+        private final long lineCents;
+
+        public Item(CartLine line, long lineCents) {
+            this.line = line;
+            this.lineCents = lineCents;
+        }
+
+        @Override
+        public String getFruitName() {
+            return line.getFruitName();
+        }
+
+        @Override
+        public int getQuantity() {
+            return line.getQuantity();
+        }
+
+        @Override
+        public long getUnitPriceCents() {
+            return line.getQuantity() == 0 ? 0 : lineCents / line.getQuantity();
+        }
+
+        @Override
+        public long getLineTotalCents() {
+            return lineCents;
+        }
+    }
+}
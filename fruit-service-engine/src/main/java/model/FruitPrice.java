@@ -1,16 +1,31 @@
 package model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
-//To show the price of fruits
-public class FruitPrice implements Serializable {
-    private static final long serialVersionUID = 1L;
+import server.util.WireFormat;
+
+//To show the price of fruits.
+//The price is kept in cents; the double getter and setter are adapters for older callers
+//Sent in the compact wire format (see WireFormat)
+public class FruitPrice implements Serializable, WireFormat.Encodable {
+    private static final long serialVersionUID = 2L;
     private String fruitName;
-    private double price;
+    private long priceCents;
 
     public FruitPrice(String fruitName, double price) {
+        this(Money.toCents(price), fruitName);
+    }
+
+    private FruitPrice(long priceCents, String fruitName) {
         this.fruitName = fruitName;
-        this.price = price;
+        this.priceCents = priceCents;
+    }
+
+    public static FruitPrice ofCents(String fruitName, long priceCents) {
+        return new FruitPrice(priceCents, fruitName);
     }
 
     public String getFruitName() {
@@ -21,19 +36,42 @@ public class FruitPrice implements Serializable {
         this.fruitName = fruitName;
     }
 
+    public long getPriceCents() {
+        return priceCents;
+    }
+
+    public void setPriceCents(long priceCents) {
+        this.priceCents = priceCents;
+    }
+
     public double getPrice() {
-        return price;
+        return Money.toDouble(priceCents);
     }
 
     public void setPrice(double price) {
-        this.price = price;
+        this.priceCents = Money.toCents(price);
+    }
+
+    @Override
+    public void writeWire(DataOutput out) throws IOException {
+        WireFormat.writeString(out, fruitName);
+        WireFormat.writeLong(out, priceCents);
+    }
+
+    public static FruitPrice readWire(DataInput in) throws IOException {
+        String fruitName = WireFormat.readString(in);
+        return new FruitPrice(WireFormat.readLong(in), fruitName);
+    }
+
+    private Object writeReplace() {
+        return WireFormat.replace(this);
     }
 
     @Override
     public String toString() {
         return "FruitPrice{" +
                 "fruitName='" + fruitName + '\'' +
-                ", price=" + price +
+                ", price=" + Money.ofCents(priceCents) +
                 '}';
     }
 }
\ No newline at end of file
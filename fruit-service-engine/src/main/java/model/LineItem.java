@@ -0,0 +1,19 @@
+package model;
+
+//One priced line of a cart, as shown on the cart and on its receipt (see server.util.ReceiptRenderer)
+public interface LineItem {
+    String getFruitName();
+
+    int getQuantity();
+
+    long getUnitPriceCents();
+
+    long getLineTotalCents();
+
+    //Appends the line as "name x quantity @ $unit = $total"
+    default StringBuilder appendTo(StringBuilder out) {
+        out.append(getFruitName()).append(" x ").append(getQuantity()).append(" @ $");
+        Money.appendMoney(out, getUnitPriceCents()).append(" = $");
+        return Money.appendMoney(out, getLineTotalCents());
+    }
+}
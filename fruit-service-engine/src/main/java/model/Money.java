@@ -0,0 +1,175 @@
+package model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+//An amount of money held as a whole number of cents (Ksh minor units).
+//Prices are stored, multiplied and summed as primitive longs through the static helpers, so the
+//pricing path neither boxes nor drifts; every helper throws ArithmeticException on overflow
+//instead of wrapping. Instances wrap a cents value where an object is more convenient
+public final class Money implements Serializable, Comparable<Money> {
+    private static final long serialVersionUID = 1L;
+    public static final Money ZERO = new Money(0);
+    // Largest magnitude a double amount may have; beyond it the cents no longer fit in a long
+    private static final double MAX_AMOUNT = Long.MAX_VALUE / 100.0;
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    public static Money of(double amount) {
+        return ofCents(toCents(amount));
+    }
+
+    // Parses a decimal amount such as "12.5" exactly, rounding to cents half away from zero
+    public static Money parse(String text) {
+        return ofCents(parseCents(text));
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public double toDouble() {
+        return toDouble(cents);
+    }
+
+    public Money plus(Money other) {
+        return ofCents(add(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(subtract(cents, other.cents));
+    }
+
+    public Money times(int quantity) {
+        return ofCents(multiply(cents, quantity));
+    }
+
+    // Adapter for the double-based API: rounds to whole cents, halves away from zero like "%.2f"
+    public static long toCents(double amount) {
+        if (Double.isNaN(amount) || Math.abs(amount) >= MAX_AMOUNT) {
+            throw new ArithmeticException("Amount out of range: " + amount);
+        }
+        long rounded = Math.round(Math.abs(amount) * 100);
+        return amount < 0 ? -rounded : rounded;
+    }
+
+    public static double toDouble(long cents) {
+        return cents / 100.0;
+    }
+
+    public static long parseCents(String text) {
+        return parseCents(text, 0, text.length());
+    }
+
+    // Parses text[start, end) without allocating when it is a plain decimal like "-12.345";
+    // anything else (exponents, garbage) goes through BigDecimal, which rejects what it cannot read
+    public static long parseCents(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        try {
+            long whole = 0;
+            int digits = 0;
+            while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                whole = Math.addExact(Math.multiplyExact(whole, 10), text.charAt(i) - '0');
+                digits++;
+                i++;
+            }
+            long fraction = 0;
+            int fractionDigits = 0;
+            boolean roundUp = false;
+            if (i < end && text.charAt(i) == '.') {
+                i++;
+                while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                    if (fractionDigits < 2) {
+                        fraction = fraction * 10 + (text.charAt(i) - '0');
+                    } else if (fractionDigits == 2) {
+                        roundUp = text.charAt(i) >= '5';
+                    }
+                    fractionDigits++;
+                    digits++;
+                    i++;
+                }
+            }
+            if (i != end || digits == 0) {
+                return parseCentsExact(text.subSequence(start, end).toString());
+            }
+            if (fractionDigits == 1) {
+                fraction *= 10;
+            }
+            long cents = Math.addExact(Math.multiplyExact(whole, 100), fraction + (roundUp ? 1 : 0));
+            return negative ? -cents : cents;
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text.subSequence(start, end));
+        }
+    }
+
+    private static long parseCentsExact(String text) {
+        return new BigDecimal(text).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static long add(long cents, long otherCents) {
+        return Math.addExact(cents, otherCents);
+    }
+
+    public static long subtract(long cents, long otherCents) {
+        return Math.subtractExact(cents, otherCents);
+    }
+
+    public static long multiply(long unitCents, int quantity) {
+        return Math.multiplyExact(unitCents, (long) quantity);
+    }
+
+    //Appends an amount of cents as a plain decimal with two places, e.g. -1234 -> "-12.34"
+    public static StringBuilder appendMoney(StringBuilder out, long cents) {
+        long whole = cents / 100;
+        long fraction = Math.abs(cents % 100);
+        if (cents < 0) {
+            out.append('-');
+            whole = -whole;
+        }
+        out.append(whole).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money && ((Money) other).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    @Override
+    public String toString() {
+        return appendMoney(new StringBuilder(24), cents).toString();
+    }
+}
@@ -0,0 +1,91 @@
+package model;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+//A chunk of catalog entries for bulk import and export.
+//Names and prices sit in parallel arrays that are reused after clear(); only the filled part is
+//serialized, as plain UTF strings and longs, so a chunk costs one remote call and little more
+//than its raw size on the wire
+public class PriceBatch implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int MAX_SIZE = 65536;
+
+    private transient String[] fruitNames;
+    private transient long[] priceCents;
+    private int size;
+
+    public PriceBatch(int capacity) {
+        if (capacity < 1 || capacity > MAX_SIZE) {
+            throw new IllegalArgumentException("Batch capacity must be between 1 and " + MAX_SIZE + ": " + capacity);
+        }
+        fruitNames = new String[capacity];
+        priceCents = new long[capacity];
+    }
+
+    public void add(String fruitName, long cents) {
+        if (fruitName == null) {
+            throw new IllegalArgumentException("Fruit name is required");
+        }
+        if (size == fruitNames.length) {
+            throw new IllegalStateException("Price batch is full");
+        }
+        fruitNames[size] = fruitName;
+        priceCents[size] = cents;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return fruitNames.length;
+    }
+
+    public boolean isFull() {
+        return size == fruitNames.length;
+    }
+
+    public String getFruitName(int index) {
+        return fruitNames[index];
+    }
+
+    public long getPriceCents(int index) {
+        return priceCents[index];
+    }
+
+    // Copy of the names in this batch, e.g. for a single invalidation message
+    public String[] getFruitNames() {
+        return Arrays.copyOf(fruitNames, size);
+    }
+
+    public void clear() {
+        Arrays.fill(fruitNames, 0, size, null);
+        size = 0;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(fruitNames[i]);
+            out.writeLong(priceCents[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IOException("Bad price batch size " + size);
+        }
+        fruitNames = new String[Math.max(size, 1)];
+        priceCents = new long[fruitNames.length];
+        for (int i = 0; i < size; i++) {
+            fruitNames[i] = in.readUTF();
+            priceCents[i] = in.readLong();
+        }
+    }
+}
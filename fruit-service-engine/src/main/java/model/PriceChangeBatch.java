@@ -0,0 +1,107 @@
+package model;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+//A run of consecutive price mutations from a primary engine's change stream, sent to replicas.
+//Change i has sequence number afterSequence + 1 + i; a delete carries DELETED as its price.
+//A batch marked resyncRequired carries no changes: the replica must reload the whole catalog and
+//continue from headSequence
+public class PriceChangeBatch implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // Never a valid price (the price table rejects it), so it can mark a delete
+    public static final long DELETED = Long.MIN_VALUE;
+
+    private final long epoch;
+    private final long afterSequence;
+    private final long headSequence;
+    private final boolean resyncRequired;
+    private transient String[] fruitNames;
+    private transient long[] priceCents;
+    private int size;
+
+    public PriceChangeBatch(long epoch, long afterSequence, long headSequence, int capacity) {
+        this(epoch, afterSequence, headSequence, false, capacity);
+    }
+
+    private PriceChangeBatch(long epoch, long afterSequence, long headSequence, boolean resyncRequired, int capacity) {
+        this.epoch = epoch;
+        this.afterSequence = afterSequence;
+        this.headSequence = headSequence;
+        this.resyncRequired = resyncRequired;
+        fruitNames = new String[capacity];
+        priceCents = new long[capacity];
+    }
+
+    public static PriceChangeBatch resync(long epoch, long headSequence) {
+        return new PriceChangeBatch(epoch, headSequence, headSequence, true, 0);
+    }
+
+    public void add(String fruitName, long cents) {
+        fruitNames[size] = fruitName;
+        priceCents[size] = cents;
+        size++;
+    }
+
+    // Identifies one run of the primary; sequences restart when it restarts
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getAfterSequence() {
+        return afterSequence;
+    }
+
+    // Sequence of the last change in this batch
+    public long getLastSequence() {
+        return afterSequence + size;
+    }
+
+    // Newest sequence on the primary when the batch was cut
+    public long getHeadSequence() {
+        return headSequence;
+    }
+
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getFruitName(int index) {
+        return fruitNames[index];
+    }
+
+    public long getPriceCents(int index) {
+        return priceCents[index];
+    }
+
+    public boolean isDelete(int index) {
+        return priceCents[index] == DELETED;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(fruitNames[i]);
+            out.writeLong(priceCents[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (size < 0 || size > PriceBatch.MAX_SIZE) {
+            throw new IOException("Bad price change batch size " + size);
+        }
+        fruitNames = new String[size];
+        priceCents = new long[size];
+        for (int i = 0; i < size; i++) {
+            fruitNames[i] = in.readUTF();
+            priceCents[i] = in.readLong();
+        }
+    }
+}
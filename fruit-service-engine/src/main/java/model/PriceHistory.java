@@ -0,0 +1,76 @@
+package model;
+
+import java.io.Serializable;
+
+//The changes to one fruit's price between two times, oldest first, from Compute.getPriceHistory.
+//Change i happened at getTimeMillis(i) (epoch milliseconds); a delete carries DELETED as its price.
+//getStartCents() is the price in effect just before fromMillis. The engine keeps history from the
+//moment it started, so getRecordedSinceMillis() says how far back the answer can be trusted
+public class PriceHistory implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // Never a valid price (the price table rejects it), so it can mark a delete or an absent fruit
+    public static final long DELETED = PriceChangeBatch.DELETED;
+
+    private final String fruitName;
+    private final long fromMillis;
+    private final long toMillis;
+    private final long recordedSinceMillis;
+    private final long startCents;
+    private final long[] timesMillis;
+    private final long[] priceCents;
+    private final boolean truncated;
+
+    public PriceHistory(String fruitName, long fromMillis, long toMillis, long recordedSinceMillis, long startCents,
+                        long[] timesMillis, long[] priceCents, boolean truncated) {
+        this.fruitName = fruitName;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.recordedSinceMillis = recordedSinceMillis;
+        this.startCents = startCents;
+        this.timesMillis = timesMillis;
+        this.priceCents = priceCents;
+        this.truncated = truncated;
+    }
+
+    public String getFruitName() {
+        return fruitName;
+    }
+
+    public long getFromMillis() {
+        return fromMillis;
+    }
+
+    public long getToMillis() {
+        return toMillis;
+    }
+
+    public long getRecordedSinceMillis() {
+        return recordedSinceMillis;
+    }
+
+    // DELETED if the fruit was not in the catalog just before fromMillis
+    public long getStartCents() {
+        return startCents;
+    }
+
+    public int size() {
+        return timesMillis.length;
+    }
+
+    public long getTimeMillis(int index) {
+        return timesMillis[index];
+    }
+
+    public long getPriceCents(int index) {
+        return priceCents[index];
+    }
+
+    public boolean isDelete(int index) {
+        return priceCents[index] == DELETED;
+    }
+
+    // True if the range held more changes than the limit; ask again for a narrower range
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
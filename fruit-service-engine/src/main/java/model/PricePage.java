@@ -0,0 +1,40 @@
+package model;
+
+import java.io.Serializable;
+
+//One page of the catalog in fruit-name order (String.compareTo), from Compute.listPrices.
+//getNextCursor() is the afterFruitName for the following page; it is null after the last page
+public class PricePage implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final PriceBatch prices;
+    private final String nextCursor;
+
+    public PricePage(PriceBatch prices, String nextCursor) {
+        this.prices = prices;
+        this.nextCursor = nextCursor;
+    }
+
+    public int size() {
+        return prices.size();
+    }
+
+    public String getFruitName(int index) {
+        return prices.getFruitName(index);
+    }
+
+    public long getPriceCents(int index) {
+        return prices.getPriceCents(index);
+    }
+
+    public PriceBatch getPrices() {
+        return prices;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isLast() {
+        return nextCursor == null;
+    }
+}
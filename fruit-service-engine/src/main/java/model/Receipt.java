@@ -1,41 +1,108 @@
 package model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
-public class Receipt implements Serializable {
-    private static final long serialVersionUID = 1L;
-    private final double totalCost;
-    private final double amountGiven;
-    private final double changeDue;
+import server.util.WireFormat;
+
+//Sent in the compact wire format (see WireFormat)
+public class Receipt implements Serializable, WireFormat.Encodable {
+    private static final long serialVersionUID = 3L;
+    //For receipts whose prices were not read from one catalog version; shown as "n/a"
+    public static final long NO_VERSION = -1;
+    private final long totalCents;
+    private final long amountGivenCents;
+    private final long changeDueCents;
     private final String cashier;
+    //Catalog version the total was priced at, or NO_VERSION
+    private final long catalogVersion;
 
-    //To show the receipt details
+    //To show the receipt details; amounts in Ksh, rounded to cents
     public Receipt(double totalCost, double amountGiven, double changeDue, String cashier) {
-        this.totalCost = totalCost;
-        this.amountGiven = amountGiven;
-        this.changeDue = changeDue;
+        this(cashier, Money.toCents(totalCost), Money.toCents(amountGiven), Money.toCents(changeDue),
+                NO_VERSION);
+    }
+
+    private Receipt(String cashier, long totalCents, long amountGivenCents, long changeDueCents, long catalogVersion) {
+        this.totalCents = totalCents;
+        this.amountGivenCents = amountGivenCents;
+        this.changeDueCents = changeDueCents;
         this.cashier = cashier;
+        this.catalogVersion = catalogVersion;
+    }
+
+    public static Receipt ofCents(long totalCents, long amountGivenCents, long changeDueCents, String cashier) {
+        return new Receipt(cashier, totalCents, amountGivenCents, changeDueCents, NO_VERSION);
+    }
+
+    public static Receipt ofCents(long totalCents, long amountGivenCents, long changeDueCents, String cashier,
+                                  long catalogVersion) {
+        return new Receipt(cashier, totalCents, amountGivenCents, changeDueCents, catalogVersion);
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    public long getAmountGivenCents() {
+        return amountGivenCents;
+    }
+
+    public long getChangeDueCents() {
+        return changeDueCents;
     }
 
     public double getTotalCost() {
-        return totalCost;
+        return Money.toDouble(totalCents);
     }
 
     public double getAmountGiven() {
-        return amountGiven;
+        return Money.toDouble(amountGivenCents);
     }
 
     public double getChangeDue() {
-        return changeDue;
+        return Money.toDouble(changeDueCents);
     }
 
     public String getCashier() {
         return cashier;
     }
 
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    @Override
+    public void writeWire(DataOutput out) throws IOException {
+        WireFormat.writeString(out, cashier);
+        WireFormat.writeLong(out, totalCents);
+        WireFormat.writeLong(out, amountGivenCents);
+        WireFormat.writeLong(out, changeDueCents);
+        WireFormat.writeLong(out, catalogVersion);
+    }
+
+    public static Receipt readWire(DataInput in) throws IOException {
+        String cashier = WireFormat.readString(in);
+        long totalCents = WireFormat.readLong(in);
+        long amountGivenCents = WireFormat.readLong(in);
+        long changeDueCents = WireFormat.readLong(in);
+        return new Receipt(cashier, totalCents, amountGivenCents, changeDueCents, WireFormat.readLong(in));
+    }
+
+    private Object writeReplace() {
+        return WireFormat.replace(this);
+    }
+
     @Override
     public String toString() {
-        return String.format("Receipt:%nTotal Cost: $%.2f%nAmount Given: $%.2f%nChange Due: $%.2f%nCashier: %s", 
-                           totalCost, amountGiven, changeDue, cashier);
+        String newLine = System.lineSeparator();
+        StringBuilder text = new StringBuilder(128).append("Receipt:").append(newLine).append("Total Cost: $");
+        Money.appendMoney(text, totalCents).append(newLine).append("Amount Given: $");
+        Money.appendMoney(text, amountGivenCents).append(newLine).append("Change Due: $");
+        Money.appendMoney(text, changeDueCents).append(newLine).append("Cashier: ").append(cashier)
+                .append(newLine).append("Catalog version: ");
+        return (catalogVersion >= 0 ? text.append(catalogVersion) : text.append("n/a")).toString();
     }
 }
\ No newline at end of file
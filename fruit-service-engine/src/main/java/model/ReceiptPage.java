@@ -0,0 +1,54 @@
+package model;
+
+import java.io.Serializable;
+
+//A run of journaled receipts in sequence order, from Compute.readReceipts.
+//Receipt i was journaled as number getSequence(i) at getTimeMillis(i) (epoch milliseconds);
+//getLastSequence() is the afterSequence for the next page
+public class ReceiptPage implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final long afterSequence;
+    private final long[] sequences;
+    private final long[] timesMillis;
+    private final Receipt[] receipts;
+    private int size;
+
+    public ReceiptPage(long afterSequence, int capacity) {
+        this.afterSequence = afterSequence;
+        sequences = new long[capacity];
+        timesMillis = new long[capacity];
+        receipts = new Receipt[capacity];
+    }
+
+    public void add(long sequence, long timeMillis, Receipt receipt) {
+        sequences[size] = sequence;
+        timesMillis[size] = timeMillis;
+        receipts[size] = receipt;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == sequences.length;
+    }
+
+    public long getSequence(int index) {
+        return sequences[index];
+    }
+
+    public long getTimeMillis(int index) {
+        return timesMillis[index];
+    }
+
+    public Receipt getReceipt(int index) {
+        return receipts[index];
+    }
+
+    // The last receipt's sequence, or the afterSequence asked for if the page is empty
+    public long getLastSequence() {
+        return size == 0 ? afterSequence : sequences[size - 1];
+    }
+}
@@ -0,0 +1,64 @@
+package model;
+
+import java.io.Serializable;
+
+//Where an engine stands in its primary's change stream.
+//A primary reports its newest sequence; a replica reports the last sequence it applied and how
+//long ago it last knew it was caught up (Long.MAX_VALUE while it has never been, or is resyncing)
+public class ReplicationStatus implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String primaryAddress;
+    private final long epoch;
+    private final long sequence;
+    private final long stalenessMillis;
+
+    private ReplicationStatus(String primaryAddress, long epoch, long sequence, long stalenessMillis) {
+        this.primaryAddress = primaryAddress;
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.stalenessMillis = stalenessMillis;
+    }
+
+    public static ReplicationStatus primary(long epoch, long headSequence) {
+        return new ReplicationStatus(null, epoch, headSequence, 0);
+    }
+
+    public static ReplicationStatus replica(String primaryAddress, long epoch, long appliedSequence, long stalenessMillis) {
+        return new ReplicationStatus(primaryAddress, epoch, appliedSequence, stalenessMillis);
+    }
+
+    public boolean isReplica() {
+        return primaryAddress != null;
+    }
+
+    // host:port of the primary a replica follows; null on a primary
+    public String getPrimaryAddress() {
+        return primaryAddress;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getStalenessMillis() {
+        return stalenessMillis;
+    }
+
+    // True if every change up to the given point of the same primary run has been applied here
+    public boolean hasApplied(ReplicationStatus write) {
+        return write == null || (epoch == write.epoch && sequence >= write.sequence);
+    }
+
+    @Override
+    public String toString() {
+        if (!isReplica()) {
+            return "primary @" + sequence;
+        }
+        return "replica of " + primaryAddress + " @" + sequence
+                + (stalenessMillis == Long.MAX_VALUE ? " (not caught up)" : " (" + stalenessMillis + " ms stale)");
+    }
+}
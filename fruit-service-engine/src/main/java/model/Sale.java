@@ -0,0 +1,50 @@
+package model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+//A basket sold by Compute.sellCart: the lines as given, the engine's quote for them, and the
+//receipt it journaled. Lines the quote marks missing were not sold and are not on the receipt
+public class Sale implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final List<CartLine> lines;
+    private final CartQuote quote;
+    private final Receipt receipt;
+    private final long receiptNumber;
+
+    public Sale(List<CartLine> lines, CartQuote quote, Receipt receipt, long receiptNumber) {
+        this.lines = lines;
+        this.quote = quote;
+        this.receipt = receipt;
+        this.receiptNumber = receiptNumber;
+    }
+
+    public List<CartLine> getLines() {
+        return lines;
+    }
+
+    public CartQuote getQuote() {
+        return quote;
+    }
+
+    public Receipt getReceipt() {
+        return receipt;
+    }
+
+    //The receipt's journal sequence number; 0 if the engine keeps no journal
+    public long getReceiptNumber() {
+        return receiptNumber;
+    }
+
+    //The lines that were sold, priced
+    public List<CartView.Item> getItems() {
+        List<CartView.Item> items = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            if (!quote.isMissing(i)) {
+                items.add(new CartView.Item(lines.get(i), quote.getLinePriceCents(i)));
+            }
+        }
+        return items;
+    }
+}
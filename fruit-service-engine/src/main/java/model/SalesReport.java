@@ -0,0 +1,91 @@
+package model;
+
+import java.io.Serializable;
+
+//Sales over one window, from Compute.getSales: the overall totals, and the fruits and cashiers that
+//took the most revenue in it, highest first. A line is one priced cart line (fruit and quantity)
+public class SalesReport implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Window {
+        MINUTE, HOUR, DAY,
+        // Since the engine started
+        TOTAL
+    }
+
+    private final Window window;
+    private final long quantity;
+    private final long revenueCents;
+    private final long lines;
+    private final Ranking fruits;
+    private final Ranking cashiers;
+
+    public SalesReport(Window window, long quantity, long revenueCents, long lines, Ranking fruits, Ranking cashiers) {
+        this.window = window;
+        this.quantity = quantity;
+        this.revenueCents = revenueCents;
+        this.lines = lines;
+        this.fruits = fruits;
+        this.cashiers = cashiers;
+    }
+
+    public Window getWindow() {
+        return window;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public long getRevenueCents() {
+        return revenueCents;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public Ranking getFruits() {
+        return fruits;
+    }
+
+    public Ranking getCashiers() {
+        return cashiers;
+    }
+
+    // Fruits or cashiers with their totals, by revenue, highest first
+    public static class Ranking implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String[] names;
+        private final long[] quantities;
+        private final long[] revenueCents;
+        private final long[] lines;
+
+        public Ranking(String[] names, long[] quantities, long[] revenueCents, long[] lines) {
+            this.names = names;
+            this.quantities = quantities;
+            this.revenueCents = revenueCents;
+            this.lines = lines;
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String getName(int index) {
+            return names[index];
+        }
+
+        public long getQuantity(int index) {
+            return quantities[index];
+        }
+
+        public long getRevenueCents(int index) {
+            return revenueCents[index];
+        }
+
+        public long getLines(int index) {
+            return lines[index];
+        }
+    }
+}
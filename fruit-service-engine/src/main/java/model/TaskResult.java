@@ -0,0 +1,57 @@
+package model;
+
+import java.io.Serializable;
+
+//State of a submitted task: still running, finished with a value, or failed with an error message
+public class TaskResult<T> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum State { PENDING, DONE, FAILED }
+
+    private final State state;
+    private final T value;
+    private final String error;
+
+    private TaskResult(State state, T value, String error) {
+        this.state = state;
+        this.value = value;
+        this.error = error;
+    }
+
+    public static <T> TaskResult<T> pending() {
+        return new TaskResult<>(State.PENDING, null, null);
+    }
+
+    public static <T> TaskResult<T> done(T value) {
+        return new TaskResult<>(State.DONE, value, null);
+    }
+
+    public static <T> TaskResult<T> failed(String error) {
+        return new TaskResult<>(State.FAILED, null, error);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isDone() {
+        return state != State.PENDING;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        switch (state) {
+            case DONE: return "TaskResult{DONE, " + value + "}";
+            case FAILED: return "TaskResult{FAILED, " + error + "}";
+            default: return "TaskResult{PENDING}";
+        }
+    }
+}
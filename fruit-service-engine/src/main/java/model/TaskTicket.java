@@ -0,0 +1,32 @@
+package model;
+
+import java.io.Serializable;
+
+//Handle for a task submitted with Compute.submitTask; T is the task's result type
+public class TaskTicket<T> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final long id;
+
+    public TaskTicket(long id) {
+        this.id = id;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof TaskTicket && ((TaskTicket<?>) other).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return "TaskTicket#" + id;
+    }
+}
@@ -0,0 +1,45 @@
+package model;
+
+import java.io.Serializable;
+
+//A price lookup tagged with the catalog version it was read at, so a near cache can tell
+//whether an invalidation it already received is newer than the value
+public class VersionedPrice implements Serializable {
+    private static final long serialVersionUID = 2L;
+    private final String fruitName;
+    private final long priceCents;
+    private final boolean found;
+    private final long version;
+
+    public VersionedPrice(String fruitName, long priceCents, boolean found, long version) {
+        this.fruitName = fruitName;
+        this.priceCents = priceCents;
+        this.found = found;
+        this.version = version;
+    }
+
+    public String getFruitName() {
+        return fruitName;
+    }
+
+    public long getPriceCents() {
+        return priceCents;
+    }
+
+    public double getPrice() {
+        return Money.toDouble(priceCents);
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return fruitName + (found ? " - Ksh" + Money.ofCents(priceCents) : " (not found)") + " @v" + version;
+    }
+}
@@ -0,0 +1,143 @@
+package server;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.TaskResult;
+import model.TaskTicket;
+import server.interfaces.Compute;
+import server.interfaces.Task;
+import server.interfaces.TaskCallback;
+import server.util.AsyncLogger;
+import server.util.ServerExecutors;
+
+// This class runs tasks submitted through Compute.submitTask on a sized executor inside the engine,
+// or inside a ShardedCompute for tasks that must run against the router.
+// A result is kept until the client collects it with pollTask/awaitTask, or until it has been
+// uncollected for RESULT_TTL_MILLIS, so abandoned tickets cannot pile up
+public class AsyncTaskRunner {
+    private static final AsyncLogger log = AsyncLogger.getLogger(AsyncTaskRunner.class);
+    private static final int THREADS = Integer.getInteger("fruit.tasks.threads",
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    private static final int QUEUE_LIMIT = Integer.getInteger("fruit.tasks.queue", 10_000);
+    private static final long RESULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // Keeps a single awaitTask call from pinning an RMI connection indefinitely
+    private static final long MAX_AWAIT_MILLIS = 30_000;
+
+    private final Compute engine;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService sweeper;
+    private final ConcurrentMap<Long, Submission> submissions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    private static final class Submission {
+        final CompletableFuture<TaskResult<?>> result = new CompletableFuture<>();
+        volatile long completedAt;
+    }
+
+    AsyncTaskRunner(Compute engine) {
+        this(engine, "engine-task");
+    }
+
+    // Runs each task with engine.executeTask; threadName prefixes the executor's threads
+    public AsyncTaskRunner(Compute engine, String threadName) {
+        this.engine = engine;
+        this.executor = ServerExecutors.newBoundedExecutor(threadName, THREADS, QUEUE_LIMIT);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName + "-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::expireResults, 30, 30, TimeUnit.SECONDS);
+    }
+
+    public <T> TaskTicket<T> submit(Task<T> task, TaskCallback callback) throws RemoteException {
+        long id = nextId.incrementAndGet();
+        TaskTicket<T> ticket = new TaskTicket<>(id);
+        Submission submission = new Submission();
+        submissions.put(id, submission);
+        try {
+            executor.execute(() -> {
+                TaskResult<?> result;
+                try {
+                    result = TaskResult.done(engine.executeTask(task));
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    result = TaskResult.failed(cause.toString());
+                }
+                submission.completedAt = System.currentTimeMillis();
+                submission.result.complete(result);
+                if (callback != null) {
+                    try {
+                        callback.taskCompleted(ticket, result);
+                    } catch (RemoteException e) {
+                        log.warn("Task callback failed for {}: {}", ticket, e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            submissions.remove(id);
+            throw new RemoteException("Task queue is full", e);
+        }
+        return ticket;
+    }
+
+    public <T> TaskResult<T> poll(TaskTicket<T> ticket) {
+        Submission submission = submissions.get(ticket.getId());
+        if (submission == null) {
+            return TaskResult.failed("Unknown or expired task: " + ticket);
+        }
+        TaskResult<?> result = submission.result.getNow(null);
+        if (result == null) {
+            return TaskResult.pending();
+        }
+        submissions.remove(ticket.getId());
+        return cast(result);
+    }
+
+    public <T> TaskResult<T> await(TaskTicket<T> ticket, long timeoutMillis) throws RemoteException {
+        Submission submission = submissions.get(ticket.getId());
+        if (submission == null) {
+            return TaskResult.failed("Unknown or expired task: " + ticket);
+        }
+        try {
+            TaskResult<?> result = submission.result.get(Math.min(timeoutMillis, MAX_AWAIT_MILLIS), TimeUnit.MILLISECONDS);
+            submissions.remove(ticket.getId());
+            return cast(result);
+        } catch (TimeoutException e) {
+            return TaskResult.pending();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for " + ticket, e);
+        } catch (ExecutionException e) {
+            // The future is only ever completed normally
+            throw new RemoteException("Task failed", e);
+        }
+    }
+
+    // Stops taking tasks; ones already queued still run
+    public void close() {
+        executor.shutdown();
+        sweeper.shutdown();
+    }
+
+    private void expireResults() {
+        long cutoff = System.currentTimeMillis() - RESULT_TTL_MILLIS;
+        submissions.values().removeIf(submission -> submission.result.isDone() && submission.completedAt < cutoff);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> TaskResult<T> cast(TaskResult<?> result) {
+        return (TaskResult<T>) result;
+    }
+}
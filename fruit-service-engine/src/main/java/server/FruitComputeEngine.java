@@ -1,25 +1,147 @@
 package server;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+
+import model.CartLine;
+import model.CartQuote;
+import model.CartView;
+import model.Money;
+import model.PriceBatch;
+import model.PriceChangeBatch;
+import model.PriceHistory;
+import model.PricePage;
+import model.Receipt;
+import model.ReceiptPage;
+import model.ReplicationStatus;
+import model.Sale;
+import model.SalesReport;
+import model.TaskResult;
+import model.TaskTicket;
+import model.VersionedPrice;
 
 import server.interfaces.Compute;
+import server.interfaces.ContextTask;
+import server.interfaces.PriceBatchSink;
+import server.interfaces.PriceListener;
 import server.interfaces.Task;
+import server.interfaces.TaskCallback;
+import server.metrics.LatencyHistogram;
+import server.metrics.MetricsRegistry;
+import server.metrics.SalesCounters;
+import server.store.CartSessionStore;
+import server.store.CatalogSnapshot;
+import server.store.DurablePriceCatalog;
+import server.store.FruitPriceTable;
+import server.store.PriceChangeStream;
+import server.store.PriceTimeSeries;
+import server.store.ReceiptJournal;
+import server.store.SortedNameIndex;
+import server.store.VersionedCatalog;
+import server.util.AsyncLogger;
+import server.util.CartCheckout;
+import server.util.ReceiptRenderer;
 
 // This class implements the Compute interface and provides methods to manage fruit prices,
 // calculate costs, and generate receipts. It acts as the RMI server for the fruit service
 public class FruitComputeEngine extends UnicastRemoteObject implements Compute {
-    private final Map<String, Double> fruitPriceTable;
+    private static final AsyncLogger log = AsyncLogger.getLogger(FruitComputeEngine.class);
+    // Cap on how long a replica's poll may hold an RMI thread
+    private static final long MAX_CHANGE_POLL_MILLIS = 30_000;
+
+    // Shared by every RMI dispatch thread, so it must be safe for concurrent use
+    private final FruitPriceTable fruitPriceTable;
+    // Write-ahead log and snapshots behind the table; null for a purely in-memory engine
+    private final DurablePriceCatalog catalog;
+    // Every receipt handed out; null for a purely in-memory engine
+    private final ReceiptJournal receipts;
+    // Sales counted at checkout, per fruit and per cashier
+    private final SalesCounters sales = new SalesCounters();
+    // Shopping carts of the sessions using this engine; kept in memory only
+    private final CartSessionStore carts = new CartSessionStore();
+    // Runs tasks submitted with submitTask
+    private final AsyncTaskRunner asyncTasks = new AsyncTaskRunner(this);
+    // The client near caches to invalidate on every change
+    private final PriceChangeNotifier priceChanges;
+    // Ordered log of this engine's changes, followed by its replicas
+    private final PriceChangeStream changeStream;
+    // Immutable, versioned snapshots of the table for reads that span several prices
+    private final VersionedCatalog versions;
+    // Every price each fruit has had since the engine started
+    private final PriceTimeSeries priceHistory;
+    // Sorted names for listPrices
+    private final SortedNameIndex nameIndex;
+    // Set when this engine is a read-only replica of another engine
+    private volatile ReplicaFollower follower;
+
+    // Latency per Compute method and per Task class, served by getMetrics()
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final LatencyHistogram executeTaskLatency = callLatency("executeTask");
+    private final LatencyHistogram submitTaskLatency = callLatency("submitTask");
+    private final LatencyHistogram pollTaskLatency = callLatency("pollTask");
+    private final LatencyHistogram awaitTaskLatency = callLatency("awaitTask");
+    private final LatencyHistogram addFruitPriceLatency = callLatency("addFruitPrice");
+    private final LatencyHistogram updateFruitPriceLatency = callLatency("updateFruitPrice");
+    private final LatencyHistogram deleteFruitPriceLatency = callLatency("deleteFruitPrice");
+    private final LatencyHistogram calculateFruitCostLatency = callLatency("calculateFruitCost");
+    private final LatencyHistogram priceCartLatency = callLatency("priceCart");
+    private final LatencyHistogram generateReceiptLatency = callLatency("generateReceipt");
+    private final LatencyHistogram recordReceiptLatency = callLatency("recordReceipt");
+    private final LatencyHistogram readReceiptsLatency = callLatency("readReceipts");
+    private final LatencyHistogram sellCartLatency = callLatency("sellCart");
+    private final LatencyHistogram sellLinesLatency = callLatency("sellLines");
+    private final LatencyHistogram getSalesLatency = callLatency("getSales");
+    private final LatencyHistogram getCartLatency = callLatency("getCart");
+    private final LatencyHistogram addToCartLatency = callLatency("addToCart");
+    private final LatencyHistogram removeFromCartLatency = callLatency("removeFromCart");
+    private final LatencyHistogram clearCartLatency = callLatency("clearCart");
+    private final LatencyHistogram checkoutCartLatency = callLatency("checkoutCart");
+    private final LatencyHistogram getVersionedPriceLatency = callLatency("getVersionedPrice");
+    private final LatencyHistogram addPriceListenerLatency = callLatency("addPriceListener");
+    private final LatencyHistogram importPricesLatency = callLatency("importPrices");
+    private final LatencyHistogram exportPricesLatency = callLatency("exportPrices");
+    private final LatencyHistogram listPricesLatency = callLatency("listPrices");
+    private final LatencyHistogram deletePricesLatency = callLatency("deletePrices");
+    private final LatencyHistogram getPriceCentsAtLatency = callLatency("getPriceCentsAt");
+    private final LatencyHistogram getPriceHistoryLatency = callLatency("getPriceHistory");
+    // Resolved once per Task class, so executeTask does not build a lookup key per call
+    private final ClassValue<LatencyHistogram> taskLatency = new ClassValue<LatencyHistogram>() {
+        @Override
+        protected LatencyHistogram computeValue(Class<?> taskClass) {
+            return metrics.histogram("fruit_engine_task_duration_seconds",
+                    "Time spent running tasks in executeTask", "task", taskClass.getSimpleName());
+        }
+    };
 
     protected FruitComputeEngine() throws RemoteException {
         super();
-        fruitPriceTable = new HashMap<>();
+        fruitPriceTable = new FruitPriceTable();
+        catalog = null;
+        receipts = null;
+        changeStream = PriceChangeStream.attach(fruitPriceTable);
+        versions = VersionedCatalog.attach(fruitPriceTable);
+        priceHistory = PriceTimeSeries.attach(fruitPriceTable, versions.snapshot());
+        priceChanges = new PriceChangeNotifier(versions::currentVersion);
+        nameIndex = new SortedNameIndex(fruitPriceTable);
+    }
+
+    // Recovers the price catalog persisted in the given directory and keeps logging changes to it
+    protected FruitComputeEngine(Path dataDirectory) throws IOException {
+        super();
+        catalog = DurablePriceCatalog.open(dataDirectory);
+        fruitPriceTable = catalog.getTable();
+        receipts = ReceiptJournal.open(dataDirectory.resolve("receipts"));
+        changeStream = PriceChangeStream.attach(fruitPriceTable);
+        versions = VersionedCatalog.attach(fruitPriceTable);
+        priceHistory = PriceTimeSeries.attach(fruitPriceTable, versions.snapshot());
+        priceChanges = new PriceChangeNotifier(versions::currentVersion);
+        nameIndex = new SortedNameIndex(fruitPriceTable);
     }
 
     public static void main(String[] args) {
@@ -32,19 +154,33 @@ public class FruitComputeEngine extends UnicastRemoteObject implements Compute {
                 System.setProperty("java.rmi.server.hostname", hostname);
             }
             
-            FruitComputeEngine engine = new FruitComputeEngine();
-            Registry registry = LocateRegistry.createRegistry(1099);
+            // Several engines (e.g. the shards of a cluster) can share a machine with their own port and data
+            int port = Integer.getInteger("fruit.engine.port", 1099);
+            Path dataDirectory = Paths.get(System.getProperty("fruit.data.dir", "data"));
+            FruitComputeEngine engine = new FruitComputeEngine(dataDirectory);
+            Runtime.getRuntime().addShutdownHook(new Thread(engine::closeCatalog));
+            // A replica copies the primary's changes and rejects writes of its own
+            String primaryAddress = System.getProperty("fruit.replicaOf");
+            if (primaryAddress != null && !primaryAddress.trim().isEmpty()) {
+                engine.followPrimary(primaryAddress.trim());
+            }
+            Registry registry = LocateRegistry.createRegistry(port);
             registry.rebind("FruitComputeEngine", engine);
             
             System.out.println("========================================");
             System.out.println("Fruit Compute Engine is ready!");
             System.out.println("Server hostname: " + hostname);
-            System.out.println("RMI Registry port: 1099");
+            System.out.println("RMI Registry port: " + port);
             System.out.println("Service name: FruitComputeEngine");
+            if (engine.follower != null) {
+                System.out.println("Read-only replica of: " + engine.follower.getPrimaryAddress());
+            }
+            System.out.println("Price catalog: " + engine.catalog.getRecoveredEntries() + " entries recovered from "
+                    + dataDirectory.toAbsolutePath() + " in " + engine.catalog.getRecoveryMillis() + " ms");
             System.out.println("========================================");
             System.out.println("Clients can connect from other computers using:");
             System.out.println("  Server IP: " + hostname);
-            System.out.println("  Port: 1099");
+            System.out.println("  Port: " + port);
             System.out.println("========================================");
         } catch (RemoteException e) {
             System.err.println("RMI Server exception: " + e.toString());
@@ -55,69 +191,678 @@ public class FruitComputeEngine extends UnicastRemoteObject implements Compute {
         }
     }
 
+    private LatencyHistogram callLatency(String method) {
+        return metrics.histogram("fruit_engine_call_duration_seconds",
+                "Time spent in each Compute method on the engine", "method", method);
+    }
+
+    // Turns this engine into a read-only replica that follows the engine at host:port
+    void followPrimary(String primaryAddress) {
+        follower = new ReplicaFollower(primaryAddress, fruitPriceTable, versions, priceChanges);
+        follower.start();
+    }
+
+    // Flushes the price log and receipt journal on shutdown so buffered changes are not lost
+    private void closeCatalog() {
+        if (follower != null) {
+            follower.close();
+        }
+        if (catalog != null) {
+            try {
+                catalog.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close price catalog: " + e.getMessage());
+            }
+        }
+        if (receipts != null) {
+            try {
+                receipts.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close receipt journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // Writes go to the primary only, so every replica applies them in the same order; and none
+    // are taken once the price log can no longer persist them
+    private void checkWritable() throws RemoteException {
+        ReplicaFollower replicaFollower = follower;
+        if (replicaFollower != null) {
+            throw new RemoteException("Read-only replica; send price changes to the primary at "
+                    + replicaFollower.getPrimaryAddress());
+        }
+        if (catalog != null) {
+            try {
+                catalog.checkWritable();
+            } catch (IOException e) {
+                throw new RemoteException("Price log failed; refusing price changes", e);
+            }
+        }
+    }
+
+    // Group commit: waits for the change just made to reach disk, sharing the fsync with other writers
+    private void awaitDurable() throws RemoteException {
+        if (catalog != null) {
+            try {
+                catalog.awaitDurable();
+            } catch (IOException e) {
+                throw new RemoteException("Failed to persist price change", e);
+            }
+        }
+    }
+
     @Override
     public <T> T executeTask(Task<T> task) throws RemoteException {
+        LatencyHistogram taskHistogram = taskLatency.get(task.getClass());
+        long start = System.nanoTime();
         try {
+            // Context-aware tasks work on this engine directly, with no loopback RMI call
+            if (task instanceof ContextTask) {
+                return ((ContextTask<T>) task).execute(this);
+            }
             return task.execute();
         } catch (Exception e) {
+            executeTaskLatency.recordError();
+            taskHistogram.recordError();
             throw new RemoteException("Task execution failed", e);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            executeTaskLatency.record(elapsed);
+            taskHistogram.record(elapsed);
+        }
+    }
+
+    @Override
+    public <T> TaskTicket<T> submitTask(Task<T> task, TaskCallback callback) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            return asyncTasks.submit(task, callback);
+        } catch (RemoteException | RuntimeException e) {
+            submitTaskLatency.recordError();
+            throw e;
+        } finally {
+            submitTaskLatency.record(System.nanoTime() - start);
         }
     }
 
     @Override
-    public void addFruitPrice(String fruitName, double price) throws RemoteException {
-        fruitPriceTable.put(fruitName, price);
-        System.out.println("Added: " + fruitName + " - Ksh" + price);
+    public <T> TaskResult<T> pollTask(TaskTicket<T> ticket) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            return asyncTasks.poll(ticket);
+        } finally {
+            pollTaskLatency.record(System.nanoTime() - start);
+        }
     }
 
     @Override
-    public void updateFruitPrice(String fruitName, double newPrice) throws RemoteException {
-        if (fruitPriceTable.containsKey(fruitName)) {
-            fruitPriceTable.put(fruitName, newPrice);
-            System.out.println("Updated: " + fruitName + " - Ksh" + newPrice);
-        } else {
-            System.out.println("Fruit not found: " + fruitName);
+    public <T> TaskResult<T> awaitTask(TaskTicket<T> ticket, long timeoutMillis) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            return asyncTasks.await(ticket, timeoutMillis);
+        } catch (RemoteException | RuntimeException e) {
+            awaitTaskLatency.recordError();
+            throw e;
+        } finally {
+            awaitTaskLatency.record(System.nanoTime() - start);
         }
     }
 
     @Override
-    public void deleteFruitPrice(String fruitName) throws RemoteException {
-        if (fruitPriceTable.remove(fruitName) != null) {
-            System.out.println("Deleted: " + fruitName);
-        } else {
-            System.out.println("Fruit not found: " + fruitName);
+    public ReplicationStatus addFruitPriceCents(String fruitName, long priceCents) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            checkWritable();
+            fruitPriceTable.put(fruitName, priceCents);
+            awaitDurable();
+            priceChanges.priceChanged(fruitName);
+            log.info("Added: {} - Ksh{}", fruitName, Money.ofCents(priceCents));
+            return getReplicationStatus();
+        } catch (RemoteException | RuntimeException e) {
+            addFruitPriceLatency.recordError();
+            throw e;
+        } finally {
+            addFruitPriceLatency.record(System.nanoTime() - start);
         }
     }
 
     @Override
-    public double calculateFruitCost(String fruitName, int quantity) throws RemoteException {
-        double price = fruitPriceTable.getOrDefault(fruitName, 0.0);
-        if (price == 0.0) {
-            System.out.println("Fruit not found: " + fruitName);
-            return 0.0;
+    public ReplicationStatus updateFruitPriceCents(String fruitName, long newPriceCents) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            checkWritable();
+            if (fruitPriceTable.replace(fruitName, newPriceCents)) {
+                awaitDurable();
+                priceChanges.priceChanged(fruitName);
+                log.info("Updated: {} - Ksh{}", fruitName, Money.ofCents(newPriceCents));
+            } else {
+                log.info("Fruit not found: {}", fruitName);
+            }
+            return getReplicationStatus();
+        } catch (RemoteException | RuntimeException e) {
+            updateFruitPriceLatency.recordError();
+            throw e;
+        } finally {
+            updateFruitPriceLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public ReplicationStatus deleteFruitPrice(String fruitName) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            checkWritable();
+            if (fruitPriceTable.remove(fruitName)) {
+                awaitDurable();
+                priceChanges.priceChanged(fruitName);
+                log.info("Deleted: {}", fruitName);
+            } else {
+                log.info("Fruit not found: {}", fruitName);
+            }
+            return getReplicationStatus();
+        } catch (RemoteException | RuntimeException e) {
+            deleteFruitPriceLatency.recordError();
+            throw e;
+        } finally {
+            deleteFruitPriceLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long calculateFruitCostCents(String fruitName, int quantity) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            long priceCents = fruitPriceTable.getCents(fruitName, 0);
+            if (priceCents == 0) {
+                log.info("Fruit not found: {}", fruitName);
+                return 0;
+            }
+            long totalCents = Money.multiply(priceCents, quantity);
+            log.info("Calculated cost for {} {}(s): Ksh{}", quantity, fruitName, Money.ofCents(totalCents));
+            return totalCents;
+        } catch (RuntimeException e) {
+            calculateFruitCostLatency.recordError();
+            throw e;
+        } finally {
+            calculateFruitCostLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public CartQuote priceCart(List<CartLine> cartLines) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            return quote(cartLines);
+        } catch (RuntimeException e) {
+            priceCartLatency.recordError();
+            throw e;
+        } finally {
+            priceCartLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private CartQuote quote(List<CartLine> cartLines) {
+        // Every line is priced from one version, so a change made meanwhile applies to all or none
+        CatalogSnapshot snapshot = versions.snapshot();
+        int lineCount = cartLines.size();
+        long[] lineCents = new long[lineCount];
+        boolean[] missing = new boolean[lineCount];
+        long totalCents = 0;
+        for (int i = 0; i < lineCount; i++) {
+            CartLine line = cartLines.get(i);
+            long priceCents = snapshot.getCents(line.getFruitName(), 0);
+            if (priceCents == 0) {
+                missing[i] = true;
+                continue;
+            }
+            lineCents[i] = Money.multiply(priceCents, line.getQuantity());
+            totalCents = Money.add(totalCents, lineCents[i]);
+        }
+        log.info("Priced cart of {} line(s) at catalog v{}: Ksh{}", lineCount, snapshot.getVersion(),
+                Money.ofCents(totalCents));
+        return new CartQuote(lineCents, missing, totalCents, snapshot.getVersion());
+    }
+
+    @Override
+    public int importPrices(PriceBatch batch) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            checkWritable();
+            int size = batch.size();
+            if (size == 0) {
+                return 0;
+            }
+            // The chunk becomes one catalog version
+            versions.batch(() -> {
+                for (int i = 0; i < size; i++) {
+                    fruitPriceTable.put(batch.getFruitName(i), batch.getPriceCents(i));
+                }
+            });
+            // One group commit and one invalidation round for the whole chunk
+            awaitDurable();
+            priceChanges.pricesChanged(batch.getFruitNames());
+            log.info("Imported {} price(s)", size);
+            return size;
+        } catch (RemoteException | RuntimeException e) {
+            importPricesLatency.recordError();
+            throw e;
+        } finally {
+            importPricesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public int deletePrices(String[] fruitNames) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            checkWritable();
+            int[] removed = new int[1];
+            versions.batch(() -> {
+                for (String fruitName : fruitNames) {
+                    if (fruitPriceTable.remove(fruitName)) {
+                        removed[0]++;
+                    }
+                }
+            });
+            if (removed[0] > 0) {
+                awaitDurable();
+                priceChanges.pricesChanged(fruitNames);
+            }
+            log.info("Deleted {} of {} price(s)", removed[0], fruitNames.length);
+            return removed[0];
+        } catch (RemoteException | RuntimeException e) {
+            deletePricesLatency.recordError();
+            throw e;
+        } finally {
+            deletePricesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public int exportPrices(PriceBatchSink sink, int batchSize) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            PriceBatch batch = new PriceBatch(Math.max(1, Math.min(batchSize, PriceBatch.MAX_SIZE)));
+            int[] count = new int[1];
+            RemoteException[] error = new RemoteException[1];
+            fruitPriceTable.forEach((fruitName, priceCents) -> {
+                if (error[0] != null) {
+                    return;
+                }
+                batch.add(fruitName, priceCents);
+                if (batch.isFull()) {
+                    try {
+                        // The batch is serialized during the call, so it can be refilled afterwards
+                        sink.accept(batch);
+                        count[0] += batch.size();
+                        batch.clear();
+                    } catch (RemoteException e) {
+                        error[0] = e;
+                    }
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+            if (batch.size() > 0) {
+                sink.accept(batch);
+                count[0] += batch.size();
+            }
+            log.info("Exported {} price(s)", count[0]);
+            return count[0];
+        } catch (RemoteException | RuntimeException e) {
+            exportPricesLatency.recordError();
+            throw e;
+        } finally {
+            exportPricesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public PricePage listPrices(String afterFruitName, int limit) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            PriceBatch page = new PriceBatch(Math.max(1, Math.min(limit, PriceBatch.MAX_SIZE)));
+            nameIndex.forEachAfter(afterFruitName, page.capacity(), page::add);
+            String nextCursor = page.isFull() ? page.getFruitName(page.size() - 1) : null;
+            return new PricePage(page, nextCursor);
+        } catch (RuntimeException e) {
+            listPricesLatency.recordError();
+            throw e;
+        } finally {
+            listPricesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long getPriceCentsAt(String fruitName, long atMillis) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            return priceHistory.getCentsAt(fruitName, atMillis);
+        } catch (RuntimeException e) {
+            getPriceCentsAtLatency.recordError();
+            throw e;
+        } finally {
+            getPriceCentsAtLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public PriceHistory getPriceHistory(String fruitName, long fromMillis, long toMillis, int limit)
+            throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            int pageSize = Math.max(1, Math.min(limit, PriceBatch.MAX_SIZE));
+            return priceHistory.getHistory(fruitName, fromMillis, toMillis, pageSize);
+        } catch (RuntimeException e) {
+            getPriceHistoryLatency.recordError();
+            throw e;
+        } finally {
+            getPriceHistoryLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public VersionedPrice getVersionedPrice(String fruitName) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            CatalogSnapshot snapshot = versions.snapshot();
+            long priceCents = snapshot.getCents(fruitName, 0);
+            return new VersionedPrice(fruitName, priceCents, priceCents != 0, snapshot.getVersion());
+        } catch (RuntimeException e) {
+            getVersionedPriceLatency.recordError();
+            throw e;
+        } finally {
+            getVersionedPriceLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean addPriceListener(PriceListener listener) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            return priceChanges.addListener(listener);
+        } finally {
+            addPriceListenerLatency.record(System.nanoTime() - start);
         }
-        double totalCost = price * quantity;
-        System.out.println("Calculated cost for " + quantity + " " + fruitName + "(s): Ksh" + totalCost);
-        return totalCost;
+    }
+
+    @Override
+    public long getPriceVersion() throws RemoteException {
+        return versions.currentVersion();
+    }
+
+    @Override
+    public void removePriceListener(PriceListener listener) throws RemoteException {
+        priceChanges.removeListener(listener);
+    }
+
+    // A long poll: not timed, since the wait for the next change would swamp the histograms
+    @Override
+    public PriceChangeBatch pollPriceChanges(long epoch, long afterSequence, int maxChanges, long timeoutMillis)
+            throws RemoteException {
+        try {
+            return changeStream.read(epoch, afterSequence, maxChanges, Math.min(timeoutMillis, MAX_CHANGE_POLL_MILLIS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for price changes");
+        }
+    }
+
+    @Override
+    public ReplicationStatus getReplicationStatus() throws RemoteException {
+        ReplicaFollower replicaFollower = follower;
+        if (replicaFollower != null) {
+            return replicaFollower.status();
+        }
+        return ReplicationStatus.primary(changeStream.getEpoch(), changeStream.getHeadSequence());
+    }
+
+    @Override
+    public String getMetrics() throws RemoteException {
+        return metrics.toPrometheusText();
+    }
+
+    @Override
+    public String generateReceiptCents(String cashierName, long totalCents, long amountGivenCents) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            long changeDueCents = Money.subtract(amountGivenCents, totalCents);
+            journal(Receipt.ofCents(totalCents, amountGivenCents, changeDueCents, cashierName));
+            return ReceiptRenderer.render(ReceiptRenderer.STORE_RECEIPT, cashierName, totalCents, amountGivenCents,
+                    changeDueCents, null);
+        } catch (RemoteException | RuntimeException e) {
+            generateReceiptLatency.recordError();
+            throw e;
+        } finally {
+            generateReceiptLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long recordReceipt(Receipt receipt) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            return journal(receipt);
+        } catch (RemoteException | RuntimeException e) {
+            recordReceiptLatency.recordError();
+            throw e;
+        } finally {
+            recordReceiptLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public ReceiptPage readReceipts(long afterSequence, int limit) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            int capacity = Math.max(1, Math.min(limit, PriceBatch.MAX_SIZE));
+            ReceiptPage page = new ReceiptPage(afterSequence, capacity);
+            if (receipts != null) {
+                receipts.scan(afterSequence, capacity, page::add);
+            }
+            return page;
+        } catch (IOException e) {
+            readReceiptsLatency.recordError();
+            throw new RemoteException("Failed to read receipt journal", e);
+        } catch (RuntimeException e) {
+            readReceiptsLatency.recordError();
+            throw e;
+        } finally {
+            readReceiptsLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Sale sellCart(String cashierName, List<CartLine> cartLines, long amountGivenCents) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            return sell(cashierName, cartLines, amountGivenCents);
+        } catch (RemoteException | RuntimeException e) {
+            sellCartLatency.recordError();
+            throw e;
+        } finally {
+            sellCartLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public CartQuote sellLines(String cashierName, List<CartLine> cartLines) {
+        long start = System.nanoTime();
+        try {
+            CartQuote quote = quote(cartLines);
+            countSales(cashierName, cartLines, quote);
+            return quote;
+        } catch (RuntimeException e) {
+            sellLinesLatency.recordError();
+            throw e;
+        } finally {
+            sellLinesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    // Prices, journals and counts in one go, from this engine's own quote, so the receipts and the
+    // sales aggregates agree and no caller can count a sale at a price of its own. The receipt is
+    // journaled first: if that fails, nothing is counted
+    private Sale sell(String cashierName, List<CartLine> cartLines, long amountGivenCents) throws RemoteException {
+        if (cartLines.isEmpty()) {
+            throw new IllegalStateException("Shopping cart is empty");
+        }
+        CartQuote quote = quote(cartLines);
+        if (!quote.hasPricedItems()) {
+            throw new IllegalStateException("Nothing in the cart is in the catalog");
+        }
+        long totalCents = quote.getTotalCents();
+        Receipt receipt = Receipt.ofCents(totalCents, amountGivenCents, Money.subtract(amountGivenCents, totalCents),
+                cashierName, quote.getCatalogVersion());
+        long receiptNumber = journal(receipt);
+        countSales(cashierName, cartLines, quote);
+        return new Sale(cartLines, quote, receipt, receiptNumber);
+    }
+
+    private void countSales(String cashierName, List<CartLine> cartLines, CartQuote quote) {
+        for (int i = 0; i < quote.size(); i++) {
+            if (!quote.isMissing(i)) {
+                CartLine line = cartLines.get(i);
+                sales.record(line.getFruitName(), cashierName, line.getQuantity(), quote.getLinePriceCents(i));
+            }
+        }
+    }
+
+    @Override
+    public SalesReport getSales(SalesReport.Window window, int limit) {
+        long start = System.nanoTime();
+        try {
+            if (window == null) {
+                throw new IllegalArgumentException("No sales window given");
+            }
+            return sales.report(window, Math.max(0, Math.min(limit, PriceBatch.MAX_SIZE)));
+        } catch (RuntimeException e) {
+            getSalesLatency.recordError();
+            throw e;
+        } finally {
+            getSalesLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public CartView getCart(String sessionId) {
+        long start = System.nanoTime();
+        try {
+            return view(sessionId, carts.lines(sessionId));
+        } catch (RuntimeException e) {
+            getCartLatency.recordError();
+            throw e;
+        } finally {
+            getCartLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public CartView addToCart(String sessionId, String fruitName, int quantity) {
+        long start = System.nanoTime();
+        try {
+            return view(sessionId, carts.add(sessionId, fruitName, quantity));
+        } catch (RuntimeException e) {
+            addToCartLatency.recordError();
+            throw e;
+        } finally {
+            addToCartLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public CartView removeFromCart(String sessionId, String fruitName) {
+        long start = System.nanoTime();
+        try {
+            return view(sessionId, carts.remove(sessionId, fruitName));
+        } catch (RuntimeException e) {
+            removeFromCartLatency.recordError();
+            throw e;
+        } finally {
+            removeFromCartLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public CartView clearCart(String sessionId) {
+        long start = System.nanoTime();
+        try {
+            return view(sessionId, carts.take(sessionId));
+        } catch (RuntimeException e) {
+            clearCartLatency.recordError();
+            throw e;
+        } finally {
+            clearCartLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String checkoutCart(String sessionId, String cashierName, long amountGivenCents) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            // Taken out first, so a cart checked out twice at once is sold only once
+            List<CartLine> cartLines = carts.take(sessionId);
+            try {
+                return CartCheckout.receipt(sell(cashierName, cartLines, amountGivenCents));
+            } catch (RemoteException | RuntimeException e) {
+                restoreCart(sessionId, cartLines);
+                throw e;
+            }
+        } catch (RemoteException | RuntimeException e) {
+            checkoutCartLatency.recordError();
+            throw e;
+        } finally {
+            checkoutCartLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private CartView view(String sessionId, List<CartLine> cartLines) {
+        return new CartView(sessionId, cartLines, quote(cartLines));
+    }
+
+    // Puts back the lines of a checkout that failed, merged with anything added meanwhile
+    private void restoreCart(String sessionId, List<CartLine> cartLines) {
+        try {
+            for (CartLine line : cartLines) {
+                carts.add(sessionId, line.getFruitName(), line.getQuantity());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not restore cart {} after a failed checkout: {}", sessionId, e.getMessage());
+        }
+    }
+
+    // Appends to the receipt journal and waits for its group commit; 0 without a journal
+    private long journal(Receipt receipt) throws RemoteException {
+        if (receipts == null) {
+            return 0;
+        }
+        try {
+            return receipts.append(receipt, System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new RemoteException("Failed to journal receipt", e);
+        }
+    }
+
+    // Double-based adapters; everything below them works in cents
+
+    @Override
+    public ReplicationStatus addFruitPrice(String fruitName, double price) throws RemoteException {
+        return addFruitPriceCents(fruitName, Money.toCents(price));
+    }
+
+    @Override
+    public ReplicationStatus updateFruitPrice(String fruitName, double newPrice) throws RemoteException {
+        return updateFruitPriceCents(fruitName, Money.toCents(newPrice));
+    }
+
+    @Override
+    public double calculateFruitCost(String fruitName, int quantity) throws RemoteException {
+        return Money.toDouble(calculateFruitCostCents(fruitName, quantity));
     }
 
     @Override
     public String generateReceipt(String cashierName, double totalCost, double amountGiven) throws RemoteException {
-        double change = amountGiven - totalCost;
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        String timestamp = sdf.format(new Date());
-        
-        StringBuilder receipt = new StringBuilder();
-        receipt.append("===== FRUIT STORE RECEIPT =====\n");
-        receipt.append("Date: ").append(timestamp).append("\n");
-        receipt.append("Cashier: ").append(cashierName).append("\n");
-        receipt.append("==============================\n");
-        receipt.append("Total Cost: Ksh").append(String.format("%.2f", totalCost)).append("\n");
-        receipt.append("Amount Given: Ksh").append(String.format("%.2f", amountGiven)).append("\n");
-        receipt.append("Change: Ksh").append(String.format("%.2f", change)).append("\n");
-        receipt.append("==============================\n");
-        receipt.append("Thank you for your purchase!\n");
-        
-        return receipt.toString();
+        return generateReceiptCents(cashierName, Money.toCents(totalCost), Money.toCents(amountGiven));
     }
 }
\ No newline at end of file
@@ -1,68 +1,104 @@
 package server;
 
+import java.io.IOException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import model.CartLine;
+import model.CartQuote;
 import model.FruitPrice;
+import model.LineItem;
+import model.Money;
+import model.PricePage;
+import model.Receipt;
+import model.Sale;
+import server.cluster.ShardedCompute;
 import server.interfaces.Compute;
 import server.interfaces.Task;
+import server.util.AsyncLogger;
+import server.util.RMIConnectionHelper;
+import server.util.ReceiptRenderer;
 
 // This class serves as a registry for fruit compute tasks, allowing clients to execute tasks
 // such as adding, updating, deleting fruit prices, calculating costs, and managing a shopping cart
 public class FruitComputeTaskRegistry {
+    private static final AsyncLogger log = AsyncLogger.getLogger(FruitComputeTaskRegistry.class);
 
     private Compute computeEngine;
-    // Add shopping cart to track purchases
+    // Add shopping cart to track purchases. It belongs to this registry's one user (the console client)
+    // and is not thread-safe; carts of many users are kept on the engine (Compute.addToCart)
     private List<CartItem> shoppingCart;
-    private double totalCost;
+    // Kept in cents so a long cart sums exactly
+    private long totalCents;
+    // Opened on the first price lookup, so registries that only run tasks never export a listener.
+    // One per engine, since catalog versions are per shard; null where the cache could not open
+    private final Map<Compute, PriceNearCache> priceCaches = new HashMap<>();
 
     // Inner class to represent items in the shopping cart
-    private static class CartItem {
+    private static class CartItem implements LineItem {
         String fruitName;
         int quantity;
-        double unitPrice;
-        double totalPrice;
+        long unitPriceCents;
+        long totalPriceCents;
 
-        CartItem(String fruitName, int quantity, double unitPrice) {
+        CartItem(String fruitName, int quantity, long unitPriceCents, long totalPriceCents) {
             this.fruitName = fruitName;
             this.quantity = quantity;
-            this.unitPrice = unitPrice;
-            this.totalPrice = unitPrice * quantity;
+            this.unitPriceCents = unitPriceCents;
+            this.totalPriceCents = totalPriceCents;
+        }
+
+        @Override
+        public String getFruitName() {
+            return fruitName;
+        }
+
+        @Override
+        public int getQuantity() {
+            return quantity;
+        }
+
+        @Override
+        public long getUnitPriceCents() {
+            return unitPriceCents;
+        }
+
+        @Override
+        public long getLineTotalCents() {
+            return totalPriceCents;
         }
 
         @Override
         public String toString() {
-            return String.format("%s x %d @ $%.2f = $%.2f", fruitName, quantity, unitPrice, totalPrice);
+            return appendTo(new StringBuilder(64)).toString();
         }
     }
 
     public FruitComputeTaskRegistry() {
         this.shoppingCart = new ArrayList<>();
-        this.totalCost = 0.0;
+        this.totalCents = 0;
         try {
-            Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-            computeEngine = (Compute) registry.lookup("FruitComputeEngine");
+            computeEngine = RMIConnectionHelper.getCompute();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to look up the compute engine: {}", e.getMessage(), e);
         }
     }
 
     public FruitComputeTaskRegistry(Compute computeEngine) {
         this.computeEngine = computeEngine;
         this.shoppingCart = new ArrayList<>();
-        this.totalCost = 0.0;
+        this.totalCents = 0;
     }
 
     public void executeTask(Task task) {
         try {
             computeEngine.executeTask(task);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            log.error("Remote call failed: {}", e.getMessage(), e);
         }
     }
 
@@ -73,32 +109,43 @@ public class FruitComputeTaskRegistry {
             }
             return null;
         } catch (RemoteException e) {
-            e.printStackTrace();
+            log.error("Remote call failed: {}", e.getMessage(), e);
             return null;
         }
     }
 
+    // Journals a receipt on the engine; returns its receipt number, or 0 if it could not be kept
+    public long recordReceipt(Receipt receipt) {
+        try {
+            if (computeEngine != null) {
+                return computeEngine.recordReceipt(receipt);
+            }
+            return 0;
+        } catch (RemoteException e) {
+            log.error("Could not journal receipt: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
     public void addFruitPrice(FruitPrice fruitPrice) {
         try {
             if (computeEngine != null) {
-                computeEngine.addFruitPrice(fruitPrice.getFruitName(), fruitPrice.getPrice());
+                computeEngine.addFruitPriceCents(fruitPrice.getFruitName(), fruitPrice.getPriceCents());
             }
-            System.out.println("Successfully added fruit price: " + fruitPrice.getFruitName() + " - Ksh" + fruitPrice.getPrice());
+            log.info("Successfully added fruit price: {} - Ksh{}", fruitPrice.getFruitName(), fruitPrice.getPrice());
         } catch (RemoteException e) {
-            System.err.println("Error adding fruit price: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error adding fruit price: {}", e.getMessage(), e);
         }
     }
 
     public void updateFruitPrice(FruitPrice fruitPrice) {
         try {
             if (computeEngine != null) {
-                computeEngine.updateFruitPrice(fruitPrice.getFruitName(), fruitPrice.getPrice());
+                computeEngine.updateFruitPriceCents(fruitPrice.getFruitName(), fruitPrice.getPriceCents());
             }
-            System.out.println("Successfully updated fruit price: " + fruitPrice.getFruitName() + " - Ksh" + fruitPrice.getPrice());
+            log.info("Successfully updated fruit price: {} - Ksh{}", fruitPrice.getFruitName(), fruitPrice.getPrice());
         } catch (RemoteException e) {
-            System.err.println("Error updating fruit price: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error updating fruit price: {}", e.getMessage(), e);
         }
     }
 
@@ -107,37 +154,71 @@ public class FruitComputeTaskRegistry {
             if (computeEngine != null) {
                 computeEngine.deleteFruitPrice(fruitName);
             }
-            System.out.println("Successfully deleted fruit price for: " + fruitName);
+            log.info("Successfully deleted fruit price for: {}", fruitName);
         } catch (RemoteException e) {
-            System.err.println("Error deleting fruit price: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error deleting fruit price: {}", e.getMessage(), e);
         }
     }
 
     public void calculateFruitCost(String fruitName, int quantity) {
         try {
-            double itemCost = 0.0;
-            double unitPrice = 0.0;
+            long itemCents = 0;
+            long unitPriceCents = 0;
             if (computeEngine != null) {
-                itemCost = computeEngine.calculateFruitCost(fruitName, quantity);
-                // Calculate unit price for cart
-                unitPrice = itemCost / quantity;
+                PriceNearCache cache = priceCache(fruitName);
+                if (cache != null) {
+                    unitPriceCents = cache.getPriceCents(fruitName);
+                    itemCents = Money.multiply(unitPriceCents, quantity);
+                } else {
+                    itemCents = computeEngine.calculateFruitCostCents(fruitName, quantity);
+                    // Calculate unit price for cart; exact, since the engine multiplied it by quantity
+                    unitPriceCents = itemCents / quantity;
+                }
             }
             
-            if (itemCost > 0) {
+            if (itemCents > 0) {
                 // Add item to shopping cart
-                CartItem item = new CartItem(fruitName, quantity, unitPrice);
+                CartItem item = new CartItem(fruitName, quantity, unitPriceCents, itemCents);
                 shoppingCart.add(item);
-                totalCost += itemCost;
+                totalCents = Money.add(totalCents, itemCents);
                 
-                System.out.println("Added to cart: " + item);
-                System.out.println("Cart total: Ksh" + String.format("%.2f", totalCost));
+                log.info("Added to cart: {}, cart total: Ksh{}", item, Money.ofCents(totalCents));
             } else {
-                System.out.println("Could not add item to cart - fruit not found or price is 0");
+                log.info("Could not add {} to cart - fruit not found or price is 0", fruitName);
+            }
+        } catch (RemoteException e) {
+            log.error("Error calculating fruit cost: {}", e.getMessage(), e);
+        }
+    }
+
+    // Prices a whole basket with one remote call and adds every found line to the cart
+    public void calculateCartCost(List<CartLine> cartLines) {
+        if (cartLines.isEmpty()) {
+            System.out.println("No items to add to cart.");
+            return;
+        }
+        try {
+            if (computeEngine == null) {
+                log.warn("Could not add {} items to cart - not connected to server", cartLines.size());
+                return;
+            }
+            CartQuote quote = computeEngine.priceCart(cartLines);
+            for (int i = 0; i < quote.size(); i++) {
+                CartLine line = cartLines.get(i);
+                if (quote.isMissing(i)) {
+                    log.info("Could not add {} to cart - fruit not found or price is 0", line.getFruitName());
+                    continue;
+                }
+                long itemCents = quote.getLinePriceCents(i);
+                long unitPriceCents = line.getQuantity() == 0 ? 0 : itemCents / line.getQuantity();
+                CartItem item = new CartItem(line.getFruitName(), line.getQuantity(), unitPriceCents, itemCents);
+                shoppingCart.add(item);
+                totalCents = Money.add(totalCents, itemCents);
+                log.info("Added to cart: {}", item);
             }
+            log.info("Cart total: Ksh{}", Money.ofCents(totalCents));
         } catch (RemoteException e) {
-            System.err.println("Error calculating fruit cost: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error calculating cart cost: {}", e.getMessage(), e);
         }
     }
 
@@ -146,35 +227,67 @@ public class FruitComputeTaskRegistry {
             System.out.println("Shopping cart is empty! Add items before printing receipt.");
             return;
         }
-        
-        // Add detailed receipt with cart items
-        StringBuilder detailedReceipt = new StringBuilder();
-        detailedReceipt.append("===== FRUIT STORE RECEIPT =====\n");
-        detailedReceipt.append("Cashier: ").append(cashierName).append("\n");
-        detailedReceipt.append("==============================\n");
-        detailedReceipt.append("ITEMS PURCHASED:\n");
-        
-        for (CartItem item : shoppingCart) {
-            detailedReceipt.append(item.toString()).append("\n");
+        if (computeEngine == null) {
+            log.warn("Could not print receipt for {} - not connected to server", cashierName);
+            return;
         }
-        
-        detailedReceipt.append("==============================\n");
-        detailedReceipt.append("Total Cost: Ksh").append(String.format("%.2f", this.totalCost)).append("\n");
-        detailedReceipt.append("Amount Given: Ksh").append(String.format("%.2f", amountGiven)).append("\n");
-        detailedReceipt.append("Change: Ksh").append(String.format("%.2f", amountGiven - this.totalCost)).append("\n");
-        detailedReceipt.append("==============================\n");
-        detailedReceipt.append("Thank you for your purchase!\n");
-        
+        // Lines are priced one by one as they are scanned, so a price change in between could leave the
+        // cart mixing old and new prices. The sale is priced again by the engine, from a single catalog
+        // version, which journals the receipt and counts the sale at those prices
+        Sale sale;
+        try {
+            sale = computeEngine.sellCart(cashierName, cartLines(), Money.toCents(amountGiven));
+        } catch (IllegalStateException e) {
+            System.out.println("Nothing in the cart is in the catalog any more.");
+            shoppingCart.clear();
+            totalCents = 0;
+            return;
+        } catch (RemoteException e) {
+            log.error("Could not sell cart, keeping it: {}", e.getMessage(), e);
+            return;
+        }
+        logRepricedLines(sale.getQuote());
+
         System.out.println("Receipt printed successfully!");
-        System.out.println(detailedReceipt.toString());
+        try {
+            // Rendered straight into the console stream, no intermediate String
+            Receipt receipt = sale.getReceipt();
+            ReceiptRenderer.render(System.out, ReceiptRenderer.CART_RECEIPT, cashierName, receipt.getTotalCents(),
+                    receipt.getAmountGivenCents(), receipt.getChangeDueCents(), receipt.getCatalogVersion(),
+                    sale.getItems());
+            System.out.println();
+        } catch (IOException e) {
+            log.error("Failed to print receipt: {}", e.getMessage(), e);
+        }
         
         // Clear the shopping cart after printing receipt
         clearCart();
     }
-    
+
+    private List<CartLine> cartLines() {
+        List<CartLine> cartLines = new ArrayList<>(shoppingCart.size());
+        for (CartItem item : shoppingCart) {
+            cartLines.add(new CartLine(item.fruitName, item.quantity));
+        }
+        return cartLines;
+    }
+
+    // Names the lines the sale priced differently from when they were scanned
+    private void logRepricedLines(CartQuote quote) {
+        for (int i = 0; i < quote.size(); i++) {
+            CartItem item = shoppingCart.get(i);
+            if (quote.isMissing(i)) {
+                log.info("Left {} off the receipt - no longer in the catalog", item.fruitName);
+            } else if (quote.getLinePriceCents(i) != item.totalPriceCents) {
+                log.info("Repriced at catalog v{}: {} is now Ksh{}", quote.getCatalogVersion(), item,
+                        Money.ofCents(quote.getLinePriceCents(i)));
+            }
+        }
+    }
+
     public void clearCart() {
         shoppingCart.clear();
-        totalCost = 0.0;
+        totalCents = 0;
         System.out.println("Shopping cart cleared.");
     }
     
@@ -189,12 +302,44 @@ public class FruitComputeTaskRegistry {
             System.out.println(item.toString());
         }
         System.out.println("=========================");
-        System.out.println("Total: Ksh" + String.format("%.2f", totalCost));
+        System.out.println(Money.appendMoney(new StringBuilder("Total: Ksh"), totalCents));
     }
 
+    // Unregisters the price listeners so the engines stop calling back into this process
+    public void close() {
+        for (PriceNearCache priceCache : priceCaches.values()) {
+            if (priceCache != null) {
+                priceCache.close();
+            }
+        }
+        priceCaches.clear();
+    }
+
+    private PriceNearCache priceCache(String fruitName) {
+        Compute owner = computeEngine instanceof ShardedCompute
+                ? ((ShardedCompute) computeEngine).shardFor(fruitName) : computeEngine;
+        if (!priceCaches.containsKey(owner)) {
+            priceCaches.put(owner, PriceNearCache.open(owner));
+        }
+        return priceCaches.get(owner);
+    }
+
+    // The whole catalog in fruit-name order, prices in Ksh; fetched a page at a time with listPrices.
+    // For large catalogs page through listPrices (or GET /prices) instead of holding it all
     public Map<String, Object> getFruitPrices() {
-        Map<String, Object> fruitPrices = new HashMap<>();
-        // Logic to retrieve fruit prices from the fruitComputeEngine can be added here
+        Map<String, Object> fruitPrices = new LinkedHashMap<>();
+        try {
+            String cursor = null;
+            do {
+                PricePage page = computeEngine.listPrices(cursor, 1000);
+                for (int i = 0; i < page.size(); i++) {
+                    fruitPrices.put(page.getFruitName(i), Money.toDouble(page.getPriceCents(i)));
+                }
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+        } catch (RemoteException e) {
+            log.error("Remote call failed: {}", e.getMessage(), e);
+        }
         return fruitPrices;
     }
 }
\ No newline at end of file
@@ -1,29 +1,50 @@
 package server;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.URLDecoder;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
+import model.CartLine;
+import model.CartQuote;
+import model.Money;
+import model.Receipt;
+import model.Sale;
+import server.cluster.ClientSession;
+import server.http.HttpRequest;
+import server.http.HttpResponse;
+import server.http.NioHttpServer;
+import server.http.PriceListing;
+import server.http.SalesSummary;
 import server.interfaces.Compute;
+import server.metrics.LatencyHistogram;
+import server.metrics.MetricsRegistry;
+import server.util.RMIConnectionHelper;
+import server.util.ReceiptRenderer;
+import server.util.ServerExecutors;
 
-// FruitRestBridge is a simple HTTP server that acts as a bridge between a RESTful API and an RMI-based compute engine.
+// FruitRestBridge is a small non-blocking HTTP server that acts as a bridge between a RESTful API and an RMI-based compute engine.
 // It listens for HTTP requests, processes them, and forwards the necessary actions to the RMI compute engine.
 // It supports CORS for web interface compatibility and handles various fruit-related operations
 public class FruitRestBridge {
     private static final int PORT = 8081;
-    private static Compute computeEngine;
+    static Compute computeEngine;
+    private static final MetricsRegistry metrics = new MetricsRegistry();
+    private static final LatencyHistogram apiLatency = metrics.histogram("fruit_http_request_duration_seconds",
+            "Time spent handling HTTP requests", "handler", "rest /api");
+    private static final LatencyHistogram pricesLatency = metrics.histogram("fruit_http_request_duration_seconds",
+            "Time spent handling HTTP requests", "handler", "rest /prices");
+    private static final LatencyHistogram salesLatency = metrics.histogram("fruit_http_request_duration_seconds",
+            "Time spent handling HTTP requests", "handler", "rest /sales");
 
     public static void main(String[] args) throws Exception {
         // Initialize RMI connection
         try {
-            Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-            computeEngine = (Compute) registry.lookup("FruitComputeEngine");
+            computeEngine = RMIConnectionHelper.getCompute();
             System.out.println("Connected to RMI server successfully!");
         } catch (Exception e) {
             System.err.println("Failed to connect to RMI server. Make sure the RMI server is running.");
@@ -31,73 +52,101 @@ public class FruitRestBridge {
             return;
         }
 
-        // Create simple HTTP server
-        ServerSocket serverSocket = new ServerSocket(PORT);
+        // Start the non-blocking HTTP front end; blocking engine calls run on the worker pool
+        ExecutorService workers = ServerExecutors.newRequestExecutor("rest-bridge");
+        NioHttpServer server = new NioHttpServer(PORT, FruitRestBridge::handleRequest, workers);
+        server.start();
         System.out.println("========================================");
         System.out.println("Fruit REST Bridge started on port " + PORT);
         System.out.println("CORS enabled for web interface");
+        System.out.println("Keep-alive enabled, handlers run on " + ServerExecutors.describe());
         System.out.println("========================================");
-
-        while (true) {
-            Socket clientSocket = serverSocket.accept();
-            new Thread(() -> handleRequest(clientSocket)).start();
-        }
     }
 
-    private static void handleRequest(Socket clientSocket) {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-             PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
-
-            // Read HTTP request
-            String requestLine = in.readLine();
-            if (requestLine == null) return;
+    private static HttpResponse handleRequest(HttpRequest request) {
+        if ("/metrics".equals(request.getPath())) {
+            return HttpResponse.text(200, "OK", metrics.toPrometheusText());
+        }
+        String path = request.getPath();
+        int query = path.indexOf('?');
+        if ("/prices".equals(query < 0 ? path : path.substring(0, query))) {
+            return listPrices(request.getMethod(), query < 0 ? null : path.substring(query + 1));
+        }
+        if ("/sales".equals(query < 0 ? path : path.substring(0, query))) {
+            return sales(request.getMethod(), query < 0 ? null : path.substring(query + 1));
+        }
 
-            String[] requestParts = requestLine.split(" ");
-            String method = requestParts[0];
-            String path = requestParts[1];
+        long start = System.nanoTime();
+        String response;
+        try {
+            response = processRequest(request.getMethod(), request.getPath(), request.getBodyAsString());
+        } catch (RuntimeException e) {
+            apiLatency.recordError();
+            throw e;
+        } finally {
+            apiLatency.record(System.nanoTime() - start);
+        }
 
-            // Read headers
-            String line;
-            int contentLength = 0;
-            while ((line = in.readLine()) != null && !line.isEmpty()) {
-                if (line.startsWith("Content-Length:")) {
-                    contentLength = Integer.parseInt(line.substring(16).trim());
-                }
-            }
+        // Send HTTP response with CORS headers
+        return HttpResponse.text(200, "OK", response)
+                .header("Access-Control-Allow-Origin", "*")
+                .header("Access-Control-Allow-Methods", "GET, POST, OPTIONS")
+                .header("Access-Control-Allow-Headers", "Content-Type");
+    }
 
-            // Read POST body if present
-            String body = "";
-            if ("POST".equals(method) && contentLength > 0) {
-                char[] buffer = new char[contentLength];
-                in.read(buffer, 0, contentLength);
-                body = new String(buffer);
+    // Streams the catalog as JSON (see PriceListing); the latency covers the whole body
+    private static HttpResponse listPrices(String method, String query) {
+        if (!"GET".equals(method)) {
+            return HttpResponse.text(405, "Method Not Allowed", "Error: Use GET for /prices");
+        }
+        long start = System.nanoTime();
+        PriceListing listing;
+        try {
+            listing = PriceListing.open(computeEngine, query);
+        } catch (IllegalArgumentException e) {
+            pricesLatency.record(System.nanoTime() - start);
+            return HttpResponse.text(400, "Bad Request", "Error: " + e.getMessage());
+        } catch (RemoteException e) {
+            pricesLatency.recordError();
+            pricesLatency.record(System.nanoTime() - start);
+            return HttpResponse.text(503, "Service Unavailable", "Error: " + e.getMessage());
+        }
+        return HttpResponse.streamed(200, "OK", "application/json; charset=UTF-8", out -> {
+            try {
+                listing.writeTo(out);
+            } catch (IOException | RuntimeException e) {
+                pricesLatency.recordError();
+                throw e;
+            } finally {
+                pricesLatency.record(System.nanoTime() - start);
             }
+        }).header("Access-Control-Allow-Origin", "*");
+    }
 
-            // Process request
-            String response = processRequest(method, path, body);
-
-            // Send HTTP response with CORS headers
-            out.println("HTTP/1.1 200 OK");
-            out.println("Content-Type: text/plain; charset=UTF-8");
-            out.println("Access-Control-Allow-Origin: *");
-            out.println("Access-Control-Allow-Methods: GET, POST, OPTIONS");
-            out.println("Access-Control-Allow-Headers: Content-Type");
-            out.println("Content-Length: " + response.getBytes("UTF-8").length);
-            out.println();
-            out.print(response);
-
-        } catch (Exception e) {
-            System.err.println("Error handling request: " + e.getMessage());
+    // Sales by fruit and cashier as JSON (see SalesSummary)
+    private static HttpResponse sales(String method, String query) {
+        if (!"GET".equals(method)) {
+            return HttpResponse.text(405, "Method Not Allowed", "Error: Use GET for /sales");
+        }
+        long start = System.nanoTime();
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+            SalesSummary.open(computeEngine, query).writeTo(body);
+            return new HttpResponse(200, "OK", body.toByteArray())
+                    .header("Content-Type", "application/json; charset=UTF-8")
+                    .header("Access-Control-Allow-Origin", "*");
+        } catch (IllegalArgumentException e) {
+            return HttpResponse.text(400, "Bad Request", "Error: " + e.getMessage());
+        } catch (IOException e) {
+            salesLatency.recordError();
+            return HttpResponse.text(503, "Service Unavailable", "Error: " + e.getMessage());
         } finally {
-            try {
-                clientSocket.close();
-            } catch (IOException e) {
-                // Ignore
-            }
+            salesLatency.record(System.nanoTime() - start);
         }
     }
 
-    private static String processRequest(String method, String path, String body) {
+    // Package-private so the JMH benchmarks can drive request parsing directly
+    static String processRequest(String method, String path, String body) {
         try {
             if ("OPTIONS".equals(method)) {
                 return ""; // Handle CORS preflight
@@ -115,6 +164,12 @@ public class FruitRestBridge {
             String quantity = null;
             String amountGiven = null;
             String cashier = null;
+            // Names a cart kept on the engine; the caller makes it up and sends it with every cart action.
+            // With replicas it also scopes read-your-writes, so send it with writes and the reads after them
+            String session = null;
+            // Multi-line carts repeat the fruitName/quantity pair once per line
+            List<String> fruitNames = new ArrayList<>();
+            List<String> quantities = new ArrayList<>();
 
             for (String param : params) {
                 String[] keyValue = param.split("=", 2);
@@ -124,11 +179,12 @@ public class FruitRestBridge {
                     
                     switch (key) {
                         case "action": action = value; break;
-                        case "fruitName": fruitName = value; break;
+                        case "fruitName": fruitName = value; fruitNames.add(value); break;
                         case "price": price = value; break;
-                        case "quantity": quantity = value; break;
+                        case "quantity": quantity = value; quantities.add(value); break;
                         case "amountGiven": amountGiven = value; break;
                         case "cashier": cashier = value; break;
+                        case "session": session = value; break;
                     }
                 }
             }
@@ -137,6 +193,7 @@ public class FruitRestBridge {
                 return "Error: No action specified";
             }
 
+            ClientSession.set(session);
             switch (action) {
                 case "addFruit":
                     if (fruitName == null || price == null) {
@@ -166,17 +223,83 @@ public class FruitRestBridge {
                         return "Error: Missing required parameters";
                     }
                     int quantityVal = Integer.parseInt(quantity);
-                    double amountGivenVal = Double.parseDouble(amountGiven);
+                    long amountGivenCents = Money.parseCents(amountGiven);
                     
-                    // Calculate cost directly using the engine
-                    double totalCost = computeEngine.calculateFruitCost(fruitName, quantityVal);
-                    if (totalCost <= 0) {
+                    // Sold as a one-line cart: the engine prices, journals and counts it in one call
+                    Sale itemSale;
+                    try {
+                        itemSale = computeEngine.sellCart(cashier,
+                                Collections.singletonList(new CartLine(fruitName, quantityVal)), amountGivenCents);
+                    } catch (IllegalStateException e) {
                         return "Error: Fruit not found or invalid price";
                     }
-                    
-                    // Generate receipt directly using the engine
-                    String receiptText = computeEngine.generateReceipt(cashier, totalCost, amountGivenVal);
-                    return receiptText;
+                    return appendReceipt(appendCatalogVersion(new StringBuilder(), itemSale.getQuote()), itemSale)
+                            .toString();
+
+                case "calculateCartCost":
+                    if (fruitNames.isEmpty() || amountGiven == null || cashier == null) {
+                        return "Error: Missing required parameters";
+                    }
+                    if (fruitNames.size() != quantities.size()) {
+                        return "Error: Each fruit name needs a quantity";
+                    }
+                    List<CartLine> cartLines = new ArrayList<>(fruitNames.size());
+                    for (int i = 0; i < fruitNames.size(); i++) {
+                        cartLines.add(new CartLine(fruitNames.get(i), Integer.parseInt(quantities.get(i))));
+                    }
+                    long cartAmountGivenCents = Money.parseCents(amountGiven);
+
+                    // Sell the whole cart in a single call to the engine
+                    Sale sale;
+                    try {
+                        sale = computeEngine.sellCart(cashier, cartLines, cartAmountGivenCents);
+                    } catch (IllegalStateException e) {
+                        return "Error: Fruit not found or invalid price";
+                    }
+
+                    CartQuote quote = sale.getQuote();
+                    StringBuilder cartReceipt = appendCatalogVersion(new StringBuilder(), quote);
+                    for (int i = 0; i < quote.size(); i++) {
+                        CartLine line = cartLines.get(i);
+                        if (quote.isMissing(i)) {
+                            cartReceipt.append("Not found: ").append(line.getFruitName()).append("\n");
+                        } else {
+                            cartReceipt.append(line).append(" = Ksh");
+                            Money.appendMoney(cartReceipt, quote.getLinePriceCents(i)).append("\n");
+                        }
+                    }
+                    return appendReceipt(cartReceipt, sale).toString();
+
+                case "addToCart":
+                    if (session == null || fruitName == null || quantity == null) {
+                        return "Error: Missing required parameters";
+                    }
+                    return computeEngine.addToCart(session, fruitName, Integer.parseInt(quantity)).toString();
+
+                case "removeFromCart":
+                    if (session == null || fruitName == null) {
+                        return "Error: Missing required parameters";
+                    }
+                    return computeEngine.removeFromCart(session, fruitName).toString();
+
+                case "viewCart":
+                    if (session == null) {
+                        return "Error: Missing session";
+                    }
+                    return computeEngine.getCart(session).toString();
+
+                case "clearCart":
+                    if (session == null) {
+                        return "Error: Missing session";
+                    }
+                    computeEngine.clearCart(session);
+                    return "Shopping cart cleared.";
+
+                case "checkoutCart":
+                    if (session == null || amountGiven == null || cashier == null) {
+                        return "Error: Missing required parameters";
+                    }
+                    return computeEngine.checkoutCart(session, cashier, Money.parseCents(amountGiven));
 
                 default:
                     return "Error: Unknown action: " + action;
@@ -186,6 +309,26 @@ public class FruitRestBridge {
             return "Error: Invalid number format";
         } catch (Exception e) {
             return "Error: " + e.getMessage();
+        } finally {
+            ClientSession.clear();
+        }
+    }
+
+    // The store receipt for a sale, as generateReceiptCents renders it
+    private static StringBuilder appendReceipt(StringBuilder text, Sale sale) {
+        Receipt receipt = sale.getReceipt();
+        return text.append(ReceiptRenderer.render(ReceiptRenderer.STORE_RECEIPT, receipt.getCashier(),
+                receipt.getTotalCents(), receipt.getAmountGivenCents(), receipt.getChangeDueCents(), null));
+    }
+
+    // Names the catalog version the quote was priced at, above the receipt
+    private static StringBuilder appendCatalogVersion(StringBuilder receipt, CartQuote quote) {
+        receipt.append("Catalog version: ");
+        if (quote.getCatalogVersion() >= 0) {
+            receipt.append(quote.getCatalogVersion());
+        } else {
+            receipt.append("n/a");
         }
+        return receipt.append("\n");
     }
 }
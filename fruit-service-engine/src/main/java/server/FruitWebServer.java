@@ -1,41 +1,57 @@
 package server;
 
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.nio.file.Files;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
+import java.nio.file.Paths;
+import java.rmi.RemoteException;
+import java.security.SecureRandom;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
 import model.FruitPrice;
+import model.Money;
+import server.cluster.ClientSession;
+import server.http.PriceListing;
+import server.http.SalesSummary;
+import server.http.StaticAssetCache;
+import server.interfaces.Compute;
+import server.metrics.LatencyHistogram;
+import server.metrics.MetricsRegistry;
 import server.tasks.AddFruitPrice;
 import server.tasks.CalculateCost;
 import server.tasks.DeleteFruitPrice;
 import server.tasks.UpdateFruitPrice;
+import server.util.RMIConnectionHelper;
+import server.util.ServerExecutors;
 
 // This class implements a simple HTTP server that serves a web interface for managing fruit prices
 // and calculating costs. It connects to a remote RMI compute engine to perform operations
 public class FruitWebServer {
     private static final int PORT = 8080;
-    private static FruitComputeEngine computeEngine;
+    private static Compute computeEngine;
+    // Runs tasks and journals receipts only; carts are kept per browser on the engine (see CartHandler)
     private static FruitComputeTaskRegistry taskRegistry;
+    private static StaticAssetCache assetCache;
+    // Latency of each handler in this process; /metrics adds the engine's own metrics
+    private static final MetricsRegistry metrics = new MetricsRegistry();
+    private static final String CART_COOKIE = "FRUIT_CART";
+    private static final SecureRandom sessionIds = new SecureRandom();
 
     public static void main(String[] args) throws Exception {
         // Initialize RMI connection
         try {
-            Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-            computeEngine = (FruitComputeEngine) registry.lookup("FruitComputeEngine");
-            taskRegistry = new FruitComputeTaskRegistry();
+            computeEngine = RMIConnectionHelper.getCompute();
+            taskRegistry = new FruitComputeTaskRegistry(computeEngine);
             System.out.println("Connected to RMI server successfully!");
         } catch (Exception e) {
             System.err.println("Failed to connect to RMI server. Make sure the RMI server is running.");
@@ -43,22 +59,31 @@ public class FruitWebServer {
             return;
         }
 
+        // Static files are loaded once and kept in memory until they change on disk
+        assetCache = new StaticAssetCache(Paths.get("src/webapp"));
+
         // Create HTTP server
         HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
         
         // Add handlers
-        server.createContext("/", new StaticFileHandler());
-        server.createContext("/addFruit", new AddFruitHandler());
-        server.createContext("/updateFruit", new UpdateFruitHandler());
-        server.createContext("/deleteFruit", new DeleteFruitHandler());
-        server.createContext("/calculateCost", new CalculateCostHandler());
+        server.createContext("/", timed("/", new StaticFileHandler()));
+        server.createContext("/addFruit", timed("/addFruit", new AddFruitHandler()));
+        server.createContext("/updateFruit", timed("/updateFruit", new UpdateFruitHandler()));
+        server.createContext("/deleteFruit", timed("/deleteFruit", new DeleteFruitHandler()));
+        server.createContext("/calculateCost", timed("/calculateCost", new CalculateCostHandler()));
+        server.createContext("/prices", timed("/prices", new PricesHandler()));
+        server.createContext("/sales", timed("/sales", new SalesHandler()));
+        server.createContext("/cart", timed("/cart", new CartHandler()));
+        server.createContext("/metrics", new MetricsHandler());
         
-        server.setExecutor(null);
+        // Handlers make blocking RMI calls, so keep them off the single dispatcher thread
+        server.setExecutor(ServerExecutors.newRequestExecutor("web-server"));
         server.start();
         
         System.out.println("========================================");
         System.out.println("Fruit Web Server started successfully!");
         System.out.println("Web Interface: http://localhost:" + PORT);
+        System.out.println("Handlers run on " + ServerExecutors.describe());
         System.out.println("========================================");
         System.out.println("Available endpoints:");
         System.out.println("  GET  /              - Web Interface");
@@ -66,9 +91,118 @@ public class FruitWebServer {
         System.out.println("  POST /updateFruit   - Update fruit price");
         System.out.println("  POST /deleteFruit   - Delete fruit");
         System.out.println("  POST /calculateCost - Calculate cost");
+        System.out.println("  GET  /prices        - Price list (JSON, paged with ?limit=&after=)");
+        System.out.println("  GET  /sales         - Sales by fruit and cashier (JSON, ?window=minute|hour|day|total)");
+        System.out.println("  GET  /cart          - This browser's cart; POST action=add|remove|clear|checkout");
+        System.out.println("  GET  /metrics       - Latency metrics (Prometheus)");
         System.out.println("========================================");
     }
 
+    private static HttpHandler timed(String context, HttpHandler handler) {
+        return new TimedHandler(metrics.histogram("fruit_http_request_duration_seconds",
+                "Time spent handling HTTP requests", "handler", "web " + context), handler);
+    }
+
+    // Records the latency of every request a handler serves. The browser's cookie names its session,
+    // so with replicas its reads wait for its own writes; a write gives a new browser the cookie
+    static class TimedHandler implements HttpHandler {
+        private final LatencyHistogram latency;
+        private final HttpHandler delegate;
+
+        TimedHandler(LatencyHistogram latency, HttpHandler delegate) {
+            this.latency = latency;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            ClientSession.set("POST".equals(exchange.getRequestMethod()) ? cartSession(exchange) : sessionCookie(exchange));
+            try {
+                delegate.handle(exchange);
+            } catch (IOException | RuntimeException e) {
+                latency.recordError();
+                throw e;
+            } finally {
+                ClientSession.clear();
+                latency.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    // Serves this server's handler metrics followed by the engine's, in Prometheus text format
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            StringBuilder text = new StringBuilder(metrics.toPrometheusText());
+            try {
+                text.append(computeEngine.getMetrics());
+            } catch (Exception e) {
+                text.append("# engine metrics unavailable: ").append(e.getMessage()).append('\n');
+            }
+            byte[] body = text.toString().getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(body);
+            os.close();
+        }
+    }
+
+    // Streams the catalog as JSON in chunked transfer encoding (see PriceListing)
+    static class PricesHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+
+            PriceListing listing;
+            try {
+                listing = PriceListing.open(computeEngine, exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, "Error: " + e.getMessage());
+                return;
+            } catch (RemoteException e) {
+                sendError(exchange, 503, "Error: " + e.getMessage());
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            // A length of 0 makes the server use chunked encoding
+            exchange.sendResponseHeaders(200, 0);
+            listing.writeTo(exchange.getResponseBody());
+        }
+    }
+
+    static class SalesHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+
+            SalesSummary summary;
+            try {
+                summary = SalesSummary.open(computeEngine, exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, "Error: " + e.getMessage());
+                return;
+            } catch (RemoteException e) {
+                sendError(exchange, 503, "Error: " + e.getMessage());
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            exchange.sendResponseHeaders(200, 0);
+            summary.writeTo(exchange.getResponseBody());
+        }
+    }
+
     static class StaticFileHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -78,18 +212,38 @@ public class FruitWebServer {
             }
             
             try {
-                // Try to read the file from webapp directory
-                String filePath = "src/webapp" + path;
-                File file = new File(filePath);
+                // Serve the file from the in-memory asset cache
+                StaticAssetCache.Asset asset = assetCache.get(path);
                 
-                if (file.exists() && file.isFile()) {
-                    String contentType = getContentType(path);
-                    exchange.getResponseHeaders().set("Content-Type", contentType);
+                if (asset != null) {
+                    Headers headers = exchange.getResponseHeaders();
+                    headers.set("ETag", asset.getEtag());
+                    headers.set("Last-Modified", asset.getLastModified());
+                    headers.set("Cache-Control", "no-cache");
+                    headers.set("Vary", "Accept-Encoding");
+
+                    Headers requestHeaders = exchange.getRequestHeaders();
+                    if (asset.isNotModified(requestHeaders.getFirst("If-None-Match"),
+                            requestHeaders.getFirst("If-Modified-Since"))) {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+
+                    byte[] content = asset.getContent();
+                    String acceptEncoding = requestHeaders.getFirst("Accept-Encoding");
+                    if (asset.getGzippedContent() != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                        content = asset.getGzippedContent();
+                        headers.set("Content-Encoding", "gzip");
+                    }
+                    headers.set("Content-Type", asset.getContentType());
                     
-                    byte[] content = Files.readAllBytes(file.toPath());
-                    exchange.sendResponseHeaders(200, content.length);
+                    boolean head = "HEAD".equals(exchange.getRequestMethod());
+                    exchange.sendResponseHeaders(200, head ? -1 : content.length);
                     OutputStream os = exchange.getResponseBody();
-                    os.write(content);
+                    if (!head) {
+                        os.write(content);
+                    }
                     os.close();
                 } else {
                     // File not found
@@ -107,14 +261,6 @@ public class FruitWebServer {
                 os.close();
             }
         }
-        
-        private String getContentType(String path) {
-            if (path.endsWith(".html")) return "text/html";
-            if (path.endsWith(".css")) return "text/css";
-            if (path.endsWith(".js")) return "application/javascript";
-            if (path.endsWith(".json")) return "application/json";
-            return "text/plain";
-        }
     }
 
     static class AddFruitHandler implements HttpHandler {
@@ -253,6 +399,95 @@ public class FruitWebServer {
         }
     }
 
+    // GET shows the browser's cart. POST changes it: action=add (fruitName, quantity), remove (fruitName),
+    // clear, or checkout (cashier, amountGiven), which answers with the receipt. The cart is kept on the
+    // engine under the browser's FRUIT_CART cookie, so every browser has its own
+    static class CartHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"POST".equals(method)) {
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+
+            try {
+                String sessionId = cartSession(exchange);
+                if ("GET".equals(method)) {
+                    sendResponse(exchange, computeEngine.getCart(sessionId).toString());
+                    return;
+                }
+                Map<String, String> params = parseFormData(exchange);
+                String action = params.get("action");
+                String fruitName = params.get("fruitName");
+                String quantityStr = params.get("quantity");
+                String amountGivenStr = params.get("amountGiven");
+                String cashier = params.get("cashier");
+
+                if ("add".equals(action) && fruitName != null && quantityStr != null) {
+                    int quantity = Integer.parseInt(quantityStr);
+                    sendResponse(exchange, computeEngine.addToCart(sessionId, fruitName, quantity).toString());
+                } else if ("remove".equals(action) && fruitName != null) {
+                    sendResponse(exchange, computeEngine.removeFromCart(sessionId, fruitName).toString());
+                } else if ("clear".equals(action)) {
+                    computeEngine.clearCart(sessionId);
+                    sendResponse(exchange, "Shopping cart cleared.");
+                } else if ("checkout".equals(action) && amountGivenStr != null && cashier != null) {
+                    long amountGivenCents = Money.parseCents(amountGivenStr);
+                    sendResponse(exchange, computeEngine.checkoutCart(sessionId, cashier, amountGivenCents));
+                } else {
+                    sendResponse(exchange, "Error: Missing parameters");
+                }
+
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, "Error: Invalid number format");
+            } catch (Exception e) {
+                sendResponse(exchange, "Error: " + e.getMessage());
+            }
+        }
+    }
+
+    // The browser's cart session from its cookie, or a new random one set on the response
+    // The browser's session id, or null if it has no cookie yet
+    private static String sessionCookie(HttpExchange exchange) {
+        Object assigned = exchange.getAttribute(CART_COOKIE);
+        if (assigned != null) {
+            return (String) assigned;
+        }
+        List<String> cookieHeaders = exchange.getRequestHeaders().get("Cookie");
+        if (cookieHeaders != null) {
+            for (String header : cookieHeaders) {
+                for (String cookie : header.split(";")) {
+                    String[] nameValue = cookie.trim().split("=", 2);
+                    if (nameValue.length == 2 && CART_COOKIE.equals(nameValue[0])
+                            && nameValue[1].matches("[0-9a-f]{32}")) {
+                        return nameValue[1];
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // As sessionCookie, but sets a new cookie if there is none; kept on the exchange so it is set once
+    private static String cartSession(HttpExchange exchange) {
+        String existing = sessionCookie(exchange);
+        if (existing != null) {
+            return existing;
+        }
+        byte[] random = new byte[16];
+        sessionIds.nextBytes(random);
+        StringBuilder sessionId = new StringBuilder(32);
+        for (byte b : random) {
+            sessionId.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        exchange.getResponseHeaders().add("Set-Cookie",
+                CART_COOKIE + "=" + sessionId + "; Path=/; HttpOnly; SameSite=Lax");
+        exchange.setAttribute(CART_COOKIE, sessionId.toString());
+        return sessionId.toString();
+    }
+
     private static Map<String, String> parseFormData(HttpExchange exchange) throws IOException {
         Map<String, String> params = new HashMap<>();
         
@@ -277,6 +512,15 @@ public class FruitWebServer {
         return params;
     }
 
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(body);
+        os.close();
+    }
+
     private static void sendResponse(HttpExchange exchange, String response) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
         exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
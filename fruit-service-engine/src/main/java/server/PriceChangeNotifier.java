@@ -0,0 +1,102 @@
+package server;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import server.interfaces.PriceListener;
+import server.util.AsyncLogger;
+import server.util.ServerExecutors;
+
+// This class tells registered PriceListeners about every change, tagged with the catalog version
+// (see server.store.VersionedCatalog) that includes it. priceChanged() returns only once every listener has acknowledged the invalidation, so when a
+// mutating call returns no near cache can still serve the old price. A listener that fails or
+// does not answer within ACK_TIMEOUT_MILLIS is dropped; its client flushes its cache when the
+// next heartbeat finds it has to register again
+class PriceChangeNotifier {
+    private static final AsyncLogger log = AsyncLogger.getLogger(PriceChangeNotifier.class);
+    private static final long ACK_TIMEOUT_MILLIS = Long.getLong("fruit.nearCache.ackTimeoutMillis", 2000);
+
+    // Read after the change is published, so a change is never tagged with a version older than itself
+    private final LongSupplier catalogVersion;
+    private final CopyOnWriteArraySet<PriceListener> listeners = new CopyOnWriteArraySet<>();
+    private final ExecutorService notifier = ServerExecutors.newBoundedExecutor("price-notify", 8, 1024);
+
+    PriceChangeNotifier(LongSupplier catalogVersion) {
+        this.catalogVersion = catalogVersion;
+    }
+
+    // Returns false if the listener was already registered (RMI stubs compare by remote object identity)
+    boolean addListener(PriceListener listener) {
+        if (!listeners.add(listener)) {
+            return false;
+        }
+        log.info("Price listener registered ({} total)", listeners.size());
+        return true;
+    }
+
+    void removeListener(PriceListener listener) {
+        listeners.remove(listener);
+    }
+
+    // The remote call that delivers one invalidation to one listener
+    private interface Delivery {
+        void deliver(PriceListener listener, long changeVersion) throws RemoteException;
+    }
+
+    // Called after a change is committed; waits for every listener's ack
+    void priceChanged(String fruitName) {
+        notifyListeners((listener, changeVersion) -> listener.priceChanged(fruitName, changeVersion));
+    }
+
+    // Same as priceChanged, for a bulk-imported chunk: one call per listener
+    void pricesChanged(String[] fruitNames) {
+        notifyListeners((listener, changeVersion) -> listener.pricesChanged(fruitNames, changeVersion));
+    }
+
+    private void notifyListeners(Delivery delivery) {
+        long changeVersion = catalogVersion.getAsLong();
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        List<PriceListener> targets = new ArrayList<>(listeners);
+        List<Future<?>> acks = new ArrayList<>(targets.size());
+        for (PriceListener listener : targets) {
+            try {
+                acks.add(notifier.submit(() -> {
+                    delivery.deliver(listener, changeVersion);
+                    return null;
+                }));
+            } catch (RejectedExecutionException e) {
+                acks.add(null);
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACK_TIMEOUT_MILLIS);
+        for (int i = 0; i < targets.size(); i++) {
+            Future<?> ack = acks.get(i);
+            try {
+                if (ack == null) {
+                    throw new RejectedExecutionException("notifier queue full");
+                }
+                ack.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (ack != null) {
+                    ack.cancel(true);
+                }
+                listeners.remove(targets.get(i));
+                log.warn("Dropped price listener that did not acknowledge v{}: {}", changeVersion, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package server;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import model.VersionedPrice;
+import server.interfaces.Compute;
+import server.interfaces.PriceListener;
+import server.util.AsyncLogger;
+
+// Client-side near cache of fruit prices, used by FruitComputeTaskRegistry.
+// Lookups are served from a bounded LRU map. The cache exports itself as a PriceListener, so the
+// engine removes an entry (and waits for the acknowledgement) before a price change returns.
+// Each fill carries the catalog version it was read at and is dropped if an invalidation newer
+// than that has already arrived, which closes the race between a lookup and a concurrent change.
+// A heartbeat re-registers the listener; if the engine had dropped it, everything is flushed.
+//
+// Tuning: -Dfruit.nearCache.size (default 1024 entries, 0 disables the cache) and
+// -Dfruit.nearCache.heartbeatSeconds (default 5)
+class PriceNearCache implements PriceListener {
+    private static final AsyncLogger log = AsyncLogger.getLogger(PriceNearCache.class);
+    static final int CAPACITY = Integer.getInteger("fruit.nearCache.size", 1024);
+    private static final long HEARTBEAT_SECONDS = Long.getLong("fruit.nearCache.heartbeatSeconds", 5);
+
+    private final Compute computeEngine;
+    // Guarded by itself, together with invalidatedVersion
+    private final Map<String, VersionedPrice> entries = new LinkedHashMap<String, VersionedPrice>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VersionedPrice> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+    // Highest catalog version this cache must not serve anything older than
+    private long invalidatedVersion;
+    private ScheduledExecutorService heartbeat;
+    private PriceListener stub;
+    // False while the engine cannot be reached; lookups then go straight to the engine
+    private volatile boolean registered;
+
+    private PriceNearCache(Compute computeEngine) {
+        this.computeEngine = computeEngine;
+    }
+
+    // Exports the listener and registers it with the engine; returns null if callbacks cannot be set up,
+    // in which case the caller keeps making remote lookups
+    static PriceNearCache open(Compute computeEngine) {
+        if (CAPACITY <= 0 || computeEngine == null) {
+            return null;
+        }
+        PriceNearCache cache = new PriceNearCache(computeEngine);
+        try {
+            cache.stub = (PriceListener) UnicastRemoteObject.exportObject(cache, 0);
+        } catch (RemoteException e) {
+            log.warn("Price near cache disabled, cannot export listener: {}", e.getMessage());
+            return null;
+        }
+        cache.renewRegistration();
+        cache.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "price-cache-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cache.heartbeat.scheduleWithFixedDelay(cache::renewRegistration, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        return cache;
+    }
+
+    // Returns the unit price in cents, or 0 if the fruit is not in the catalog (as calculateFruitCostCents does)
+    long getPriceCents(String fruitName) throws RemoteException {
+        if (registered) {
+            VersionedPrice cached;
+            synchronized (entries) {
+                cached = entries.get(fruitName);
+            }
+            if (cached != null) {
+                return cached.isFound() ? cached.getPriceCents() : 0;
+            }
+        }
+
+        VersionedPrice fetched = computeEngine.getVersionedPrice(fruitName);
+        if (registered) {
+            synchronized (entries) {
+                if (fetched.getVersion() >= invalidatedVersion) {
+                    entries.put(fruitName, fetched);
+                }
+            }
+        }
+        return fetched.isFound() ? fetched.getPriceCents() : 0;
+    }
+
+    @Override
+    public void priceChanged(String fruitName, long version) {
+        synchronized (entries) {
+            invalidatedVersion = Math.max(invalidatedVersion, version);
+            entries.remove(fruitName);
+        }
+    }
+
+    @Override
+    public void pricesChanged(String[] fruitNames, long version) {
+        synchronized (entries) {
+            invalidatedVersion = Math.max(invalidatedVersion, version);
+            for (String fruitName : fruitNames) {
+                entries.remove(fruitName);
+            }
+        }
+    }
+
+    void close() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+        registered = false;
+        try {
+            computeEngine.removePriceListener(stub);
+        } catch (RemoteException e) {
+            // Engine gone; it drops the listener on the next failed notification
+        }
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException e) {
+            // Already unexported
+        }
+    }
+
+    private void renewRegistration() {
+        try {
+            boolean newlyRegistered = computeEngine.addPriceListener(stub);
+            if (newlyRegistered) {
+                // Changes made while unregistered were never delivered, so nothing cached can be trusted.
+                // The version is taken as-is because a restarted engine counts from zero again
+                long version = computeEngine.getPriceVersion();
+                synchronized (entries) {
+                    entries.clear();
+                    invalidatedVersion = version;
+                }
+            }
+            registered = true;
+        } catch (RemoteException e) {
+            registered = false;
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+    }
+}
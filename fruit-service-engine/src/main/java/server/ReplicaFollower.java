@@ -0,0 +1,174 @@
+package server;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.PriceBatch;
+import model.PriceChangeBatch;
+import model.ReplicationStatus;
+import server.interfaces.Compute;
+import server.interfaces.PriceBatchSink;
+import server.store.FruitPriceTable;
+import server.store.VersionedCatalog;
+import server.util.AsyncLogger;
+import server.util.RMIConnectionHelper;
+
+// Keeps a replica engine's table in step with its primary.
+// One thread long-polls the primary's change stream and applies each batch in order. When the
+// primary cannot continue the stream (it restarted, or this replica fell behind its backlog) the
+// replica reloads the whole catalog with exportPrices and carries on from where the stream stood
+// before the export; replaying those later changes over the export converges on the primary's state.
+//
+// Tuning: -Dfruit.replica.pollMillis (default 200, the longest a poll waits for a change),
+// -Dfruit.replica.batchSize (default 4096 changes per poll)
+class ReplicaFollower {
+    private static final AsyncLogger log = AsyncLogger.getLogger(ReplicaFollower.class);
+    private static final long POLL_MILLIS = Long.getLong("fruit.replica.pollMillis", 200);
+    private static final int BATCH_SIZE = Integer.getInteger("fruit.replica.batchSize", 4096);
+    private static final long RETRY_MILLIS = 1000;
+
+    private final String primaryAddress;
+    private final FruitPriceTable table;
+    private final VersionedCatalog versions;
+    private final PriceChangeNotifier priceChanges;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long epoch;
+    private volatile long appliedSequence;
+    // When a poll last found nothing newer on the primary; 0 until then and during a reload
+    private volatile long caughtUpAtMillis;
+
+    ReplicaFollower(String primaryAddress, FruitPriceTable table, VersionedCatalog versions,
+                    PriceChangeNotifier priceChanges) {
+        this.primaryAddress = primaryAddress;
+        this.table = table;
+        this.versions = versions;
+        this.priceChanges = priceChanges;
+        thread = new Thread(this::follow, "replica-follower");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void close() {
+        running = false;
+        thread.interrupt();
+    }
+
+    String getPrimaryAddress() {
+        return primaryAddress;
+    }
+
+    ReplicationStatus status() {
+        long caughtUpAt = caughtUpAtMillis;
+        long staleness = caughtUpAt == 0 ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - caughtUpAt);
+        return ReplicationStatus.replica(primaryAddress, epoch, appliedSequence, staleness);
+    }
+
+    private void follow() {
+        Compute primary = null;
+        boolean connected = false;
+        boolean warned = false;
+        while (running) {
+            try {
+                if (primary == null) {
+                    primary = RMIConnectionHelper.lookupEngine(primaryAddress);
+                }
+                long requestedAt = System.currentTimeMillis();
+                PriceChangeBatch batch = primary.pollPriceChanges(epoch, appliedSequence, BATCH_SIZE, POLL_MILLIS);
+                if (!connected) {
+                    connected = true;
+                    warned = false;
+                    log.info("Following primary {}", primaryAddress);
+                }
+                if (batch.isResyncRequired()) {
+                    reload(primary, batch);
+                    continue;
+                }
+                apply(batch);
+                if (batch.getLastSequence() >= batch.getHeadSequence()) {
+                    caughtUpAtMillis = requestedAt;
+                }
+            } catch (RemoteException | NotBoundException | RuntimeException e) {
+                primary = null;
+                connected = false;
+                if (!warned) {
+                    warned = true;
+                    log.warn("Cannot reach primary {}, retrying every {} ms: {}", primaryAddress, RETRY_MILLIS, e.toString());
+                }
+                sleepQuietly(RETRY_MILLIS);
+            }
+        }
+    }
+
+    private void apply(PriceChangeBatch batch) {
+        if (batch.size() == 0) {
+            return;
+        }
+        String[] changed = new String[batch.size()];
+        // Each batch from the primary becomes one catalog version here
+        versions.batch(() -> {
+            for (int i = 0; i < batch.size(); i++) {
+                changed[i] = batch.getFruitName(i);
+                if (batch.isDelete(i)) {
+                    table.remove(changed[i]);
+                } else {
+                    table.put(changed[i], batch.getPriceCents(i));
+                }
+            }
+        });
+        appliedSequence = batch.getLastSequence();
+        // Near caches registered directly on this replica
+        priceChanges.pricesChanged(changed);
+    }
+
+    // Replaces the table with a fresh export and resumes the stream from the point it was cut
+    private void reload(Compute primary, PriceChangeBatch resync) throws RemoteException {
+        caughtUpAtMillis = 0;
+        long start = System.nanoTime();
+        List<String> stale = new ArrayList<>(table.size());
+        table.forEach((fruitName, cents) -> stale.add(fruitName));
+        // One batch around the wipe and the whole export. Its chunks arrive on RMI threads, so the
+        // batch is lent to them, and readers go straight from the old catalog to the reloaded one
+        // and never see it half loaded
+        int loaded;
+        try (VersionedCatalog.Batch reloading = versions.openBatch()) {
+            reloading.run(() -> {
+                for (String fruitName : stale) {
+                    table.remove(fruitName);
+                }
+            });
+            PriceBatchSink sink = chunk -> reloading.run(() -> load(chunk));
+            PriceBatchSink stub = (PriceBatchSink) UnicastRemoteObject.exportObject(sink, 0);
+            try {
+                loaded = primary.exportPrices(stub, BATCH_SIZE);
+            } finally {
+                UnicastRemoteObject.unexportObject(sink, true);
+            }
+        }
+        epoch = resync.getEpoch();
+        appliedSequence = resync.getHeadSequence();
+        priceChanges.pricesChanged(stale.toArray(new String[0]));
+        log.info("Reloaded {} price(s) from primary {} in {} ms", loaded, primaryAddress,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void load(PriceBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            table.put(batch.getFruitName(i), batch.getPriceCents(i));
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
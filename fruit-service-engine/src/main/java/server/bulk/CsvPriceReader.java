@@ -0,0 +1,101 @@
+package server.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import model.Money;
+import model.PriceBatch;
+
+// Reads "fruitName,price" rows one line at a time, e.g. "apple,12.50".
+// Names may be double-quoted (with "" for a quote) to contain commas; extra columns are ignored,
+// blank lines are skipped, and a first row whose price is not a number is taken as a header
+public class CsvPriceReader implements PriceReader {
+    private final BufferedReader in;
+    private final StringBuilder quotedName = new StringBuilder();
+    private long lineNumber;
+    private boolean sawRow;
+
+    public CsvPriceReader(Reader in) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 64 * 1024);
+    }
+
+    @Override
+    public int read(PriceBatch batch) throws IOException {
+        int added = 0;
+        String line;
+        while (!batch.isFull() && (line = in.readLine()) != null) {
+            lineNumber++;
+            if (isBlank(line)) {
+                continue;
+            }
+            boolean firstRow = !sawRow;
+            sawRow = true;
+
+            String fruitName;
+            int nameEnd;
+            if (line.charAt(0) == '"') {
+                nameEnd = readQuotedName(line);
+                fruitName = nameEnd < 0 ? null : quotedName.toString();
+            } else {
+                nameEnd = line.indexOf(',');
+                fruitName = nameEnd < 0 ? null : line.substring(0, nameEnd).trim();
+            }
+            if (fruitName == null || fruitName.isEmpty()) {
+                throw new IOException("Line " + lineNumber + ": expected fruitName,price but got: " + line);
+            }
+
+            int priceEnd = line.indexOf(',', nameEnd + 1);
+            if (priceEnd < 0) {
+                priceEnd = line.length();
+            }
+            long priceCents;
+            try {
+                priceCents = Money.parseCents(line, nameEnd + 1, priceEnd);
+            } catch (NumberFormatException e) {
+                if (firstRow) {
+                    continue; // header
+                }
+                throw new IOException("Line " + lineNumber + ": invalid price '" + line.substring(nameEnd + 1, priceEnd) + "'");
+            }
+            batch.add(fruitName, priceCents);
+            added++;
+        }
+        return added;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Unquotes the leading name into quotedName; returns the index of the comma after it, or -1
+    private int readQuotedName(String line) {
+        quotedName.setLength(0);
+        int i = 1;
+        while (i < line.length()) {
+            char c = line.charAt(i++);
+            if (c != '"') {
+                quotedName.append(c);
+            } else if (i < line.length() && line.charAt(i) == '"') {
+                quotedName.append('"');
+                i++;
+            } else {
+                while (i < line.length() && line.charAt(i) == ' ') {
+                    i++;
+                }
+                return i < line.length() && line.charAt(i) == ',' ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,64 @@
+package server.bulk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import model.Money;
+import model.PriceBatch;
+
+// Writes a "fruitName,price" header and one row per entry, in the format CsvPriceReader reads
+public class CsvPriceWriter implements PriceWriter {
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(64);
+    private char[] chars = new char[64];
+
+    public CsvPriceWriter(Writer out) throws IOException {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 64 * 1024);
+        this.out.write("fruitName,price\n");
+    }
+
+    @Override
+    public void write(PriceBatch batch) throws IOException {
+        for (int i = 0; i < batch.size(); i++) {
+            line.setLength(0);
+            appendName(batch.getFruitName(i));
+            line.append(',');
+            Money.appendMoney(line, batch.getPriceCents(i)).append('\n');
+
+            int length = line.length();
+            if (chars.length < length) {
+                chars = new char[length * 2];
+            }
+            line.getChars(0, length, chars, 0);
+            out.write(chars, 0, length);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void appendName(String fruitName) {
+        boolean quote = fruitName.isEmpty() || fruitName.charAt(0) == ' '
+                || fruitName.charAt(fruitName.length() - 1) == ' ';
+        for (int i = 0; i < fruitName.length() && !quote; i++) {
+            char c = fruitName.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(fruitName);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < fruitName.length(); i++) {
+            char c = fruitName.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+}
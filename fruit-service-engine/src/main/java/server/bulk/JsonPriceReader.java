@@ -0,0 +1,75 @@
+package server.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import model.Money;
+import model.PriceBatch;
+
+// Reads a JSON array of {"fruitName": "apple", "price": 12.5} objects with Jackson's streaming
+// parser, one object at a time. The price may also be a string; other fields are skipped
+public class JsonPriceReader implements PriceReader {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final JsonParser parser;
+    private boolean started;
+    private boolean finished;
+
+    public JsonPriceReader(InputStream in) throws IOException {
+        this.parser = JSON.createParser(in);
+    }
+
+    @Override
+    public int read(PriceBatch batch) throws IOException {
+        if (!started) {
+            started = true;
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of {\"fruitName\": ..., \"price\": ...} objects");
+            }
+        }
+        int added = 0;
+        while (!finished && !batch.isFull()) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY || token == null) {
+                finished = true;
+                break;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a price object at " + parser.getTokenLocation());
+            }
+
+            String fruitName = null;
+            String price = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("fruitName".equals(field) && value == JsonToken.VALUE_STRING) {
+                    fruitName = parser.getText();
+                } else if ("price".equals(field) && (value.isNumeric() || value == JsonToken.VALUE_STRING)) {
+                    price = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (fruitName == null || fruitName.isEmpty() || price == null) {
+                throw new IOException("Entry needs fruitName and price, at " + parser.getTokenLocation());
+            }
+            try {
+                batch.add(fruitName, Money.parseCents(price));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid price '" + price + "' for " + fruitName + " at " + parser.getTokenLocation());
+            }
+            added++;
+        }
+        return added;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
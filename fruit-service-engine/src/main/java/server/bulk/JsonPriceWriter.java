@@ -0,0 +1,46 @@
+package server.bulk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import model.Money;
+import model.PriceBatch;
+
+// Writes a JSON array of {"fruitName": ..., "price": ...} objects, in the format JsonPriceReader reads.
+// Prices are written as exact two-decimal numbers straight from cents
+public class JsonPriceWriter implements PriceWriter {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final JsonGenerator generator;
+    private final StringBuilder number = new StringBuilder(24);
+    private final char[] digits = new char[24];
+
+    public JsonPriceWriter(OutputStream out) throws IOException {
+        this.generator = JSON.createGenerator(out, JsonEncoding.UTF8);
+        generator.writeStartArray();
+    }
+
+    @Override
+    public void write(PriceBatch batch) throws IOException {
+        for (int i = 0; i < batch.size(); i++) {
+            generator.writeStartObject();
+            generator.writeStringField("fruitName", batch.getFruitName(i));
+            generator.writeFieldName("price");
+            number.setLength(0);
+            Money.appendMoney(number, batch.getPriceCents(i));
+            number.getChars(0, number.length(), digits, 0);
+            generator.writeNumber(digits, 0, number.length());
+            generator.writeEndObject();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.writeEndArray();
+        generator.close();
+    }
+}
@@ -0,0 +1,176 @@
+package server.bulk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.PriceBatch;
+import server.interfaces.Compute;
+import server.interfaces.PriceBatchSink;
+import server.util.RMIConnectionHelper;
+
+// Client side of bulk import and export: streams a CSV or JSON price file to or from the engine.
+// An import parses the next chunk while the engine is still applying the previous one, so parsing,
+// the network and the engine's group commit overlap. Chunks are applied as they arrive, so a bad
+// row stops the import but keeps everything before it.
+//
+// Usage: java server.bulk.PriceBulkTransfer import|export <file.csv|file.json> [host[:port]]
+// (with -Dfruit.shards set, the file is spread across or gathered from every shard)
+// Tuning: -Dfruit.bulk.batchSize (default 4096 rows per remote call)
+public final class PriceBulkTransfer {
+    public static final int BATCH_SIZE = Integer.getInteger("fruit.bulk.batchSize", 4096);
+
+    private PriceBulkTransfer() {
+    }
+
+    // Chooses the format from the file extension: .json, anything else is CSV
+    public static PriceReader openReader(Path file) throws IOException {
+        if (isJson(file)) {
+            return new JsonPriceReader(Files.newInputStream(file));
+        }
+        return new CsvPriceReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+    }
+
+    public static PriceWriter openWriter(Path file) throws IOException {
+        if (isJson(file)) {
+            return new JsonPriceWriter(Files.newOutputStream(file));
+        }
+        return new CsvPriceWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+    }
+
+    public static long importFile(Compute engine, Path file) throws IOException {
+        try (PriceReader reader = openReader(file)) {
+            return importPrices(engine, reader);
+        }
+    }
+
+    public static long exportFile(Compute engine, Path file) throws IOException {
+        try (PriceWriter writer = openWriter(file)) {
+            return exportPrices(engine, writer);
+        }
+    }
+
+    // Returns the number of rows the engine applied
+    public static long importPrices(Compute engine, PriceReader reader) throws IOException {
+        ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "price-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Two batches: one being filled here while the other is on its way to the engine
+            PriceBatch filling = new PriceBatch(BATCH_SIZE);
+            PriceBatch spare = new PriceBatch(BATCH_SIZE);
+            Future<Integer> inFlight = null;
+            long imported = 0;
+            while (reader.read(filling) > 0) {
+                if (inFlight != null) {
+                    imported += await(inFlight);
+                }
+                PriceBatch sending = filling;
+                inFlight = sender.submit(() -> engine.importPrices(sending));
+                filling = spare;
+                filling.clear();
+                spare = sending;
+            }
+            if (inFlight != null) {
+                imported += await(inFlight);
+            }
+            return imported;
+        } finally {
+            sender.shutdownNow();
+        }
+    }
+
+    // Exports a sink for the engine to push chunks into; returns the number of rows written
+    public static long exportPrices(Compute engine, PriceWriter writer) throws IOException {
+        WriterSink sink = new WriterSink(writer);
+        PriceBatchSink stub = (PriceBatchSink) UnicastRemoteObject.exportObject(sink, 0);
+        try {
+            return engine.exportPrices(stub, BATCH_SIZE);
+        } catch (RemoteException e) {
+            if (sink.failure != null) {
+                throw sink.failure;
+            }
+            throw e;
+        } finally {
+            UnicastRemoteObject.unexportObject(sink, true);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || !("import".equals(args[0]) || "export".equals(args[0]))) {
+            System.err.println("Usage: java server.bulk.PriceBulkTransfer import|export <file.csv|file.json> [host[:port]]");
+            System.exit(2);
+        }
+        String host = "localhost";
+        int port = 1099;
+        if (args.length > 2) {
+            int colon = args[2].lastIndexOf(':');
+            host = colon < 0 ? args[2] : args[2].substring(0, colon);
+            if (colon >= 0) {
+                port = Integer.parseInt(args[2].substring(colon + 1));
+            }
+        }
+
+        Compute engine = RMIConnectionHelper.getCompute(host, port);
+        Path file = Paths.get(args[1]);
+        boolean importing = "import".equals(args[0]);
+        long start = System.nanoTime();
+        long rows = importing ? importFile(engine, file) : exportFile(engine, file);
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.println((importing ? "Imported " : "Exported ") + rows + " price(s) in " + millis + " ms ("
+                + rows * 1000 / millis + " rows/s)");
+        // Exported RMI objects keep their threads alive
+        System.exit(0);
+    }
+
+    private static int await(Future<Integer> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during price import");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Price import failed", cause);
+        }
+    }
+
+    private static boolean isJson(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".json");
+    }
+
+    // Receives the engine's export chunks and writes them out in order
+    private static final class WriterSink implements PriceBatchSink {
+        private final PriceWriter writer;
+        private volatile IOException failure;
+
+        WriterSink(PriceWriter writer) {
+            this.writer = writer;
+        }
+
+        // Synchronized: the shards of a cluster export in parallel
+        @Override
+        public synchronized void accept(PriceBatch batch) throws RemoteException {
+            try {
+                writer.write(batch);
+            } catch (IOException e) {
+                failure = e;
+                throw new RemoteException("Export destination failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package server.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import model.PriceBatch;
+
+// Source of catalog rows for a bulk import; rows are parsed on demand, never all at once
+public interface PriceReader extends Closeable {
+    // Appends rows until the batch is full or the input ends; returns the number added, 0 at the end
+    int read(PriceBatch batch) throws IOException;
+}
@@ -0,0 +1,11 @@
+package server.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import model.PriceBatch;
+
+// Destination of catalog rows for a bulk export; close() completes the document
+public interface PriceWriter extends Closeable {
+    void write(PriceBatch batch) throws IOException;
+}
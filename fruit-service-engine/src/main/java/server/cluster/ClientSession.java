@@ -0,0 +1,24 @@
+package server.cluster;
+
+// Names the client session a front-end thread is serving, so ReplicatedCompute can keep
+// read-your-writes per session instead of per router. Set around each request by the front end;
+// calls made with none set (console, bulk tool, background work) share one position.
+public final class ClientSession {
+    private static final ThreadLocal<String> current = new ThreadLocal<>();
+
+    private ClientSession() {
+    }
+
+    public static void set(String sessionId) {
+        current.set(sessionId);
+    }
+
+    public static void clear() {
+        current.remove();
+    }
+
+    // null when the thread is not serving a session
+    public static String current() {
+        return current.get();
+    }
+}
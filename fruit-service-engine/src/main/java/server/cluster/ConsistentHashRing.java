@@ -0,0 +1,77 @@
+package server.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Consistent-hash ring that assigns fruit names to shards.
+// Each shard is placed on the ring at VIRTUAL_NODES points derived from its id (host:port), and a
+// key belongs to the first point at or after its own hash. Because the points depend only on the
+// shard ids, adding a shard moves only the keys that now land on the new shard's points (about
+// 1/N of them), and every process given the same shard list routes every key the same way.
+//
+// Tuning: -Dfruit.shards.virtualNodes (default 160 points per shard)
+public final class ConsistentHashRing {
+    private static final int VIRTUAL_NODES = Integer.getInteger("fruit.shards.virtualNodes", 160);
+
+    private final List<String> shardIds;
+    // Sorted ring positions and the index (into shardIds) of the shard at each one
+    private final long[] points;
+    private final int[] owners;
+
+    public ConsistentHashRing(List<String> shardIds) {
+        if (shardIds.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one shard");
+        }
+        this.shardIds = new ArrayList<>(shardIds);
+
+        long[][] entries = new long[shardIds.size() * VIRTUAL_NODES][];
+        int next = 0;
+        for (int shard = 0; shard < shardIds.size(); shard++) {
+            for (int replica = 0; replica < VIRTUAL_NODES; replica++) {
+                entries[next++] = new long[] {hash(shardIds.get(shard) + "#" + replica), shard};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[entries.length];
+        owners = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = entries[i][0];
+            owners[i] = (int) entries[i][1];
+        }
+    }
+
+    public List<String> getShardIds() {
+        return shardIds;
+    }
+
+    public int size() {
+        return shardIds.size();
+    }
+
+    // Index into getShardIds() of the shard that owns the key
+    public int shardFor(String key) {
+        int slot = Arrays.binarySearch(points, hash(key));
+        if (slot < 0) {
+            slot = -slot - 1;
+            if (slot == points.length) {
+                slot = 0; // wrap around
+            }
+        }
+        return owners[slot];
+    }
+
+    // 64-bit FNV-1a over the UTF-16 chars with a murmur3 finalizer; the same in every JVM
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,60 @@
+package server.cluster;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Merges the Prometheus text of several engines into one exposition.
+// Every sample gets a label naming its engine, and the samples of each metric stay grouped under a
+// single HELP/TYPE header, as the text format requires
+final class MergedMetrics {
+    private MergedMetrics() {
+    }
+
+    static String merge(String labelName, List<String> engines, List<String> texts) {
+        Map<String, StringBuilder> families = new LinkedHashMap<>();
+        Set<String> comments = new HashSet<>();
+        for (int engine = 0; engine < texts.size(); engine++) {
+            String text = texts.get(engine);
+            if (text == null) {
+                continue;
+            }
+            String label = labelName + "=\"" + engines.get(engine) + "\"";
+            StringBuilder family = null;
+            for (String line : text.split("\n")) {
+                if (line.startsWith("# ")) {
+                    String[] parts = line.split(" ", 4);
+                    family = families.computeIfAbsent(parts.length > 2 ? parts[2] : "", name -> new StringBuilder());
+                    if (comments.add(line)) {
+                        family.append(line).append('\n');
+                    }
+                } else if (!line.isEmpty()) {
+                    if (family == null) {
+                        family = families.computeIfAbsent("", name -> new StringBuilder());
+                    }
+                    family.append(addLabel(line, label)).append('\n');
+                }
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        for (StringBuilder family : families.values()) {
+            out.append(family);
+        }
+        return out.toString();
+    }
+
+    private static String addLabel(String sample, String label) {
+        int brace = sample.indexOf('{');
+        int space = sample.indexOf(' ');
+        if (brace >= 0 && (space < 0 || brace < space)) {
+            boolean empty = sample.charAt(brace + 1) == '}';
+            return sample.substring(0, brace + 1) + label + (empty ? "" : ",") + sample.substring(brace + 1);
+        }
+        if (space < 0) {
+            return sample;
+        }
+        return sample.substring(0, space) + "{" + label + "}" + sample.substring(space);
+    }
+}
@@ -0,0 +1,470 @@
+package server.cluster;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.CartLine;
+import model.CartQuote;
+import model.CartView;
+import model.Money;
+import model.PriceBatch;
+import model.PriceChangeBatch;
+import model.PriceHistory;
+import model.PricePage;
+import model.Receipt;
+import model.ReceiptPage;
+import model.ReplicationStatus;
+import model.Sale;
+import model.SalesReport;
+import model.TaskResult;
+import model.TaskTicket;
+import model.VersionedPrice;
+import server.interfaces.Compute;
+import server.interfaces.PriceBatchSink;
+import server.interfaces.PriceListener;
+import server.interfaces.Task;
+import server.interfaces.TaskCallback;
+import server.util.AsyncLogger;
+import server.util.RMIConnectionHelper;
+
+// Client-side router over a primary engine and its read replicas.
+// Price lookups, listings and cart pricing go round-robin to a replica that is fresh enough;
+// everything else (writes, receipts, session carts, sales, price history, tasks, near-cache
+// listeners, bulk transfer) goes to the primary, which alone journals and keeps that state. A replica is used
+// only if it was caught up with the primary within MAX_STALENESS_MILLIS and has applied every
+// change the calling session made (read-your-writes); otherwise the read goes to the primary.
+// Each write returns the primary's position once applied, which is kept per ClientSession until a
+// replica fresh enough to be used would have it anyway.
+// Replica positions are refreshed in the background every STATUS_INTERVAL_MILLIS, and the age of
+// that refresh counts against the staleness bound.
+//
+// Tuning: -Dfruit.replicas.maxStalenessMillis (default 1000),
+// -Dfruit.replicas.statusIntervalMillis (default 100)
+public class ReplicatedCompute implements Compute {
+    private static final AsyncLogger log = AsyncLogger.getLogger(ReplicatedCompute.class);
+    private static final long MAX_STALENESS_MILLIS = Long.getLong("fruit.replicas.maxStalenessMillis", 1000);
+    private static final long STATUS_INTERVAL_MILLIS = Long.getLong("fruit.replicas.statusIntervalMillis", 100);
+
+    private final Compute primary;
+    private final List<String> replicaAddresses;
+    private final Replica[] replicas;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ScheduledExecutorService statusPoller;
+    // Primary's position after each session's latest write; calls outside a session share NO_SESSION
+    private final Map<String, SessionWrite> sessionWrites = new ConcurrentHashMap<>();
+    private static final String NO_SESSION = "";
+
+    // What this router last heard from one replica
+    private static final class Replica {
+        final String address;
+        volatile Compute engine;
+        volatile ReplicationStatus status;
+        volatile long statusAtMillis;
+
+        Replica(String address, Compute engine) {
+            this.address = address;
+            this.engine = engine;
+        }
+    }
+
+    private static final class SessionWrite {
+        final ReplicationStatus position;
+        final long atMillis;
+
+        SessionWrite(ReplicationStatus position, long atMillis) {
+            this.position = position;
+            this.atMillis = atMillis;
+        }
+    }
+
+    public ReplicatedCompute(Compute primary, List<String> replicaAddresses, List<Compute> replicaEngines) {
+        this.primary = primary;
+        this.replicaAddresses = new ArrayList<>(replicaAddresses);
+        this.replicas = new Replica[replicaAddresses.size()];
+        for (int i = 0; i < replicas.length; i++) {
+            replicas[i] = new Replica(replicaAddresses.get(i), replicaEngines.get(i));
+        }
+        statusPoller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-status");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refreshStatus();
+        statusPoller.scheduleWithFixedDelay(this::refreshStatus, STATUS_INTERVAL_MILLIS, STATUS_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Replicas that cannot be reached yet are retried in the background
+    public static ReplicatedCompute connect(Compute primary, List<String> replicaAddresses) {
+        List<Compute> engines = new ArrayList<>();
+        for (String address : replicaAddresses) {
+            engines.add(lookupQuietly(address));
+        }
+        return new ReplicatedCompute(primary, replicaAddresses, engines);
+    }
+
+    public Compute getPrimary() {
+        return primary;
+    }
+
+    public List<String> getReplicaAddresses() {
+        return replicaAddresses;
+    }
+
+    // Stops the status refresh; the engines themselves are left running
+    public void close() {
+        statusPoller.shutdownNow();
+    }
+
+    // Tasks may change prices, so they run on the primary and count as writes once finished.
+    // They and the bulk writes return something else, so the primary is asked for its position
+    @Override
+    public <T> T executeTask(Task<T> task) throws RemoteException {
+        T result = primary.executeTask(task);
+        recordPrimaryPosition();
+        return result;
+    }
+
+    @Override
+    public <T> TaskTicket<T> submitTask(Task<T> task, TaskCallback callback) throws RemoteException {
+        return primary.submitTask(task, callback);
+    }
+
+    @Override
+    public <T> TaskResult<T> pollTask(TaskTicket<T> ticket) throws RemoteException {
+        TaskResult<T> result = primary.pollTask(ticket);
+        if (result.isDone()) {
+            recordPrimaryPosition();
+        }
+        return result;
+    }
+
+    @Override
+    public <T> TaskResult<T> awaitTask(TaskTicket<T> ticket, long timeoutMillis) throws RemoteException {
+        TaskResult<T> result = primary.awaitTask(ticket, timeoutMillis);
+        if (result.isDone()) {
+            recordPrimaryPosition();
+        }
+        return result;
+    }
+
+    @Override
+    public ReplicationStatus addFruitPriceCents(String fruitName, long priceCents) throws RemoteException {
+        return recordWrite(primary.addFruitPriceCents(fruitName, priceCents));
+    }
+
+    @Override
+    public ReplicationStatus updateFruitPriceCents(String fruitName, long newPriceCents) throws RemoteException {
+        return recordWrite(primary.updateFruitPriceCents(fruitName, newPriceCents));
+    }
+
+    @Override
+    public ReplicationStatus deleteFruitPrice(String fruitName) throws RemoteException {
+        return recordWrite(primary.deleteFruitPrice(fruitName));
+    }
+
+    @Override
+    public int importPrices(PriceBatch batch) throws RemoteException {
+        int imported = primary.importPrices(batch);
+        recordPrimaryPosition();
+        return imported;
+    }
+
+    @Override
+    public int deletePrices(String[] fruitNames) throws RemoteException {
+        int deleted = primary.deletePrices(fruitNames);
+        recordPrimaryPosition();
+        return deleted;
+    }
+
+    @Override
+    public long calculateFruitCostCents(String fruitName, int quantity) throws RemoteException {
+        return read(engine -> engine.calculateFruitCostCents(fruitName, quantity));
+    }
+
+    @Override
+    public CartQuote priceCart(List<CartLine> cartLines) throws RemoteException {
+        return read(engine -> engine.priceCart(cartLines));
+    }
+
+    // Receipts are journaled, so they go to the primary like any other write
+    @Override
+    public String generateReceiptCents(String cashierName, long totalCents, long amountGivenCents) throws RemoteException {
+        return primary.generateReceiptCents(cashierName, totalCents, amountGivenCents);
+    }
+
+    @Override
+    public long recordReceipt(Receipt receipt) throws RemoteException {
+        return primary.recordReceipt(receipt);
+    }
+
+    @Override
+    public ReceiptPage readReceipts(long afterSequence, int limit) throws RemoteException {
+        return primary.readReceipts(afterSequence, limit);
+    }
+
+    // A sale journals a receipt and counts it, so it is priced, journaled and counted on the primary
+    @Override
+    public Sale sellCart(String cashierName, List<CartLine> cartLines, long amountGivenCents) throws RemoteException {
+        return primary.sellCart(cashierName, cartLines, amountGivenCents);
+    }
+
+    @Override
+    public CartQuote sellLines(String cashierName, List<CartLine> cartLines) throws RemoteException {
+        return primary.sellLines(cashierName, cartLines);
+    }
+
+    @Override
+    public SalesReport getSales(SalesReport.Window window, int limit) throws RemoteException {
+        return primary.getSales(window, limit);
+    }
+
+    // Carts are kept in the primary's memory only, so a replica has none of them
+
+    @Override
+    public CartView getCart(String sessionId) throws RemoteException {
+        return primary.getCart(sessionId);
+    }
+
+    @Override
+    public CartView addToCart(String sessionId, String fruitName, int quantity) throws RemoteException {
+        return primary.addToCart(sessionId, fruitName, quantity);
+    }
+
+    @Override
+    public CartView removeFromCart(String sessionId, String fruitName) throws RemoteException {
+        return primary.removeFromCart(sessionId, fruitName);
+    }
+
+    @Override
+    public CartView clearCart(String sessionId) throws RemoteException {
+        return primary.clearCart(sessionId);
+    }
+
+    @Override
+    public String checkoutCart(String sessionId, String cashierName, long amountGivenCents) throws RemoteException {
+        return primary.checkoutCart(sessionId, cashierName, amountGivenCents);
+    }
+
+    @Override
+    public PricePage listPrices(String afterFruitName, int limit) throws RemoteException {
+        return read(engine -> engine.listPrices(afterFruitName, limit));
+    }
+
+    // A consistent copy needs the primary; exports are rare
+    @Override
+    public int exportPrices(PriceBatchSink sink, int batchSize) throws RemoteException {
+        return primary.exportPrices(sink, batchSize);
+    }
+
+    @Override
+    public ReplicationStatus addFruitPrice(String fruitName, double price) throws RemoteException {
+        return addFruitPriceCents(fruitName, Money.toCents(price));
+    }
+
+    @Override
+    public ReplicationStatus updateFruitPrice(String fruitName, double newPrice) throws RemoteException {
+        return updateFruitPriceCents(fruitName, Money.toCents(newPrice));
+    }
+
+    @Override
+    public double calculateFruitCost(String fruitName, int quantity) throws RemoteException {
+        return Money.toDouble(calculateFruitCostCents(fruitName, quantity));
+    }
+
+    @Override
+    public String generateReceipt(String cashierName, double totalCost, double amountGiven) throws RemoteException {
+        return generateReceiptCents(cashierName, Money.toCents(totalCost), Money.toCents(amountGiven));
+    }
+
+    // Replicas stamp changes with the time they applied them, so history comes from the primary
+    @Override
+    public long getPriceCentsAt(String fruitName, long atMillis) throws RemoteException {
+        return primary.getPriceCentsAt(fruitName, atMillis);
+    }
+
+    @Override
+    public PriceHistory getPriceHistory(String fruitName, long fromMillis, long toMillis, int limit)
+            throws RemoteException {
+        return primary.getPriceHistory(fruitName, fromMillis, toMillis, limit);
+    }
+
+    // Near caches stay on the primary, which invalidates them before a write returns
+    @Override
+    public VersionedPrice getVersionedPrice(String fruitName) throws RemoteException {
+        return primary.getVersionedPrice(fruitName);
+    }
+
+    @Override
+    public boolean addPriceListener(PriceListener listener) throws RemoteException {
+        return primary.addPriceListener(listener);
+    }
+
+    @Override
+    public long getPriceVersion() throws RemoteException {
+        return primary.getPriceVersion();
+    }
+
+    @Override
+    public void removePriceListener(PriceListener listener) throws RemoteException {
+        primary.removePriceListener(listener);
+    }
+
+    @Override
+    public PriceChangeBatch pollPriceChanges(long epoch, long afterSequence, int maxChanges, long timeoutMillis)
+            throws RemoteException {
+        return primary.pollPriceChanges(epoch, afterSequence, maxChanges, timeoutMillis);
+    }
+
+    @Override
+    public ReplicationStatus getReplicationStatus() throws RemoteException {
+        return primary.getReplicationStatus();
+    }
+
+    // The primary's and every reachable replica's metrics, labelled engine="primary" or the replica's address
+    @Override
+    public String getMetrics() throws RemoteException {
+        List<String> engines = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        engines.add("primary");
+        texts.add(primary.getMetrics());
+        for (Replica replica : replicas) {
+            Compute engine = replica.engine;
+            if (engine == null) {
+                continue;
+            }
+            try {
+                texts.add(engine.getMetrics());
+                engines.add(replica.address);
+            } catch (RemoteException e) {
+                markUnavailable(replica, e);
+            }
+        }
+        return MergedMetrics.merge("engine", engines, texts);
+    }
+
+    private interface Read<R> {
+        R call(Compute engine) throws RemoteException;
+    }
+
+    // Runs the read on a suitable replica, or on the primary if there is none or the replica fails
+    private <R> R read(Read<R> call) throws RemoteException {
+        Replica replica = pickReplica();
+        Compute engine = replica == null ? null : replica.engine;
+        if (engine != null) {
+            try {
+                return call.call(engine);
+            } catch (RemoteException e) {
+                markUnavailable(replica, e);
+            }
+        }
+        return call.call(primary);
+    }
+
+    // Next replica in turn that is fresh enough and has the calling session's writes; null for the primary
+    private Replica pickReplica() {
+        if (replicas.length == 0) {
+            return null;
+        }
+        SessionWrite sessionWrite = sessionWrites.get(sessionKey());
+        ReplicationStatus write = sessionWrite == null ? null : sessionWrite.position;
+        long now = System.currentTimeMillis();
+        int first = Math.floorMod(nextReplica.getAndIncrement(), replicas.length);
+        for (int i = 0; i < replicas.length; i++) {
+            Replica replica = replicas[(first + i) % replicas.length];
+            ReplicationStatus status = replica.status;
+            if (replica.engine == null || status == null || !status.hasApplied(write)) {
+                continue;
+            }
+            long staleness = status.getStalenessMillis();
+            if (staleness <= MAX_STALENESS_MILLIS && staleness + (now - replica.statusAtMillis) <= MAX_STALENESS_MILLIS) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    // Remembers how far the primary had got once the calling session's write returned
+    private ReplicationStatus recordWrite(ReplicationStatus position) {
+        if (replicas.length > 0 && position != null) {
+            SessionWrite latest = new SessionWrite(position, System.currentTimeMillis());
+            sessionWrites.merge(sessionKey(), latest, (previous, next) ->
+                    previous.position.getEpoch() == next.position.getEpoch()
+                            && previous.position.getSequence() >= next.position.getSequence() ? previous : next);
+        }
+        return position;
+    }
+
+    private void recordPrimaryPosition() throws RemoteException {
+        if (replicas.length > 0) {
+            recordWrite(primary.getReplicationStatus());
+        }
+    }
+
+    private static String sessionKey() {
+        String session = ClientSession.current();
+        return session == null ? NO_SESSION : session;
+    }
+
+    // A replica caught up within MAX_STALENESS_MILLIS of now has every write made before that,
+    // so older positions no longer rule any replica out
+    private void forgetOldWrites() {
+        long cutoff = System.currentTimeMillis() - 2 * MAX_STALENESS_MILLIS;
+        for (Map.Entry<String, SessionWrite> entry : sessionWrites.entrySet()) {
+            if (entry.getValue().atMillis < cutoff) {
+                sessionWrites.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void refreshStatus() {
+        forgetOldWrites();
+        for (Replica replica : replicas) {
+            if (replica.engine == null) {
+                replica.engine = lookupQuietly(replica.address);
+                if (replica.engine == null) {
+                    continue;
+                }
+            }
+            try {
+                long askedAt = System.currentTimeMillis();
+                ReplicationStatus status = replica.engine.getReplicationStatus();
+                if (!status.isReplica()) {
+                    if (replica.status != null || replica.statusAtMillis == 0) {
+                        log.warn("{} is not a replica; not reading from it", replica.address);
+                    }
+                    status = null;
+                }
+                replica.statusAtMillis = askedAt;
+                replica.status = status;
+            } catch (RemoteException | RuntimeException e) {
+                markUnavailable(replica, e);
+            }
+        }
+    }
+
+    private void markUnavailable(Replica replica, Exception e) {
+        if (replica.status != null) {
+            log.warn("Replica {} unavailable, reading from the primary: {}", replica.address, e.toString());
+        }
+        replica.status = null;
+        // Looked up again on the next refresh, in case the replica was restarted
+        replica.engine = null;
+    }
+
+    private static Compute lookupQuietly(String address) {
+        try {
+            return RMIConnectionHelper.lookupEngine(address);
+        } catch (RemoteException | NotBoundException e) {
+            return null;
+        }
+    }
+}
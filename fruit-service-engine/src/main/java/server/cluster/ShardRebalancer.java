@@ -0,0 +1,101 @@
+package server.cluster;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.PriceBatch;
+import server.bulk.PriceBulkTransfer;
+import server.interfaces.Compute;
+import server.interfaces.PriceBatchSink;
+
+// Moves prices after the shard list changes, e.g. when an engine is added.
+// Each old shard exports its catalog; every entry the new ring assigns elsewhere is imported on its
+// new owner and only then deleted from the old one, so a price is never missing, though it may
+// briefly be on both. With consistent hashing only about 1/N of the keys move when a shard is added.
+// Run it before pointing the front ends at the new list, while prices are not being changed.
+//
+// Usage: java server.cluster.ShardRebalancer <old host:port,...> <new host:port,...>
+public final class ShardRebalancer {
+    private ShardRebalancer() {
+    }
+
+    // Returns the number of prices that moved
+    public static long rebalance(ShardedCompute from, ShardedCompute to) throws RemoteException {
+        long moved = 0;
+        for (int shard = 0; shard < from.getShards().size(); shard++) {
+            moved += drain(from.getAddresses().get(shard), from.getShards().get(shard), to);
+        }
+        return moved;
+    }
+
+    // Copies the shard's misplaced entries to their new owners, then deletes them from the shard
+    private static long drain(String address, Compute source, ShardedCompute to) throws RemoteException {
+        MoveSink sink = new MoveSink(address, to);
+        PriceBatchSink stub = (PriceBatchSink) UnicastRemoteObject.exportObject(sink, 0);
+        try {
+            source.exportPrices(stub, PriceBulkTransfer.BATCH_SIZE);
+        } finally {
+            UnicastRemoteObject.unexportObject(sink, true);
+        }
+        sink.flush();
+
+        List<String> moved = sink.moved;
+        for (int from = 0; from < moved.size(); from += PriceBulkTransfer.BATCH_SIZE) {
+            List<String> chunk = moved.subList(from, Math.min(moved.size(), from + PriceBulkTransfer.BATCH_SIZE));
+            source.deletePrices(chunk.toArray(new String[0]));
+        }
+        return moved.size();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: java server.cluster.ShardRebalancer <old host:port,...> <new host:port,...>");
+            System.exit(2);
+        }
+        ShardedCompute from = ShardedCompute.connect(ShardedCompute.parseAddresses(args[0]));
+        ShardedCompute to = ShardedCompute.connect(ShardedCompute.parseAddresses(args[1]));
+        long start = System.nanoTime();
+        long moved = rebalance(from, to);
+        System.out.println("Moved " + moved + " price(s) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        // Exported RMI objects keep their threads alive
+        System.exit(0);
+    }
+
+    // Collects the entries that no longer belong on the source and imports them on the new ring
+    private static final class MoveSink implements PriceBatchSink {
+        private final String sourceAddress;
+        private final ShardedCompute to;
+        private final PriceBatch pending = new PriceBatch(PriceBulkTransfer.BATCH_SIZE);
+        private final List<String> moved = new ArrayList<>();
+
+        MoveSink(String sourceAddress, ShardedCompute to) {
+            this.sourceAddress = sourceAddress;
+            this.to = to;
+        }
+
+        @Override
+        public synchronized void accept(PriceBatch batch) throws RemoteException {
+            for (int i = 0; i < batch.size(); i++) {
+                String fruitName = batch.getFruitName(i);
+                if (!sourceAddress.equals(to.ownerOf(fruitName))) {
+                    pending.add(fruitName, batch.getPriceCents(i));
+                    if (pending.isFull()) {
+                        flush();
+                    }
+                }
+            }
+        }
+
+        synchronized void flush() throws RemoteException {
+            if (pending.size() > 0) {
+                to.importPrices(pending);
+                for (int i = 0; i < pending.size(); i++) {
+                    moved.add(pending.getFruitName(i));
+                }
+                pending.clear();
+            }
+        }
+    }
+}
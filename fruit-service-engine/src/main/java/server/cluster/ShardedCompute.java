@@ -0,0 +1,635 @@
+package server.cluster;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import model.CartLine;
+import model.CartQuote;
+import model.CartView;
+import model.Money;
+import model.PriceBatch;
+import model.PriceChangeBatch;
+import model.PriceHistory;
+import model.PricePage;
+import model.Receipt;
+import model.ReceiptPage;
+import model.ReplicationStatus;
+import model.Sale;
+import model.SalesReport;
+import model.TaskResult;
+import model.TaskTicket;
+import model.VersionedPrice;
+import server.AsyncTaskRunner;
+import server.interfaces.Compute;
+import server.interfaces.ContextTask;
+import server.interfaces.KeyedTask;
+import server.interfaces.PriceBatchSink;
+import server.interfaces.PriceListener;
+import server.interfaces.Task;
+import server.interfaces.TaskCallback;
+import server.metrics.SalesCounters;
+import server.util.CartCheckout;
+import server.util.RMIConnectionHelper;
+import server.util.ServerExecutors;
+
+// Client-side router over several engines, each owning a partition of the fruit catalog.
+// Calls about one fruit go straight to the engine the ConsistentHashRing assigns it to; carts,
+// bulk imports and deletes are split per shard and sent in parallel; exports, metrics and
+// listener registration go to every shard. It implements Compute, so front ends use it in place
+// of a single engine stub (see RMIConnectionHelper.getCompute).
+// Prices live on exactly one shard, but version numbers are per shard: a near cache has to be
+// kept per shard (see shardFor).
+public class ShardedCompute implements Compute {
+    // Ticket ids carry the shard index in their top bits so poll and await find the right engine
+    private static final int TICKET_SHARD_SHIFT = 48;
+    private static final long TICKET_ID_MASK = (1L << TICKET_SHARD_SHIFT) - 1;
+
+    private final ConsistentHashRing ring;
+    private final Compute[] shards;
+    private final ExecutorService fanOut;
+    // Runs submitted unkeyed ContextTasks against the router; its tickets carry shards.length as
+    // their shard index
+    private final AsyncTaskRunner routerTasks;
+
+    public ShardedCompute(List<String> addresses, List<Compute> shards) {
+        if (addresses.size() != shards.size()) {
+            throw new IllegalArgumentException("Expected one engine per shard address");
+        }
+        this.ring = new ConsistentHashRing(addresses);
+        this.shards = shards.toArray(new Compute[0]);
+        this.fanOut = ServerExecutors.newBoundedExecutor("shard-fanout", Math.max(4, shards.size() * 4), 4096);
+        this.routerTasks = new AsyncTaskRunner(this, "router-task");
+    }
+
+    // Looks up every engine in the list, e.g. "host1:1101,host2:1101"
+    public static ShardedCompute connect(List<String> addresses) throws RemoteException, NotBoundException {
+        List<Compute> engines = new ArrayList<>();
+        for (String address : addresses) {
+            engines.add(RMIConnectionHelper.lookupEngine(address));
+        }
+        return new ShardedCompute(addresses, engines);
+    }
+
+    public static List<String> parseAddresses(String list) {
+        List<String> addresses = new ArrayList<>();
+        for (String address : list.split(",")) {
+            if (!address.trim().isEmpty()) {
+                addresses.add(address.trim());
+            }
+        }
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("No shard addresses in '" + list + "'");
+        }
+        return addresses;
+    }
+
+    public List<String> getAddresses() {
+        return ring.getShardIds();
+    }
+
+    public List<Compute> getShards() {
+        return Arrays.asList(shards);
+    }
+
+    // The engine that owns the fruit
+    public Compute shardFor(String fruitName) {
+        return shards[ring.shardFor(fruitName)];
+    }
+
+    // Address of the engine that owns the fruit
+    public String ownerOf(String fruitName) {
+        return ring.getShardIds().get(ring.shardFor(fruitName));
+    }
+
+    @Override
+    public <T> T executeTask(Task<T> task) throws RemoteException {
+        String key = routingKey(task);
+        if (key == null && task instanceof ContextTask) {
+            // Unkeyed tasks (cart totals, receipts) only call back into Compute, so run them here
+            // against the router and let it fan out
+            try {
+                return ((ContextTask<T>) task).execute(this);
+            } catch (RemoteException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RemoteException("Task execution failed", e);
+            }
+        }
+        return shards[key == null ? 0 : ring.shardFor(key)].executeTask(task);
+    }
+
+    // Unkeyed ContextTasks run here as in executeTask, so their calls reach every shard; other
+    // unkeyed tasks look up an engine of their own and run on the first shard
+    @Override
+    public <T> TaskTicket<T> submitTask(Task<T> task, TaskCallback callback) throws RemoteException {
+        String key = routingKey(task);
+        if (key == null && task instanceof ContextTask) {
+            TaskCallback routerCallback = callback == null ? null
+                    : (ticket, result) -> callback.taskCompleted(toRouterTicket(shards.length, ticket), result);
+            return toRouterTicket(shards.length, routerTasks.submit(task, routerCallback));
+        }
+        int shard = key == null ? 0 : ring.shardFor(key);
+        ShardCallback shardCallback = null;
+        TaskCallback remoteCallback = null;
+        if (callback != null) {
+            shardCallback = new ShardCallback(shard, callback);
+            remoteCallback = (TaskCallback) UnicastRemoteObject.exportObject(shardCallback, 0);
+        }
+        try {
+            return toRouterTicket(shard, shards[shard].submitTask(task, remoteCallback));
+        } catch (RemoteException | RuntimeException e) {
+            if (shardCallback != null) {
+                UnicastRemoteObject.unexportObject(shardCallback, true);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> TaskResult<T> pollTask(TaskTicket<T> ticket) throws RemoteException {
+        int shard = ticketShard(ticket);
+        TaskTicket<T> local = new TaskTicket<>(ticket.getId() & TICKET_ID_MASK);
+        return shard == shards.length ? routerTasks.poll(local) : shards[shard].pollTask(local);
+    }
+
+    @Override
+    public <T> TaskResult<T> awaitTask(TaskTicket<T> ticket, long timeoutMillis) throws RemoteException {
+        int shard = ticketShard(ticket);
+        TaskTicket<T> local = new TaskTicket<>(ticket.getId() & TICKET_ID_MASK);
+        return shard == shards.length ? routerTasks.await(local, timeoutMillis)
+                : shards[shard].awaitTask(local, timeoutMillis);
+    }
+
+    @Override
+    public ReplicationStatus addFruitPriceCents(String fruitName, long priceCents) throws RemoteException {
+        return shardFor(fruitName).addFruitPriceCents(fruitName, priceCents);
+    }
+
+    @Override
+    public ReplicationStatus updateFruitPriceCents(String fruitName, long newPriceCents) throws RemoteException {
+        return shardFor(fruitName).updateFruitPriceCents(fruitName, newPriceCents);
+    }
+
+    @Override
+    public ReplicationStatus deleteFruitPrice(String fruitName) throws RemoteException {
+        return shardFor(fruitName).deleteFruitPrice(fruitName);
+    }
+
+    @Override
+    public long calculateFruitCostCents(String fruitName, int quantity) throws RemoteException {
+        return shardFor(fruitName).calculateFruitCostCents(fruitName, quantity);
+    }
+
+    // Quotes each shard's lines in parallel and reassembles them in cart order
+    @Override
+    public CartQuote priceCart(List<CartLine> cartLines) throws RemoteException {
+        return quoteOnShards(cartLines, (shard, lines) -> shards[shard].priceCart(lines));
+    }
+
+    // Sends each line to the shard that owns its fruit and merges the quotes they return in cart order
+    private CartQuote quoteOnShards(List<CartLine> cartLines, ShardCall<List<CartLine>, CartQuote> call)
+            throws RemoteException {
+        int lineCount = cartLines.size();
+        List<List<CartLine>> linesByShard = new ArrayList<>();
+        List<List<Integer>> positionsByShard = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            linesByShard.add(new ArrayList<>());
+            positionsByShard.add(new ArrayList<>());
+        }
+        for (int i = 0; i < lineCount; i++) {
+            CartLine line = cartLines.get(i);
+            int shard = line == null || line.getFruitName() == null ? 0 : ring.shardFor(line.getFruitName());
+            linesByShard.get(shard).add(line);
+            positionsByShard.get(shard).add(i);
+        }
+
+        List<CartQuote> quotes = onShards(linesByShard, call);
+        long[] lineCents = new long[lineCount];
+        boolean[] missing = new boolean[lineCount];
+        long totalCents = 0;
+        // Each shard prices its lines from one version of its own; one version stands only for one shard
+        long catalogVersion = 0;
+        int pricingShards = 0;
+        for (int shard = 0; shard < shards.length; shard++) {
+            CartQuote quote = quotes.get(shard);
+            if (quote == null) {
+                continue;
+            }
+            catalogVersion = quote.getCatalogVersion();
+            pricingShards++;
+            List<Integer> positions = positionsByShard.get(shard);
+            for (int i = 0; i < quote.size(); i++) {
+                lineCents[positions.get(i)] = quote.getLinePriceCents(i);
+                missing[positions.get(i)] = quote.isMissing(i);
+            }
+            totalCents = Money.add(totalCents, quote.getTotalCents());
+        }
+        return new CartQuote(lineCents, missing, totalCents,
+                pricingShards > 1 ? CartQuote.MIXED_VERSIONS : catalogVersion);
+    }
+
+    // Receipts touch no catalog data; the first shard keeps the cluster's receipt journal, so one
+    // sequence covers every receipt
+    @Override
+    public String generateReceiptCents(String cashierName, long totalCents, long amountGivenCents) throws RemoteException {
+        return shards[0].generateReceiptCents(cashierName, totalCents, amountGivenCents);
+    }
+
+    @Override
+    public long recordReceipt(Receipt receipt) throws RemoteException {
+        return shards[0].recordReceipt(receipt);
+    }
+
+    @Override
+    public ReceiptPage readReceipts(long afterSequence, int limit) throws RemoteException {
+        return shards[0].readReceipts(afterSequence, limit);
+    }
+
+    // Each shard prices and counts the lines it owns (sellLines), then the receipt for the whole
+    // basket goes to the first shard's journal. The shards count before the receipt is journaled and
+    // nothing spans them, so a journal failure after the counting leaves those sales counted
+    @Override
+    public Sale sellCart(String cashierName, List<CartLine> cartLines, long amountGivenCents) throws RemoteException {
+        if (cartLines.isEmpty()) {
+            throw new IllegalStateException("Shopping cart is empty");
+        }
+        CartQuote quote = sellLines(cashierName, cartLines);
+        if (!quote.hasPricedItems()) {
+            throw new IllegalStateException("Nothing in the cart is in the catalog");
+        }
+        long totalCents = quote.getTotalCents();
+        Receipt receipt = Receipt.ofCents(totalCents, amountGivenCents, Money.subtract(amountGivenCents, totalCents),
+                cashierName, quote.getCatalogVersion());
+        return new Sale(cartLines, quote, receipt, shards[0].recordReceipt(receipt));
+    }
+
+    @Override
+    public CartQuote sellLines(String cashierName, List<CartLine> cartLines) throws RemoteException {
+        return quoteOnShards(cartLines, (shard, lines) -> shards[shard].sellLines(cashierName, lines));
+    }
+
+    // Fruits are counted on one shard each, so their ranking is exact. A cashier's totals are summed
+    // from each shard's ranking, which can leave out a cashier near the cut-off on some shard
+    @Override
+    public SalesReport getSales(SalesReport.Window window, int limit) throws RemoteException {
+        return SalesCounters.merge(window, onAllShards(shard -> shards[shard].getSales(window, limit)), limit);
+    }
+
+    // A session's cart is kept on one shard, picked by hashing the session id like a fruit name. That
+    // shard can price only the fruits it owns, so the lines it returns are priced again across the
+    // cluster
+
+    @Override
+    public CartView getCart(String sessionId) throws RemoteException {
+        return priced(cartHome(sessionId).getCart(sessionId));
+    }
+
+    @Override
+    public CartView addToCart(String sessionId, String fruitName, int quantity) throws RemoteException {
+        return priced(cartHome(sessionId).addToCart(sessionId, fruitName, quantity));
+    }
+
+    @Override
+    public CartView removeFromCart(String sessionId, String fruitName) throws RemoteException {
+        return priced(cartHome(sessionId).removeFromCart(sessionId, fruitName));
+    }
+
+    @Override
+    public CartView clearCart(String sessionId) throws RemoteException {
+        return priced(cartHome(sessionId).clearCart(sessionId));
+    }
+
+    @Override
+    public String checkoutCart(String sessionId, String cashierName, long amountGivenCents) throws RemoteException {
+        Compute home = cartHome(sessionId);
+        List<CartLine> cartLines = home.clearCart(sessionId).getLines();
+        try {
+            return CartCheckout.receipt(sellCart(cashierName, cartLines, amountGivenCents));
+        } catch (RemoteException | RuntimeException e) {
+            // Put the lines back so the customer can try again
+            try {
+                for (CartLine line : cartLines) {
+                    home.addToCart(sessionId, line.getFruitName(), line.getQuantity());
+                }
+            } catch (RemoteException | RuntimeException restoreFailure) {
+                e.addSuppressed(restoreFailure);
+            }
+            throw e;
+        }
+    }
+
+    private Compute cartHome(String sessionId) {
+        if (sessionId == null) {
+            throw new IllegalArgumentException("No session id given");
+        }
+        return shards[ring.shardFor(sessionId)];
+    }
+
+    private CartView priced(CartView view) throws RemoteException {
+        return new CartView(view.getSessionId(), view.getLines(), priceCart(view.getLines()));
+    }
+
+    // Splits the chunk by owner; returns the total applied across shards
+    @Override
+    public int importPrices(PriceBatch batch) throws RemoteException {
+        List<PriceBatch> batches = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            batches.add(null);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            int shard = ring.shardFor(batch.getFruitName(i));
+            if (batches.get(shard) == null) {
+                batches.set(shard, new PriceBatch(batch.size()));
+            }
+            batches.get(shard).add(batch.getFruitName(i), batch.getPriceCents(i));
+        }
+        int imported = 0;
+        for (Integer count : onShards(batches, (shard, part) -> shards[shard].importPrices(part))) {
+            imported += count == null ? 0 : count;
+        }
+        return imported;
+    }
+
+    @Override
+    public int deletePrices(String[] fruitNames) throws RemoteException {
+        List<List<String>> namesByShard = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            namesByShard.add(null);
+        }
+        for (String fruitName : fruitNames) {
+            int shard = fruitName == null ? 0 : ring.shardFor(fruitName);
+            if (namesByShard.get(shard) == null) {
+                namesByShard.set(shard, new ArrayList<>());
+            }
+            namesByShard.get(shard).add(fruitName);
+        }
+        int deleted = 0;
+        for (Integer count : onShards(namesByShard,
+                (shard, names) -> shards[shard].deletePrices(names.toArray(new String[0])))) {
+            deleted += count == null ? 0 : count;
+        }
+        return deleted;
+    }
+
+    // Every shard streams into the same sink at once
+    @Override
+    public int exportPrices(PriceBatchSink sink, int batchSize) throws RemoteException {
+        int exported = 0;
+        for (Integer count : onAllShards(shard -> shards[shard].exportPrices(sink, batchSize))) {
+            exported += count;
+        }
+        return exported;
+    }
+
+    // Each shard's page holds its smallest names after the cursor, so merging the pages and keeping
+    // the first limit gives the cluster's page
+    @Override
+    public PricePage listPrices(String afterFruitName, int limit) throws RemoteException {
+        List<PricePage> pages = onAllShards(shard -> shards[shard].listPrices(afterFruitName, limit));
+        PriceBatch merged = new PriceBatch(Math.max(1, Math.min(limit, PriceBatch.MAX_SIZE)));
+        int[] positions = new int[pages.size()];
+        while (!merged.isFull()) {
+            int next = -1;
+            for (int shard = 0; shard < pages.size(); shard++) {
+                PricePage page = pages.get(shard);
+                if (positions[shard] < page.size() && (next < 0
+                        || page.getFruitName(positions[shard]).compareTo(
+                                pages.get(next).getFruitName(positions[next])) < 0)) {
+                    next = shard;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            PricePage page = pages.get(next);
+            merged.add(page.getFruitName(positions[next]), page.getPriceCents(positions[next]));
+            positions[next]++;
+        }
+        String nextCursor = merged.isFull() ? merged.getFruitName(merged.size() - 1) : null;
+        return new PricePage(merged, nextCursor);
+    }
+
+    @Override
+    public ReplicationStatus addFruitPrice(String fruitName, double price) throws RemoteException {
+        return addFruitPriceCents(fruitName, Money.toCents(price));
+    }
+
+    @Override
+    public ReplicationStatus updateFruitPrice(String fruitName, double newPrice) throws RemoteException {
+        return updateFruitPriceCents(fruitName, Money.toCents(newPrice));
+    }
+
+    @Override
+    public double calculateFruitCost(String fruitName, int quantity) throws RemoteException {
+        return Money.toDouble(calculateFruitCostCents(fruitName, quantity));
+    }
+
+    @Override
+    public String generateReceipt(String cashierName, double totalCost, double amountGiven) throws RemoteException {
+        return generateReceiptCents(cashierName, Money.toCents(totalCost), Money.toCents(amountGiven));
+    }
+
+    // Each shard keeps the history of the fruits it owns; a fruit moved by ShardRebalancer starts a
+    // new history on its new owner
+    @Override
+    public long getPriceCentsAt(String fruitName, long atMillis) throws RemoteException {
+        return shardFor(fruitName).getPriceCentsAt(fruitName, atMillis);
+    }
+
+    @Override
+    public PriceHistory getPriceHistory(String fruitName, long fromMillis, long toMillis, int limit)
+            throws RemoteException {
+        return shardFor(fruitName).getPriceHistory(fruitName, fromMillis, toMillis, limit);
+    }
+
+    // The version is the owning shard's; compare it only with that shard's invalidations
+    @Override
+    public VersionedPrice getVersionedPrice(String fruitName) throws RemoteException {
+        return shardFor(fruitName).getVersionedPrice(fruitName);
+    }
+
+    @Override
+    public boolean addPriceListener(PriceListener listener) throws RemoteException {
+        boolean added = false;
+        for (Boolean shardAdded : onAllShards(shard -> shards[shard].addPriceListener(listener))) {
+            added |= shardAdded;
+        }
+        return added;
+    }
+
+    // Highest version of any shard; versions are per shard and not comparable across them
+    @Override
+    public long getPriceVersion() throws RemoteException {
+        long version = 0;
+        for (Long shardVersion : onAllShards(shard -> shards[shard].getPriceVersion())) {
+            version = Math.max(version, shardVersion);
+        }
+        return version;
+    }
+
+    @Override
+    public void removePriceListener(PriceListener listener) throws RemoteException {
+        onAllShards(shard -> {
+            shards[shard].removePriceListener(listener);
+            return null;
+        });
+    }
+
+    // Every shard's metrics with a shard="host:port" label
+    @Override
+    public String getMetrics() throws RemoteException {
+        return MergedMetrics.merge("shard", ring.getShardIds(), onAllShards(shard -> shards[shard].getMetrics()));
+    }
+
+    // Replication works per engine; ask a shard directly (see getShards)
+    @Override
+    public PriceChangeBatch pollPriceChanges(long epoch, long afterSequence, int maxChanges, long timeoutMillis)
+            throws RemoteException {
+        throw new RemoteException("Change streams are per engine; poll a shard directly");
+    }
+
+    @Override
+    public ReplicationStatus getReplicationStatus() throws RemoteException {
+        throw new RemoteException("Replication status is per engine; ask a shard directly");
+    }
+
+    // Stops the fan-out and router task threads; the engines themselves are left running
+    public void close() {
+        routerTasks.close();
+        fanOut.shutdown();
+    }
+
+    private static String routingKey(Task<?> task) {
+        return task instanceof KeyedTask ? ((KeyedTask) task).getRoutingKey() : null;
+    }
+
+    private <T> TaskTicket<T> toRouterTicket(int shard, TaskTicket<T> ticket) {
+        return new TaskTicket<>(((long) shard << TICKET_SHARD_SHIFT) | ticket.getId());
+    }
+
+    private int ticketShard(TaskTicket<?> ticket) throws RemoteException {
+        long shard = ticket.getId() >>> TICKET_SHARD_SHIFT;
+        // shards.length stands for the router's own tasks
+        if (shard > shards.length) {
+            throw new RemoteException("Unknown task ticket " + ticket);
+        }
+        return (int) shard;
+    }
+
+    private interface ShardCall<P, R> {
+        R call(int shard, P part) throws RemoteException;
+    }
+
+    private interface AllShardsCall<R> {
+        R call(int shard) throws RemoteException;
+    }
+
+    private <R> List<R> onAllShards(AllShardsCall<R> call) throws RemoteException {
+        List<Integer> every = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            every.add(i);
+        }
+        return onShards(every, (shard, ignored) -> call.call(shard));
+    }
+
+    // Calls each shard whose part is non-null and non-empty, in parallel when there is more than
+    // one; the result list has an entry per shard, null where the shard was not called
+    private <P, R> List<R> onShards(List<P> parts, ShardCall<P, R> call) throws RemoteException {
+        List<R> results = new ArrayList<>();
+        int lastCalled = -1;
+        int called = 0;
+        for (int shard = 0; shard < parts.size(); shard++) {
+            results.add(null);
+            if (hasWork(parts.get(shard))) {
+                lastCalled = shard;
+                called++;
+            }
+        }
+        if (called == 1) {
+            results.set(lastCalled, call.call(lastCalled, parts.get(lastCalled)));
+            return results;
+        }
+
+        List<Future<R>> futures = new ArrayList<>();
+        for (int shard = 0; shard < parts.size(); shard++) {
+            P part = parts.get(shard);
+            int index = shard;
+            try {
+                futures.add(hasWork(part) ? fanOut.submit(() -> call.call(index, part)) : null);
+            } catch (RejectedExecutionException e) {
+                throw new RemoteException("Too many concurrent shard calls", e);
+            }
+        }
+        Throwable failure = null;
+        int failedShard = -1;
+        for (int shard = 0; shard < futures.size(); shard++) {
+            if (futures.get(shard) == null) {
+                continue;
+            }
+            try {
+                results.set(shard, futures.get(shard).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted waiting for shard " + ring.getShardIds().get(shard));
+            } catch (ExecutionException e) {
+                // Wait for the other shards before reporting, so no call is left running
+                if (failure == null) {
+                    failure = e.getCause();
+                    failedShard = shard;
+                }
+            }
+        }
+        if (failure != null) {
+            throw shardFailure(failedShard, failure);
+        }
+        return results;
+    }
+
+    private static boolean hasWork(Object part) {
+        if (part instanceof List) {
+            return !((List<?>) part).isEmpty();
+        }
+        if (part instanceof PriceBatch) {
+            return ((PriceBatch) part).size() > 0;
+        }
+        return part != null;
+    }
+
+    private RemoteException shardFailure(int shard, Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof RemoteException) {
+            return (RemoteException) cause;
+        }
+        return new RemoteException("Shard " + ring.getShardIds().get(shard) + " failed", cause);
+    }
+
+    // Passes a shard's completion on to the caller's callback with the router's ticket id
+    private final class ShardCallback implements TaskCallback {
+        private final int shard;
+        private final TaskCallback callback;
+
+        ShardCallback(int shard, TaskCallback callback) {
+            this.shard = shard;
+            this.callback = callback;
+        }
+
+        @Override
+        public void taskCompleted(TaskTicket<?> ticket, TaskResult<?> result) throws RemoteException {
+            try {
+                callback.taskCompleted(toRouterTicket(shard, ticket), result);
+            } finally {
+                UnicastRemoteObject.unexportObject(this, true);
+            }
+        }
+    }
+}
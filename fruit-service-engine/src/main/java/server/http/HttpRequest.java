@@ -0,0 +1,55 @@
+package server.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// A fully framed HTTP/1.x request as parsed by NioHttpServer.
+// Header names are stored lower-cased so lookups are case-insensitive
+public class HttpRequest {
+    private final String method;
+    private final String path;
+    private final String version;
+    private final Map<String, String> headers;
+    private final byte[] body;
+
+    public HttpRequest(String method, String path, String version, Map<String, String> headers, byte[] body) {
+        this.method = method;
+        this.path = path;
+        this.version = version;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    // HTTP/1.1 connections persist unless the client asks to close; HTTP/1.0 is the reverse
+    public boolean isKeepAlive() {
+        String connection = getHeader("Connection");
+        if ("HTTP/1.0".equals(version)) {
+            return connection != null && connection.equalsIgnoreCase("keep-alive");
+        }
+        return connection == null || !connection.equalsIgnoreCase("close");
+    }
+}
@@ -0,0 +1,98 @@
+package server.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// An HTTP response produced by a NioHttpServer handler.
+// Content-Length (or Transfer-Encoding for a streamed body) and Connection are added by the server
+// when the response is encoded
+public class HttpResponse {
+    private final int status;
+    private final String reason;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final byte[] body;
+    private final BodyWriter bodyWriter;
+
+    // Produces a body too large to build in memory; the server sends it as it is written
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public HttpResponse(int status, String reason, byte[] body) {
+        this(status, reason, body, null);
+    }
+
+    private HttpResponse(int status, String reason, byte[] body, BodyWriter bodyWriter) {
+        this.status = status;
+        this.reason = reason;
+        this.body = body;
+        this.bodyWriter = bodyWriter;
+    }
+
+    public static HttpResponse text(int status, String reason, String body) {
+        return new HttpResponse(status, reason, body.getBytes(StandardCharsets.UTF_8))
+                .header("Content-Type", "text/plain; charset=UTF-8");
+    }
+
+    // The writer runs on the handler's worker thread after the handler returns
+    public static HttpResponse streamed(int status, String reason, String contentType, BodyWriter bodyWriter) {
+        return new HttpResponse(status, reason, null, bodyWriter).header("Content-Type", contentType);
+    }
+
+    public HttpResponse header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    // Null for a streamed response
+    public byte[] getBody() {
+        return body;
+    }
+
+    boolean isStreamed() {
+        return bodyWriter != null;
+    }
+
+    BodyWriter getBodyWriter() {
+        return bodyWriter;
+    }
+
+    byte[] encode(boolean keepAlive) {
+        StringBuilder head = startHead();
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] encoded = new byte[headBytes.length + body.length];
+        System.arraycopy(headBytes, 0, encoded, 0, headBytes.length);
+        System.arraycopy(body, 0, encoded, headBytes.length, body.length);
+        return encoded;
+    }
+
+    // Head of a streamed response. Without chunked encoding (HTTP/1.0 clients) the body ends when
+    // the connection closes
+    byte[] encodeStreamedHead(boolean chunked, boolean keepAlive) {
+        StringBuilder head = startHead();
+        if (chunked) {
+            head.append("Transfer-Encoding: chunked\r\n");
+        }
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private StringBuilder startHead() {
+        StringBuilder head = new StringBuilder(128);
+        head.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        return head;
+    }
+}
@@ -0,0 +1,632 @@
+package server.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// A small non-blocking HTTP/1.1 server built on a single selector thread.
+// The event loop only accepts, reads, frames requests and writes responses; handlers run on the
+// supplied worker pool because they make blocking RMI calls. Connections are kept alive between
+// requests, and pipelined requests are answered strictly in the order they arrived. A streamed
+// response (HttpResponse.streamed) is written by its worker in chunks of STREAM_CHUNK_BYTES, and
+// the worker waits while STREAM_QUEUED_CHUNKS of them are still unsent, so a slow client holds
+// back the writer instead of filling memory
+public class NioHttpServer {
+    private static final int MAX_HEAD_BYTES = 8 * 1024;
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+    private static final int MAX_PIPELINED_REQUESTS = 16;
+    private static final long IDLE_TIMEOUT_MILLIS = 30_000;
+    private static final byte[] HEAD_TERMINATOR = {'\r', '\n', '\r', '\n'};
+    private static final int STREAM_CHUNK_BYTES = 16 * 1024;
+    private static final int STREAM_QUEUED_CHUNKS = 4;
+    private static final byte[] CHUNKED_TRAILER = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    // Marks the end of a response in its chunk sequence
+    private static final byte[] END = new byte[0];
+
+    // Handles one framed request; runs on a worker thread
+    public interface RequestHandler {
+        HttpResponse handle(HttpRequest request) throws Exception;
+    }
+
+    private final int port;
+    private final RequestHandler handler;
+    private final ExecutorService workers;
+    // Connections whose next response was completed by a worker and is ready to be written
+    private final Queue<Connection> readyToWrite = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+    // Set after accept() failed (out of file descriptors, say); accepting resumes at the next idle sweep
+    private boolean acceptPaused;
+    private volatile boolean running;
+
+    public NioHttpServer(int port, RequestHandler handler, ExecutorService workers) {
+        this.port = port;
+        this.handler = handler;
+        this.workers = workers;
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+
+        Thread eventLoop = new Thread(this::runEventLoop, "http-event-loop-" + port);
+        eventLoop.start();
+    }
+
+    // The port listened on; the one the system picked if the server was created with port 0
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    // Only a failing selector ends the loop. Anything that goes wrong with one connection (a worker
+    // cancelling its key while the loop uses it, say) closes that connection and the loop goes on
+    private void runEventLoop() {
+        long lastIdleSweep = System.currentTimeMillis();
+        try {
+            while (running) {
+                selector.select(1000);
+
+                Connection ready;
+                while ((ready = readyToWrite.poll()) != null) {
+                    try {
+                        ready.flush();
+                    } catch (RuntimeException e) {
+                        ready.fail(e);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key == acceptKey) {
+                        acceptConnections();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read();
+                        }
+                    } catch (RuntimeException e) {
+                        connection.fail(e);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleSweep >= 1000) {
+                    closeIdleConnections(now);
+                    if (acceptPaused) {
+                        acceptPaused = false;
+                        acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+                    }
+                    lastIdleSweep = now;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("HTTP event loop failed: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+                serverChannel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private void acceptConnections() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new Connection(channel, key));
+                } catch (IOException e) {
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            // The pending connection stays queued, so the key would fire again at once; wait a sweep
+            System.err.println("HTTP accept failed: " + e.getMessage());
+            acceptKey.interestOps(0);
+            acceptPaused = true;
+        }
+    }
+
+    private void closeIdleConnections(long now) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                Connection connection = (Connection) attachment;
+                if (connection.inFlight.isEmpty() && now - connection.lastActive > IDLE_TIMEOUT_MILLIS) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    // A response slot, reserved in request order and filled in by a worker: either the whole
+    // response in bytes, or a stream of chunks
+    private static final class PendingResponse {
+        volatile byte[] bytes;
+        volatile ResponseStream stream;
+        // Set by the worker before it publishes bytes or stream
+        volatile boolean closeAfter;
+        // Event loop only
+        boolean sent;
+
+        PendingResponse(boolean closeAfter) {
+            this.closeAfter = closeAfter;
+        }
+
+        // The next bytes to write, END once the response is complete, or null if none are ready yet
+        byte[] next() {
+            ResponseStream s = stream;
+            if (s != null) {
+                return s.chunks.poll();
+            }
+            byte[] b = bytes;
+            if (b == null) {
+                return null;
+            }
+            if (sent) {
+                return END;
+            }
+            sent = true;
+            return b;
+        }
+    }
+
+    // Per-connection state; only ever touched by the event loop thread,
+    // except PendingResponse.bytes which workers publish
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ArrayDeque<PendingResponse> inFlight = new ArrayDeque<>();
+        ByteBuffer in = ByteBuffer.allocate(4096);
+        ByteBuffer out;
+        PendingResponse writing;
+        boolean inputClosed;
+        long lastActive = System.currentTimeMillis();
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() {
+            int read;
+            try {
+                read = channel.read(in);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                // Peer finished sending; answer what was already received, then close
+                inputClosed = true;
+                updateInterest();
+                if (inFlight.isEmpty()) {
+                    close();
+                }
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            if (!in.hasRemaining()) {
+                grow();
+            }
+            parseRequests();
+        }
+
+        void parseRequests() {
+            while (!inputClosed && inFlight.size() < MAX_PIPELINED_REQUESTS) {
+                int headEnd = indexOf(in, HEAD_TERMINATOR);
+                if (headEnd < 0) {
+                    if (in.position() >= MAX_HEAD_BYTES) {
+                        reject(431, "Request Header Fields Too Large");
+                    }
+                    break;
+                }
+                if (!frameRequest(headEnd)) {
+                    break;
+                }
+            }
+            updateInterest();
+        }
+
+        // Parses the request whose head ends at headEnd; returns false if its body has not fully arrived
+        boolean frameRequest(int headEnd) {
+            String head = new String(in.array(), 0, headEnd, StandardCharsets.ISO_8859_1);
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                reject(400, "Bad Request");
+                return false;
+            }
+
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    reject(400, "Bad Request");
+                    return false;
+                }
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+            }
+            if (headers.containsKey("transfer-encoding")) {
+                reject(501, "Not Implemented");
+                return false;
+            }
+
+            int contentLength = 0;
+            String lengthHeader = headers.get("content-length");
+            if (lengthHeader != null) {
+                try {
+                    contentLength = Integer.parseInt(lengthHeader);
+                } catch (NumberFormatException e) {
+                    contentLength = -1;
+                }
+                if (contentLength < 0) {
+                    reject(400, "Bad Request");
+                    return false;
+                }
+                if (contentLength > MAX_BODY_BYTES) {
+                    reject(413, "Payload Too Large");
+                    return false;
+                }
+            }
+
+            int bodyStart = headEnd + HEAD_TERMINATOR.length;
+            int requestEnd = bodyStart + contentLength;
+            if (in.position() < requestEnd) {
+                if (in.capacity() < requestEnd) {
+                    ByteBuffer larger = ByteBuffer.allocate(requestEnd);
+                    in.flip();
+                    larger.put(in);
+                    in = larger;
+                }
+                return false;
+            }
+
+            byte[] body = new byte[contentLength];
+            System.arraycopy(in.array(), bodyStart, body, 0, contentLength);
+            in.flip();
+            in.position(requestEnd);
+            in.compact();
+
+            HttpRequest request = new HttpRequest(requestLine[0], requestLine[1], requestLine[2], headers, body);
+            dispatch(request);
+            return true;
+        }
+
+        void dispatch(HttpRequest request) {
+            boolean keepAlive = request.isKeepAlive();
+            PendingResponse pending = new PendingResponse(!keepAlive);
+            inFlight.add(pending);
+            if (!keepAlive) {
+                inputClosed = true; // nothing after this request will be answered
+            }
+            try {
+                workers.execute(() -> complete(pending, request, respond(request), keepAlive));
+            } catch (RejectedExecutionException e) {
+                pending.bytes = HttpResponse.text(503, "Service Unavailable", "Error: Server busy").encode(keepAlive);
+            }
+        }
+
+        HttpResponse respond(HttpRequest request) {
+            try {
+                return handler.handle(request);
+            } catch (Exception e) {
+                return HttpResponse.text(500, "Internal Server Error", "Error: " + e.getMessage());
+            }
+        }
+
+        void complete(PendingResponse pending, HttpRequest request, HttpResponse response, boolean keepAlive) {
+            if (response.isStreamed()) {
+                stream(pending, request, response, keepAlive);
+                return;
+            }
+            pending.bytes = response.encode(keepAlive);
+            readyToWrite.add(this);
+            selector.wakeup();
+        }
+
+        // Runs the response's body writer on this worker thread, handing its output to the event loop
+        void stream(PendingResponse pending, HttpRequest request, HttpResponse response, boolean keepAlive) {
+            boolean chunked = !"HTTP/1.0".equals(request.getVersion());
+            boolean keepOpen = keepAlive && chunked;
+            pending.closeAfter = !keepOpen;
+            ResponseStream body = new ResponseStream(this, response.encodeStreamedHead(chunked, keepOpen), chunked);
+            pending.stream = body;
+            try {
+                response.getBodyWriter().writeTo(body);
+                body.close();
+            } catch (Exception e) {
+                body.abort(pending, e);
+            }
+        }
+
+        void wakeForWrite() {
+            readyToWrite.add(this);
+            selector.wakeup();
+        }
+
+        // Answers a request that could not be framed and closes the connection afterwards
+        void reject(int status, String reason) {
+            PendingResponse pending = new PendingResponse(true);
+            pending.bytes = HttpResponse.text(status, reason, "Error: " + reason).encode(false);
+            inFlight.add(pending);
+            inputClosed = true;
+            flush();
+        }
+
+        // Writes completed responses in request order until the socket would block
+        void flush() {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                while (true) {
+                    if (out == null) {
+                        PendingResponse next = inFlight.peek();
+                        byte[] bytes = next == null ? null : next.next();
+                        if (bytes == null) {
+                            break;
+                        }
+                        if (bytes == END) {
+                            inFlight.poll();
+                            if (next.closeAfter) {
+                                close();
+                                return;
+                            }
+                            continue;
+                        }
+                        writing = next;
+                        out = ByteBuffer.wrap(bytes);
+                    }
+                    channel.write(out);
+                    if (out.hasRemaining()) {
+                        break;
+                    }
+                    out = null;
+                    lastActive = System.currentTimeMillis();
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (inputClosed && inFlight.isEmpty()) {
+                close();
+                return;
+            }
+            // Requests buffered while the pipeline was full can be framed now
+            parseRequests();
+        }
+
+        void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            int ops = 0;
+            if (!inputClosed && inFlight.size() < MAX_PIPELINED_REQUESTS) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (out != null) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            try {
+                key.interestOps(ops);
+            } catch (CancelledKeyException e) {
+                // A worker gave up on the client (see ResponseStream.send) since the check above
+                close();
+            }
+        }
+
+        void grow() {
+            if (in.capacity() >= MAX_HEAD_BYTES + MAX_BODY_BYTES) {
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(in.capacity() * 2);
+            in.flip();
+            larger.put(in);
+            in = larger;
+        }
+
+        void close() {
+            closeQuietly(key);
+        }
+
+        void fail(RuntimeException e) {
+            if (!(e instanceof CancelledKeyException)) {
+                System.err.println("HTTP connection failed: " + e);
+            }
+            close();
+        }
+    }
+
+    // Body of a streamed response, written by a worker. The head goes out with the first chunk, so a
+    // writer that fails before filling a chunk still gets a plain error response
+    private final class ResponseStream extends OutputStream {
+        final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(STREAM_QUEUED_CHUNKS);
+        final Connection connection;
+        final boolean chunked;
+        final byte[] buffer = new byte[STREAM_CHUNK_BYTES];
+        byte[] head;
+        int count;
+        boolean closed;
+
+        ResponseStream(Connection connection, byte[] head, boolean chunked) {
+            this.connection = connection;
+            this.head = head;
+            this.chunked = chunked;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                sendBuffer();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    sendBuffer();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                sendBuffer();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flush();
+            if (head != null) {
+                send(head);
+                head = null;
+            }
+            if (chunked) {
+                send(CHUNKED_TRAILER);
+            }
+            send(END);
+        }
+
+        // Nothing sent yet: answer 500 instead. Otherwise cut the body short by closing the connection
+        void abort(PendingResponse pending, Exception cause) {
+            closed = true;
+            pending.closeAfter = true;
+            try {
+                if (head != null) {
+                    head = null;
+                    send(HttpResponse.text(500, "Internal Server Error", "Error: " + cause.getMessage()).encode(false));
+                }
+                send(END);
+            } catch (IOException e) {
+                // The connection is already closed
+            }
+        }
+
+        private void sendBuffer() throws IOException {
+            byte[] chunk;
+            int offset = head == null ? 0 : head.length;
+            if (chunked) {
+                byte[] size = (Integer.toHexString(count) + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+                chunk = new byte[offset + size.length + count + 2];
+                System.arraycopy(size, 0, chunk, offset, size.length);
+                System.arraycopy(buffer, 0, chunk, offset + size.length, count);
+                chunk[chunk.length - 2] = '\r';
+                chunk[chunk.length - 1] = '\n';
+            } else {
+                chunk = new byte[offset + count];
+                System.arraycopy(buffer, 0, chunk, offset, count);
+            }
+            if (head != null) {
+                System.arraycopy(head, 0, chunk, 0, head.length);
+                head = null;
+            }
+            count = 0;
+            send(chunk);
+        }
+
+        // Waits for room in the queue; gives up if the client has gone or stops reading
+        private void send(byte[] bytes) throws IOException {
+            long deadline = System.currentTimeMillis() + IDLE_TIMEOUT_MILLIS;
+            try {
+                while (!chunks.offer(bytes, 100, TimeUnit.MILLISECONDS)) {
+                    if (!connection.key.isValid()) {
+                        throw new IOException("Connection closed by client");
+                    }
+                    if (System.currentTimeMillis() > deadline) {
+                        connection.key.cancel();
+                        connection.key.channel().close();
+                        throw new IOException("Client stopped reading");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while streaming a response");
+            }
+            connection.wakeForWrite();
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] pattern) {
+        byte[] data = buffer.array();
+        int limit = buffer.position() - pattern.length;
+        outer:
+        for (int i = 0; i <= limit; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,114 @@
+package server.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.rmi.RemoteException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import model.Money;
+import model.PriceBatch;
+import model.PricePage;
+import server.interfaces.Compute;
+
+// GET /prices on the web server and the REST bridge.
+// ?limit=n returns one page of at most n entries and ?after=cursor continues from a previous page;
+// without a limit the rest of the catalog is listed. The body is
+//   {"prices":[{"fruitName":"apple","price":12.50},...],"next":"apple"}
+// in fruit-name order, where next is the cursor for the following page, or null once nothing is
+// left. Entries are fetched from the engine PAGE_SIZE at a time and written out as each page
+// arrives, so a listing of any size holds only one page in memory.
+//
+// Tuning: -Dfruit.prices.pageSize (default 1000)
+public final class PriceListing {
+    private static final int PAGE_SIZE = Math.max(1,
+            Math.min(Integer.getInteger("fruit.prices.pageSize", 1000), PriceBatch.MAX_SIZE));
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final Compute engine;
+    // 0 lists everything after the cursor
+    private final long limit;
+    private PricePage firstPage;
+
+    private PriceListing(Compute engine, long limit, PricePage firstPage) {
+        this.engine = engine;
+        this.limit = limit;
+        this.firstPage = firstPage;
+    }
+
+    // Parses the query string (may be null) and fetches the first page, so a bad request or an
+    // unreachable engine is reported before any of the response is sent
+    public static PriceListing open(Compute engine, String rawQuery) throws RemoteException {
+        String after = null;
+        long limit = 0;
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                String[] keyValue = param.split("=", 2);
+                String value = keyValue.length == 2 ? decode(keyValue[1]) : "";
+                if ("after".equals(keyValue[0])) {
+                    after = value.isEmpty() ? null : value;
+                } else if ("limit".equals(keyValue[0])) {
+                    try {
+                        limit = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        limit = -1;
+                    }
+                    if (limit <= 0) {
+                        throw new IllegalArgumentException("limit must be a positive number: " + value);
+                    }
+                }
+            }
+        }
+        return new PriceListing(engine, limit, engine.listPrices(after, pageSize(limit)));
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        StringBuilder number = new StringBuilder(24);
+        char[] digits = new char[24];
+        JsonGenerator generator = JSON.createGenerator(out, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("prices");
+
+        PricePage page = firstPage;
+        firstPage = null;
+        long remaining = limit;
+        while (true) {
+            for (int i = 0; i < page.size(); i++) {
+                generator.writeStartObject();
+                generator.writeStringField("fruitName", page.getFruitName(i));
+                generator.writeFieldName("price");
+                number.setLength(0);
+                Money.appendMoney(number, page.getPriceCents(i));
+                number.getChars(0, number.length(), digits, 0);
+                generator.writeNumber(digits, 0, number.length());
+                generator.writeEndObject();
+            }
+            remaining -= page.size();
+            if (page.isLast() || (limit > 0 && remaining <= 0)) {
+                break;
+            }
+            page = engine.listPrices(page.getNextCursor(), pageSize(limit > 0 ? remaining : 0));
+        }
+
+        generator.writeEndArray();
+        generator.writeStringField("next", limit > 0 ? page.getNextCursor() : null);
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    private static int pageSize(long limit) {
+        return limit > 0 ? (int) Math.min(limit, PAGE_SIZE) : PAGE_SIZE;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
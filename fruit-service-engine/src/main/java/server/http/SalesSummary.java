@@ -0,0 +1,93 @@
+package server.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.rmi.RemoteException;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import model.Money;
+import model.SalesReport;
+import server.interfaces.Compute;
+
+// GET /sales on the web server and the REST bridge.
+// ?window=minute|hour|day|total (default hour) picks the window and ?limit=n (default 10) how many
+// fruits and cashiers to rank. The body is
+//   {"window":"hour","quantity":12,"revenue":30.00,"lines":5,
+//    "fruits":[{"name":"apple","quantity":8,"revenue":20.00,"lines":3},...],"cashiers":[...]}
+// with fruits and cashiers by revenue, highest first
+public final class SalesSummary {
+    private static final int DEFAULT_LIMIT = 10;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final SalesReport report;
+
+    private SalesSummary(SalesReport report) {
+        this.report = report;
+    }
+
+    // Parses the query string (may be null) and fetches the report
+    public static SalesSummary open(Compute engine, String rawQuery) throws RemoteException {
+        SalesReport.Window window = SalesReport.Window.HOUR;
+        int limit = DEFAULT_LIMIT;
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                String[] keyValue = param.split("=", 2);
+                String value = keyValue.length == 2 ? keyValue[1] : "";
+                if ("window".equals(keyValue[0])) {
+                    try {
+                        window = SalesReport.Window.valueOf(value.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("window must be minute, hour, day or total: " + value);
+                    }
+                } else if ("limit".equals(keyValue[0])) {
+                    try {
+                        limit = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        limit = -1;
+                    }
+                    if (limit < 0) {
+                        throw new IllegalArgumentException("limit must be a number of at least 0: " + value);
+                    }
+                }
+            }
+        }
+        return new SalesSummary(engine.getSales(window, limit));
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        StringBuilder number = new StringBuilder(24);
+        JsonGenerator generator = JSON.createGenerator(out, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeStringField("window", report.getWindow().name().toLowerCase(Locale.ROOT));
+        writeTotals(generator, number, report.getQuantity(), report.getRevenueCents(), report.getLines());
+        writeRanking(generator, number, "fruits", report.getFruits());
+        writeRanking(generator, number, "cashiers", report.getCashiers());
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    private static void writeRanking(JsonGenerator generator, StringBuilder number, String field,
+                                     SalesReport.Ranking ranking) throws IOException {
+        generator.writeArrayFieldStart(field);
+        for (int i = 0; i < ranking.size(); i++) {
+            generator.writeStartObject();
+            generator.writeStringField("name", ranking.getName(i));
+            writeTotals(generator, number, ranking.getQuantity(i), ranking.getRevenueCents(i), ranking.getLines(i));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeTotals(JsonGenerator generator, StringBuilder number, long quantity, long revenueCents,
+                                    long lines) throws IOException {
+        generator.writeNumberField("quantity", quantity);
+        generator.writeFieldName("revenue");
+        number.setLength(0);
+        generator.writeNumber(Money.appendMoney(number, revenueCents).toString());
+        generator.writeNumberField("lines", lines);
+    }
+}
@@ -0,0 +1,245 @@
+package server.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+// In-memory cache of the static web assets under a root directory.
+// Each file is read from disk once and kept together with its ETag, Last-Modified date and,
+// for text content, a pre-gzipped copy. A background WatchService drops entries when the
+// files change, so the next request reloads them; everything else is served from memory
+public class StaticAssetCache {
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final Path root;
+    private final ConcurrentMap<String, Asset> assets = new ConcurrentHashMap<>();
+    // Bumped on every invalidation so a load that raced with a change is not cached
+    private final AtomicLong generation = new AtomicLong();
+    // Without a working watcher, cached entries could go stale, so every request reloads
+    private volatile boolean watching = true;
+
+    // One cached file, immutable once built
+    public static final class Asset {
+        private final byte[] content;
+        private final byte[] gzippedContent;
+        private final String contentType;
+        private final String etag;
+        private final long lastModifiedSeconds;
+        private final String lastModified;
+
+        Asset(byte[] content, byte[] gzippedContent, String contentType, String etag, long lastModifiedMillis) {
+            this.content = content;
+            this.gzippedContent = gzippedContent;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModifiedSeconds = lastModifiedMillis / 1000;
+            this.lastModified = HTTP_DATE.format(Instant.ofEpochSecond(lastModifiedSeconds));
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        // Null when the content is not worth compressing
+        public byte[] getGzippedContent() {
+            return gzippedContent;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        // True if the client's cached copy (per If-None-Match / If-Modified-Since) is still current
+        public boolean isNotModified(String ifNoneMatch, String ifModifiedSince) {
+            if (ifNoneMatch != null) {
+                for (String candidate : ifNoneMatch.split(",")) {
+                    String tag = candidate.trim();
+                    if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (ifModifiedSince != null) {
+                try {
+                    long since = ZonedDateTime.parse(ifModifiedSince, HTTP_DATE).toEpochSecond();
+                    return lastModifiedSeconds <= since;
+                } catch (DateTimeParseException e) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+
+    public StaticAssetCache(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        startWatcher();
+    }
+
+    // Returns the asset for a request path, or null if no such file exists under the root.
+    // Entries are keyed by the file's root-relative path, so aliases such as //index.html or
+    // /./index.html share one entry and are dropped by the same invalidation
+    public Asset get(String requestPath) throws IOException {
+        int start = 0;
+        while (start < requestPath.length() && requestPath.charAt(start) == '/') {
+            start++;
+        }
+        Path file = root.resolve(requestPath.substring(start)).normalize();
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        String key = keyFor(file);
+        Asset cached = assets.get(key);
+        if (cached != null && watching) {
+            return cached;
+        }
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        long loadGeneration = generation.get();
+        Asset loaded = load(file, key);
+        if (!watching) {
+            return loaded;
+        }
+        assets.put(key, loaded);
+        if (generation.get() != loadGeneration) {
+            assets.remove(key, loaded);
+        }
+        return loaded;
+    }
+
+    private String keyFor(Path file) {
+        return "/" + root.relativize(file).toString().replace('\\', '/');
+    }
+
+    private Asset load(Path file, String requestPath) throws IOException {
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        byte[] content = Files.readAllBytes(file);
+        String contentType = contentTypeFor(requestPath);
+
+        byte[] gzipped = null;
+        if (!contentType.startsWith("image/")) {
+            byte[] compressed = gzip(content);
+            if (compressed.length < content.length) {
+                gzipped = compressed;
+            }
+        }
+        return new Asset(content, gzipped, contentType, etagFor(content), lastModified);
+    }
+
+    private void startWatcher() throws IOException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        registerTree(watchService, root);
+
+        Thread watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            generation.incrementAndGet();
+                            assets.clear();
+                            continue;
+                        }
+                        Path changed = directory.resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                            registerTree(watchService, changed);
+                        }
+                        invalidate(changed);
+                    }
+                    key.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Watcher stopped
+            } catch (IOException e) {
+                System.err.println("Static asset watcher stopped, caching disabled: " + e.getMessage());
+                watching = false;
+                assets.clear();
+            }
+        }, "static-asset-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void invalidate(Path changed) {
+        generation.incrementAndGet();
+        String prefix = keyFor(changed);
+        // A changed directory invalidates everything beneath it
+        assets.keySet().removeIf(path -> path.equals(prefix) || path.startsWith(prefix + "/"));
+    }
+
+    private static void registerTree(WatchService watchService, Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(content);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String etagFor(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder etag = new StringBuilder(34).append('"');
+            for (int i = 0; i < 16; i++) {
+                etag.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String contentTypeFor(String path) {
+        if (path.endsWith(".html")) return "text/html; charset=UTF-8";
+        if (path.endsWith(".css")) return "text/css; charset=UTF-8";
+        if (path.endsWith(".js")) return "application/javascript; charset=UTF-8";
+        if (path.endsWith(".json")) return "application/json";
+        if (path.endsWith(".png")) return "image/png";
+        if (path.endsWith(".jpg") || path.endsWith(".jpeg")) return "image/jpeg";
+        if (path.endsWith(".gif")) return "image/gif";
+        if (path.endsWith(".ico")) return "image/x-icon";
+        return "text/plain";
+    }
+}
@@ -2,13 +2,110 @@ package server.interfaces;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+
+import model.CartLine;
+import model.CartQuote;
+import model.CartView;
+import model.PriceBatch;
+import model.PriceChangeBatch;
+import model.PriceHistory;
+import model.PricePage;
+import model.Receipt;
+import model.ReceiptPage;
+import model.ReplicationStatus;
+import model.Sale;
+import model.SalesReport;
+import model.TaskResult;
+import model.TaskTicket;
+import model.VersionedPrice;
 
 //To be implemented to handle fruit operations remotely
 public interface Compute extends Remote {
     <T> T executeTask(Task<T> task) throws RemoteException;
-    void addFruitPrice(String fruitName, double price) throws RemoteException;
-    void updateFruitPrice(String fruitName, double newPrice) throws RemoteException;
-    void deleteFruitPrice(String fruitName) throws RemoteException;
+    // Queues a task on the engine and returns at once; the callback (may be null) is told when it finishes
+    <T> TaskTicket<T> submitTask(Task<T> task, TaskCallback callback) throws RemoteException;
+    // Returns the result without waiting; a finished result can be collected only once
+    <T> TaskResult<T> pollTask(TaskTicket<T> ticket) throws RemoteException;
+    // Waits up to timeoutMillis (capped by the server) and returns PENDING if the task is still running
+    <T> TaskResult<T> awaitTask(TaskTicket<T> ticket, long timeoutMillis) throws RemoteException;
+    // Prices are whole cents (see model.Money); arithmetic that overflows throws ArithmeticException.
+    // Writes return the engine's change-stream position once they are applied (see
+    // getReplicationStatus), which a client waits for before it reads from a replica
+    ReplicationStatus addFruitPriceCents(String fruitName, long priceCents) throws RemoteException;
+    ReplicationStatus updateFruitPriceCents(String fruitName, long newPriceCents) throws RemoteException;
+    ReplicationStatus deleteFruitPrice(String fruitName) throws RemoteException;
+    // Returns 0 if the fruit is not in the catalog
+    long calculateFruitCostCents(String fruitName, int quantity) throws RemoteException;
+    // Prices every line of a basket in one round trip
+    CartQuote priceCart(List<CartLine> cartLines) throws RemoteException;
+    // Also journals the receipt (see recordReceipt)
+    String generateReceiptCents(String cashierName, long totalCents, long amountGivenCents) throws RemoteException;
+    // Receipt journal: appends the receipt, stamped with the engine's clock, and returns its sequence
+    // number once it is on disk; 0 if the engine keeps no journal (see server.store.ReceiptJournal)
+    long recordReceipt(Receipt receipt) throws RemoteException;
+    // Up to limit (at most PriceBatch.MAX_SIZE) journaled receipts after afterSequence, oldest first.
+    // Pass 0 to replay from the oldest receipt still kept, then each page's last sequence
+    ReceiptPage readReceipts(long afterSequence, int limit) throws RemoteException;
+    // Sells a basket in one call: prices it from one catalog version, journals the receipt and counts
+    // the sale in the sales aggregates (see server.metrics.SalesCounters), all from the engine's own
+    // prices. Lines not in the catalog are left off. Throws IllegalStateException if nothing in the
+    // basket can be sold
+    Sale sellCart(String cashierName, List<CartLine> cartLines, long amountGivenCents) throws RemoteException;
+    // One shard's part of a sale in a sharded cluster: prices the lines this engine owns and counts
+    // them, with no receipt. ShardedCompute.sellCart journals the receipt on the first shard
+    CartQuote sellLines(String cashierName, List<CartLine> cartLines) throws RemoteException;
+    // Sales within the window, with up to limit (at most PriceBatch.MAX_SIZE) fruits and cashiers
+    // that took the most revenue in it
+    SalesReport getSales(SalesReport.Window window, int limit) throws RemoteException;
+    // Session carts (see server.store.CartSessionStore), keyed by an id the caller makes up (a browser
+    // cookie, say) and dropped after a spell idle. Each call returns the cart as it then stands, priced
+    CartView getCart(String sessionId) throws RemoteException;
+    // Adding a fruit already in the cart adds to its quantity
+    CartView addToCart(String sessionId, String fruitName, int quantity) throws RemoteException;
+    CartView removeFromCart(String sessionId, String fruitName) throws RemoteException;
+    // Empties the cart and returns what it held
+    CartView clearCart(String sessionId) throws RemoteException;
+    // Closes the cart, sells it as sellCart does and returns the itemized receipt; lines no longer in
+    // the catalog are left off. Throws IllegalStateException if nothing in the cart can be sold
+    String checkoutCart(String sessionId, String cashierName, long amountGivenCents) throws RemoteException;
+    // Bulk load: upserts a chunk of prices, durably and with caches invalidated, and returns the count.
+    // Send a large catalog as a stream of chunks (see server.bulk.PriceBulkTransfer)
+    int importPrices(PriceBatch batch) throws RemoteException;
+    // Removes the given fruits with one commit and one invalidation; returns how many were present
+    int deletePrices(String[] fruitNames) throws RemoteException;
+    // Streams the whole catalog to the sink in chunks of up to batchSize and returns the entry count.
+    // Entries changed while the export runs may or may not be included. A sharded cluster exports
+    // its shards in parallel, so the sink may be called concurrently
+    int exportPrices(PriceBatchSink sink, int batchSize) throws RemoteException;
+    // Up to limit entries (at most PriceBatch.MAX_SIZE) whose names sort after afterFruitName, in name
+    // order; pass null for the first page and the page's next cursor for the following ones. Pages
+    // see the catalog as it is when each is fetched
+    PricePage listPrices(String afterFruitName, int limit) throws RemoteException;
+    // Price history, kept by each engine from when it started (see server.store.PriceTimeSeries).
+    // The price at atMillis (epoch milliseconds), or PriceHistory.DELETED if the fruit was not in the
+    // catalog then
+    long getPriceCentsAt(String fruitName, long atMillis) throws RemoteException;
+    // Up to limit (at most PriceBatch.MAX_SIZE) changes to the fruit's price from fromMillis to
+    // toMillis inclusive, oldest first, with the price in effect before them
+    PriceHistory getPriceHistory(String fruitName, long fromMillis, long toMillis, int limit) throws RemoteException;
+    // Adapters for callers that still work in Ksh doubles; amounts are rounded to cents
+    ReplicationStatus addFruitPrice(String fruitName, double price) throws RemoteException;
+    ReplicationStatus updateFruitPrice(String fruitName, double newPrice) throws RemoteException;
     double calculateFruitCost(String fruitName, int quantity) throws RemoteException;
     String generateReceipt(String cashierName, double totalCost, double amountGiven) throws RemoteException;
+    // Near cache support: a price tagged with the catalog version it was read at
+    VersionedPrice getVersionedPrice(String fruitName) throws RemoteException;
+    // Registers a listener for price changes; returns false if it was already registered
+    boolean addPriceListener(PriceListener listener) throws RemoteException;
+    long getPriceVersion() throws RemoteException;
+    void removePriceListener(PriceListener listener) throws RemoteException;
+    // Replication: up to maxChanges of this engine's price changes after afterSequence, waiting up to
+    // timeoutMillis for one. Replicas call it in a loop; a batch marked resyncRequired means reload
+    // everything (see server.ReplicaFollower)
+    PriceChangeBatch pollPriceChanges(long epoch, long afterSequence, int maxChanges, long timeoutMillis) throws RemoteException;
+    // Position in the change stream: the newest change on a primary, the last applied on a replica
+    ReplicationStatus getReplicationStatus() throws RemoteException;
+    // Admin: latency histograms and error counts of the engine, in Prometheus text format
+    String getMetrics() throws RemoteException;
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package server.interfaces;
+
+import server.util.RMIConnectionHelper;
+
+//A task that works directly against the engine it runs in.
+//FruitComputeEngine.executeTask passes itself in, so the task touches the engine's store
+//in-process instead of looking up the registry and calling back into the same JVM over RMI.
+//The no-argument execute() runs the task outside an engine, against the local engine's shared,
+//health-checked stub
+public interface ContextTask<T> extends Task<T> {
+    T execute(Compute engine) throws Exception;
+
+    @Override
+    default T execute() throws Exception {
+        return execute(RMIConnectionHelper.lookupEngine());
+    }
+}
@@ -0,0 +1,7 @@
+package server.interfaces;
+
+//Implemented by tasks that work on a single fruit, so a sharded cluster can run them on the
+//engine that owns that fruit. A null key means the task may run on any engine
+public interface KeyedTask {
+    String getRoutingKey();
+}
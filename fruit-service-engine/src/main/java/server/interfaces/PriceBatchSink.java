@@ -0,0 +1,11 @@
+package server.interfaces;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+import model.PriceBatch;
+
+//Exported by a client running an export; the engine calls it once per chunk, in order
+public interface PriceBatchSink extends Remote {
+    void accept(PriceBatch batch) throws RemoteException;
+}
@@ -0,0 +1,11 @@
+package server.interfaces;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+//Exported by a client that caches prices; the engine calls it after every committed price change
+public interface PriceListener extends Remote {
+    void priceChanged(String fruitName, long version) throws RemoteException;
+    // One call for a whole bulk-imported chunk
+    void pricesChanged(String[] fruitNames, long version) throws RemoteException;
+}
@@ -0,0 +1,12 @@
+package server.interfaces;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+import model.TaskResult;
+import model.TaskTicket;
+
+//Exported by a client that wants to be told when a submitted task finishes
+public interface TaskCallback extends Remote {
+    void taskCompleted(TaskTicket<?> ticket, TaskResult<?> result) throws RemoteException;
+}
@@ -0,0 +1,75 @@
+package server.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free latency histogram for one operation.
+// Buckets have power-of-two upper bounds from 1 microsecond to about 33 seconds plus an overflow
+// bucket, so record() is a few arithmetic instructions and atomic adds with no allocation
+public final class LatencyHistogram {
+    // Upper bound of bucket i is 2^i microseconds
+    static final int BOUNDED_BUCKETS = 26;
+
+    private final String name;
+    private final String labels;
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDED_BUCKETS + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    LatencyHistogram(String name, String labels) {
+        this.name = name;
+        this.labels = labels;
+    }
+
+    public void record(long nanos) {
+        long micros = (Math.max(nanos, 0) + 999) / 1000;
+        int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        buckets.incrementAndGet(Math.min(bucket, BOUNDED_BUCKETS));
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    // Counts a call that ended in an exception; its latency is recorded separately
+    public void recordError() {
+        errors.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    // Appends the histogram in Prometheus text format (without the HELP/TYPE header)
+    void writePrometheus(StringBuilder out) {
+        String prefix = labels.isEmpty() ? "{" : "{" + labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDED_BUCKETS; i++) {
+            cumulative += buckets.get(i);
+            out.append(name).append("_bucket").append(prefix).append("le=\"")
+                    .append((1L << i) / 1e6).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += buckets.get(BOUNDED_BUCKETS);
+        out.append(name).append("_bucket").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+        out.append(name).append("_sum").append(suffix)
+                .append(sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+        out.append(name).append("_count").append(suffix).append(cumulative).append('\n');
+    }
+
+    void writeErrors(StringBuilder out, String errorName) {
+        out.append(errorName).append(labels.isEmpty() ? " " : "{" + labels + "} ").append(errors.sum()).append('\n');
+    }
+}
@@ -0,0 +1,58 @@
+package server.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Holds the latency histograms of one process and renders them in Prometheus text format.
+// Look a histogram up once and keep the reference; only record() is meant for the hot path
+public final class MetricsRegistry {
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> help = new ConcurrentHashMap<>();
+
+    // Returns the histogram for the metric name and a single label, creating it on first use
+    public LatencyHistogram histogram(String name, String help, String labelName, String labelValue) {
+        String labels = labelName + "=\"" + escape(labelValue) + "\"";
+        this.help.putIfAbsent(name, help);
+        return histograms.computeIfAbsent(name + labels, key -> new LatencyHistogram(name, labels));
+    }
+
+    // Renders every histogram, grouped by metric name, followed by an error counter per metric
+    public String toPrometheusText() {
+        Map<String, List<LatencyHistogram>> byName = new TreeMap<>();
+        for (LatencyHistogram histogram : new TreeMap<>(histograms).values()) {
+            byName.computeIfAbsent(histogram.getName(), name -> new ArrayList<>()).add(histogram);
+        }
+
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, List<LatencyHistogram>> metric : byName.entrySet()) {
+            String name = metric.getKey();
+            out.append("# HELP ").append(name).append(' ').append(help.get(name)).append('\n');
+            out.append("# TYPE ").append(name).append(" histogram\n");
+            for (LatencyHistogram histogram : metric.getValue()) {
+                histogram.writePrometheus(out);
+            }
+
+            String errorName = errorCounterName(name);
+            out.append("# HELP ").append(errorName).append(" Calls that ended in an exception\n");
+            out.append("# TYPE ").append(errorName).append(" counter\n");
+            for (LatencyHistogram histogram : metric.getValue()) {
+                histogram.writeErrors(out, errorName);
+            }
+        }
+        return out.toString();
+    }
+
+    // fruit_engine_call_duration_seconds -> fruit_engine_call_errors_total
+    private static String errorCounterName(String name) {
+        String base = name.endsWith("_duration_seconds") ? name.substring(0, name.length() - "_duration_seconds".length()) : name;
+        return base + "_errors_total";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,274 @@
+package server.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import model.SalesReport;
+
+// Sales per fruit and per cashier, since the engine started and over the last minute, hour and day.
+// Recording a sale adds to striped counters (LongAdder) on the fruit's entry, the cashier's entry and
+// the overall entry, so tills selling at the same time never wait on each other, not even for the
+// same fruit, and a sale costs two map lookups and nine adds.
+// Windows come from cumulative samples. A ticker thread copies every entry's totals into three rings
+// once a second: 60 one-second slots, 60 one-minute slots and 24 one-hour slots. A window is the
+// current total less the oldest sample in its ring, so the minute window is accurate to a second,
+// the hour window to a minute and the day window to an hour. Recording never touches the rings.
+// An entry with no sales for a day gives its rings up, so an entry costs about 3.6 KB while it is
+// active and about 200 bytes after that
+public final class SalesCounters {
+    private static final int MINUTE_SLOTS = 60;
+    private static final int HOUR_SLOTS = 60;
+    private static final int DAY_SLOTS = 24;
+    // Slots of each ring within Entry.samples, which holds FIELDS longs per slot
+    private static final int HOUR_RING = MINUTE_SLOTS;
+    private static final int DAY_RING = MINUTE_SLOTS + HOUR_SLOTS;
+    private static final int SLOTS = MINUTE_SLOTS + HOUR_SLOTS + DAY_SLOTS;
+    private static final int FIELDS = 3;
+    // After this long without a sale every sample in an entry's rings equals its totals
+    private static final long IDLE_SECONDS = TimeUnit.DAYS.toSeconds(1) + TimeUnit.HOURS.toSeconds(1);
+    private static final Comparator<Row> BY_REVENUE = (a, b) -> a.revenueCents != b.revenueCents
+            ? Long.compare(b.revenueCents, a.revenueCents) : a.name.compareTo(b.name);
+
+    private final ConcurrentHashMap<String, Entry> fruits = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> cashiers = new ConcurrentHashMap<>();
+    private final Entry overall = new Entry(null);
+    private final long startNanos = System.nanoTime();
+    // Seconds since start at the last tick; the ticker's alone
+    private long lastTick;
+
+    private static final class Entry {
+        final String name;
+        final LongAdder quantity = new LongAdder();
+        final LongAdder revenueCents = new LongAdder();
+        final LongAdder lines = new LongAdder();
+        // Below is the ticker's, read by reports; both hold the entry's lock.
+        // The totals at the last tick the entry saw, that tick, and the tick they last changed at
+        long sampledQuantity;
+        long sampledRevenueCents;
+        long sampledLines;
+        long sampledTick;
+        long changedTick;
+        // The rings; null while every sample in them would equal the sampled totals
+        long[] samples;
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        void add(int quantity, long revenueCents) {
+            this.quantity.add(quantity);
+            this.revenueCents.add(revenueCents);
+            lines.increment();
+        }
+    }
+
+    // One fruit's or cashier's totals within a window
+    private static final class Row {
+        final String name;
+        long quantity;
+        long revenueCents;
+        long lines;
+
+        Row(String name) {
+            this.name = name;
+        }
+    }
+
+    public SalesCounters() {
+        this(true);
+    }
+
+    // Without the ticker, windows move only when tick is called
+    SalesCounters(boolean startTicker) {
+        if (startTicker) {
+            ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sales-window-ticker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(() -> tick((System.nanoTime() - startNanos) / TimeUnit.SECONDS.toNanos(1)),
+                    1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    // Counts quantity units of the fruit sold for revenueCents; cashierName may be null
+    public void record(String fruitName, String cashierName, int quantity, long revenueCents) {
+        overall.add(quantity, revenueCents);
+        entry(fruits, fruitName).add(quantity, revenueCents);
+        if (cashierName != null) {
+            entry(cashiers, cashierName).add(quantity, revenueCents);
+        }
+    }
+
+    private static Entry entry(ConcurrentHashMap<String, Entry> entries, String name) {
+        Entry entry = entries.get(name);
+        return entry != null ? entry : entries.computeIfAbsent(name, Entry::new);
+    }
+
+    // The overall totals within the window, and up to limit fruits and cashiers with sales in it
+    public SalesReport report(SalesReport.Window window, int limit) {
+        Row total = windowRow(overall, window);
+        return new SalesReport(window, total.quantity, total.revenueCents, total.lines,
+                rank(windowRows(fruits.values(), window), limit), rank(windowRows(cashiers.values(), window), limit));
+    }
+
+    // Combines reports on the same window from engines that each counted part of the sales; a
+    // fruit or cashier counted by several engines gets the sum of their totals
+    public static SalesReport merge(SalesReport.Window window, List<SalesReport> reports, int limit) {
+        long quantity = 0;
+        long revenueCents = 0;
+        long lines = 0;
+        Map<String, Row> fruitRows = new HashMap<>();
+        Map<String, Row> cashierRows = new HashMap<>();
+        for (SalesReport report : reports) {
+            quantity += report.getQuantity();
+            revenueCents += report.getRevenueCents();
+            lines += report.getLines();
+            addRows(fruitRows, report.getFruits());
+            addRows(cashierRows, report.getCashiers());
+        }
+        return new SalesReport(window, quantity, revenueCents, lines,
+                rank(new ArrayList<>(fruitRows.values()), limit), rank(new ArrayList<>(cashierRows.values()), limit));
+    }
+
+    private static void addRows(Map<String, Row> rows, SalesReport.Ranking ranking) {
+        for (int i = 0; i < ranking.size(); i++) {
+            Row row = rows.computeIfAbsent(ranking.getName(i), Row::new);
+            row.quantity += ranking.getQuantity(i);
+            row.revenueCents += ranking.getRevenueCents(i);
+            row.lines += ranking.getLines(i);
+        }
+    }
+
+    private static List<Row> windowRows(Collection<Entry> entries, SalesReport.Window window) {
+        List<Row> rows = new ArrayList<>();
+        for (Entry entry : entries) {
+            Row row = windowRow(entry, window);
+            if (row.lines != 0) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static Row windowRow(Entry entry, SalesReport.Window window) {
+        Row row = new Row(entry.name);
+        synchronized (entry) {
+            row.quantity = entry.quantity.sum();
+            row.revenueCents = entry.revenueCents.sum();
+            row.lines = entry.lines.sum();
+            if (window == SalesReport.Window.TOTAL) {
+                return row;
+            }
+            if (entry.samples == null) {
+                row.quantity -= entry.sampledQuantity;
+                row.revenueCents -= entry.sampledRevenueCents;
+                row.lines -= entry.sampledLines;
+                return row;
+            }
+            int slot = oldestSlot(window, entry.sampledTick) * FIELDS;
+            row.quantity -= entry.samples[slot];
+            row.revenueCents -= entry.samples[slot + 1];
+            row.lines -= entry.samples[slot + 2];
+        }
+        return row;
+    }
+
+    // The slot holding the window's oldest sample after the given tick
+    private static int oldestSlot(SalesReport.Window window, long tick) {
+        switch (window) {
+            case MINUTE:
+                return (int) ((tick + 1) % MINUTE_SLOTS);
+            case HOUR:
+                return HOUR_RING + (int) ((tick / 60 + 1) % HOUR_SLOTS);
+            default:
+                return DAY_RING + (int) ((tick / 3600 + 1) % DAY_SLOTS);
+        }
+    }
+
+    private static SalesReport.Ranking rank(List<Row> rows, int limit) {
+        rows.sort(BY_REVENUE);
+        int size = Math.min(rows.size(), Math.max(0, limit));
+        String[] names = new String[size];
+        long[] quantities = new long[size];
+        long[] revenueCents = new long[size];
+        long[] lines = new long[size];
+        for (int i = 0; i < size; i++) {
+            Row row = rows.get(i);
+            names[i] = row.name;
+            quantities[i] = row.quantity;
+            revenueCents[i] = row.revenueCents;
+            lines[i] = row.lines;
+        }
+        return new SalesReport.Ranking(names, quantities, revenueCents, lines);
+    }
+
+    // Samples every entry for the given second since start. Seconds the ticker missed (a long GC
+    // pause, say) get the current totals too
+    void tick(long second) {
+        long previous = lastTick;
+        if (second <= previous) {
+            return;
+        }
+        sample(overall, previous, second);
+        for (Entry entry : fruits.values()) {
+            sample(entry, previous, second);
+        }
+        for (Entry entry : cashiers.values()) {
+            sample(entry, previous, second);
+        }
+        lastTick = second;
+    }
+
+    private static void sample(Entry entry, long previous, long second) {
+        synchronized (entry) {
+            entry.sampledTick = second;
+            long quantity = entry.quantity.sum();
+            long revenueCents = entry.revenueCents.sum();
+            long lines = entry.lines.sum();
+            if (quantity != entry.sampledQuantity || revenueCents != entry.sampledRevenueCents
+                    || lines != entry.sampledLines) {
+                if (entry.samples == null) {
+                    // Every earlier sample would have been the totals the entry had until now
+                    entry.samples = new long[SLOTS * FIELDS];
+                    for (int slot = 0; slot < SLOTS; slot++) {
+                        entry.samples[slot * FIELDS] = entry.sampledQuantity;
+                        entry.samples[slot * FIELDS + 1] = entry.sampledRevenueCents;
+                        entry.samples[slot * FIELDS + 2] = entry.sampledLines;
+                    }
+                }
+                entry.sampledQuantity = quantity;
+                entry.sampledRevenueCents = revenueCents;
+                entry.sampledLines = lines;
+                entry.changedTick = second;
+            } else if (entry.samples != null && second - entry.changedTick > IDLE_SECONDS) {
+                entry.samples = null;
+            }
+            if (entry.samples == null) {
+                return;
+            }
+            fill(entry, 0, MINUTE_SLOTS, previous, second);
+            fill(entry, HOUR_RING, HOUR_SLOTS, previous / 60, second / 60);
+            fill(entry, DAY_RING, DAY_SLOTS, previous / 3600, second / 3600);
+        }
+    }
+
+    // Writes the sampled totals into the ring's slots for periods after previous, up to current
+    private static void fill(Entry entry, int ring, int slots, long previous, long current) {
+        for (long period = Math.max(previous + 1, current - slots + 1); period <= current; period++) {
+            int slot = (ring + (int) (period % slots)) * FIELDS;
+            entry.samples[slot] = entry.sampledQuantity;
+            entry.samples[slot + 1] = entry.sampledRevenueCents;
+            entry.samples[slot + 2] = entry.sampledLines;
+        }
+    }
+}
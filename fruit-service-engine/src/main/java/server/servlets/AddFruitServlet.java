@@ -2,8 +2,6 @@ package server.servlets;
 
 import java.io.IOException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -12,19 +10,19 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import model.FruitPrice;
-import server.FruitComputeEngine;
+import server.interfaces.Compute;
 import server.tasks.AddFruitPrice;
+import server.util.RMIConnectionHelper;
 
 // This servlet handles adding fruit prices to the remote compute engine
 @WebServlet("/addFruit")
 public class AddFruitServlet extends HttpServlet {
-    private FruitComputeEngine computeEngine;
+    private Compute computeEngine;
 
     @Override
     public void init() throws ServletException {
         try {
-            Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-            computeEngine = (FruitComputeEngine) registry.lookup("FruitComputeEngine");
+            computeEngine = RMIConnectionHelper.getCompute();
         } catch (Exception e) {
             throw new ServletException("Failed to connect to RMI registry", e);
         }
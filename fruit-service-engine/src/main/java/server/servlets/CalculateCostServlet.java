@@ -11,11 +11,23 @@ import javax.servlet.http.HttpServletResponse;
 import model.Receipt;
 import server.FruitComputeTaskRegistry;
 import server.tasks.CalculateCost;
+import server.util.RMIConnectionHelper;
 
 // This servlet handles the calculation of fruit costs based on user input
 @WebServlet("/calculateCost")
 public class CalculateCostServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
+    // Shared by all requests; runTask keeps no per-request state
+    private FruitComputeTaskRegistry taskRegistry;
+
+    @Override
+    public void init() throws ServletException {
+        try {
+            taskRegistry = new FruitComputeTaskRegistry(RMIConnectionHelper.getCompute());
+        } catch (Exception e) {
+            throw new ServletException("Failed to connect to RMI registry", e);
+        }
+    }
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -29,7 +41,6 @@ public class CalculateCostServlet extends HttpServlet {
             double amountGiven = Double.parseDouble(amountGivenParam);
             
             CalculateCost task = new CalculateCost(fruitName, quantity, amountGiven, cashier);
-            FruitComputeTaskRegistry taskRegistry = new FruitComputeTaskRegistry();
             Receipt receipt = taskRegistry.runTask(task);
 
             response.setContentType("text/plain");
@@ -10,11 +10,23 @@ import javax.servlet.http.HttpServletResponse;
 
 import server.FruitComputeTaskRegistry;
 import server.tasks.DeleteFruitPrice;
+import server.util.RMIConnectionHelper;
 
 // This servlet handles the deletion of fruit prices from the registry
 @WebServlet("/deleteFruit")
 public class DeleteFruitServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
+    // Shared by all requests; runTask keeps no per-request state
+    private FruitComputeTaskRegistry taskRegistry;
+
+    @Override
+    public void init() throws ServletException {
+        try {
+            taskRegistry = new FruitComputeTaskRegistry(RMIConnectionHelper.getCompute());
+        } catch (Exception e) {
+            throw new ServletException("Failed to connect to RMI registry", e);
+        }
+    }
 
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         String fruitName = request.getParameter("fruitName");
@@ -25,7 +37,6 @@ public class DeleteFruitServlet extends HttpServlet {
         }
 
         DeleteFruitPrice deleteTask = new DeleteFruitPrice(fruitName);
-        FruitComputeTaskRegistry taskRegistry = new FruitComputeTaskRegistry();
         String result = taskRegistry.runTask(deleteTask);
 
         if (result != null && result.contains("successfully")) {
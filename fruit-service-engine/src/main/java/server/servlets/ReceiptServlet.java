@@ -8,12 +8,30 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import model.Money;
 import model.Receipt;
+import server.FruitComputeTaskRegistry;
+import server.util.RMIConnectionHelper;
 
 // This servlet handles the generation of a receipt after a transaction
 @WebServlet("/receipt")
 public class ReceiptServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
+    private static final JsonFactory JSON = new JsonFactory();
+    // Shared by all requests; recordReceipt keeps no per-request state
+    private FruitComputeTaskRegistry taskRegistry;
+
+    @Override
+    public void init() throws ServletException {
+        try {
+            taskRegistry = new FruitComputeTaskRegistry(RMIConnectionHelper.getCompute());
+        } catch (Exception e) {
+            throw new ServletException("Failed to connect to RMI registry", e);
+        }
+    }
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -27,22 +45,40 @@ public class ReceiptServlet extends HttpServlet {
             double changeDue = amountGiven - totalCost;
 
             Receipt receipt = new Receipt(totalCost, amountGiven, changeDue, cashier);
-            
-            // Here you would typically save the receipt to a database or perform further processing
+            // Kept in the engine's receipt journal; 0 if it could not be
+            long receiptNumber = taskRegistry.recordReceipt(receipt);
 
             response.setContentType("application/json");
-            // Create a simple JSON response manually
-            String jsonResponse = String.format(
-                "{\"totalCost\":%.2f,\"amountGiven\":%.2f,\"changeDue\":%.2f,\"cashier\":\"%s\"}",
-                receipt.getTotalCost(), receipt.getAmountGiven(), receipt.getChangeDue(), receipt.getCashier()
-            );
-            response.getWriter().write(jsonResponse);
+            response.setCharacterEncoding("UTF-8");
+            // Amounts are written as exact two-decimal numbers; the generator escapes the cashier name
+            try (JsonGenerator json = JSON.createGenerator(response.getWriter())) {
+                json.writeStartObject();
+                json.writeNumberField("receiptNumber", receiptNumber);
+                writeMoney(json, "totalCost", receipt.getTotalCents());
+                writeMoney(json, "amountGiven", receipt.getAmountGivenCents());
+                writeMoney(json, "changeDue", receipt.getChangeDueCents());
+                json.writeStringField("cashier", receipt.getCashier());
+                json.writeEndObject();
+            }
         } catch (NumberFormatException e) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            response.getWriter().write("{\"error\":\"Invalid number format: " + e.getMessage() + "\"}");
+            writeError(response, "Invalid number format: " + e.getMessage());
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            response.getWriter().write("{\"error\":\"Server error: " + e.getMessage() + "\"}");
+            writeError(response, "Server error: " + e.getMessage());
+        }
+    }
+
+    private static void writeMoney(JsonGenerator json, String field, long cents) throws IOException {
+        json.writeFieldName(field);
+        json.writeNumber(Money.appendMoney(new StringBuilder(24), cents).toString());
+    }
+
+    private static void writeError(HttpServletResponse response, String message) throws IOException {
+        try (JsonGenerator json = JSON.createGenerator(response.getWriter())) {
+            json.writeStartObject();
+            json.writeStringField("error", message);
+            json.writeEndObject();
         }
     }
 }
\ No newline at end of file
@@ -10,11 +10,23 @@ import javax.servlet.http.HttpServletResponse;
 
 import server.FruitComputeTaskRegistry;
 import server.tasks.UpdateFruitPrice;
+import server.util.RMIConnectionHelper;
 
 // This servlet handles the updating of fruit prices in the registry
 @WebServlet("/updateFruit")
 public class UpdateFruitServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
+    // Shared by all requests; runTask keeps no per-request state
+    private FruitComputeTaskRegistry taskRegistry;
+
+    @Override
+    public void init() throws ServletException {
+        try {
+            taskRegistry = new FruitComputeTaskRegistry(RMIConnectionHelper.getCompute());
+        } catch (Exception e) {
+            throw new ServletException("Failed to connect to RMI registry", e);
+        }
+    }
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -25,7 +37,6 @@ public class UpdateFruitServlet extends HttpServlet {
             double newPrice = Double.parseDouble(newPriceParam);
             
             UpdateFruitPrice updateTask = new UpdateFruitPrice(fruitName, newPrice);
-            FruitComputeTaskRegistry taskRegistry = new FruitComputeTaskRegistry();
             
             String result = taskRegistry.runTask(updateTask);
             response.getWriter().write(result != null ? result : "Fruit price updated successfully.");
@@ -0,0 +1,245 @@
+package server.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import model.CartLine;
+import server.util.TimerWheel;
+
+// Shopping carts kept on the engine, one per session id (a browser cookie, a till), so any number of
+// users can fill carts at once without seeing each other's lines.
+// Carts live in a concurrent map and each is changed under its own lock, so two sessions never wait
+// on each other. Adding a fruit already in the cart adds to its quantity, and a cart holds at most
+// MAX_LINES fruits of at most MAX_NAME_LENGTH characters, so one session can never take more than a
+// few kilobytes; MAX_SESSIONS caps how many carts are open at once.
+// A cart nobody has touched for the idle time is dropped. Each cart is put on a timer wheel for the
+// time it would go idle; when that comes round a ticker thread drops it, or puts it back for its new
+// idle time if it was used since. Using a cart only stamps its last access, and the ticker looks only
+// at carts whose time is up, so eviction never scans every session.
+//
+// Tuning: -Dfruit.cart.idleSeconds (default 1800), -Dfruit.cart.maxLines (default 100),
+// -Dfruit.cart.maxSessions (default 100000)
+public final class CartSessionStore {
+    public static final int MAX_SESSION_ID_LENGTH = 128;
+    public static final int MAX_NAME_LENGTH = 256;
+    private static final long IDLE_MILLIS =
+            TimeUnit.SECONDS.toMillis(Math.max(1, Long.getLong("fruit.cart.idleSeconds", 1800)));
+    private static final int MAX_LINES = Math.max(1, Integer.getInteger("fruit.cart.maxLines", 100));
+    private static final int MAX_SESSIONS = Math.max(1, Integer.getInteger("fruit.cart.maxSessions", 100_000));
+    private static final long TICK_MILLIS = 1000;
+    // Enough slots for the default idle time to fit in one turn of the wheel
+    private static final int MAX_SLOTS = 4096;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final TimerWheel<Session> idleTimers;
+    private final long idleMillis;
+    private final int maxLines;
+    private final int maxSessions;
+    private final long startNanos = System.nanoTime();
+
+    // One cart; everything below the id is guarded by the session's lock
+    private static final class Session {
+        final String id;
+        String[] fruitNames = new String[4];
+        int[] quantities = new int[4];
+        int size;
+        long lastAccessMillis;
+        // Set once the cart has left the map; a caller holding it must look the session up again
+        boolean evicted;
+
+        Session(String id, long nowMillis) {
+            this.id = id;
+            this.lastAccessMillis = nowMillis;
+        }
+
+        void add(String fruitName, int quantity, int maxLines) {
+            for (int i = 0; i < size; i++) {
+                if (fruitNames[i].equals(fruitName)) {
+                    quantities[i] = Math.addExact(quantities[i], quantity);
+                    return;
+                }
+            }
+            if (size == maxLines) {
+                throw new IllegalStateException("Cart is full: at most " + maxLines + " different fruits");
+            }
+            if (size == fruitNames.length) {
+                int capacity = Math.min(maxLines, size * 2);
+                fruitNames = Arrays.copyOf(fruitNames, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+            }
+            fruitNames[size] = fruitName;
+            quantities[size] = quantity;
+            size++;
+        }
+
+        void remove(String fruitName) {
+            for (int i = 0; i < size; i++) {
+                if (fruitNames[i].equals(fruitName)) {
+                    System.arraycopy(fruitNames, i + 1, fruitNames, i, size - i - 1);
+                    System.arraycopy(quantities, i + 1, quantities, i, size - i - 1);
+                    fruitNames[--size] = null;
+                    return;
+                }
+            }
+        }
+
+        // Marks the cart gone and lets go of its lines, since the idle timer keeps the session
+        // reachable until its slot comes round
+        void close() {
+            evicted = true;
+            fruitNames = null;
+            quantities = null;
+            size = 0;
+        }
+
+        List<CartLine> lines() {
+            List<CartLine> lines = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                lines.add(new CartLine(fruitNames[i], quantities[i]));
+            }
+            return lines;
+        }
+    }
+
+    public CartSessionStore() {
+        this(IDLE_MILLIS, MAX_LINES, MAX_SESSIONS, true);
+    }
+
+    // Without the ticker, idle carts are dropped only when expire is called
+    CartSessionStore(long idleMillis, int maxLines, int maxSessions, boolean startTicker) {
+        this.idleMillis = idleMillis;
+        this.maxLines = maxLines;
+        this.maxSessions = maxSessions;
+        this.idleTimers = new TimerWheel<>(TICK_MILLIS, (int) Math.min(MAX_SLOTS, idleMillis / TICK_MILLIS + 1), 0);
+        if (startTicker) {
+            ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cart-idle-ticker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(() -> expire(nowMillis()), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // The session's lines in the order they were first added; empty if it has no cart
+    public List<CartLine> lines(String sessionId) {
+        Session session = sessions.get(checkSessionId(sessionId));
+        if (session == null) {
+            return Collections.emptyList();
+        }
+        synchronized (session) {
+            if (session.evicted) {
+                return Collections.emptyList();
+            }
+            session.lastAccessMillis = nowMillis();
+            return session.lines();
+        }
+    }
+
+    // Adds quantity of the fruit to the session's cart, opening the cart if need be, and returns its lines
+    public List<CartLine> add(String sessionId, String fruitName, int quantity) {
+        checkSessionId(sessionId);
+        if (fruitName == null || fruitName.isEmpty() || fruitName.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Fruit name must be 1 to " + MAX_NAME_LENGTH + " characters");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be at least 1: " + quantity);
+        }
+        while (true) {
+            Session session = open(sessionId);
+            synchronized (session) {
+                if (!session.evicted) {
+                    session.add(fruitName, quantity, maxLines);
+                    session.lastAccessMillis = nowMillis();
+                    return session.lines();
+                }
+            }
+        }
+    }
+
+    // Takes the fruit out of the session's cart and returns what is left
+    public List<CartLine> remove(String sessionId, String fruitName) {
+        Session session = sessions.get(checkSessionId(sessionId));
+        if (session == null) {
+            return Collections.emptyList();
+        }
+        synchronized (session) {
+            if (session.evicted) {
+                return Collections.emptyList();
+            }
+            session.remove(fruitName);
+            session.lastAccessMillis = nowMillis();
+            return session.lines();
+        }
+    }
+
+    // Closes the session's cart and returns the lines it held, for a checkout or to empty it
+    public List<CartLine> take(String sessionId) {
+        Session session = sessions.remove(checkSessionId(sessionId));
+        if (session == null) {
+            return Collections.emptyList();
+        }
+        synchronized (session) {
+            List<CartLine> lines = session.lines();
+            session.close();
+            return lines;
+        }
+    }
+
+    // Open carts, including idle ones the ticker has not got to yet
+    public int size() {
+        return sessions.size();
+    }
+
+    // Drops carts idle since before nowMillis less the idle time
+    void expire(long nowMillis) {
+        idleTimers.advance(nowMillis, session -> {
+            synchronized (session) {
+                if (session.evicted) {
+                    return;
+                }
+                long idleAtMillis = session.lastAccessMillis + idleMillis;
+                if (idleAtMillis > nowMillis) {
+                    idleTimers.schedule(session, idleAtMillis);
+                    return;
+                }
+                session.close();
+            }
+            sessions.remove(session.id, session);
+        });
+    }
+
+    private Session open(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session != null) {
+            return session;
+        }
+        if (sessions.size() >= maxSessions) {
+            throw new IllegalStateException("Too many open carts, try again later");
+        }
+        Session created = new Session(sessionId, nowMillis());
+        session = sessions.putIfAbsent(sessionId, created);
+        if (session != null) {
+            return session;
+        }
+        idleTimers.schedule(created, created.lastAccessMillis + idleMillis);
+        return created;
+    }
+
+    private static String checkSessionId(String sessionId) {
+        if (sessionId == null || sessionId.isEmpty() || sessionId.length() > MAX_SESSION_ID_LENGTH) {
+            throw new IllegalArgumentException("Session id must be 1 to " + MAX_SESSION_ID_LENGTH + " characters");
+        }
+        return sessionId;
+    }
+
+    private long nowMillis() {
+        return (System.nanoTime() - startNanos) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,395 @@
+package server.store;
+
+import java.util.Arrays;
+
+// An immutable copy of the price catalog at one version, published by VersionedCatalog.
+// It is a persistent hash trie (CHAMP layout): each node holds up to 32 slots, chosen by 5 bits of
+// the name's hash, with inline entries in one pair of arrays and child nodes in another. A Builder
+// copies only the nodes on the path to the entry it changes (about log32(n) of them) and shares
+// the rest with the versions before it, so keeping an old version costs only what has changed
+// since. Nodes the Builder copied or created since its last publish are changed in place, so a
+// batch of changes published as one version copies each path only once. Names whose hashes are
+// equal in all 32 bits share a collision node.
+public final class CatalogSnapshot {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    // Nodes at this shift or deeper have used up the hash and hold colliding names in plain arrays
+    private static final int COLLISION_SHIFT = 32;
+    private static final String[] NO_NAMES = new String[0];
+    private static final long[] NO_CENTS = new long[0];
+    private static final Node[] NO_NODES = new Node[0];
+
+    static final CatalogSnapshot EMPTY = new CatalogSnapshot(new Node(null, 0, 0, NO_NAMES, NO_CENTS, NO_NODES), 0, 0);
+
+    private final Node root;
+    private final int size;
+    private final long version;
+
+    // Fields change only while the node belongs to the Builder that is editing it, before it is
+    // published; the volatile write that publishes a version makes them visible to readers
+    private static final class Node {
+        // The Builder edit that may change this node in place; null once built or published
+        Object owner;
+        // Slots holding an entry (in names/cents) and slots holding a child node (in nodes)
+        int dataMap;
+        int nodeMap;
+        String[] names;
+        long[] cents;
+        Node[] nodes;
+
+        Node(Object owner, int dataMap, int nodeMap, String[] names, long[] cents, Node[] nodes) {
+            this.owner = owner;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.names = names;
+            this.cents = cents;
+            this.nodes = nodes;
+        }
+    }
+
+    private CatalogSnapshot(Node root, int size, long version) {
+        this.root = root;
+        this.size = size;
+        this.version = version;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getCents(String fruitName, long defaultCents) {
+        int hash = hash(fruitName);
+        Node node = root;
+        for (int shift = 0; shift < COLLISION_SHIFT; shift += BITS) {
+            int bit = bit(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+                int index = index(node.dataMap, bit);
+                return node.names[index].equals(fruitName) ? node.cents[index] : defaultCents;
+            }
+            if ((node.nodeMap & bit) == 0) {
+                return defaultCents;
+            }
+            node = node.nodes[index(node.nodeMap, bit)];
+        }
+        for (int i = 0; i < node.names.length; i++) {
+            if (node.names[i].equals(fruitName)) {
+                return node.cents[i];
+            }
+        }
+        return defaultCents;
+    }
+
+    // Builds a snapshot of count entries with distinct names in one pass. The entries are sorted by
+    // their hash bits in the order the trie consumes them, so every node is built once, complete,
+    // instead of being copied for each entry added under it
+    static CatalogSnapshot of(String[] names, long[] cents, int count, long version) {
+        int[] hashes = new int[count];
+        long[] sortKeys = new long[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = hash(names[i]);
+            sortKeys[i] = (long) (trieOrder(hashes[i]) ^ Integer.MIN_VALUE) << 32 | i;
+        }
+        Arrays.sort(sortKeys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) sortKeys[i];
+        }
+        return new CatalogSnapshot(build(names, cents, hashes, order, 0, count, 0), count, version);
+    }
+
+    // Applies changes to a private copy of a snapshot and publishes them as the next version.
+    // Not thread-safe; VersionedCatalog calls it under its lock
+    static final class Builder {
+        private Node root;
+        private int size;
+        private long version;
+        // Identifies the nodes this builder may still change in place; replaced on every publish
+        private Object edit = new Object();
+        private boolean changed;
+
+        Builder(CatalogSnapshot base) {
+            root = base.root;
+            size = base.size;
+            version = base.version;
+        }
+
+        boolean hasChanges() {
+            return changed;
+        }
+
+        void put(String fruitName, long priceCents) {
+            boolean[] added = new boolean[1];
+            root = CatalogSnapshot.put(root, fruitName, hash(fruitName), priceCents, 0, edit, added);
+            if (added[0]) {
+                size++;
+            }
+            changed = true;
+        }
+
+        void remove(String fruitName) {
+            boolean[] removed = new boolean[1];
+            root = CatalogSnapshot.remove(root, fruitName, hash(fruitName), 0, edit, removed);
+            if (removed[0]) {
+                size--;
+            }
+            changed = true;
+        }
+
+        // Freezes everything changed so far as the next version; later changes copy what they touch
+        CatalogSnapshot publish() {
+            edit = new Object();
+            changed = false;
+            return new CatalogSnapshot(root, size, ++version);
+        }
+    }
+
+    // Builds the node for order[from, to), whose hashes agree below shift
+    private static Node build(String[] names, long[] cents, int[] hashes, int[] order, int from, int to, int shift) {
+        if (shift >= COLLISION_SHIFT) {
+            String[] nodeNames = new String[to - from];
+            long[] nodeCents = new long[to - from];
+            for (int i = from; i < to; i++) {
+                nodeNames[i - from] = names[order[i]];
+                nodeCents[i - from] = cents[order[i]];
+            }
+            return new Node(null, 0, 0, nodeNames, nodeCents, NO_NODES);
+        }
+        int dataMap = 0;
+        int nodeMap = 0;
+        for (int i = from; i < to; ) {
+            int end = groupEnd(hashes, order, i, to, shift);
+            if (end - i == 1) {
+                dataMap |= bit(hashes[order[i]], shift);
+            } else {
+                nodeMap |= bit(hashes[order[i]], shift);
+            }
+            i = end;
+        }
+        String[] nodeNames = new String[Integer.bitCount(dataMap)];
+        long[] nodeCents = new long[nodeNames.length];
+        Node[] nodes = new Node[Integer.bitCount(nodeMap)];
+        int dataCount = 0;
+        int nodeCount = 0;
+        for (int i = from; i < to; ) {
+            int end = groupEnd(hashes, order, i, to, shift);
+            if (end - i == 1) {
+                nodeNames[dataCount] = names[order[i]];
+                nodeCents[dataCount++] = cents[order[i]];
+            } else {
+                nodes[nodeCount++] = build(names, cents, hashes, order, i, end, shift + BITS);
+            }
+            i = end;
+        }
+        return new Node(null, dataMap, nodeMap, nodeNames, nodeCents, nodes);
+    }
+
+    // End of the run starting at from that falls in the same slot at this shift
+    private static int groupEnd(int[] hashes, int[] order, int from, int to, int shift) {
+        int bit = bit(hashes[order[from]], shift);
+        int end = from + 1;
+        while (end < to && bit(hashes[order[end]], shift) == bit) {
+            end++;
+        }
+        return end;
+    }
+
+    // The hash with its 5-bit groups in reverse order, so sorting by it sorts by slot at each level
+    private static int trieOrder(int hash) {
+        int key = 0;
+        for (int shift = 0; shift < COLLISION_SHIFT; shift += BITS) {
+            int width = Math.min(BITS, COLLISION_SHIFT - shift);
+            key = (key << width) | ((hash >>> shift) & ((1 << width) - 1));
+        }
+        return key;
+    }
+
+    // Returns the node with the entry added or overwritten: the same node if it could be changed in
+    // place (or nothing changed), otherwise a copy
+    private static Node put(Node node, String name, int hash, long priceCents, int shift, Object edit, boolean[] added) {
+        if (shift >= COLLISION_SHIFT) {
+            for (int i = 0; i < node.names.length; i++) {
+                if (node.names[i].equals(name)) {
+                    if (node.cents[i] == priceCents) {
+                        return node;
+                    }
+                    Node editable = editable(node, edit);
+                    editable.cents[i] = priceCents;
+                    return editable;
+                }
+            }
+            added[0] = true;
+            return insertEntry(editable(node, edit), node.names.length, name, priceCents, 0);
+        }
+
+        int bit = bit(hash, shift);
+        if ((node.dataMap & bit) != 0) {
+            int index = index(node.dataMap, bit);
+            String existing = node.names[index];
+            if (existing.equals(name)) {
+                if (node.cents[index] == priceCents) {
+                    return node;
+                }
+                Node editable = editable(node, edit);
+                editable.cents[index] = priceCents;
+                return editable;
+            }
+            // Two names share this slot: push both down into a new child
+            added[0] = true;
+            Node child = pair(existing, node.cents[index], hash(existing), name, priceCents, hash, shift + BITS, edit);
+            return entryToNode(editable(node, edit), bit, index, child);
+        }
+        if ((node.nodeMap & bit) != 0) {
+            int index = index(node.nodeMap, bit);
+            Node child = node.nodes[index];
+            Node newChild = put(child, name, hash, priceCents, shift + BITS, edit, added);
+            if (newChild == child) {
+                return node;
+            }
+            Node editable = editable(node, edit);
+            editable.nodes[index] = newChild;
+            return editable;
+        }
+        added[0] = true;
+        return insertEntry(editable(node, edit), index(node.dataMap, bit), name, priceCents, bit);
+    }
+
+    private static Node remove(Node node, String name, int hash, int shift, Object edit, boolean[] removed) {
+        if (shift >= COLLISION_SHIFT) {
+            for (int i = 0; i < node.names.length; i++) {
+                if (node.names[i].equals(name)) {
+                    removed[0] = true;
+                    return removeEntry(editable(node, edit), i, 0);
+                }
+            }
+            return node;
+        }
+
+        int bit = bit(hash, shift);
+        if ((node.dataMap & bit) != 0) {
+            int index = index(node.dataMap, bit);
+            if (!node.names[index].equals(name)) {
+                return node;
+            }
+            removed[0] = true;
+            return removeEntry(editable(node, edit), index, bit);
+        }
+        if ((node.nodeMap & bit) != 0) {
+            int index = index(node.nodeMap, bit);
+            Node child = node.nodes[index];
+            Node newChild = remove(child, name, hash, shift + BITS, edit, removed);
+            if (!removed[0]) {
+                return node;
+            }
+            // A child left with a single entry is folded back into this node
+            if (newChild.nodes.length == 0 && newChild.names.length == 1) {
+                return nodeToEntry(editable(node, edit), bit, index, newChild.names[0], newChild.cents[0]);
+            }
+            if (newChild == child) {
+                return node;
+            }
+            Node editable = editable(node, edit);
+            editable.nodes[index] = newChild;
+            return editable;
+        }
+        return node;
+    }
+
+    // The node itself if this edit created it, otherwise a copy that this edit owns
+    private static Node editable(Node node, Object edit) {
+        if (node.owner == edit) {
+            return node;
+        }
+        return new Node(edit, node.dataMap, node.nodeMap, node.names.clone(), node.cents.clone(), node.nodes.clone());
+    }
+
+    // A node holding two different names, nested as deep as their hashes agree
+    private static Node pair(String name1, long cents1, int hash1, String name2, long cents2, int hash2, int shift,
+                             Object edit) {
+        if (shift >= COLLISION_SHIFT) {
+            return new Node(edit, 0, 0, new String[] {name1, name2}, new long[] {cents1, cents2}, NO_NODES);
+        }
+        int bit1 = bit(hash1, shift);
+        int bit2 = bit(hash2, shift);
+        if (bit1 == bit2) {
+            Node child = pair(name1, cents1, hash1, name2, cents2, hash2, shift + BITS, edit);
+            return new Node(edit, 0, bit1, NO_NAMES, NO_CENTS, new Node[] {child});
+        }
+        // Entries are kept in slot order
+        if (Integer.compareUnsigned(bit1, bit2) < 0) {
+            return new Node(edit, bit1 | bit2, 0, new String[] {name1, name2}, new long[] {cents1, cents2}, NO_NODES);
+        }
+        return new Node(edit, bit1 | bit2, 0, new String[] {name2, name1}, new long[] {cents2, cents1}, NO_NODES);
+    }
+
+    // The helpers below change a node this edit owns and return it
+
+    private static Node insertEntry(Node node, int index, String name, long priceCents, int bit) {
+        int count = node.names.length;
+        String[] names = new String[count + 1];
+        long[] cents = new long[count + 1];
+        System.arraycopy(node.names, 0, names, 0, index);
+        System.arraycopy(node.cents, 0, cents, 0, index);
+        names[index] = name;
+        cents[index] = priceCents;
+        System.arraycopy(node.names, index, names, index + 1, count - index);
+        System.arraycopy(node.cents, index, cents, index + 1, count - index);
+        node.names = names;
+        node.cents = cents;
+        node.dataMap |= bit;
+        return node;
+    }
+
+    private static Node removeEntry(Node node, int index, int bit) {
+        int count = node.names.length;
+        String[] names = new String[count - 1];
+        long[] cents = new long[count - 1];
+        System.arraycopy(node.names, 0, names, 0, index);
+        System.arraycopy(node.cents, 0, cents, 0, index);
+        System.arraycopy(node.names, index + 1, names, index, count - index - 1);
+        System.arraycopy(node.cents, index + 1, cents, index, count - index - 1);
+        node.names = names;
+        node.cents = cents;
+        node.dataMap &= ~bit;
+        return node;
+    }
+
+    // Replaces the entry in the given slot with a child node
+    private static Node entryToNode(Node node, int bit, int entryIndex, Node child) {
+        removeEntry(node, entryIndex, bit);
+        int nodeIndex = index(node.nodeMap, bit);
+        Node[] nodes = new Node[node.nodes.length + 1];
+        System.arraycopy(node.nodes, 0, nodes, 0, nodeIndex);
+        nodes[nodeIndex] = child;
+        System.arraycopy(node.nodes, nodeIndex, nodes, nodeIndex + 1, node.nodes.length - nodeIndex);
+        node.nodes = nodes;
+        node.nodeMap |= bit;
+        return node;
+    }
+
+    // Replaces the child node in the given slot with an entry
+    private static Node nodeToEntry(Node node, int bit, int nodeIndex, String name, long priceCents) {
+        Node[] nodes = new Node[node.nodes.length - 1];
+        System.arraycopy(node.nodes, 0, nodes, 0, nodeIndex);
+        System.arraycopy(node.nodes, nodeIndex + 1, nodes, nodeIndex, node.nodes.length - nodeIndex - 1);
+        node.nodes = nodes;
+        node.nodeMap &= ~bit;
+        return insertEntry(node, index(node.dataMap, bit), name, priceCents, bit);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,264 @@
+package server.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import model.Money;
+import server.util.AsyncLogger;
+
+// Durability layer under the engine's price table.
+// Every mutation is appended to a PriceLog from the table's change listener; a background task
+// periodically writes a PriceSnapshot and deletes the log segments it covers. open() rebuilds the
+// table from the newest snapshot (memory-mapped) plus the log segments written after it.
+//
+// Tuning: -Dfruit.wal.sync (default true) makes mutations wait for their group commit;
+// -Dfruit.snapshot.intervalSeconds (default 300) and -Dfruit.snapshot.logRecords (default 500000)
+// control how often snapshots are taken
+public class DurablePriceCatalog implements FruitPriceTable.ChangeListener, Closeable {
+    private static final AsyncLogger logger = AsyncLogger.getLogger(DurablePriceCatalog.class);
+    private static final boolean SYNC_COMMIT = Boolean.parseBoolean(System.getProperty("fruit.wal.sync", "true"));
+    private static final long SNAPSHOT_INTERVAL_MILLIS = Long.getLong("fruit.snapshot.intervalSeconds", 300) * 1000;
+    private static final long SNAPSHOT_LOG_RECORDS = Long.getLong("fruit.snapshot.logRecords", 500_000);
+
+    private final Path directory;
+    private final FruitPriceTable table;
+    private final PriceLog log;
+    private final ScheduledExecutorService snapshotter;
+    private final int recoveredEntries;
+    private final long recoveryMillis;
+    private long lastSnapshotMillis = System.currentTimeMillis();
+    // The last log sequence each thread appended, so awaitDurable waits for that thread's own changes
+    // and not for whatever other writers appended after them
+    private final ThreadLocal<long[]> appendedByThread = ThreadLocal.withInitial(() -> new long[1]);
+    // Set by close(). The table keeps this catalog as its listener, under the versioning and streaming
+    // layers stacked on it, so a closed catalog stops logging rather than unhooking them all
+    private volatile boolean closed;
+
+    private DurablePriceCatalog(Path directory, FruitPriceTable table, PriceLog log, int recoveredEntries,
+                                long recoveryMillis, boolean compactNow) {
+        this.directory = directory;
+        this.table = table;
+        this.log = log;
+        this.recoveredEntries = recoveredEntries;
+        this.recoveryMillis = recoveryMillis;
+
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "price-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        table.setChangeListener(this);
+        if (compactNow) {
+            // Fold the replayed segments into a snapshot so the next start does not replay them again
+            snapshotter.execute(this::snapshotQuietly);
+        }
+        snapshotter.scheduleWithFixedDelay(this::maybeSnapshot, 5, 5, TimeUnit.SECONDS);
+    }
+
+    public static DurablePriceCatalog open(Path directory) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+
+        List<Long> snapshots = generations(directory, "snapshot-", ".dat");
+        long snapshotGeneration = snapshots.isEmpty() ? -1 : snapshots.get(snapshots.size() - 1);
+
+        FruitPriceTable table;
+        if (snapshotGeneration >= 0) {
+            Path snapshot = PriceSnapshot.path(directory, snapshotGeneration);
+            table = new FruitPriceTable(PriceSnapshot.entryCount(snapshot));
+            PriceSnapshot.load(snapshot, table);
+        } else {
+            table = new FruitPriceTable();
+        }
+
+        long lastGeneration = snapshotGeneration;
+        boolean replayed = false;
+        for (long generation : generations(directory, "wal-", ".log")) {
+            if (generation <= snapshotGeneration) {
+                // Left behind by a crash between writing a snapshot and cleaning up
+                Files.deleteIfExists(PriceLog.segmentPath(directory, generation));
+                continue;
+            }
+            replay(PriceLog.segmentPath(directory, generation), table);
+            lastGeneration = generation;
+            replayed = true;
+        }
+
+        PriceLog log = new PriceLog(directory, lastGeneration + 1);
+        long recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return new DurablePriceCatalog(directory, table, log, table.size(), recoveryMillis, replayed);
+    }
+
+    public FruitPriceTable getTable() {
+        return table;
+    }
+
+    public int getRecoveredEntries() {
+        return recoveredEntries;
+    }
+
+    public long getRecoveryMillis() {
+        return recoveryMillis;
+    }
+
+    @Override
+    public void onPut(String fruitName, long priceCents) {
+        if (closed) {
+            return;
+        }
+        appendedByThread.get()[0] = log.appendPut(fruitName, priceCents);
+    }
+
+    @Override
+    public void onRemove(String fruitName) {
+        if (closed) {
+            return;
+        }
+        appendedByThread.get()[0] = log.appendDelete(fruitName);
+    }
+
+    // Called by the engine before a mutation: after a log failure the change could never be made
+    // durable, so it is refused before it reaches the table
+    public void checkWritable() throws IOException {
+        if (closed) {
+            throw new IOException("Price catalog is closed");
+        }
+        log.checkWritable();
+    }
+
+    // Called by the engine after a mutation, outside the table's locks, on the thread that made it.
+    // Sequences only grow, so waiting for the thread's last append covers all of its earlier ones
+    public void awaitDurable() throws IOException {
+        if (SYNC_COMMIT) {
+            log.awaitDurable(appendedByThread.get()[0]);
+        }
+    }
+
+    // Writes a snapshot of the current table and drops the log segments it makes redundant
+    public synchronized void snapshot() throws IOException {
+        long coveredGeneration = log.rotate();
+        PriceSnapshot.write(directory, coveredGeneration, table);
+        lastSnapshotMillis = System.currentTimeMillis();
+
+        for (long generation : generations(directory, "wal-", ".log")) {
+            if (generation <= coveredGeneration) {
+                Files.deleteIfExists(PriceLog.segmentPath(directory, generation));
+            }
+        }
+        for (long generation : generations(directory, "snapshot-", ".dat")) {
+            if (generation < coveredGeneration) {
+                try {
+                    Files.deleteIfExists(PriceSnapshot.path(directory, generation));
+                } catch (IOException e) {
+                    // Still mapped on some platforms; the next snapshot retries the delete
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        snapshotter.shutdown();
+        // A snapshot still running would rotate a closed log
+        try {
+            snapshotter.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closed = true;
+        log.close();
+    }
+
+    private void maybeSnapshot() {
+        long records = log.recordsInCurrentSegment();
+        boolean due = System.currentTimeMillis() - lastSnapshotMillis >= SNAPSHOT_INTERVAL_MILLIS;
+        if (records >= SNAPSHOT_LOG_RECORDS || (due && records > 0)) {
+            snapshotQuietly();
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            logger.error("Price snapshot failed: {}", e.getMessage());
+        }
+    }
+
+    // Applies a log segment to the table; a torn or corrupt tail is truncated away
+    private static void replay(Path segment, FruitPriceTable table) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            // Read into the heap rather than mapping, so the tail can still be truncated on Windows
+            ByteBuffer data = ByteBuffer.allocate((int) size);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // keep reading
+            }
+            data.flip();
+
+            CRC32 crc = new CRC32();
+            int validEnd = 0;
+            while (data.remaining() >= PriceLog.HEADER_BYTES) {
+                int bodyLength = data.getInt();
+                int expectedCrc = data.getInt();
+                if (bodyLength < 3 || bodyLength > data.remaining()) {
+                    break;
+                }
+                int bodyStart = data.position();
+                crc.reset();
+                crc.update(data.array(), bodyStart, bodyLength);
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+
+                byte op = data.get();
+                int nameLength = data.getShort() & 0xFFFF;
+                String fruitName = new String(data.array(), data.position(), nameLength, StandardCharsets.UTF_8);
+                data.position(data.position() + nameLength);
+                if (op == PriceLog.PUT_CENTS) {
+                    table.put(fruitName, data.getLong());
+                } else if (op == PriceLog.PUT) {
+                    table.put(fruitName, Money.toCents(Double.longBitsToDouble(data.getLong())));
+                } else {
+                    table.remove(fruitName);
+                }
+                data.position(bodyStart + bodyLength);
+                validEnd = data.position();
+            }
+            if (validEnd < size) {
+                logger.warn("Truncating torn price log tail in {} at byte {} of {}", segment.getFileName(), validEnd, size);
+                channel.truncate(validEnd);
+            }
+        }
+    }
+
+    private static List<Long> generations(Path directory, String prefix, String suffix) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+}
@@ -0,0 +1,282 @@
+package server.store;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+
+// Concurrent open-addressing (linear probing) table that maps fruit names to primitive prices.
+// Prices are stored as long cents (see model.Money), so lookups never box and never take a lock.
+// Writers claim key slots and publish values with CAS under one of several lock stripes chosen
+// by key hash; a resize takes every stripe, so the copy always sees a stable table.
+public class FruitPriceTable {
+    // Marks empty/deleted values; put and replace reject it as a price
+    private static final long ABSENT = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int STRIPES = 32;
+
+    private volatile Table table;
+    private final AtomicInteger size = new AtomicInteger();
+    // Times a name went from absent to present; lets SortedNameIndex tell when it is missing names
+    private final AtomicLong additions = new AtomicLong();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private volatile ChangeListener changeListener;
+
+    // Notified of every successful mutation while the key's stripe lock is still held,
+    // so for any one fruit the listener sees changes in exactly the order they were applied
+    public interface ChangeListener {
+        void onPut(String fruitName, long priceCents);
+
+        void onRemove(String fruitName);
+    }
+
+    private static final class Table {
+        final AtomicReferenceArray<String> keys;
+        final AtomicLongArray values;
+        final int mask;
+        final int threshold;
+        // Number of claimed key slots, including slots whose value has been deleted
+        final AtomicInteger used = new AtomicInteger();
+
+        Table(int capacity) {
+            keys = new AtomicReferenceArray<>(capacity);
+            values = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                values.lazySet(i, ABSENT);
+            }
+            mask = capacity - 1;
+            threshold = (capacity >> 1) + (capacity >> 2); // 75% load factor
+        }
+    }
+
+    public FruitPriceTable() {
+        this(MIN_CAPACITY);
+    }
+
+    public FruitPriceTable(int expectedSize) {
+        table = new Table(capacityFor(expectedSize));
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public long getCents(String fruitName, long defaultCents) {
+        Table t = table;
+        int slot = findSlot(t, fruitName);
+        if (slot < 0) {
+            return defaultCents;
+        }
+        long cents = t.values.get(slot);
+        return cents == ABSENT ? defaultCents : cents;
+    }
+
+    public boolean containsKey(String fruitName) {
+        Table t = table;
+        int slot = findSlot(t, fruitName);
+        return slot >= 0 && t.values.get(slot) != ABSENT;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getAdditions() {
+        return additions.get();
+    }
+
+    public ChangeListener getChangeListener() {
+        return changeListener;
+    }
+
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    // Visits every live entry without locking; entries changed during the walk may or may not be seen
+    public void forEach(ObjLongConsumer<String> action) {
+        Table t = table;
+        for (int i = 0; i <= t.mask; i++) {
+            String key = t.keys.get(i);
+            long cents = t.values.get(i);
+            if (key != null && cents != ABSENT) {
+                action.accept(key, cents);
+            }
+        }
+    }
+
+    // Inserts or overwrites the price for the given fruit
+    public void put(String fruitName, long priceCents) {
+        checkPrice(priceCents);
+        ReentrantLock stripe = stripeFor(fruitName);
+        while (true) {
+            stripe.lock();
+            try {
+                Table t = table;
+                int slot = claimSlot(t, fruitName);
+                if (slot >= 0) {
+                    if (t.values.getAndSet(slot, priceCents) == ABSENT) {
+                        size.incrementAndGet();
+                        additions.incrementAndGet();
+                    }
+                    ChangeListener listener = changeListener;
+                    if (listener != null) {
+                        listener.onPut(fruitName, priceCents);
+                    }
+                    return;
+                }
+            } finally {
+                stripe.unlock();
+            }
+            resize();
+        }
+    }
+
+    // Overwrites the price only if the fruit is present; returns false otherwise
+    public boolean replace(String fruitName, long priceCents) {
+        checkPrice(priceCents);
+        ReentrantLock stripe = stripeFor(fruitName);
+        stripe.lock();
+        try {
+            Table t = table;
+            int slot = findSlot(t, fruitName);
+            if (slot < 0) {
+                return false;
+            }
+            while (true) {
+                long current = t.values.get(slot);
+                if (current == ABSENT) {
+                    return false;
+                }
+                if (t.values.compareAndSet(slot, current, priceCents)) {
+                    ChangeListener listener = changeListener;
+                    if (listener != null) {
+                        listener.onPut(fruitName, priceCents);
+                    }
+                    return true;
+                }
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Removes the price for the given fruit; returns false if it was not present
+    public boolean remove(String fruitName) {
+        ReentrantLock stripe = stripeFor(fruitName);
+        stripe.lock();
+        try {
+            Table t = table;
+            int slot = findSlot(t, fruitName);
+            if (slot < 0) {
+                return false;
+            }
+            while (true) {
+                long current = t.values.get(slot);
+                if (current == ABSENT) {
+                    return false;
+                }
+                if (t.values.compareAndSet(slot, current, ABSENT)) {
+                    size.decrementAndGet();
+                    ChangeListener listener = changeListener;
+                    if (listener != null) {
+                        listener.onRemove(fruitName);
+                    }
+                    return true;
+                }
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private static int findSlot(Table t, String fruitName) {
+        int slot = hash(fruitName) & t.mask;
+        for (int probes = 0; probes <= t.mask; probes++) {
+            String key = t.keys.get(slot);
+            if (key == null) {
+                return -1;
+            }
+            if (key.equals(fruitName)) {
+                return slot;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+        return -1;
+    }
+
+    // Finds or claims the slot for the key; returns -1 if the table must grow first
+    private static int claimSlot(Table t, String fruitName) {
+        int slot = hash(fruitName) & t.mask;
+        for (int probes = 0; probes <= t.mask; probes++) {
+            String key = t.keys.get(slot);
+            if (key == null) {
+                if (t.used.get() >= t.threshold) {
+                    return -1;
+                }
+                if (t.keys.compareAndSet(slot, null, fruitName)) {
+                    t.used.incrementAndGet();
+                    return slot;
+                }
+                key = t.keys.get(slot);
+            }
+            if (key.equals(fruitName)) {
+                return slot;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+        return -1;
+    }
+
+    // Rebuilds the table without deleted slots, growing it if the live entries need the room
+    private void resize() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            Table old = table;
+            if (old.used.get() < old.threshold) {
+                return; // another writer already resized
+            }
+            Table grown = new Table(capacityFor(Math.max(size.get(), 1) * 2));
+            for (int i = 0; i <= old.mask; i++) {
+                String key = old.keys.get(i);
+                long cents = old.values.get(i);
+                if (key != null && cents != ABSENT) {
+                    int slot = claimSlot(grown, key);
+                    grown.values.set(slot, cents);
+                }
+            }
+            table = grown;
+        } finally {
+            for (ReentrantLock stripe : stripes) {
+                stripe.unlock();
+            }
+        }
+    }
+
+    private static void checkPrice(long priceCents) {
+        if (priceCents == ABSENT) {
+            throw new IllegalArgumentException("Price out of range: " + priceCents + " cents");
+        }
+    }
+
+    private ReentrantLock stripeFor(String fruitName) {
+        return stripes[(hash(fruitName) >>> 16) & (STRIPES - 1)];
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = Math.max(MIN_CAPACITY, (long) expectedSize * 4 / 3 + 1);
+        if (needed >= MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
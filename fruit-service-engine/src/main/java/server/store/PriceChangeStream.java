@@ -0,0 +1,104 @@
+package server.store;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import model.PriceBatch;
+import model.PriceChangeBatch;
+
+// Ordered stream of the table's mutations, read by replica engines.
+// It sits in front of the table's existing change listener (the write-ahead log) and numbers every
+// mutation while the key's stripe lock is held, so the sequence is one total order that agrees with
+// the order of changes to each fruit. The newest BACKLOG changes are kept in a ring; a replica that
+// falls further behind, or that followed an earlier run of this engine (another epoch), is told to
+// reload the whole catalog instead.
+//
+// Tuning: -Dfruit.replication.backlog (default 262144 changes, rounded up to a power of two)
+public class PriceChangeStream implements FruitPriceTable.ChangeListener {
+    private static final int BACKLOG = Integer.highestOneBit(
+            Math.max(1, Integer.getInteger("fruit.replication.backlog", 262_144) - 1) << 1);
+
+    private final FruitPriceTable.ChangeListener downstream;
+    private final long epoch = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE | 1;
+    private final String[] fruitNames = new String[BACKLOG];
+    private final long[] priceCents = new long[BACKLOG];
+    private final int mask = BACKLOG - 1;
+    private long headSequence;
+    private int waiters;
+
+    private PriceChangeStream(FruitPriceTable.ChangeListener downstream) {
+        this.downstream = downstream;
+    }
+
+    // Starts numbering the table's changes, passing each one on to its current listener
+    public static PriceChangeStream attach(FruitPriceTable table) {
+        PriceChangeStream stream = new PriceChangeStream(table.getChangeListener());
+        table.setChangeListener(stream);
+        return stream;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long getHeadSequence() {
+        return headSequence;
+    }
+
+    @Override
+    public void onPut(String fruitName, long cents) {
+        if (downstream != null) {
+            downstream.onPut(fruitName, cents);
+        }
+        append(fruitName, cents);
+    }
+
+    @Override
+    public void onRemove(String fruitName) {
+        if (downstream != null) {
+            downstream.onRemove(fruitName);
+        }
+        append(fruitName, PriceChangeBatch.DELETED);
+    }
+
+    private synchronized void append(String fruitName, long cents) {
+        int slot = (int) (headSequence & mask);
+        fruitNames[slot] = fruitName;
+        priceCents[slot] = cents;
+        headSequence++;
+        if (waiters > 0) {
+            notifyAll();
+        }
+    }
+
+    // Returns up to maxChanges changes after afterSequence, waiting up to timeoutMillis for the
+    // first one; an empty batch means the caller is up to date
+    public synchronized PriceChangeBatch read(long readerEpoch, long afterSequence, int maxChanges, long timeoutMillis)
+            throws InterruptedException {
+        if (readerEpoch != epoch || afterSequence > headSequence || afterSequence < headSequence - BACKLOG) {
+            return PriceChangeBatch.resync(epoch, headSequence);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        waiters++;
+        try {
+            long remaining;
+            while (headSequence == afterSequence
+                    && (remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+                wait(remaining);
+            }
+        } finally {
+            waiters--;
+        }
+        if (afterSequence < headSequence - BACKLOG) {
+            return PriceChangeBatch.resync(epoch, headSequence);
+        }
+
+        int count = (int) Math.min(Math.max(0, Math.min(maxChanges, PriceBatch.MAX_SIZE)), headSequence - afterSequence);
+        PriceChangeBatch batch = new PriceChangeBatch(epoch, afterSequence, headSequence, count);
+        for (long sequence = afterSequence; sequence < afterSequence + count; sequence++) {
+            int slot = (int) (sequence & mask);
+            batch.add(fruitNames[slot], priceCents[slot]);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,274 @@
+package server.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import server.util.AsyncLogger;
+
+// Append-only write-ahead log of price mutations, split into numbered segment files (wal-<n>.log).
+// Appends only copy the record into an in-memory buffer. A single flusher thread writes whatever
+// has accumulated and forces it to disk with one fsync, so every writer that arrived while the
+// previous batch was being flushed shares the next fsync (group commit).
+//
+// Record layout: [int bodyLength][int crc32(body)][body]
+// Body layout:   [byte op][short nameLength][name UTF-8][long price, PUT_CENTS and PUT only]
+// PUT records (double bits) come from logs written before prices were kept in cents; they are
+// still replayed, but new records are always PUT_CENTS
+public class PriceLog implements Closeable {
+    private static final AsyncLogger log = AsyncLogger.getLogger(PriceLog.class);
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte PUT_CENTS = 3;
+    static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final Object lock = new Object();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer flushing = ByteBuffer.allocate(64 * 1024);
+    private FileChannel channel;
+    private long generation;
+    private long appendedSequence;
+    private long durableSequence;
+    private long recordsInSegment;
+    private boolean flusherBusy;
+    private boolean closed;
+    private IOException failure;
+
+    public PriceLog(Path directory, long generation) throws IOException {
+        this.directory = directory;
+        this.generation = generation;
+        this.channel = openSegment(generation);
+
+        Thread flusher = new Thread(this::runFlusher, "price-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    static Path segmentPath(Path directory, long generation) {
+        return directory.resolve("wal-" + generation + ".log");
+    }
+
+    // Buffers a mutation and returns its sequence number; does not wait for the disk
+    public long appendPut(String fruitName, long priceCents) {
+        return append(PUT_CENTS, fruitName, priceCents);
+    }
+
+    public long appendDelete(String fruitName) {
+        return append(DELETE, fruitName, 0L);
+    }
+
+    public long recordsInCurrentSegment() {
+        synchronized (lock) {
+            return recordsInSegment;
+        }
+    }
+
+    // Throws the flusher's failure, if any. Once the log has failed nothing more reaches the disk,
+    // so callers check this before changing the table rather than finding out in awaitDurable
+    public void checkWritable() throws IOException {
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // Blocks until every record up to the given sequence has been forced to disk
+    public void awaitDurable(long sequence) throws IOException {
+        synchronized (lock) {
+            while (durableSequence < sequence && failure == null && !closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the price log", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // Closes the current segment after flushing it and starts the next one.
+    // Returns the generation of the segment that was closed
+    public long rotate() throws IOException {
+        synchronized (lock) {
+            while (flusherBusy) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while rotating the price log", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            pending.flip();
+            writeFully(channel, pending);
+            pending.clear();
+            channel.force(false);
+            channel.close();
+            durableSequence = appendedSequence;
+            lock.notifyAll();
+
+            long closedGeneration = generation;
+            generation++;
+            channel = openSegment(generation);
+            recordsInSegment = 0;
+            return closedGeneration;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            while (flusherBusy) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            closed = true;
+            try {
+                pending.flip();
+                writeFully(channel, pending);
+                channel.force(false);
+                durableSequence = appendedSequence;
+            } finally {
+                channel.close();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private long append(byte op, String fruitName, long price) {
+        byte[] name = fruitName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF) {
+            throw new IllegalArgumentException("Fruit name too long for the price log");
+        }
+        int bodyLength = 1 + 2 + name.length + (op == DELETE ? 0 : 8);
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Price log is closed");
+            }
+            if (failure != null) {
+                // A write that raced with the failure; awaitDurable reports it, and buffering
+                // records no flusher will ever write would only grow the heap
+                return appendedSequence;
+            }
+            if (pending.remaining() < HEADER_BYTES + bodyLength) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + HEADER_BYTES + bodyLength));
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            int start = pending.position();
+            boolean wakeFlusher = start == 0; // the flusher only sleeps while nothing is pending
+            pending.position(start + HEADER_BYTES);
+            pending.put(op);
+            pending.putShort((short) name.length);
+            pending.put(name);
+            if (op != DELETE) {
+                pending.putLong(price);
+            }
+            crc.reset();
+            crc.update(pending.array(), start + HEADER_BYTES, bodyLength);
+            pending.putInt(start, bodyLength);
+            pending.putInt(start + 4, (int) crc.getValue());
+
+            recordsInSegment++;
+            appendedSequence++;
+            if (wakeFlusher) {
+                lock.notifyAll();
+            }
+            return appendedSequence;
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            ByteBuffer batch;
+            FileChannel target;
+            long batchSequence;
+            synchronized (lock) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                // Swap buffers so appenders keep filling one while the other is written
+                batch = pending;
+                pending = flushing;
+                flushing = batch;
+                batchSequence = appendedSequence;
+                target = channel;
+                flusherBusy = true;
+            }
+
+            IOException error = null;
+            try {
+                batch.flip();
+                writeFully(target, batch);
+                target.force(false);
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                batch.clear();
+            }
+
+            synchronized (lock) {
+                flusherBusy = false;
+                if (error != null) {
+                    failure = error;
+                    pending.clear();
+                    log.error("Price log write failed: {}", error.getMessage());
+                } else {
+                    durableSequence = Math.max(durableSequence, batchSequence);
+                }
+                lock.notifyAll();
+                if (error != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // The new file's directory entry is forced too, or a crash could lose a segment whose records
+    // were already reported durable
+    private FileChannel openSegment(long segmentGeneration) throws IOException {
+        FileChannel segment = FileChannel.open(segmentPath(directory, segmentGeneration),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try {
+            PriceSnapshot.forceDirectory(directory);
+        } catch (IOException e) {
+            segment.close();
+            throw e;
+        }
+        return segment;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package server.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import model.Money;
+
+// Compact point-in-time image of the price table (snapshot-<n>.dat), covering wal segments up to n.
+//
+// Layout: [int magic][int version] then entries [short nameLength][name UTF-8][long priceCents]
+//         then the trailer [int entryCount][long crc32(everything before the trailer)]
+// Version 1 snapshots hold the price as double bits instead of cents; they are still loadable
+// The trailer sits at a fixed offset from the end, so a loader can size the table before decoding
+final class PriceSnapshot {
+    private static final int MAGIC = 0x46505331; // "FPS1"
+    private static final int VERSION = 2;
+    private static final int VERSION_DOUBLE_PRICES = 1;
+    private static final int TRAILER_BYTES = 12;
+
+    private PriceSnapshot() {
+    }
+
+    static Path path(Path directory, long generation) {
+        return directory.resolve("snapshot-" + generation + ".dat");
+    }
+
+    // Writes the table to a temporary file, forces it, atomically renames it into place and forces
+    // the directory, so the rename itself survives a crash before the covered log segments go
+    static void write(Path directory, long generation, FruitPriceTable table) throws IOException {
+        Path target = path(directory, generation);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        int[] count = new int[1];
+        IOException[] error = new IOException[1];
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream channelOut = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(channelOut, crc), 256 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            table.forEach((fruitName, priceCents) -> {
+                if (error[0] != null) {
+                    return;
+                }
+                try {
+                    byte[] name = fruitName.getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(name.length);
+                    out.write(name);
+                    out.writeLong(priceCents);
+                    count[0]++;
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+            out.flush();
+            // The trailer is outside the checksummed region
+            DataOutputStream trailer = new DataOutputStream(channelOut);
+            trailer.writeInt(count[0]);
+            trailer.writeLong(crc.getValue());
+            trailer.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory(directory);
+    }
+
+    static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Windows cannot open a directory as a channel; NTFS journals the rename anyway
+            if (!System.getProperty("os.name", "").startsWith("Windows")) {
+                throw e;
+            }
+        }
+    }
+
+    // Memory-maps a snapshot and loads it into the table; returns the number of entries
+    static int load(Path file, FruitPriceTable table) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 8 + TRAILER_BYTES) {
+                throw new IOException("Snapshot too short: " + file);
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int bodyEnd = (int) (size - TRAILER_BYTES);
+            int count = data.getInt(bodyEnd);
+            long expectedCrc = data.getLong(bodyEnd + 4);
+
+            ByteBuffer body = data.duplicate();
+            body.limit(bodyEnd);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+
+            data.limit(bodyEnd);
+            int version = data.getInt() == MAGIC ? data.getInt() : -1;
+            if (version != VERSION && version != VERSION_DOUBLE_PRICES) {
+                throw new IOException("Not a price snapshot: " + file);
+            }
+            byte[] name = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int nameLength = data.getShort() & 0xFFFF;
+                if (nameLength > name.length) {
+                    name = new byte[nameLength];
+                }
+                data.get(name, 0, nameLength);
+                String fruitName = new String(name, 0, nameLength, StandardCharsets.UTF_8);
+                long price = data.getLong();
+                table.put(fruitName, version == VERSION ? price : Money.toCents(Double.longBitsToDouble(price)));
+            }
+            return count;
+        }
+    }
+
+    // Reads the entry count from the trailer without decoding the snapshot
+    static int entryCount(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            channel.read(trailer, channel.size() - TRAILER_BYTES);
+            trailer.flip();
+            return trailer.getInt();
+        }
+    }
+}
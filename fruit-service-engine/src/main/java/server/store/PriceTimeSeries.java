@@ -0,0 +1,294 @@
+package server.store;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.PriceHistory;
+
+// Every price each fruit has had since the engine started, for point-in-time and range queries.
+// It sits in the table's change-listener chain like PriceChangeStream and appends each change to
+// the fruit's series, stamped with the wall clock. A series is a list of column chunks of up to
+// CHUNK_CHANGES changes each: a byte array of varints holding, per change, the milliseconds since the
+// previous one (shifted left, with the low bit marking a delete) and the zig-zag price difference in
+// cents from the previous price. Chunks start from their first change's time, kept in a sorted long
+// array, and from a price of 0, so a lookup binary-searches the chunk starts and decodes one chunk.
+// A typical change costs 2 to 5 bytes. Puts that leave the price as it was are not recorded.
+//
+// The history lives in memory only and starts when the engine starts. Prices at that moment come
+// from the catalog's first snapshot, so a fruit gets a series only once it changes; its series then
+// begins with its starting price. Queries for earlier times find nothing
+public class PriceTimeSeries implements FruitPriceTable.ChangeListener {
+    private static final int CHUNK_CHANGES = 64;
+    // Two varints of at most 10 bytes
+    private static final int MAX_CHANGE_BYTES = 20;
+
+    private final FruitPriceTable.ChangeListener downstream;
+    // The prices when recording started, for fruits that have not changed since
+    private final CatalogSnapshot startingPrices;
+    private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+    private final long recordedSinceMillis = System.currentTimeMillis();
+
+    private PriceTimeSeries(FruitPriceTable.ChangeListener downstream, CatalogSnapshot startingPrices) {
+        this.downstream = downstream;
+        this.startingPrices = startingPrices;
+    }
+
+    // Starts recording the table's changes. startingPrices must hold exactly the table's current
+    // entries, as VersionedCatalog's snapshot does right after it is attached
+    public static PriceTimeSeries attach(FruitPriceTable table, CatalogSnapshot startingPrices) {
+        PriceTimeSeries history = new PriceTimeSeries(table.getChangeListener(), startingPrices);
+        table.setChangeListener(history);
+        return history;
+    }
+
+    public long getRecordedSinceMillis() {
+        return recordedSinceMillis;
+    }
+
+    // The fruit's price at atMillis, or PriceHistory.DELETED if it was not in the catalog then
+    public long getCentsAt(String fruitName, long atMillis) {
+        Series fruitSeries = series.get(fruitName);
+        if (fruitSeries != null) {
+            return fruitSeries.centsAt(atMillis);
+        }
+        return atMillis < recordedSinceMillis ? PriceHistory.DELETED : startingCents(fruitName);
+    }
+
+    // The changes from fromMillis to toMillis inclusive, at most limit of them
+    public PriceHistory getHistory(String fruitName, long fromMillis, long toMillis, int limit) {
+        Series fruitSeries = series.get(fruitName);
+        if (fruitSeries == null) {
+            // Unchanged since recording started: at most the starting price, at that moment
+            long cents = startingCents(fruitName);
+            boolean inRange = cents != PriceHistory.DELETED && recordedSinceMillis >= fromMillis
+                    && recordedSinceMillis <= toMillis;
+            return new PriceHistory(fruitName, fromMillis, toMillis, recordedSinceMillis,
+                    fromMillis > recordedSinceMillis ? cents : PriceHistory.DELETED,
+                    inRange ? new long[] {recordedSinceMillis} : new long[0],
+                    inRange ? new long[] {cents} : new long[0], false);
+        }
+        return fruitSeries.history(fruitName, fromMillis, toMillis, limit, recordedSinceMillis);
+    }
+
+    @Override
+    public void onPut(String fruitName, long cents) {
+        if (downstream != null) {
+            downstream.onPut(fruitName, cents);
+        }
+        record(fruitName, cents);
+    }
+
+    @Override
+    public void onRemove(String fruitName) {
+        if (downstream != null) {
+            downstream.onRemove(fruitName);
+        }
+        record(fruitName, PriceHistory.DELETED);
+    }
+
+    private void record(String fruitName, long cents) {
+        Series fruitSeries = series.get(fruitName);
+        if (fruitSeries == null) {
+            fruitSeries = series.computeIfAbsent(fruitName, name -> {
+                Series created = new Series();
+                created.append(recordedSinceMillis, startingCents(name));
+                return created;
+            });
+        }
+        fruitSeries.append(System.currentTimeMillis(), cents);
+    }
+
+    private long startingCents(String fruitName) {
+        return startingPrices.getCents(fruitName, PriceHistory.DELETED);
+    }
+
+    // One fruit's changes. Appends come from the table under the fruit's stripe lock and reads from
+    // any RMI thread, so both synchronize on the series
+    private static final class Series {
+        // Sealed chunks and the times of their first changes; null until the first chunk fills
+        private byte[][] chunks;
+        private long[] chunkStartMillis;
+        private int sealedChunks;
+        // The chunk being appended to
+        private byte[] open = new byte[8];
+        private int openLength;
+        private int openChanges;
+        private long openStartMillis;
+        // The newest change, which the next one is encoded against
+        private long lastMillis;
+        private long lastCents = PriceHistory.DELETED;
+        private long lastListedCents;
+
+        synchronized void append(long nowMillis, long cents) {
+            if (cents == lastCents) {
+                return;
+            }
+            // Keep the series in order if the wall clock steps back
+            long atMillis = Math.max(nowMillis, lastMillis);
+            if (openChanges == CHUNK_CHANGES) {
+                seal();
+            }
+            if (openChanges == 0) {
+                openStartMillis = atMillis;
+                lastMillis = atMillis;
+                lastListedCents = 0;
+            }
+            if (openLength + MAX_CHANGE_BYTES > open.length) {
+                open = Arrays.copyOf(open, Math.max(open.length * 2, openLength + MAX_CHANGE_BYTES));
+            }
+            boolean deleted = cents == PriceHistory.DELETED;
+            openLength = writeVarint(open, openLength, (atMillis - lastMillis) << 1 | (deleted ? 1 : 0));
+            if (!deleted) {
+                long difference = cents - lastListedCents;
+                openLength = writeVarint(open, openLength, difference << 1 ^ difference >> 63);
+                lastListedCents = cents;
+            }
+            openChanges++;
+            lastMillis = atMillis;
+            lastCents = cents;
+        }
+
+        private void seal() {
+            if (chunks == null) {
+                chunks = new byte[4][];
+                chunkStartMillis = new long[4];
+            } else if (sealedChunks == chunks.length) {
+                chunks = Arrays.copyOf(chunks, sealedChunks * 2);
+                chunkStartMillis = Arrays.copyOf(chunkStartMillis, sealedChunks * 2);
+            }
+            chunks[sealedChunks] = Arrays.copyOf(open, openLength);
+            chunkStartMillis[sealedChunks++] = openStartMillis;
+            openLength = 0;
+            openChanges = 0;
+        }
+
+        synchronized long centsAt(long atMillis) {
+            int chunk = chunkAt(atMillis);
+            if (chunk < 0) {
+                return PriceHistory.DELETED;
+            }
+            Decoder decoder = decoder(chunk);
+            long cents = PriceHistory.DELETED;
+            while (decoder.next() && decoder.atMillis <= atMillis) {
+                cents = decoder.cents;
+            }
+            return cents;
+        }
+
+        synchronized PriceHistory history(String fruitName, long fromMillis, long toMillis, int limit,
+                                          long recordedSinceMillis) {
+            int capacity = Math.max(1, Math.min(limit, CHUNK_CHANGES));
+            long[] times = new long[capacity];
+            long[] prices = new long[capacity];
+            int count = 0;
+            boolean truncated = false;
+            long startCents = PriceHistory.DELETED;
+
+            // Start from the chunk in effect just before fromMillis, for the starting price
+            int chunk = fromMillis == Long.MIN_VALUE ? 0 : Math.max(0, chunkAt(fromMillis - 1));
+            for (; chunk <= sealedChunks && !truncated; chunk++) {
+                Decoder decoder = decoder(chunk);
+                while (decoder.next()) {
+                    if (decoder.atMillis < fromMillis) {
+                        startCents = decoder.cents;
+                        continue;
+                    }
+                    if (decoder.atMillis > toMillis) {
+                        break;
+                    }
+                    if (count == limit) {
+                        truncated = true;
+                        break;
+                    }
+                    if (count == times.length) {
+                        times = Arrays.copyOf(times, count * 2);
+                        prices = Arrays.copyOf(prices, count * 2);
+                    }
+                    times[count] = decoder.atMillis;
+                    prices[count++] = decoder.cents;
+                }
+                if (decoder.atMillis > toMillis) {
+                    break;
+                }
+            }
+            return new PriceHistory(fruitName, fromMillis, toMillis, recordedSinceMillis, startCents,
+                    Arrays.copyOf(times, count), Arrays.copyOf(prices, count), truncated);
+        }
+
+        // The last chunk (sealedChunks for the open one) starting at or before atMillis, or -1
+        private int chunkAt(long atMillis) {
+            if (openChanges > 0 && openStartMillis <= atMillis) {
+                return sealedChunks;
+            }
+            int low = 0;
+            int high = sealedChunks - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (chunkStartMillis[middle] <= atMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high;
+        }
+
+        private Decoder decoder(int chunk) {
+            return chunk == sealedChunks
+                    ? new Decoder(open, openLength, openStartMillis)
+                    : new Decoder(chunks[chunk], chunks[chunk].length, chunkStartMillis[chunk]);
+        }
+    }
+
+    // Walks one chunk's changes, oldest first
+    private static final class Decoder {
+        private final byte[] bytes;
+        private final int length;
+        private int position;
+        private long listedCents;
+        long atMillis;
+        long cents;
+
+        Decoder(byte[] bytes, int length, long startMillis) {
+            this.bytes = bytes;
+            this.length = length;
+            this.atMillis = startMillis;
+        }
+
+        boolean next() {
+            if (position == length) {
+                return false;
+            }
+            long timeAndFlag = readVarint();
+            atMillis += timeAndFlag >>> 1;
+            if ((timeAndFlag & 1) != 0) {
+                cents = PriceHistory.DELETED;
+            } else {
+                long zigZag = readVarint();
+                listedCents += zigZag >>> 1 ^ -(zigZag & 1);
+                cents = listedCents;
+            }
+            return true;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private static int writeVarint(byte[] bytes, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,496 @@
+package server.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import model.Receipt;
+import server.util.AsyncLogger;
+
+// Durable, append-only journal of the receipts an engine hands out, for audits and replay.
+// Receipts are numbered from 1 in the order they are appended and copied into memory-mapped segment
+// files (receipts-<first sequence>.seg), preallocated to SEGMENT_BYTES. A single flusher thread
+// forces the segment to disk and wakes every writer whose receipt that covered, so a burst of
+// checkouts shares one fsync (group commit). A receipt that does not fit closes the segment and
+// starts the next one; closed segments last written more than the retention period ago are deleted.
+//
+// Record layout: [int bodyLength][int crc32(body)][body]
+// Body layout:   varints of [sequence][time millis][zig-zag total cents][zig-zag amount given cents]
+//                [zig-zag catalog version][cashier length], then the cashier's UTF-8 bytes
+// The change due is the amount given less the total, so it is not stored. A segment ends at the first
+// record that is empty, fails its checksum or is out of sequence; that is also how a record torn by a
+// crash is dropped when the journal is opened again.
+//
+// Tuning: -Dfruit.receipts.segmentMegabytes (default 64), -Dfruit.receipts.retentionDays (default 0,
+// keep everything), -Dfruit.receipts.sync (default true) makes append wait for its group commit
+public class ReceiptJournal implements Closeable {
+    private static final AsyncLogger log = AsyncLogger.getLogger(ReceiptJournal.class);
+    private static final int SEGMENT_BYTES = (int) Math.min(Integer.MAX_VALUE,
+            Math.max(1, Long.getLong("fruit.receipts.segmentMegabytes", 64)) * 1024 * 1024);
+    private static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(Long.getLong("fruit.receipts.retentionDays", 0));
+    private static final boolean SYNC_COMMIT = Boolean.parseBoolean(System.getProperty("fruit.receipts.sync", "true"));
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_CASHIER_BYTES = 0xFFFF;
+    // Six varints of at most 10 bytes, then the cashier
+    private static final int MAX_BODY_BYTES = 6 * 10 + MAX_CASHIER_BYTES;
+    // Every INDEX_INTERVAL-th record's offset is kept, so a scan starts near its first receipt
+    private static final int INDEX_INTERVAL = 1024;
+    private static final String PREFIX = "receipts-";
+    private static final String SUFFIX = ".seg";
+
+    // Called for each receipt in sequence order
+    public interface Visitor {
+        void accept(long sequence, long timeMillis, Receipt receipt);
+    }
+
+    private final Path directory;
+    private final Object lock = new Object();
+    private final CRC32 crc = new CRC32();
+    private final byte[] body = new byte[MAX_BODY_BYTES];
+    // Oldest first; the last one is being appended to
+    private final List<Segment> segments = new ArrayList<>();
+    private MappedByteBuffer active;
+    private long appendedSequence;
+    private long durableSequence;
+    private boolean flusherBusy;
+    private boolean closed;
+    private RuntimeException failure;
+
+    // One segment file. Offsets are filled in as records are appended, or on the first scan of a
+    // segment that was closed before the journal was opened
+    private static final class Segment {
+        final long firstSequence;
+        final Path path;
+        long lastSequence;
+        int endOffset;
+        int[] offsets;
+        int offsetCount;
+        MappedByteBuffer readView;
+
+        Segment(long firstSequence, Path path) {
+            this.firstSequence = firstSequence;
+            this.path = path;
+            this.lastSequence = firstSequence - 1;
+        }
+    }
+
+    private ReceiptJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    // Opens the journal in the directory, creating it if needed, and starts the flusher
+    public static ReceiptJournal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        ReceiptJournal journal = new ReceiptJournal(directory);
+        List<Long> firstSequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    firstSequences.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring unexpected file in receipt journal: {}", name);
+                }
+            }
+        }
+        firstSequences.sort(null);
+        for (int i = 0; i < firstSequences.size(); i++) {
+            Segment segment = new Segment(firstSequences.get(i), segmentPath(directory, firstSequences.get(i)));
+            if (i + 1 < firstSequences.size()) {
+                segment.lastSequence = firstSequences.get(i + 1) - 1;
+            }
+            journal.segments.add(segment);
+        }
+
+        if (journal.segments.isEmpty()) {
+            journal.startSegment(1);
+        } else {
+            // Find where the last segment ends; anything after a torn record is written over
+            Segment last = journal.segments.get(journal.segments.size() - 1);
+            journal.active = map(last.path, FileChannel.MapMode.READ_WRITE);
+            journal.walk(last, journal.active);
+            last.readView = journal.active;
+            journal.appendedSequence = last.lastSequence;
+            journal.durableSequence = last.lastSequence;
+        }
+        journal.applyRetention();
+        log.info("Receipt journal: {} receipt(s) in {} segment(s) in {}", journal.appendedSequence
+                - journal.segments.get(0).firstSequence + 1, journal.segments.size(), directory);
+
+        Thread flusher = new Thread(journal::runFlusher, "receipt-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        return journal;
+    }
+
+    static Path segmentPath(Path directory, long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+    }
+
+    // Journals the receipt, stamped with timeMillis, and returns its sequence number. Waits for the
+    // group commit that makes it durable unless -Dfruit.receipts.sync=false
+    public long append(Receipt receipt, long timeMillis) throws IOException {
+        byte[] cashier = receipt.getCashier() == null
+                ? new byte[0] : receipt.getCashier().getBytes(StandardCharsets.UTF_8);
+        if (cashier.length > MAX_CASHIER_BYTES) {
+            throw new IllegalArgumentException("Cashier name too long for the receipt journal");
+        }
+        long sequence;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Receipt journal is closed");
+            }
+            if (failure != null) {
+                throw new IOException("Receipt journal failed", failure);
+            }
+            sequence = appendedSequence + 1;
+            int length = writeVarint(body, 0, sequence);
+            length = writeVarint(body, length, timeMillis);
+            length = writeVarint(body, length, zigZag(receipt.getTotalCents()));
+            length = writeVarint(body, length, zigZag(receipt.getAmountGivenCents()));
+            length = writeVarint(body, length, zigZag(receipt.getCatalogVersion()));
+            length = writeVarint(body, length, cashier.length);
+            System.arraycopy(cashier, 0, body, length, cashier.length);
+            length += cashier.length;
+
+            Segment segment = segments.get(segments.size() - 1);
+            if (segment.endOffset + HEADER_BYTES + length > active.capacity()) {
+                segment = roll(sequence);
+            }
+            crc.reset();
+            crc.update(body, 0, length);
+            int offset = segment.endOffset;
+            active.putInt(offset, length);
+            active.putInt(offset + 4, (int) crc.getValue());
+            ByteBuffer target = active.duplicate();
+            target.position(offset + HEADER_BYTES);
+            target.put(body, 0, length);
+            addOffset(segment, offset);
+            segment.endOffset = offset + HEADER_BYTES + length;
+            segment.lastSequence = sequence;
+
+            boolean wakeFlusher = appendedSequence == durableSequence && !flusherBusy;
+            appendedSequence = sequence;
+            if (wakeFlusher) {
+                lock.notifyAll();
+            }
+        }
+        if (SYNC_COMMIT) {
+            awaitDurable(sequence);
+        }
+        return sequence;
+    }
+
+    // Blocks until every receipt up to the given sequence has been forced to disk
+    public void awaitDurable(long sequence) throws IOException {
+        synchronized (lock) {
+            while (durableSequence < sequence && failure == null && !closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the receipt journal", e);
+                }
+            }
+            if (failure != null) {
+                throw new IOException("Receipt journal failed", failure);
+            }
+        }
+    }
+
+    public long lastSequence() {
+        synchronized (lock) {
+            return appendedSequence;
+        }
+    }
+
+    // Visits up to limit durable receipts after afterSequence, oldest first, and returns how many it
+    // visited. Receipts removed by retention are skipped, so a replay from 0 starts at the oldest kept
+    public int scan(long afterSequence, int limit, Visitor visitor) throws IOException {
+        List<Segment> candidates;
+        Segment activeSegment;
+        long upTo;
+        int activeStart;
+        synchronized (lock) {
+            upTo = durableSequence;
+            candidates = new ArrayList<>(segments);
+            activeSegment = candidates.get(candidates.size() - 1);
+            activeStart = startOffset(activeSegment, afterSequence);
+        }
+        int visited = 0;
+        for (Segment segment : candidates) {
+            if (visited >= limit || segment.firstSequence > upTo) {
+                break;
+            }
+            ByteBuffer records;
+            long last;
+            int startOffset;
+            if (segment == activeSegment) {
+                records = segment.readView.duplicate();
+                last = upTo;
+                startOffset = activeStart;
+            } else {
+                // Closed segments no longer change, except for the index built here on first use
+                synchronized (segment) {
+                    if (segment.lastSequence <= afterSequence) {
+                        continue;
+                    }
+                    if (segment.readView == null) {
+                        segment.readView = map(segment.path, FileChannel.MapMode.READ_ONLY);
+                    }
+                    if (segment.offsets == null) {
+                        walk(segment, segment.readView);
+                    }
+                    records = segment.readView.duplicate();
+                    last = Math.min(upTo, segment.lastSequence);
+                    startOffset = startOffset(segment, afterSequence);
+                }
+            }
+            if (last > afterSequence) {
+                records.position(startOffset);
+                visited += visitRecords(records, afterSequence, last, limit - visited, visitor);
+            }
+        }
+        return visited;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            while (flusherBusy) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            closed = true;
+            try {
+                active.force();
+                durableSequence = appendedSequence;
+            } finally {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Forces and closes the current segment and starts one whose first receipt is firstSequence
+    private Segment roll(long firstSequence) throws IOException {
+        active.force();
+        durableSequence = appendedSequence;
+        lock.notifyAll();
+        startSegment(firstSequence);
+        applyRetention();
+        return segments.get(segments.size() - 1);
+    }
+
+    private void startSegment(long firstSequence) throws IOException {
+        Segment segment = new Segment(firstSequence, segmentPath(directory, firstSequence));
+        try (RandomAccessFile file = new RandomAccessFile(segment.path.toFile(), "rw")) {
+            file.setLength(SEGMENT_BYTES);
+        }
+        active = map(segment.path, FileChannel.MapMode.READ_WRITE);
+        segment.offsets = new int[16];
+        segments.add(segment);
+        // A scan of the new segment reads what the writer wrote through the same mapping
+        segment.readView = active;
+    }
+
+    // Deletes closed segments last written before the retention period
+    private void applyRetention() throws IOException {
+        if (RETENTION_MILLIS <= 0) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - RETENTION_MILLIS;
+        while (segments.size() > 1 && Files.getLastModifiedTime(segments.get(0).path).toMillis() < cutoff) {
+            Segment expired = segments.remove(0);
+            Files.deleteIfExists(expired.path);
+            log.info("Deleted receipt segment {} (receipts {} to {})", expired.path.getFileName(),
+                    expired.firstSequence, expired.lastSequence);
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            MappedByteBuffer target;
+            long batchSequence;
+            synchronized (lock) {
+                while (appendedSequence == durableSequence && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                target = active;
+                batchSequence = appendedSequence;
+                flusherBusy = true;
+            }
+
+            RuntimeException error = null;
+            try {
+                target.force();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            synchronized (lock) {
+                flusherBusy = false;
+                if (error != null) {
+                    failure = error;
+                    log.error("Receipt journal flush failed: {}", error.toString());
+                } else {
+                    durableSequence = Math.max(durableSequence, batchSequence);
+                }
+                lock.notifyAll();
+                if (error != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Reads a segment's valid records from the start, recording their offsets and where they end
+    private void walk(Segment segment, ByteBuffer mapping) {
+        ByteBuffer records = mapping.duplicate();
+        segment.offsets = new int[16];
+        segment.offsetCount = 0;
+        long expected = segment.firstSequence;
+        int offset = 0;
+        while (true) {
+            int next = nextRecord(records, offset, expected);
+            if (next < 0) {
+                break;
+            }
+            if ((expected - segment.firstSequence) % INDEX_INTERVAL == 0) {
+                appendOffset(segment, offset);
+            }
+            offset = next;
+            expected++;
+        }
+        segment.endOffset = offset;
+        segment.lastSequence = expected - 1;
+    }
+
+    // Offset of the indexed record at or before the one after afterSequence
+    private static int startOffset(Segment segment, long afterSequence) {
+        long index = Math.max(0, afterSequence + 1 - segment.firstSequence) / INDEX_INTERVAL;
+        return segment.offsetCount == 0 ? 0 : segment.offsets[(int) Math.min(index, segment.offsetCount - 1)];
+    }
+
+    private static void addOffset(Segment segment, int offset) {
+        if ((segment.lastSequence + 1 - segment.firstSequence) % INDEX_INTERVAL == 0) {
+            appendOffset(segment, offset);
+        }
+    }
+
+    private static void appendOffset(Segment segment, int offset) {
+        if (segment.offsetCount == segment.offsets.length) {
+            segment.offsets = Arrays.copyOf(segment.offsets, segment.offsetCount * 2);
+        }
+        segment.offsets[segment.offsetCount++] = offset;
+    }
+
+    // Offset just past the valid record with the expected sequence at offset, or -1 if there is none
+    private int nextRecord(ByteBuffer records, int offset, long expected) {
+        if (offset + HEADER_BYTES > records.capacity()) {
+            return -1;
+        }
+        int length = records.getInt(offset);
+        if (length <= 0 || length > MAX_BODY_BYTES || offset + HEADER_BYTES + length > records.capacity()) {
+            return -1;
+        }
+        CRC32 check = new CRC32();
+        ByteBuffer recordBody = records.duplicate();
+        recordBody.limit(offset + HEADER_BYTES + length).position(offset + HEADER_BYTES);
+        check.update(recordBody);
+        if ((int) check.getValue() != records.getInt(offset + 4)) {
+            return -1;
+        }
+        recordBody.position(offset + HEADER_BYTES);
+        return readVarint(recordBody) == expected ? offset + HEADER_BYTES + length : -1;
+    }
+
+    // Visits the records from the buffer's position after afterSequence up to and including last
+    private static int visitRecords(ByteBuffer records, long afterSequence, long last, int limit, Visitor visitor) {
+        int visited = 0;
+        long sequence = afterSequence;
+        while (visited < limit && sequence < last) {
+            int length = records.getInt();
+            records.getInt();
+            int end = records.position() + length;
+            sequence = readVarint(records);
+            if (sequence > afterSequence) {
+                long timeMillis = readVarint(records);
+                long totalCents = unZigZag(readVarint(records));
+                long amountGivenCents = unZigZag(readVarint(records));
+                long catalogVersion = unZigZag(readVarint(records));
+                byte[] cashier = new byte[(int) readVarint(records)];
+                records.get(cashier);
+                visitor.accept(sequence, timeMillis, Receipt.ofCents(totalCents, amountGivenCents,
+                        amountGivenCents - totalCents, new String(cashier, StandardCharsets.UTF_8), catalogVersion));
+                visited++;
+            }
+            records.position(end);
+        }
+        return visited;
+    }
+
+    private static MappedByteBuffer map(Path path, FileChannel.MapMode mode) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[] {StandardOpenOption.READ}
+                : new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(mode, 0, channel.size());
+        }
+    }
+
+    private static long zigZag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unZigZag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static int writeVarint(byte[] bytes, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,85 @@
+package server.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+// The table's fruit names in sorted order, for paging through the catalog (Compute.listPrices).
+// The sorted array is built on demand and reused for as long as no name has been added to the
+// table, so listing a large catalog page by page sorts it once rather than scanning it per page.
+// Prices are always read from the table, so updates and deletes show at once. A name added after
+// the array was built shows once it is rebuilt, which happens at most every REBUILD_MILLIS while
+// names keep being added.
+//
+// Tuning: -Dfruit.prices.indexRefreshMillis (default 1000)
+public class SortedNameIndex {
+    private static final long REBUILD_MILLIS = Long.getLong("fruit.prices.indexRefreshMillis", 1000);
+    // Never a price (the table rejects it), so it marks a name that has since been deleted
+    private static final long MISSING = Long.MIN_VALUE;
+
+    private final FruitPriceTable table;
+    private volatile Sorted sorted;
+
+    private static final class Sorted {
+        final String[] names;
+        // The table's addition count before the names were collected
+        final long additions;
+        final long builtAtMillis;
+
+        Sorted(String[] names, long additions, long builtAtMillis) {
+            this.names = names;
+            this.additions = additions;
+            this.builtAtMillis = builtAtMillis;
+        }
+    }
+
+    public SortedNameIndex(FruitPriceTable table) {
+        this.table = table;
+    }
+
+    // Visits up to limit present entries whose names sort after afterName (all if it is null), in
+    // name order, and returns how many it visited
+    public int forEachAfter(String afterName, int limit, ObjLongConsumer<String> action) {
+        String[] names = current().names;
+        int index = 0;
+        if (afterName != null) {
+            int found = Arrays.binarySearch(names, afterName);
+            index = found >= 0 ? found + 1 : -found - 1;
+        }
+        int count = 0;
+        for (; index < names.length && count < limit; index++) {
+            long cents = table.getCents(names[index], MISSING);
+            if (cents != MISSING) {
+                action.accept(names[index], cents);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Sorted current() {
+        Sorted current = sorted;
+        if (current != null && !isStale(current)) {
+            return current;
+        }
+        synchronized (this) {
+            current = sorted;
+            if (current == null || isStale(current)) {
+                long additions = table.getAdditions();
+                List<String> collected = new ArrayList<>(table.size() + 16);
+                table.forEach((fruitName, cents) -> collected.add(fruitName));
+                String[] names = collected.toArray(new String[0]);
+                Arrays.sort(names);
+                current = new Sorted(names, additions, System.currentTimeMillis());
+                sorted = current;
+            }
+            return current;
+        }
+    }
+
+    private boolean isStale(Sorted current) {
+        return current.additions != table.getAdditions()
+                && System.currentTimeMillis() - current.builtAtMillis >= REBUILD_MILLIS;
+    }
+}
@@ -0,0 +1,183 @@
+package server.store;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Versioned, copy-on-write view of the engine's price table for reads that span several prices.
+// It sits in front of the table's change listener, like PriceChangeStream, and publishes every
+// change as a new CatalogSnapshot with the next version. Readers call snapshot(), a single volatile
+// read, and price a whole basket from it without locks and without seeing a change land halfway
+// through. Writers edit the next snapshot under this object's lock, so versions follow one order
+// that agrees with the order of changes to each fruit, and readers never wait for them.
+// Changes made inside a batch are held back and published together as one version when the batch
+// closes. That is how bulk imports and replicas applying a batch avoid copying the trie once per
+// row, and why a batch is never seen half applied. A batch belongs to the thread that opened it, and
+// to threads it is lent to with Batch.run (a replica's reload, whose chunks arrive on RMI threads);
+// every other change is published as its own version before its write returns, so a single write
+// made while someone else's batch is open is never held back behind it.
+// Versions start from 0 when the engine starts, and each engine counts its own.
+public class VersionedCatalog implements FruitPriceTable.ChangeListener {
+    private static final long ABSENT = Long.MIN_VALUE;
+
+    private final FruitPriceTable table;
+    private final FruitPriceTable.ChangeListener downstream;
+    private final CatalogSnapshot.Builder next;
+    private volatile CatalogSnapshot current;
+    private final ThreadLocal<Batch> threadBatch = new ThreadLocal<>();
+    // Guarded by this
+    private final List<Batch> openBatches = new ArrayList<>();
+
+    // Changes held back for one publish. Only the names are kept: on close each one is published at
+    // the price the table holds then, so a single write to the same fruit made meanwhile, published
+    // on its own, is not overwritten with the batch's older price
+    public final class Batch implements AutoCloseable {
+        // Guarded by the catalog
+        private final Set<String> changed = new HashSet<>();
+        private boolean closed;
+
+        private Batch() {
+        }
+
+        // Runs changes on the calling thread as part of this batch
+        public void run(Runnable changes) {
+            Batch outer = threadBatch.get();
+            threadBatch.set(this);
+            try {
+                changes.run();
+            } finally {
+                if (outer == null) {
+                    threadBatch.remove();
+                } else {
+                    threadBatch.set(outer);
+                }
+            }
+        }
+
+        // Publishes the batch's changes as one version
+        @Override
+        public void close() {
+            publish(this);
+        }
+    }
+
+    private VersionedCatalog(FruitPriceTable table, FruitPriceTable.ChangeListener downstream,
+                             CatalogSnapshot initial) {
+        this.table = table;
+        this.downstream = downstream;
+        this.current = initial;
+        this.next = new CatalogSnapshot.Builder(initial);
+    }
+    // Copies the table's current entries into version 0, then follows its changes. Attach it before
+    // the table is shared, as the engine does while it starts
+    public static VersionedCatalog attach(FruitPriceTable table) {
+        int capacity = table.size() + 16;
+        String[] names = new String[capacity];
+        long[] cents = new long[capacity];
+        int[] count = new int[1];
+        table.forEach((fruitName, priceCents) -> {
+            names[count[0]] = fruitName;
+            cents[count[0]++] = priceCents;
+        });
+        VersionedCatalog catalog = new VersionedCatalog(table, table.getChangeListener(),
+                CatalogSnapshot.of(names, cents, count[0], 0));
+        table.setChangeListener(catalog);
+        return catalog;
+    }
+
+    public CatalogSnapshot snapshot() {
+        return current;
+    }
+
+    public long currentVersion() {
+        return current.getVersion();
+    }
+
+    // Opens a batch that can be lent to other threads; close it, even if the changes fail partway.
+    // Readers keep seeing the previous version of its fruits until then, so keep batches to bulk work
+    public Batch openBatch() {
+        Batch batch = new Batch();
+        synchronized (this) {
+            openBatches.add(batch);
+        }
+        return batch;
+    }
+
+    // Runs changes to the table and publishes whatever they changed as a single version, even if they
+    // fail partway. Inside a batch already open on this thread, the changes join it
+    public void batch(Runnable changes) {
+        Batch open = threadBatch.get();
+        if (open != null) {
+            open.run(changes);
+            return;
+        }
+        try (Batch batch = openBatch()) {
+            batch.run(changes);
+        }
+    }
+
+    @Override
+    public void onPut(String fruitName, long cents) {
+        if (downstream != null) {
+            downstream.onPut(fruitName, cents);
+        }
+        Batch batch = threadBatch.get();
+        synchronized (this) {
+            if (batch != null && !batch.closed) {
+                batch.changed.add(fruitName);
+            } else {
+                next.put(fruitName, cents);
+                current = next.publish();
+            }
+        }
+    }
+
+    @Override
+    public void onRemove(String fruitName) {
+        if (downstream != null) {
+            downstream.onRemove(fruitName);
+        }
+        Batch batch = threadBatch.get();
+        synchronized (this) {
+            if (batch != null && !batch.closed) {
+                batch.changed.add(fruitName);
+            } else {
+                next.remove(fruitName);
+                current = next.publish();
+            }
+        }
+    }
+
+    private synchronized void publish(Batch batch) {
+        if (batch.closed) {
+            return;
+        }
+        batch.closed = true;
+        openBatches.remove(batch);
+        for (String fruitName : batch.changed) {
+            // Another open batch changed it too and publishes it with the rest of its changes
+            if (heldByOpenBatch(fruitName)) {
+                continue;
+            }
+            long cents = table.getCents(fruitName, ABSENT);
+            if (cents == ABSENT) {
+                next.remove(fruitName);
+            } else {
+                next.put(fruitName, cents);
+            }
+        }
+        if (next.hasChanges()) {
+            current = next.publish();
+        }
+    }
+
+    private boolean heldByOpenBatch(String fruitName) {
+        for (Batch open : openBatches) {
+            if (open.changed.contains(fruitName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
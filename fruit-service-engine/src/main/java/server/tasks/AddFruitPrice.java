@@ -1,15 +1,20 @@
 package server.tasks;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 
 import model.FruitPrice;
 import server.interfaces.Compute;
-import server.interfaces.Task;
+import server.interfaces.ContextTask;
+import server.interfaces.KeyedTask;
+import server.util.AsyncLogger;
+import server.util.WireFormat;
 
 // This task is responsible for adding a fruit price to the remote compute engine
-public class AddFruitPrice implements Task<String> {
+public class AddFruitPrice implements ContextTask<String>, KeyedTask, WireFormat.Encodable {
+    private static final AsyncLogger log = AsyncLogger.getLogger(AddFruitPrice.class);
     private FruitPrice fruitPrice;
 
     public AddFruitPrice(FruitPrice fruitPrice) {
@@ -17,17 +22,34 @@ public class AddFruitPrice implements Task<String> {
     }
 
     @Override
-    public String execute() throws RemoteException {
+    public String getRoutingKey() {
+        return fruitPrice.getFruitName();
+    }
+
+    // The price is written inline rather than as a nested FruitPrice
+    @Override
+    public void writeWire(DataOutput out) throws IOException {
+        fruitPrice.writeWire(out);
+    }
+
+    public static AddFruitPrice readWire(DataInput in) throws IOException {
+        return new AddFruitPrice(FruitPrice.readWire(in));
+    }
+
+    private Object writeReplace() {
+        return WireFormat.replace(this);
+    }
+
+    @Override
+    public String execute(Compute engine) throws RemoteException {
         try {
-            // Get the engine instance and add the fruit price to its storage
-            Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-            Compute engine = (Compute) registry.lookup("FruitComputeEngine");
-            engine.addFruitPrice(fruitPrice.getFruitName(), fruitPrice.getPrice());
+            // Add the fruit price to the engine's storage
+            engine.addFruitPriceCents(fruitPrice.getFruitName(), fruitPrice.getPriceCents());
             
-            System.out.println("Adding fruit price: " + fruitPrice.getFruitName() + " - Ksh" + fruitPrice.getPrice());
+            log.info("Adding fruit price: {} - Ksh{}", fruitPrice.getFruitName(), fruitPrice.getPrice());
             return "Fruit price added successfully for " + fruitPrice.getFruitName() + " - Ksh" + fruitPrice.getPrice();
         } catch (Exception e) {
             throw new RemoteException("Failed to add fruit price", e);
         }
     }
-}
\ No newline at end of file
+}
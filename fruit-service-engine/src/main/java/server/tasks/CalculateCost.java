@@ -1,56 +1,96 @@
 package server.tasks;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
+import java.util.Collections;
 
+import model.CartLine;
+import model.Money;
 import model.Receipt;
+import model.Sale;
 import server.interfaces.Compute;
-import server.interfaces.Task;
+import server.interfaces.ContextTask;
+import server.util.WireFormat;
 
 // This task is responsible for calculating the cost of fruits based on the quantity and fruit name
 //combined with CalFruitcost
-// It also generates a receipt with the total cost, amount given, and change due
-public class CalculateCost implements Task<Receipt> {
+// It also generates a receipt with the total cost, amount given, and change due. Given a fruit name,
+// the item is sold through Compute.sellCart, which journals the receipt and counts the sale. It has
+// no routing key: in a sharded cluster it runs on the router, so the receipt reaches the cluster's
+// journal on the first shard whichever shard owns the fruit
+public class CalculateCost implements ContextTask<Receipt>, WireFormat.Encodable {
     private final String fruitName;
     private final int quantity;
-    private final double amountGiven;
+    private final long amountGivenCents;
     private final String cashier;
-    private double totalCost;
+    private long totalCents;
 
     // Constructor matching the servlet call
     public CalculateCost(String fruitName, int quantity, double amountGiven, String cashier) {
         this.fruitName = fruitName;
         this.quantity = quantity;
-        this.amountGiven = amountGiven;
+        this.amountGivenCents = Money.toCents(amountGiven);
         this.cashier = cashier;
-        this.totalCost = 0; // Will be calculated in execute
+        this.totalCents = 0; // Will be calculated in execute
     }
 
     // Original constructor for backward compatibility
     public CalculateCost(String cashier, double totalCost, double amountGiven) {
         this.cashier = cashier;
-        this.totalCost = totalCost;
-        this.amountGiven = amountGiven;
+        this.totalCents = Money.toCents(totalCost);
+        this.amountGivenCents = Money.toCents(amountGiven);
         this.fruitName = null;
         this.quantity = 0;
     }
 
+    private CalculateCost(String fruitName, int quantity, long amountGivenCents, String cashier, long totalCents) {
+        this.fruitName = fruitName;
+        this.quantity = quantity;
+        this.amountGivenCents = amountGivenCents;
+        this.cashier = cashier;
+        this.totalCents = totalCents;
+    }
+
+    @Override
+    public void writeWire(DataOutput out) throws IOException {
+        WireFormat.writeString(out, fruitName);
+        WireFormat.writeInt(out, quantity);
+        WireFormat.writeLong(out, amountGivenCents);
+        WireFormat.writeString(out, cashier);
+        WireFormat.writeLong(out, totalCents);
+    }
+
+    public static CalculateCost readWire(DataInput in) throws IOException {
+        String fruitName = WireFormat.readString(in);
+        int quantity = WireFormat.readInt(in);
+        long amountGivenCents = WireFormat.readLong(in);
+        String cashier = WireFormat.readString(in);
+        return new CalculateCost(fruitName, quantity, amountGivenCents, cashier, WireFormat.readLong(in));
+    }
+
+    private Object writeReplace() {
+        return WireFormat.replace(this);
+    }
+
     @Override
-    public Receipt execute() throws RemoteException {
+    public Receipt execute(Compute engine) throws RemoteException {
         // If totalCost is 0, we need to calculate it based on fruit name and quantity
-        if (totalCost == 0 && fruitName != null) {
+        if (totalCents == 0 && fruitName != null) {
             try {
-                // Get actual fruit price from the engine's storage
-                Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-                Compute engine = (Compute) registry.lookup("FruitComputeEngine");
-                totalCost = engine.calculateFruitCost(fruitName, quantity);
+                // Sold as a one-line cart, priced from one catalog version which the receipt records.
+                // In-process when the engine runs the task, so the sale costs no round trip
+                Sale sale = engine.sellCart(cashier,
+                        Collections.singletonList(new CartLine(fruitName, quantity)), amountGivenCents);
+                return sale.getReceipt();
             } catch (Exception e) {
                 throw new RemoteException("Failed to calculate fruit cost", e);
             }
         }
         
-        double changeDue = amountGiven - totalCost;
-        return new Receipt(totalCost, amountGiven, changeDue, cashier);
+        // A total given by the caller is not a sale the engine priced, so it is neither journaled nor counted
+        long changeDueCents = Money.subtract(amountGivenCents, totalCents);
+        return Receipt.ofCents(totalCents, amountGivenCents, changeDueCents, cashier);
     }
 }
\ No newline at end of file
@@ -1,13 +1,18 @@
 package server.tasks;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 
 import server.interfaces.Compute;
-import server.interfaces.Task;
+import server.interfaces.ContextTask;
+import server.interfaces.KeyedTask;
+import server.util.AsyncLogger;
+import server.util.WireFormat;
 // This task is responsible for deleting a fruit price from the remote compute engine
-public class DeleteFruitPrice implements Task<String> {
+public class DeleteFruitPrice implements ContextTask<String>, KeyedTask, WireFormat.Encodable {
+    private static final AsyncLogger log = AsyncLogger.getLogger(DeleteFruitPrice.class);
     private final String fruitName;
 
     public DeleteFruitPrice(String fruitName) {
@@ -15,17 +20,33 @@ public class DeleteFruitPrice implements Task<String> {
     }
 
     @Override
-    public String execute() throws RemoteException {
+    public String getRoutingKey() {
+        return fruitName;
+    }
+
+    @Override
+    public void writeWire(DataOutput out) throws IOException {
+        WireFormat.writeString(out, fruitName);
+    }
+
+    public static DeleteFruitPrice readWire(DataInput in) throws IOException {
+        return new DeleteFruitPrice(WireFormat.readString(in));
+    }
+
+    private Object writeReplace() {
+        return WireFormat.replace(this);
+    }
+
+    @Override
+    public String execute(Compute engine) throws RemoteException {
         try {
-            // Get the engine instance and delete the fruit price from its storage
-            Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-            Compute engine = (Compute) registry.lookup("FruitComputeEngine");
+            // Delete the fruit price from the engine's storage
             engine.deleteFruitPrice(fruitName);
             
-            System.out.println("Deleting fruit price for: " + fruitName);
+            log.info("Deleting fruit price for: {}", fruitName);
             return "Fruit price deleted successfully for " + fruitName;
         } catch (Exception e) {
             throw new RemoteException("Failed to delete fruit price", e);
         }
     }
-}
\ No newline at end of file
+}
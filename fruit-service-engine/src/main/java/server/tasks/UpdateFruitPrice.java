@@ -1,33 +1,62 @@
 package server.tasks;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 
+import model.Money;
 import server.interfaces.Compute;
-import server.interfaces.Task;
+import server.interfaces.ContextTask;
+import server.interfaces.KeyedTask;
+import server.util.AsyncLogger;
+import server.util.WireFormat;
 // This task is responsible for updating the price of a fruit in the remote compute engine
-public class UpdateFruitPrice implements Task<String> {
+public class UpdateFruitPrice implements ContextTask<String>, KeyedTask, WireFormat.Encodable {
+    private static final AsyncLogger log = AsyncLogger.getLogger(UpdateFruitPrice.class);
     private final String fruitName;
-    private final double newPrice;
+    private final long newPriceCents;
 
     public UpdateFruitPrice(String fruitName, double newPrice) {
+        this(Money.toCents(newPrice), fruitName);
+    }
+
+    private UpdateFruitPrice(long newPriceCents, String fruitName) {
         this.fruitName = fruitName;
-        this.newPrice = newPrice;
+        this.newPriceCents = newPriceCents;
+    }
+
+    @Override
+    public String getRoutingKey() {
+        return fruitName;
+    }
+
+    @Override
+    public void writeWire(DataOutput out) throws IOException {
+        WireFormat.writeString(out, fruitName);
+        WireFormat.writeLong(out, newPriceCents);
+    }
+
+    public static UpdateFruitPrice readWire(DataInput in) throws IOException {
+        String fruitName = WireFormat.readString(in);
+        return new UpdateFruitPrice(WireFormat.readLong(in), fruitName);
+    }
+
+    private Object writeReplace() {
+        return WireFormat.replace(this);
     }
 
     @Override
-    public String execute() throws RemoteException {
+    public String execute(Compute engine) throws RemoteException {
         try {
-            // Get the engine instance and update the fruit price in its storage
-            Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-            Compute engine = (Compute) registry.lookup("FruitComputeEngine");
-            engine.updateFruitPrice(fruitName, newPrice);
+            // Update the fruit price in the engine's storage
+            engine.updateFruitPriceCents(fruitName, newPriceCents);
             
-            System.out.println("Updating fruit price for: " + fruitName + " to Ksh" + newPrice);
+            double newPrice = Money.toDouble(newPriceCents);
+            log.info("Updating fruit price for: {} to Ksh{}", fruitName, newPrice);
             return "Fruit price updated successfully for " + fruitName + " to Ksh" + newPrice;
         } catch (Exception e) {
             throw new RemoteException("Failed to update fruit price", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package server.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Logger for the request paths: same parameterized messages as slf4j ("Added: {} - Ksh{}"),
+// but the caller only checks the level and queues the event on a shared ring buffer; formatting
+// and console output happen on a background thread. Disabled levels cost a single check.
+// Levels and output are configured through slf4j (see simplelogger.properties)
+public final class AsyncLogger {
+    private final Logger delegate;
+
+    private AsyncLogger(Logger delegate) {
+        this.delegate = delegate;
+    }
+
+    public static AsyncLogger getLogger(Class<?> type) {
+        return new AsyncLogger(LoggerFactory.getLogger(type));
+    }
+
+    public boolean isDebugEnabled() {
+        return delegate.isDebugEnabled();
+    }
+
+    public void debug(String format, Object arg) {
+        if (delegate.isDebugEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.DEBUG, delegate, format, arg, null, null, null, 1);
+        }
+    }
+
+    public void debug(String format, Object arg0, Object arg1) {
+        if (delegate.isDebugEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.DEBUG, delegate, format, arg0, arg1, null, null, 2);
+        }
+    }
+
+    public void info(String message) {
+        if (delegate.isInfoEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.INFO, delegate, message, null, null, null, null, 0);
+        }
+    }
+
+    public void info(String format, Object arg) {
+        if (delegate.isInfoEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.INFO, delegate, format, arg, null, null, null, 1);
+        }
+    }
+
+    public void info(String format, Object arg0, Object arg1) {
+        if (delegate.isInfoEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.INFO, delegate, format, arg0, arg1, null, null, 2);
+        }
+    }
+
+    public void info(String format, Object arg0, Object arg1, Object arg2) {
+        if (delegate.isInfoEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.INFO, delegate, format, arg0, arg1, arg2, null, 3);
+        }
+    }
+
+    public void info(String format, Object... args) {
+        if (delegate.isInfoEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.INFO, delegate, format, null, null, null, args, args.length);
+        }
+    }
+
+    public void warn(String format, Object arg) {
+        if (delegate.isWarnEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.WARN, delegate, format, arg, null, null, null, 1);
+        }
+    }
+
+    public void warn(String format, Object arg0, Object arg1) {
+        if (delegate.isWarnEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.WARN, delegate, format, arg0, arg1, null, null, 2);
+        }
+    }
+
+    public void warn(String format, Object arg0, Object arg1, Object arg2) {
+        if (delegate.isWarnEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.WARN, delegate, format, arg0, arg1, arg2, null, 3);
+        }
+    }
+
+    // A trailing Throwable argument is logged with its stack trace, as in slf4j
+    public void error(String format, Object arg) {
+        if (delegate.isErrorEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.ERROR, delegate, format, arg, null, null, null, 1);
+        }
+    }
+
+    public void error(String format, Object arg0, Object arg1) {
+        if (delegate.isErrorEnabled()) {
+            LogRingBuffer.INSTANCE.publish(LogRingBuffer.ERROR, delegate, format, arg0, arg1, null, null, 2);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package server.util;
+
+import model.Receipt;
+import model.Sale;
+
+// The receipt for a checked-out session cart (Compute.checkoutCart), shared by the engine and the
+// cluster front ends so a cart's receipt reads the same wherever it is kept. The sale itself (pricing,
+// journaling and counting) is done by Compute.sellCart; lines no longer in the catalog are left off
+public final class CartCheckout {
+    private CartCheckout() {
+    }
+
+    public static String receipt(Sale sale) {
+        Receipt receipt = sale.getReceipt();
+        return ReceiptRenderer.render(ReceiptRenderer.CART_RECEIPT, receipt.getCashier(), receipt.getTotalCents(),
+                receipt.getAmountGivenCents(), receipt.getChangeDueCents(), receipt.getCatalogVersion(),
+                sale.getItems());
+    }
+}
@@ -0,0 +1,199 @@
+package server.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerError;
+import java.rmi.ServerException;
+import java.rmi.registry.LocateRegistry;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import server.interfaces.Compute;
+
+// The process-wide connection to one engine, handed out by RMIConnectionHelper as a Compute proxy.
+// Calls go straight to a cached stub, so request threads never touch the registry. A background
+// check pings the engine every HEALTH_INTERVAL_MILLIS. When the check or a call fails in transport
+// (not with an exception thrown by the engine itself), the circuit opens: calls fail at once with
+// a ConnectException, and the checker looks the engine up again after an exponential backoff with
+// jitter until it answers, then closes the circuit with the fresh stub. Calls are never retried,
+// since a failed call may already have changed a price.
+//
+// Tuning: -Dfruit.rmi.healthIntervalMillis (default 1000), -Dfruit.rmi.retryBaseMillis (default 250),
+// -Dfruit.rmi.retryMaxMillis (default 30000)
+final class EngineConnection implements InvocationHandler {
+    private static final AsyncLogger log = AsyncLogger.getLogger(EngineConnection.class);
+    private static final long HEALTH_INTERVAL_MILLIS = Long.getLong("fruit.rmi.healthIntervalMillis", 1000);
+    private static final long RETRY_BASE_MILLIS = Long.getLong("fruit.rmi.retryBaseMillis", 250);
+    private static final long RETRY_MAX_MILLIS = Long.getLong("fruit.rmi.retryMaxMillis", 30_000);
+    private static final ScheduledExecutorService healthChecks = newHealthCheckPool();
+
+    private final String host;
+    private final int port;
+    private final String serviceName;
+    private final Compute proxy;
+    // Null while the circuit is open
+    private volatile Compute stub;
+    private volatile long retryAtMillis;
+    // Guarded by this
+    private int failedAttempts;
+    private ScheduledFuture<?> nextCheck;
+    private long nextCheckId;
+    // Whether nextCheck has begun running; a started check no longer counts as pending
+    private boolean nextCheckStarted;
+
+    private EngineConnection(String host, int port, String serviceName, Compute stub) {
+        this.host = host;
+        this.port = port;
+        this.serviceName = serviceName;
+        this.stub = stub;
+        this.proxy = (Compute) Proxy.newProxyInstance(Compute.class.getClassLoader(), new Class<?>[] {Compute.class}, this);
+    }
+
+    // Looks the engine up once, so a caller learns at once if it is not there at all
+    static EngineConnection open(String host, int port, String serviceName) throws RemoteException, NotBoundException {
+        EngineConnection connection = new EngineConnection(host, port, serviceName, lookup(host, port, serviceName));
+        connection.scheduleCheck(HEALTH_INTERVAL_MILLIS);
+        return connection;
+    }
+
+    Compute getProxy() {
+        return proxy;
+    }
+
+    boolean isAvailable() {
+        return stub != null;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals": return proxy == args[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                default: return "Compute[" + host + ":" + port + (stub == null ? ", unavailable]" : "]");
+            }
+        }
+        Compute current = stub;
+        if (current == null) {
+            throw new ConnectException("Engine at " + host + ":" + port + " is unavailable; reconnecting in "
+                    + Math.max(0, retryAtMillis - System.currentTimeMillis()) + " ms");
+        }
+        try {
+            return method.invoke(current, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (isTransportFailure(cause)) {
+                connectionLost(current, cause);
+            }
+            throw cause;
+        }
+    }
+
+    // ServerException and ServerError wrap what the engine itself threw, so the engine is up
+    private static boolean isTransportFailure(Throwable failure) {
+        return failure instanceof RemoteException && !(failure instanceof ServerException) && !(failure instanceof ServerError);
+    }
+
+    private synchronized void connectionLost(Compute failed, Throwable cause) {
+        if (stub != failed) {
+            return; // already reported, or already replaced by a fresh stub
+        }
+        stub = null;
+        failedAttempts = 0;
+        retryAtMillis = System.currentTimeMillis();
+        log.warn("Lost engine at {}:{}, reconnecting: {}", host, port, cause.toString());
+        scheduleCheck(0);
+    }
+
+    private synchronized void connected(Compute fresh) {
+        stub = fresh;
+        log.info("Reconnected to engine at {}:{} after {} attempt(s)", host, port, failedAttempts);
+        failedAttempts = 0;
+    }
+
+    // Keeps a pending check that is due sooner, such as the immediate reconnect connectionLost asks
+    // for while a regular check is running, so a later request never pushes an earlier one back
+    private synchronized void scheduleCheck(long delayMillis) {
+        boolean pending = nextCheck != null && !nextCheckStarted;
+        if (pending && nextCheck.getDelay(TimeUnit.MILLISECONDS) <= delayMillis) {
+            return;
+        }
+        if (pending) {
+            nextCheck.cancel(false);
+        }
+        long id = ++nextCheckId;
+        nextCheckStarted = false;
+        nextCheck = healthChecks.schedule(() -> check(id), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void checkStarted(long id) {
+        if (id == nextCheckId) {
+            nextCheckStarted = true;
+        }
+    }
+
+    // Always schedules the next check, whatever the ping throws; an uncaught exception here would
+    // end the checks for this engine, and with them any reconnect
+    private void check(long id) {
+        checkStarted(id);
+        long nextDelay = HEALTH_INTERVAL_MILLIS;
+        Compute current = stub;
+        try {
+            if (current != null) {
+                try {
+                    current.getPriceVersion();
+                } catch (RemoteException e) {
+                    if (isTransportFailure(e)) {
+                        connectionLost(current, e);
+                        nextDelay = 0;
+                    }
+                }
+            } else {
+                Compute fresh = lookup(host, port, serviceName);
+                fresh.getPriceVersion();
+                connected(fresh);
+            }
+        } catch (RemoteException | NotBoundException | RuntimeException e) {
+            if (current != null) {
+                log.warn("Health check of engine at {}:{} failed: {}", host, port, e.toString());
+            } else {
+                nextDelay = backoff();
+            }
+        } finally {
+            scheduleCheck(nextDelay);
+        }
+    }
+
+    // Equal jitter: half the exponential step, plus a random part of the other half
+    private synchronized long backoff() {
+        long ceiling = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << Math.min(failedAttempts, 20));
+        failedAttempts++;
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        retryAtMillis = System.currentTimeMillis() + delay;
+        return delay;
+    }
+
+    private static Compute lookup(String host, int port, String serviceName) throws RemoteException, NotBoundException {
+        return (Compute) LocateRegistry.getRegistry(host, port).lookup(serviceName);
+    }
+
+    private static ScheduledExecutorService newHealthCheckPool() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(4, runnable -> {
+            Thread thread = new Thread(runnable, "engine-health-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.setRemoveOnCancelPolicy(true);
+        return pool;
+    }
+}
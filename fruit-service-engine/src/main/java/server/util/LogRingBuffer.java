@@ -0,0 +1,179 @@
+package server.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
+
+// Preallocated multi-producer, single-consumer ring of log events behind AsyncLogger.
+// Producers claim a slot with one CAS, copy the format and argument references into it and
+// publish it; they never format, allocate or touch the console. A single daemon thread formats
+// the events and hands them to slf4j. When the ring is full the event is not queued: INFO and
+// DEBUG are dropped (and counted), WARN and ERROR are written directly by the caller.
+//
+// Tuning: -Dfruit.log.bufferSize (default 8192, rounded up to a power of two)
+final class LogRingBuffer {
+    static final int TRACE = 0;
+    static final int DEBUG = 1;
+    static final int INFO = 2;
+    static final int WARN = 3;
+    static final int ERROR = 4;
+
+    static final LogRingBuffer INSTANCE = new LogRingBuffer(Integer.getInteger("fruit.log.bufferSize", 8192));
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // One reusable event; fields are written by the producer that claimed it and read by the drainer
+    private static final class Slot {
+        volatile long sequence = -1;
+        int level;
+        Logger logger;
+        String threadName;
+        String format;
+        Object arg0;
+        Object arg1;
+        Object arg2;
+        Object[] args;
+        int argCount;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread drainer;
+    private volatile boolean drainerParked;
+
+    private LogRingBuffer(int requestedSize) {
+        int size = Integer.highestOneBit(Math.max(requestedSize, 16) - 1) << 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+
+        drainer = new Thread(this::runDrainer, "log-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+        // Write out whatever is still queued when the JVM exits normally
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "log-drainer-shutdown"));
+    }
+
+    void publish(int level, Logger logger, String format, Object arg0, Object arg1, Object arg2, Object[] args, int argCount) {
+        long claim;
+        do {
+            claim = head.get();
+            if (claim - tail >= slots.length) {
+                if (level >= WARN) {
+                    write(level, logger, Thread.currentThread().getName(), format, toArray(arg0, arg1, arg2, args, argCount));
+                } else {
+                    dropped.increment();
+                }
+                return;
+            }
+        } while (!head.compareAndSet(claim, claim + 1));
+
+        Slot slot = slots[(int) claim & mask];
+        slot.level = level;
+        slot.logger = logger;
+        slot.threadName = Thread.currentThread().getName();
+        slot.format = format;
+        slot.arg0 = arg0;
+        slot.arg1 = arg1;
+        slot.arg2 = arg2;
+        slot.args = args;
+        slot.argCount = argCount;
+        slot.sequence = claim;
+
+        if (drainerParked) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    long droppedCount() {
+        return dropped.sum();
+    }
+
+    private void runDrainer() {
+        long reportedDrops = 0;
+        while (true) {
+            if (drain() == 0) {
+                long drops = dropped.sum();
+                if (drops != reportedDrops) {
+                    write(WARN, LoggerFactory.getLogger(LogRingBuffer.class), drainer.getName(),
+                            "Log buffer full, dropped {} events ({} total)", new Object[]{drops - reportedDrops, drops});
+                    reportedDrops = drops;
+                }
+                drainerParked = true;
+                // Re-check after announcing the park so a concurrent publish is not missed
+                if (slots[(int) tail & mask].sequence != tail) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                drainerParked = false;
+            }
+        }
+    }
+
+    // Writes every published event in order; returns how many were written
+    private synchronized int drain() {
+        int drained = 0;
+        long next = tail;
+        while (true) {
+            Slot slot = slots[(int) next & mask];
+            if (slot.sequence != next) {
+                return drained;
+            }
+            int level = slot.level;
+            Logger logger = slot.logger;
+            String threadName = slot.threadName;
+            String format = slot.format;
+            Object[] arguments = toArray(slot.arg0, slot.arg1, slot.arg2, slot.args, slot.argCount);
+            slot.logger = null;
+            slot.format = null;
+            slot.arg0 = null;
+            slot.arg1 = null;
+            slot.arg2 = null;
+            slot.args = null;
+            next++;
+            tail = next;
+
+            try {
+                write(level, logger, threadName, format, arguments);
+            } catch (RuntimeException e) {
+                // A broken toString() on an argument must not stop the drainer
+            }
+            drained++;
+        }
+    }
+
+    private static Object[] toArray(Object arg0, Object arg1, Object arg2, Object[] args, int argCount) {
+        if (args != null) {
+            return args;
+        }
+        switch (argCount) {
+            case 0: return null;
+            case 1: return new Object[]{arg0};
+            case 2: return new Object[]{arg0, arg1};
+            default: return new Object[]{arg0, arg1, arg2};
+        }
+    }
+
+    private static void write(int level, Logger logger, String threadName, String format, Object[] arguments) {
+        FormattingTuple formatted = MessageFormatter.arrayFormat(format, arguments);
+        String message = "[" + threadName + "] " + formatted.getMessage();
+        Throwable thrown = formatted.getThrowable();
+        switch (level) {
+            case TRACE: logger.trace(message, thrown); break;
+            case DEBUG: logger.debug(message, thrown); break;
+            case INFO: logger.info(message, thrown); break;
+            case WARN: logger.warn(message, thrown); break;
+            default: logger.error(message, thrown); break;
+        }
+    }
+}
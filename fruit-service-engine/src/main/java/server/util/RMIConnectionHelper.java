@@ -1,23 +1,114 @@
 package server.util;
 
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.concurrent.ConcurrentHashMap;
 
-import server.FruitComputeEngine;
+import server.cluster.ReplicatedCompute;
+import server.cluster.ShardedCompute;
+import server.interfaces.Compute;
 
 // This class provides a utility to establish a connection to the RMI registry
 // and retrieve the FruitComputeEngine instance.
+// Connections are shared by the whole process: the first call for an engine looks it up, later calls
+// get the same health-checked stub back without a registry round trip (see EngineConnection), and
+// the stub reconnects by itself when the engine restarts.
+// With -Dfruit.shards=host:port,host:port,... getCompute() returns a ShardedCompute that routes
+// across all of those engines instead of a single engine stub. With -Dfruit.replicas=host:port,...
+// it returns a ReplicatedCompute that reads from those replicas of the engine at host:port.
 public class RMIConnectionHelper {
+    public static final String SHARDS_PROPERTY = "fruit.shards";
+    public static final String REPLICAS_PROPERTY = "fruit.replicas";
     private static final String DEFAULT_HOST = "localhost";
     private static final int DEFAULT_PORT = 1099;
     private static final String SERVICE_NAME = "FruitComputeEngine";
-    
-    public static FruitComputeEngine getEngineConnection() throws Exception {
+
+    // Keyed by host:port
+    private static final ConcurrentHashMap<String, EngineConnection> engines = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Compute> computes = new ConcurrentHashMap<>();
+
+    public static Compute getEngineConnection() throws RemoteException, NotBoundException {
         return getEngineConnection(DEFAULT_HOST, DEFAULT_PORT);
     }
-    
-    public static FruitComputeEngine getEngineConnection(String host, int port) throws Exception {
-        Registry registry = LocateRegistry.getRegistry(host, port);
-        return (FruitComputeEngine) registry.lookup(SERVICE_NAME);
+
+    // The RMI stub implements Compute, not the engine class, so this is the same as lookupEngine
+    public static Compute getEngineConnection(String host, int port) throws RemoteException, NotBoundException {
+        return lookupEngine(host, port);
+    }
+
+    public static Compute getCompute() throws RemoteException, NotBoundException {
+        return getCompute(DEFAULT_HOST, DEFAULT_PORT);
+    }
+
+    // The sharded router when -Dfruit.shards is set, the replica router when -Dfruit.replicas is set,
+    // otherwise the engine at host:port. Built once per process and shared
+    public static Compute getCompute(String host, int port) throws RemoteException, NotBoundException {
+        String key = host + ":" + port;
+        Compute compute = computes.get(key);
+        if (compute != null) {
+            return compute;
+        }
+        synchronized (computes) {
+            compute = computes.get(key);
+            if (compute == null) {
+                compute = connect(host, port);
+                computes.put(key, compute);
+            }
+            return compute;
+        }
+    }
+
+    private static Compute connect(String host, int port) throws RemoteException, NotBoundException {
+        String shards = System.getProperty(SHARDS_PROPERTY);
+        String replicas = System.getProperty(REPLICAS_PROPERTY);
+        boolean sharded = shards != null && !shards.trim().isEmpty();
+        boolean replicated = replicas != null && !replicas.trim().isEmpty();
+        if (sharded && replicated) {
+            throw new IllegalArgumentException("-D" + SHARDS_PROPERTY + " and -D" + REPLICAS_PROPERTY
+                    + " cannot be combined yet");
+        }
+        if (sharded) {
+            return ShardedCompute.connect(ShardedCompute.parseAddresses(shards));
+        }
+        if (replicated) {
+            return ReplicatedCompute.connect(lookupEngine(host, port), ShardedCompute.parseAddresses(replicas));
+        }
+        return lookupEngine(host, port);
+    }
+
+    public static Compute lookupEngine() throws RemoteException, NotBoundException {
+        return lookupEngine(DEFAULT_HOST, DEFAULT_PORT);
+    }
+
+    // Throws if the engine cannot be reached the first time; after that the stub recovers on its own
+    public static Compute lookupEngine(String host, int port) throws RemoteException, NotBoundException {
+        String key = host + ":" + port;
+        EngineConnection connection = engines.get(key);
+        if (connection != null) {
+            return connection.getProxy();
+        }
+        synchronized (engines) {
+            connection = engines.get(key);
+            if (connection == null) {
+                connection = EngineConnection.open(host, port, SERVICE_NAME);
+                engines.put(key, connection);
+            }
+            return connection.getProxy();
+        }
+    }
+
+    // address is host:port, or just host for the default port
+    public static Compute lookupEngine(String address) throws RemoteException, NotBoundException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return lookupEngine(address, DEFAULT_PORT);
+        }
+        return lookupEngine(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    // False while the circuit to the engine is open, i.e. calls to it fail without being sent
+    public static boolean isAvailable(String host, int port) {
+        EngineConnection connection = engines.get(host + ":" + port);
+        return connection != null && connection.isAvailable();
     }
 }
@@ -0,0 +1,307 @@
+package server.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.LineItem;
+import model.Money;
+import model.Receipt;
+
+// Renders the engine and cart receipts.
+// Templates are parsed once into a list of literal and field operations. Rendering appends into a
+// per-thread StringBuilder, formats money by hand from whole cents and reuses the date text for
+// the current second, so a receipt costs no formatter objects or String.format calls. The result
+// can be returned as a String or encoded straight into an OutputStream or ByteBuffer.
+//
+// Placeholders: {date} {cashier} {total} {amountGiven} {change} {catalogVersion} {items}
+// Item placeholders: {name} {quantity} {unitPrice} {lineTotal}
+public final class ReceiptRenderer {
+    private static final int LITERAL = 0;
+    private static final int DATE = 1;
+    private static final int CASHIER = 2;
+    private static final int TOTAL = 3;
+    private static final int AMOUNT_GIVEN = 4;
+    private static final int CHANGE = 5;
+    private static final int ITEMS = 6;
+    private static final int CATALOG_VERSION = 7;
+    private static final int NAME = 8;
+    private static final int QUANTITY = 9;
+    private static final int UNIT_PRICE = 10;
+    private static final int LINE_TOTAL = 11;
+
+    private static final String[] RECEIPT_FIELDS = {null, "date", "cashier", "total", "amountGiven", "change", "items",
+            "catalogVersion"};
+    private static final String[] ITEM_FIELDS = {null, null, null, null, null, null, null, null, "name", "quantity",
+            "unitPrice", "lineTotal"};
+
+    private static final String SEPARATOR = "==============================\n";
+
+    // A parsed template; immutable and shared by all threads
+    public static final class Template {
+        private final int[] ops;
+        private final String[] literals;
+        private final Template itemTemplate;
+
+        private Template(int[] ops, String[] literals, Template itemTemplate) {
+            this.ops = ops;
+            this.literals = literals;
+            this.itemTemplate = itemTemplate;
+        }
+
+        public static Template compile(String source) {
+            return compile(source, RECEIPT_FIELDS, null);
+        }
+
+        // itemSource is rendered once per line item wherever {items} appears in source
+        public static Template compile(String source, String itemSource) {
+            return compile(source, RECEIPT_FIELDS, compile(itemSource, ITEM_FIELDS, null));
+        }
+
+        private static Template compile(String source, String[] fieldNames, Template itemTemplate) {
+            List<Integer> ops = new ArrayList<>();
+            List<String> literals = new ArrayList<>();
+            int position = 0;
+            while (position < source.length()) {
+                int open = source.indexOf('{', position);
+                if (open < 0) {
+                    ops.add(LITERAL);
+                    literals.add(source.substring(position));
+                    break;
+                }
+                int close = source.indexOf('}', open);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed placeholder in receipt template at " + open);
+                }
+                if (open > position) {
+                    ops.add(LITERAL);
+                    literals.add(source.substring(position, open));
+                }
+                ops.add(fieldCode(source.substring(open + 1, close), fieldNames));
+                literals.add(null);
+                position = close + 1;
+            }
+            if (ops.contains(ITEMS) && itemTemplate == null) {
+                throw new IllegalArgumentException("Receipt template uses {items} but has no item template");
+            }
+
+            int[] opArray = new int[ops.size()];
+            for (int i = 0; i < opArray.length; i++) {
+                opArray[i] = ops.get(i);
+            }
+            return new Template(opArray, literals.toArray(new String[0]), itemTemplate);
+        }
+
+        private static int fieldCode(String name, String[] fieldNames) {
+            for (int code = 0; code < fieldNames.length; code++) {
+                if (name.equals(fieldNames[code])) {
+                    return code;
+                }
+            }
+            throw new IllegalArgumentException("Unknown receipt template field: {" + name + "}");
+        }
+    }
+
+    // Receipt returned by Compute.generateReceipt
+    public static final Template STORE_RECEIPT = Template.compile(
+            "===== FRUIT STORE RECEIPT =====\n"
+            + "Date: {date}\n"
+            + "Cashier: {cashier}\n"
+            + SEPARATOR
+            + "Total Cost: Ksh{total}\n"
+            + "Amount Given: Ksh{amountGiven}\n"
+            + "Change: Ksh{change}\n"
+            + SEPARATOR
+            + "Thank you for your purchase!\n");
+
+    // Itemized receipt printed by FruitComputeTaskRegistry and by session cart checkouts
+    public static final Template CART_RECEIPT = Template.compile(
+            "===== FRUIT STORE RECEIPT =====\n"
+            + "Cashier: {cashier}\n"
+            + "Catalog version: {catalogVersion}\n"
+            + SEPARATOR
+            + "ITEMS PURCHASED:\n"
+            + "{items}"
+            + SEPARATOR
+            + "Total Cost: Ksh{total}\n"
+            + "Amount Given: Ksh{amountGiven}\n"
+            + "Change: Ksh{change}\n"
+            + SEPARATOR
+            + "Thank you for your purchase!\n",
+            "{name} x {quantity} @ ${unitPrice} = ${lineTotal}\n");
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+    private static volatile CachedTimestamp cachedTimestamp;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    // The date text for one second; replaced (not mutated) when the second changes
+    private static final class CachedTimestamp {
+        final long epochSecond;
+        final char[] text;
+
+        CachedTimestamp(long epochSecond) {
+            this.epochSecond = epochSecond;
+            this.text = TIMESTAMP.format(Instant.ofEpochSecond(epochSecond)).toCharArray();
+        }
+    }
+
+    // Per-thread buffers, grown on demand and reused for every receipt
+    private static final class Scratch {
+        final StringBuilder text = new StringBuilder(512);
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        char[] chars = new char[512];
+        CharBuffer charView = CharBuffer.wrap(chars);
+        ByteBuffer bytes = ByteBuffer.allocate(1024);
+
+        StringBuilder reset() {
+            if (text.capacity() > 64 * 1024) {
+                text.setLength(0);
+                text.trimToSize();
+            }
+            text.setLength(0);
+            return text;
+        }
+
+        // Copies the rendered text into the reusable char view and readies the encoder
+        CharBuffer chars() {
+            int length = text.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+                charView = CharBuffer.wrap(chars);
+            }
+            text.getChars(0, length, chars, 0);
+            charView.clear();
+            charView.limit(length);
+            encoder.reset();
+            return charView;
+        }
+    }
+
+    private ReceiptRenderer() {
+    }
+
+    public static String render(Template template, String cashier, long totalCents, long amountGivenCents,
+                                long changeCents, List<? extends LineItem> items) {
+        return render(template, cashier, totalCents, amountGivenCents, changeCents, Receipt.NO_VERSION, items);
+    }
+
+    public static String render(Template template, String cashier, long totalCents, long amountGivenCents,
+                                long changeCents, long catalogVersion, List<? extends LineItem> items) {
+        StringBuilder text = SCRATCH.get().reset();
+        renderInto(text, template, cashier, totalCents, amountGivenCents, changeCents, catalogVersion, items);
+        return text.toString();
+    }
+
+    // Encodes the receipt as UTF-8 straight into the stream, through a reused per-thread byte buffer
+    public static void render(OutputStream out, Template template, String cashier, long totalCents,
+                              long amountGivenCents, long changeCents, List<? extends LineItem> items) throws IOException {
+        render(out, template, cashier, totalCents, amountGivenCents, changeCents, Receipt.NO_VERSION, items);
+    }
+
+    public static void render(OutputStream out, Template template, String cashier, long totalCents,
+                              long amountGivenCents, long changeCents, long catalogVersion,
+                              List<? extends LineItem> items) throws IOException {
+        Scratch scratch = SCRATCH.get();
+        renderInto(scratch.reset(), template, cashier, totalCents, amountGivenCents, changeCents, catalogVersion, items);
+        CharBuffer chars = scratch.chars();
+        ByteBuffer bytes = scratch.bytes;
+        bytes.clear();
+        while (true) {
+            CoderResult result = scratch.encoder.encode(chars, bytes, true);
+            if (!result.isOverflow()) {
+                result = scratch.encoder.flush(bytes);
+            }
+            if (!result.isOverflow()) {
+                break;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+            bytes.flip();
+            larger.put(bytes);
+            bytes = larger;
+            scratch.bytes = larger;
+        }
+        out.write(bytes.array(), 0, bytes.position());
+    }
+
+    // Encodes the receipt as UTF-8 at the buffer's position; throws BufferOverflowException if it does not fit
+    public static void render(ByteBuffer out, Template template, String cashier, long totalCents,
+                              long amountGivenCents, long changeCents, List<? extends LineItem> items) {
+        Scratch scratch = SCRATCH.get();
+        renderInto(scratch.reset(), template, cashier, totalCents, amountGivenCents, changeCents, Receipt.NO_VERSION,
+                items);
+        CharBuffer chars = scratch.chars();
+        if (scratch.encoder.encode(chars, out, true).isOverflow() || scratch.encoder.flush(out).isOverflow()) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    private static void renderInto(StringBuilder out, Template template, String cashier, long totalCents,
+                                   long amountGivenCents, long changeCents, long catalogVersion,
+                                   List<? extends LineItem> items) {
+        int[] ops = template.ops;
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case LITERAL: out.append(template.literals[i]); break;
+                case DATE: appendTimestamp(out, System.currentTimeMillis()); break;
+                case CASHIER: out.append(cashier); break;
+                case TOTAL: Money.appendMoney(out, totalCents); break;
+                case AMOUNT_GIVEN: Money.appendMoney(out, amountGivenCents); break;
+                case CHANGE: Money.appendMoney(out, changeCents); break;
+                case CATALOG_VERSION:
+                    if (catalogVersion >= 0) {
+                        out.append(catalogVersion);
+                    } else {
+                        out.append("n/a");
+                    }
+                    break;
+                case ITEMS:
+                    if (items != null) {
+                        for (int j = 0; j < items.size(); j++) {
+                            renderItem(out, template.itemTemplate, items.get(j));
+                        }
+                    }
+                    break;
+                default: throw new IllegalStateException("Bad receipt template op " + ops[i]);
+            }
+        }
+    }
+
+    private static void renderItem(StringBuilder out, Template itemTemplate, LineItem item) {
+        int[] ops = itemTemplate.ops;
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case LITERAL: out.append(itemTemplate.literals[i]); break;
+                case NAME: out.append(item.getFruitName()); break;
+                case QUANTITY: out.append(item.getQuantity()); break;
+                case UNIT_PRICE: Money.appendMoney(out, item.getUnitPriceCents()); break;
+                case LINE_TOTAL: Money.appendMoney(out, item.getLineTotalCents()); break;
+                default: throw new IllegalStateException("Bad receipt item op " + ops[i]);
+            }
+        }
+    }
+
+    private static void appendTimestamp(StringBuilder out, long epochMillis) {
+        long second = Math.floorDiv(epochMillis, 1000L);
+        CachedTimestamp cached = cachedTimestamp;
+        if (cached == null || cached.epochSecond != second) {
+            cached = new CachedTimestamp(second);
+            cachedTimestamp = cached;
+        }
+        out.append(cached.text);
+    }
+}
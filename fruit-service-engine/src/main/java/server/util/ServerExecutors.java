@@ -0,0 +1,135 @@
+package server.util;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// This class builds the executors that run blocking request handlers in the HTTP front ends.
+// The execution mode is selected with -Dfruit.executor:
+//   bounded (default) - a fixed pool of platform threads in front of a capped queue
+//   virtual           - one virtual thread per request, capped by a concurrency limit;
+//                       needs a JDK 21+ runtime and falls back to bounded on older JDKs
+// Work beyond the limits is rejected with RejectedExecutionException so overload sheds requests
+// instead of creating threads.
+public final class ServerExecutors {
+    public static final String MODE_PROPERTY = "fruit.executor";
+    private static final int THREADS = Integer.getInteger("fruit.executor.threads", 64);
+    private static final int QUEUE_LIMIT = Integer.getInteger("fruit.executor.queue", 1024);
+    private static final int MAX_CONCURRENT = Integer.getInteger("fruit.executor.maxConcurrent", 10_000);
+
+    private ServerExecutors() {
+    }
+
+    public static ExecutorService newRequestExecutor(String name) {
+        if (useVirtualThreads()) {
+            return new ConcurrencyLimitedExecutor(newVirtualThreadExecutor(), MAX_CONCURRENT);
+        }
+        return newBoundedExecutor(name, THREADS, QUEUE_LIMIT);
+    }
+
+    public static String describe() {
+        if (useVirtualThreads()) {
+            return "virtual threads, max " + MAX_CONCURRENT + " concurrent requests";
+        }
+        if ("virtual".equalsIgnoreCase(System.getProperty(MODE_PROPERTY))) {
+            return "bounded pool of " + THREADS + " threads, queue limit " + QUEUE_LIMIT
+                    + " (virtual threads need Java 21+)";
+        }
+        return "bounded pool of " + THREADS + " threads, queue limit " + QUEUE_LIMIT;
+    }
+
+    public static ExecutorService newBoundedExecutor(String name, int threads, int queueLimit) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueLimit), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static boolean useVirtualThreads() {
+        if (!"virtual".equalsIgnoreCase(System.getProperty(MODE_PROPERTY))) {
+            return false;
+        }
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // Looked up reflectively so the sources still compile for the Java 8 target
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available", e);
+        }
+    }
+
+    // Caps the number of tasks running at once on an otherwise unbounded executor
+    private static final class ConcurrencyLimitedExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        ConcurrencyLimitedExecutor(ExecutorService delegate, int maxConcurrent) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(maxConcurrent);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (!permits.tryAcquire()) {
+                throw new RejectedExecutionException("Too many concurrent requests");
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package server.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Hashed timing wheel. An item scheduled for a deadline goes into the slot of the tick the deadline
+// falls in, and advance() hands over the items of every slot the clock has passed, so scheduling and
+// expiring cost the same however many items are waiting, and nothing ever scans all of them.
+// A deadline further away than the wheel spans wraps round to an earlier slot; when that slot comes
+// up the item is simply put back. schedule() may be called from any thread: items wait in a queue
+// until the thread that calls advance() places them, so the slots themselves are never shared
+public final class TimerWheel<T> {
+    private final long tickMillis;
+    private final List<Timer<T>>[] slots;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timer<T>> scheduled = new ConcurrentLinkedQueue<>();
+    // The tick of the last advance; its slot may still hold items due later in it. The advancing
+    // thread's alone
+    private long currentTick;
+
+    // Called for each item whose deadline has passed
+    public interface Expiry<T> {
+        void expired(T item);
+    }
+
+    private static final class Timer<T> {
+        final T item;
+        final long deadlineMillis;
+
+        Timer(T item, long deadlineMillis) {
+            this.item = item;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+
+    // slotCount is rounded up to a power of two; the wheel spans tickMillis * slotCount
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMillis, int slotCount, long startMillis) {
+        int size = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.slots = new List[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    public void schedule(T item, long deadlineMillis) {
+        scheduled.add(new Timer<>(item, deadlineMillis));
+    }
+
+    // Expires everything due by nowMillis. An item the callback schedules again waits for a later call
+    public void advance(long nowMillis, Expiry<T> expiry) {
+        List<Timer<T>> due = new ArrayList<>();
+        placeScheduled(due, nowMillis);
+        long nowTick = nowMillis / tickMillis;
+        // After a long stall every slot is due once; there is no point going round twice
+        for (long tick = Math.max(currentTick, nowTick - mask); tick <= nowTick; tick++) {
+            List<Timer<T>> slot = slots[(int) (tick & mask)];
+            for (int i = 0; i < slot.size(); i++) {
+                Timer<T> timer = slot.get(i);
+                if (timer.deadlineMillis <= nowMillis) {
+                    due.add(timer);
+                }
+            }
+            // Keep the ones due later in the tick, or wrapped round from further ahead
+            slot.removeIf(timer -> timer.deadlineMillis <= nowMillis);
+        }
+        currentTick = Math.max(currentTick, nowTick);
+        for (Timer<T> timer : due) {
+            expiry.expired(timer.item);
+        }
+    }
+
+    private void placeScheduled(List<Timer<T>> due, long nowMillis) {
+        Timer<T> timer;
+        while ((timer = scheduled.poll()) != null) {
+            if (timer.deadlineMillis <= nowMillis) {
+                due.add(timer);
+            } else {
+                slots[(int) ((timer.deadlineMillis / tickMillis) & mask)].add(timer);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package server.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.FruitPrice;
+import model.Receipt;
+import server.tasks.AddFruitPrice;
+import server.tasks.CalculateCost;
+import server.tasks.DeleteFruitPrice;
+import server.tasks.UpdateFruitPrice;
+
+// Compact wire format for the objects sent on every call: the tasks, FruitPrice and Receipt.
+// Default serialization writes each class's descriptor (its name and every field's name and type)
+// on every RMI call. These classes instead replace themselves with an Envelope, which writes a
+// one-byte id from the table below and then the object's own fields: whole numbers and cents as
+// zig-zag varints, strings as a varint length and UTF-8 bytes. Only the Envelope's short descriptor
+// goes over the wire. Ids are never reused or renumbered; new types go at the end of the table,
+// and both ends of a connection need the same table.
+//
+// -Dfruit.wire.compact=false falls back to default serialization (for comparisons)
+public final class WireFormat {
+    public static final boolean COMPACT = Boolean.parseBoolean(System.getProperty("fruit.wire.compact", "true"));
+    private static final int MAX_STRING_BYTES = 1 << 20;
+
+    private static final Map<Class<?>, Integer> ids = new HashMap<>();
+    private static final Reader<?>[] readers = new Reader<?>[16];
+
+    // A type in the table writes its own fields; its Reader reads them back in the same order
+    public interface Encodable {
+        void writeWire(DataOutput out) throws IOException;
+    }
+
+    public interface Reader<T> {
+        T readWire(DataInput in) throws IOException;
+    }
+
+    static {
+        register(1, AddFruitPrice.class, AddFruitPrice::readWire);
+        register(2, UpdateFruitPrice.class, UpdateFruitPrice::readWire);
+        register(3, DeleteFruitPrice.class, DeleteFruitPrice::readWire);
+        register(4, CalculateCost.class, CalculateCost::readWire);
+        register(5, FruitPrice.class, FruitPrice::readWire);
+        register(6, Receipt.class, Receipt::readWire);
+    }
+
+    private WireFormat() {
+    }
+
+    private static <T extends Encodable> void register(int id, Class<T> type, Reader<T> reader) {
+        ids.put(type, id);
+        readers[id] = reader;
+    }
+
+    // For writeReplace: the object itself if it is not in the table (e.g. a subclass) or compact is off
+    public static Object replace(Encodable value) {
+        if (!COMPACT || !ids.containsKey(value.getClass())) {
+            return value;
+        }
+        return new Envelope(value);
+    }
+
+    // Carries one table type over a serialization stream and resolves back to it when read
+    public static final class Envelope implements Externalizable {
+        private static final long serialVersionUID = 1L;
+        private Object value;
+
+        // For deserialization only
+        public Envelope() {
+        }
+
+        Envelope(Encodable value) {
+            this.value = value;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.writeByte(ids.get(value.getClass()));
+            ((Encodable) value).writeWire(out);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            int id = in.readUnsignedByte();
+            Reader<?> reader = id < readers.length ? readers[id] : null;
+            if (reader == null) {
+                throw new InvalidObjectException("Unknown wire type " + id);
+            }
+            value = reader.readWire(in);
+        }
+
+        private Object readResolve() {
+            return value;
+        }
+    }
+
+    public static void writeLong(DataOutput out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    public static long readLong(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    public static void writeInt(DataOutput out, int value) throws IOException {
+        writeLong(out, value);
+    }
+
+    public static int readInt(DataInput in) throws IOException {
+        long value = readLong(in);
+        if (value != (int) value) {
+            throw new StreamCorruptedException("Varint out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    // null is written as length -1
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeLong(out, -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IOException("String of " + bytes.length + " bytes is too long to send");
+        }
+        writeLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = readInt(in);
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new StreamCorruptedException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
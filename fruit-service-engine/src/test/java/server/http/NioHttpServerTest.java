@@ -0,0 +1,202 @@
+package server.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+// Talks raw HTTP/1.1 to the server, so framing, pipelining and error answers are checked byte for byte
+public class NioHttpServerTest {
+    private final ExecutorService workers = Executors.newFixedThreadPool(4);
+    private NioHttpServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new NioHttpServer(0, request -> {
+            String path = request.getPath();
+            if (path.startsWith("/slow")) {
+                Thread.sleep(200);
+            }
+            if (path.startsWith("/fail")) {
+                throw new IllegalStateException("handler failed");
+            }
+            if (path.startsWith("/stream")) {
+                return HttpResponse.streamed(200, "OK", "text/plain", out -> {
+                    for (int i = 0; i < 5000; i++) {
+                        out.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                    }
+                });
+            }
+            return HttpResponse.text(200, "OK", request.getMethod() + " " + path + " " + request.getBodyAsString());
+        }, workers);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void pipelinedRequestsAreAnsweredInOrder() throws IOException {
+        try (Socket socket = connect()) {
+            // The first request takes longest, yet its answer must still come first
+            send(socket, "GET /slow HTTP/1.1\r\nHost: x\r\n\r\n"
+                    + "POST /post HTTP/1.1\r\nHost: x\r\nContent-Length: 5\r\n\r\nhello"
+                    + "GET /last HTTP/1.1\r\nHost: x\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            assertEquals("GET /slow ", readResponse(in).body);
+            assertEquals("POST /post hello", readResponse(in).body);
+            assertEquals("GET /last ", readResponse(in).body);
+        }
+    }
+
+    @Test
+    public void requestSplitAcrossWritesIsFramedWhole() throws Exception {
+        try (Socket socket = connect()) {
+            String request = "POST /split HTTP/1.1\r\nHost: x\r\nContent-Length: 11\r\n\r\nhello world";
+            OutputStream out = socket.getOutputStream();
+            for (byte b : request.getBytes(StandardCharsets.ISO_8859_1)) {
+                out.write(b);
+                out.flush();
+            }
+            assertEquals("POST /split hello world", readResponse(socket.getInputStream()).body);
+        }
+    }
+
+    @Test
+    public void handlerFailureAnswers500AndKeepsTheConnection() throws IOException {
+        try (Socket socket = connect()) {
+            send(socket, "GET /fail HTTP/1.1\r\nHost: x\r\n\r\nGET /after HTTP/1.1\r\nHost: x\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            Response failed = readResponse(in);
+            assertEquals(500, failed.status);
+            assertEquals("Error: handler failed", failed.body);
+            assertEquals("GET /after ", readResponse(in).body);
+        }
+    }
+
+    @Test
+    public void malformedAndOversizedRequestsAreRejected() throws IOException {
+        try (Socket socket = connect()) {
+            send(socket, "NONSENSE\r\n\r\n");
+            assertEquals(400, readResponse(socket.getInputStream()).status);
+        }
+        try (Socket socket = connect()) {
+            send(socket, "POST /big HTTP/1.1\r\nHost: x\r\nContent-Length: 99999999\r\n\r\n");
+            assertEquals(413, readResponse(socket.getInputStream()).status);
+        }
+    }
+
+    @Test
+    public void streamedResponseIsChunked() throws IOException {
+        try (Socket socket = connect()) {
+            send(socket, "GET /stream HTTP/1.1\r\nHost: x\r\n\r\nGET /next HTTP/1.1\r\nHost: x\r\n\r\n");
+            InputStream in = socket.getInputStream();
+            Response streamed = readResponse(in);
+            assertTrue(streamed.body.startsWith("line 0\n"));
+            assertTrue(streamed.body.endsWith("line 4999\n"));
+            assertEquals("GET /next ", readResponse(in).body);
+        }
+    }
+
+    @Test
+    public void keepsServingAfterClientsVanish() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            Socket socket = connect();
+            send(socket, "GET /stream HTTP/1.1\r\nHost: x\r\n\r\n");
+            socket.setSoLinger(true, 0);
+            socket.close();
+        }
+        try (Socket socket = connect()) {
+            send(socket, "GET /alive HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals("GET /alive ", readResponse(socket.getInputStream()).body);
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("localhost", server.getPort());
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    private static void send(Socket socket, String text) throws IOException {
+        socket.getOutputStream().write(text.getBytes(StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().flush();
+    }
+
+    private static final class Response {
+        int status;
+        String body;
+    }
+
+    // Reads one response, with either a Content-Length or a chunked body
+    private static Response readResponse(InputStream in) throws IOException {
+        Response response = new Response();
+        String statusLine = readLine(in);
+        response.status = Integer.parseInt(statusLine.split(" ")[1]);
+        int contentLength = -1;
+        boolean chunked = false;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            String lower = line.toLowerCase();
+            if (lower.startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            } else if (lower.startsWith("transfer-encoding:") && lower.contains("chunked")) {
+                chunked = true;
+            }
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (chunked) {
+            int size;
+            while ((size = Integer.parseInt(readLine(in), 16)) > 0) {
+                body.write(readBytes(in, size));
+                readLine(in);
+            }
+            readLine(in);
+        } else {
+            body.write(readBytes(in, contentLength));
+        }
+        response.body = new String(body.toByteArray(), StandardCharsets.UTF_8);
+        return response;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Connection closed mid-response");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static byte[] readBytes(InputStream in, int count) throws IOException {
+        byte[] bytes = new byte[count];
+        int read = 0;
+        while (read < count) {
+            int n = in.read(bytes, read, count - read);
+            if (n < 0) {
+                throw new IOException("Connection closed mid-body");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+}
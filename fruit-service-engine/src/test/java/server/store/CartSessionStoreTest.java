@@ -0,0 +1,76 @@
+package server.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import model.CartLine;
+
+// Stores without a ticker, expired by hand at made-up times; the store's own clock starts near 0
+public class CartSessionStoreTest {
+    private static final long IDLE_MILLIS = 1000;
+
+    private final CartSessionStore store = new CartSessionStore(IDLE_MILLIS, 10, 100, false);
+
+    @Test
+    public void dropsACartOnceItHasBeenIdleLongEnough() {
+        store.add("till-1", "apple", 2);
+        store.expire(IDLE_MILLIS / 2);
+        assertEquals(1, store.size());
+        store.expire(10 * IDLE_MILLIS);
+        assertEquals(0, store.size());
+        assertTrue(store.lines("till-1").isEmpty());
+    }
+
+    @Test
+    public void keepsACartUsedSinceItWasScheduled() throws InterruptedException {
+        store.add("till-1", "apple", 2);
+        Thread.sleep(300);
+        store.lines("till-1");
+        // Its first deadline has passed, but the read moved its idle time to 1300 ms or later
+        store.expire(IDLE_MILLIS + 100);
+        assertEquals(1, store.size());
+        store.expire(10 * IDLE_MILLIS);
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void aCartOpenedAgainAfterExpiryStartsEmpty() {
+        store.add("till-1", "apple", 2);
+        store.expire(10 * IDLE_MILLIS);
+        List<CartLine> lines = store.add("till-1", "pear", 1);
+        assertEquals(1, lines.size());
+        assertEquals("pear", lines.get(0).getFruitName());
+    }
+
+    @Test
+    public void aTakenCartIsGoneBeforeItsTimerComesRound() throws InterruptedException {
+        store.add("till-1", "apple", 2);
+        store.add("till-1", "pear", 1);
+        store.add("till-1", "apple", 1);
+        List<CartLine> taken = store.take("till-1");
+        assertEquals(Arrays.asList("apple", "pear"), names(taken));
+        assertEquals(3, taken.get(0).getQuantity());
+        assertEquals(0, store.size());
+        assertTrue(store.take("till-1").isEmpty());
+
+        // A new cart under the same id is not dropped when the old cart's timer comes round
+        Thread.sleep(300);
+        store.add("till-1", "mango", 4);
+        store.expire(IDLE_MILLIS + 100);
+        assertEquals(1, store.size());
+        assertEquals(Arrays.asList("mango"), names(store.lines("till-1")));
+    }
+
+    private static List<String> names(List<CartLine> lines) {
+        String[] names = new String[lines.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = lines.get(i).getFruitName();
+        }
+        return Arrays.asList(names);
+    }
+}
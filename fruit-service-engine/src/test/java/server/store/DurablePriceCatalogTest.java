@@ -0,0 +1,152 @@
+package server.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Each test writes through one catalog, closes it (or leaves its files as a crash would) and checks
+// what a fresh open() rebuilds from the snapshot and log segments on disk
+public class DurablePriceCatalogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysTheLogOnReopen() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Map<String, Long> expected = new HashMap<>();
+        try (DurablePriceCatalog catalog = DurablePriceCatalog.open(directory)) {
+            FruitPriceTable table = catalog.getTable();
+            for (int i = 0; i < 1000; i++) {
+                table.put("fruit-" + i, i + 1);
+                expected.put("fruit-" + i, (long) i + 1);
+            }
+            for (int i = 0; i < 1000; i += 3) {
+                table.remove("fruit-" + i);
+                expected.remove("fruit-" + i);
+            }
+            table.replace("fruit-1", 4242);
+            expected.put("fruit-1", 4242L);
+            catalog.awaitDurable();
+        }
+        assertContents(directory, expected);
+    }
+
+    @Test
+    public void recoversFromSnapshotPlusLaterSegments() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Map<String, Long> expected = new HashMap<>();
+        try (DurablePriceCatalog catalog = DurablePriceCatalog.open(directory)) {
+            FruitPriceTable table = catalog.getTable();
+            for (int i = 0; i < 500; i++) {
+                table.put("fruit-" + i, i + 1);
+                expected.put("fruit-" + i, (long) i + 1);
+            }
+            catalog.snapshot();
+            // Changes after the snapshot live only in the next log segment
+            for (int i = 0; i < 500; i += 2) {
+                table.put("fruit-" + i, 9000 + i);
+                expected.put("fruit-" + i, 9000L + i);
+            }
+            table.remove("fruit-1");
+            expected.remove("fruit-1");
+            table.put("late", 7);
+            expected.put("late", 7L);
+            catalog.awaitDurable();
+        }
+        assertTrue(Files.exists(PriceSnapshot.path(directory, 0)));
+        assertFalse("the snapshot covers segment 0", Files.exists(PriceLog.segmentPath(directory, 0)));
+        assertContents(directory, expected);
+    }
+
+    @Test
+    public void truncatesATornLogTail() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Map<String, Long> expected = new HashMap<>();
+        try (DurablePriceCatalog catalog = DurablePriceCatalog.open(directory)) {
+            for (int i = 0; i < 100; i++) {
+                catalog.getTable().put("fruit-" + i, i + 1);
+                expected.put("fruit-" + i, (long) i + 1);
+            }
+            catalog.awaitDurable();
+        }
+        Path segment = PriceLog.segmentPath(directory, 0);
+        long intactSize = Files.size(segment);
+        // A record cut off mid-write: a header promising more body than made it to disk
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer torn = ByteBuffer.allocate(14);
+            torn.putInt(40).putInt(0x12345678).put((byte) PriceLog.PUT_CENTS).put((byte) 0).putInt(0);
+            torn.flip();
+            channel.write(torn);
+        }
+
+        try (DurablePriceCatalog catalog = DurablePriceCatalog.open(directory)) {
+            assertEquals(expected.size(), catalog.getTable().size());
+            // Recovery compacts in the background, so the segment may already be gone
+            assertTrue(!Files.exists(segment) || Files.size(segment) == intactSize);
+        }
+    }
+
+    @Test
+    public void recoversTwiceInARow() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (DurablePriceCatalog catalog = DurablePriceCatalog.open(directory)) {
+            catalog.getTable().put("apple", 120);
+            catalog.awaitDurable();
+        }
+        try (DurablePriceCatalog catalog = DurablePriceCatalog.open(directory)) {
+            catalog.getTable().put("banana", 80);
+            catalog.awaitDurable();
+        }
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("apple", 120L);
+        expected.put("banana", 80L);
+        assertContents(directory, expected);
+    }
+
+    @Test
+    public void closingLeavesTheLayersAboveHooked() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        DurablePriceCatalog catalog = DurablePriceCatalog.open(directory);
+        FruitPriceTable table = catalog.getTable();
+        VersionedCatalog versions = VersionedCatalog.attach(table);
+        table.put("apple", 120);
+        catalog.awaitDurable();
+        catalog.close();
+
+        // Still versioned, but no longer logged, and the catalog refuses further changes
+        table.put("banana", 80);
+        assertEquals(2, versions.currentVersion());
+        assertEquals(80, versions.snapshot().getCents("banana", -1));
+        try {
+            catalog.checkWritable();
+            fail("A closed catalog accepted a change");
+        } catch (IOException expected) {
+            // refused
+        }
+        assertContents(directory, Collections.singletonMap("apple", 120L));
+    }
+
+    private static void assertContents(Path directory, Map<String, Long> expected) throws IOException {
+        try (DurablePriceCatalog catalog = DurablePriceCatalog.open(directory)) {
+            Map<String, Long> recovered = new HashMap<>();
+            catalog.getTable().forEach(recovered::put);
+            assertEquals(expected, recovered);
+            assertEquals(expected.size(), catalog.getRecoveredEntries());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package server.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+// Writers hammer a table that starts at its smallest size, so puts, replaces and removes keep
+// running into resizes (growth, and rebuilds that drop deleted slots)
+public class FruitPriceTableTest {
+    private static final int THREADS = 8;
+    private static final int KEYS_PER_THREAD = 2000;
+    private static final int ROUNDS = 6;
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+
+    @After
+    public void shutDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void concurrentWritersDuringResizeLeaveEveryKeyInItsLastState() throws Exception {
+        FruitPriceTable table = new FruitPriceTable(1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<Map<String, Long>>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            writers.add(pool.submit(() -> {
+                start.await();
+                // Each writer owns its keys, so it knows what their final state must be
+                Map<String, Long> expected = new HashMap<>();
+                for (int round = 0; round < ROUNDS; round++) {
+                    for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                        String key = thread + "-" + i;
+                        long price = round * 1_000_000L + i + 1;
+                        table.put(key, price);
+                        expected.put(key, price);
+                        if (i % 2 == 0) {
+                            assertTrue(table.replace(key, price + 500_000));
+                            expected.put(key, price + 500_000);
+                        }
+                        if (i % 3 == round % 3) {
+                            assertTrue(table.remove(key));
+                            assertFalse(table.remove(key));
+                            assertFalse(table.replace(key, 1));
+                            expected.remove(key);
+                        }
+                    }
+                }
+                return expected;
+            }));
+        }
+        // Lock-free readers must only ever see prices some writer stored
+        Future<Integer> reader = pool.submit(() -> {
+            start.await();
+            int reads = 0;
+            while (writing.get()) {
+                for (int i = 0; i < KEYS_PER_THREAD; i += 7) {
+                    long cents = table.getCents((reads % THREADS) + "-" + i, -1);
+                    assertTrue("read a price nobody stored: " + cents,
+                            cents == -1 || (cents > 0 && cents % 500_000 == i + 1));
+                    reads++;
+                }
+            }
+            return reads;
+        });
+        start.countDown();
+
+        Map<String, Long> expected = new HashMap<>();
+        for (Future<Map<String, Long>> writer : writers) {
+            expected.putAll(writer.get(60, TimeUnit.SECONDS));
+        }
+        writing.set(false);
+        assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+
+        assertEquals(expected.size(), table.size());
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                String key = t + "-" + i;
+                Long price = expected.get(key);
+                assertEquals(key, price == null ? -1 : price, table.getCents(key, -1));
+                assertEquals(key, price != null, table.containsKey(key));
+            }
+        }
+        Map<String, Long> visited = new HashMap<>();
+        table.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    public void exactlyOneOfRacingRemovesSucceeds() throws Exception {
+        FruitPriceTable table = new FruitPriceTable(1);
+        int keys = 5000;
+        for (int i = 0; i < keys; i++) {
+            table.put("fruit-" + i, i + 1);
+        }
+        AtomicInteger removed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(pool.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < keys; i++) {
+                    if (table.remove("fruit-" + i)) {
+                        removed.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        // New keys force resizes while the removes race
+        workers.add(pool.submit((Callable<Void>) () -> {
+            start.await();
+            for (int i = 0; i < keys; i++) {
+                table.put("new-" + i, i + 1);
+            }
+            return null;
+        }));
+        start.countDown();
+        for (Future<Void> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+
+        assertEquals(keys, removed.get());
+        assertEquals(keys, table.size());
+        for (int i = 0; i < keys; i++) {
+            assertFalse(table.containsKey("fruit-" + i));
+            assertEquals(i + 1, table.getCents("new-" + i, -1));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package server.store;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import model.Receipt;
+
+// Damages the journal's only segment the way a crash mid-append would, then checks what a fresh
+// open() keeps and that appending carries on from there
+public class ReceiptJournalTest {
+    private static final int RECEIPTS = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopensWithEveryReceipt() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        writeReceipts(directory);
+        try (ReceiptJournal journal = ReceiptJournal.open(directory)) {
+            assertEquals(RECEIPTS, journal.lastSequence());
+            List<Receipt> receipts = readAll(journal);
+            assertEquals(RECEIPTS, receipts.size());
+            Receipt last = receipts.get(RECEIPTS - 1);
+            assertEquals(RECEIPTS * 100L, last.getTotalCents());
+            assertEquals(RECEIPTS * 100L + 50, last.getAmountGivenCents());
+            assertEquals(50, last.getChangeDueCents());
+            assertEquals("cashier-" + RECEIPTS, last.getCashier());
+            assertEquals(RECEIPTS, last.getCatalogVersion());
+        }
+    }
+
+    @Test
+    public void dropsARecordWithADamagedBody() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        writeReceipts(directory);
+        int[] offsets = recordOffsets(directory);
+        // Flip the last byte of the last record, as if its page never reached the disk whole
+        int lastEnd = offsets[RECEIPTS];
+        corrupt(directory, lastEnd - 1, (byte) 0x5A);
+        assertRecoversAfterTear(directory, RECEIPTS - 1);
+    }
+
+    @Test
+    public void dropsARecordWhoseBodyNeverLanded() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        writeReceipts(directory);
+        int[] offsets = recordOffsets(directory);
+        // Keep the header of receipt 91 but zero its body and everything after it
+        int torn = offsets[90];
+        int end = offsets[RECEIPTS];
+        for (int offset = torn + 8; offset < end; offset++) {
+            corrupt(directory, offset, (byte) 0);
+        }
+        assertRecoversAfterTear(directory, 90);
+    }
+
+    @Test
+    public void stopsAtAZeroedHeaderMidSegment() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        writeReceipts(directory);
+        int[] offsets = recordOffsets(directory);
+        // Zero receipt 51's header: the intact records after it are out of sequence and dropped too
+        for (int offset = offsets[50]; offset < offsets[50] + 8; offset++) {
+            corrupt(directory, offset, (byte) 0);
+        }
+        assertRecoversAfterTear(directory, 50);
+    }
+
+    private static void assertRecoversAfterTear(Path directory, int kept) throws IOException {
+        try (ReceiptJournal journal = ReceiptJournal.open(directory)) {
+            assertEquals(kept, journal.lastSequence());
+            assertEquals(kept, readAll(journal).size());
+            // The next receipt takes the torn one's number and overwrites it
+            assertEquals(kept + 1, journal.append(Receipt.ofCents(700, 1000, 300, "after", 7), 1234L));
+        }
+        try (ReceiptJournal journal = ReceiptJournal.open(directory)) {
+            assertEquals(kept + 1, journal.lastSequence());
+            List<Receipt> receipts = readAll(journal);
+            assertEquals(kept + 1, receipts.size());
+            assertEquals("after", receipts.get(kept).getCashier());
+            assertEquals(300, receipts.get(kept).getChangeDueCents());
+        }
+    }
+
+    private static void writeReceipts(Path directory) throws IOException {
+        try (ReceiptJournal journal = ReceiptJournal.open(directory)) {
+            for (int i = 1; i <= RECEIPTS; i++) {
+                Receipt receipt = Receipt.ofCents(i * 100L, i * 100L + 50, 50, "cashier-" + i, i);
+                assertEquals(i, journal.append(receipt, 1_000_000L + i));
+            }
+        }
+    }
+
+    private static List<Receipt> readAll(ReceiptJournal journal) throws IOException {
+        List<Receipt> receipts = new ArrayList<>();
+        long[] expected = {1};
+        journal.scan(0, Integer.MAX_VALUE, (sequence, timeMillis, receipt) -> {
+            assertEquals(expected[0]++, sequence);
+            receipts.add(receipt);
+        });
+        return receipts;
+    }
+
+    // offsets[i] is where receipt i + 1 starts; offsets[RECEIPTS] is the end of the last one
+    private static int[] recordOffsets(Path directory) throws IOException {
+        int[] offsets = new int[RECEIPTS + 1];
+        try (FileChannel channel = FileChannel.open(ReceiptJournal.segmentPath(directory, 1), StandardOpenOption.READ)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            for (int i = 0; i < RECEIPTS; i++) {
+                length.clear();
+                channel.read(length, offsets[i]);
+                offsets[i + 1] = offsets[i] + 8 + length.getInt(0);
+            }
+        }
+        return offsets;
+    }
+
+    private static void corrupt(Path directory, int offset, byte value) throws IOException {
+        try (FileChannel channel = FileChannel.open(ReceiptJournal.segmentPath(directory, 1), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {value}), offset);
+        }
+    }
+}
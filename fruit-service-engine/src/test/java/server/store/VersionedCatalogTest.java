@@ -0,0 +1,108 @@
+package server.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class VersionedCatalogTest {
+    private final ExecutorService pool = Executors.newFixedThreadPool(2);
+
+    @After
+    public void shutDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void changesOutsideABatchPublishOneVersionEach() {
+        FruitPriceTable table = new FruitPriceTable();
+        VersionedCatalog versions = VersionedCatalog.attach(table);
+        table.put("apple", 100);
+        table.put("pear", 200);
+        table.remove("apple");
+        CatalogSnapshot snapshot = versions.snapshot();
+        assertEquals(3, snapshot.getVersion());
+        assertEquals(-1, snapshot.getCents("apple", -1));
+        assertEquals(200, snapshot.getCents("pear", -1));
+    }
+
+    @Test
+    public void aWriteMadeWhileAnotherThreadsBatchIsOpenPublishesAtOnce() throws Exception {
+        FruitPriceTable table = new FruitPriceTable();
+        VersionedCatalog versions = VersionedCatalog.attach(table);
+        table.put("apple", 100);
+        CountDownLatch halfApplied = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Future<?> batch = pool.submit(() -> versions.batch(() -> {
+            table.put("banana", 50);
+            table.put("pear", 200);
+            halfApplied.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            table.put("cherry", 300);
+        }));
+        assertTrue(halfApplied.await(10, TimeUnit.SECONDS));
+
+        // Published before the write returns, so a near cache told of it at this version refills
+        // the new price; the open batch stays out of sight
+        pool.submit(() -> table.put("apple", 110)).get(10, TimeUnit.SECONDS);
+        CatalogSnapshot during = versions.snapshot();
+        assertEquals(2, during.getVersion());
+        assertEquals(110, during.getCents("apple", -1));
+        assertEquals(-1, during.getCents("banana", -1));
+        // Also for a fruit the batch has changed: it shows this write, not the batch's half
+        pool.submit(() -> table.put("pear", 210)).get(10, TimeUnit.SECONDS);
+        during = versions.snapshot();
+        assertEquals(3, during.getVersion());
+        assertEquals(210, during.getCents("pear", -1));
+        assertEquals(-1, during.getCents("banana", -1));
+
+        finish.countDown();
+        batch.get(10, TimeUnit.SECONDS);
+        CatalogSnapshot after = versions.snapshot();
+        assertEquals(4, after.getVersion());
+        assertEquals(110, after.getCents("apple", -1));
+        assertEquals(50, after.getCents("banana", -1));
+        assertEquals(300, after.getCents("cherry", -1));
+        // The later single write stands
+        assertEquals(210, after.getCents("pear", -1));
+    }
+
+    @Test
+    public void aLentBatchHoldsBackChangesFromTheThreadsItIsLentTo() throws Exception {
+        FruitPriceTable table = new FruitPriceTable();
+        VersionedCatalog versions = VersionedCatalog.attach(table);
+        try (VersionedCatalog.Batch batch = versions.openBatch()) {
+            batch.run(() -> table.put("apple", 100));
+            pool.submit(() -> batch.run(() -> table.put("pear", 200))).get(10, TimeUnit.SECONDS);
+            assertEquals(0, versions.currentVersion());
+            assertEquals(-1, versions.snapshot().getCents("pear", -1));
+        }
+        assertEquals(1, versions.currentVersion());
+        assertEquals(100, versions.snapshot().getCents("apple", -1));
+        assertEquals(200, versions.snapshot().getCents("pear", -1));
+    }
+
+    @Test
+    public void nestedBatchesPublishWhenTheOutermostEnds() {
+        FruitPriceTable table = new FruitPriceTable();
+        VersionedCatalog versions = VersionedCatalog.attach(table);
+        versions.batch(() -> {
+            table.put("apple", 100);
+            versions.batch(() -> table.put("pear", 200));
+            assertEquals(0, versions.currentVersion());
+        });
+        assertEquals(1, versions.currentVersion());
+        assertEquals(200, versions.snapshot().getCents("pear", -1));
+    }
+}
@@ -0,0 +1,69 @@
+package server.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+// A wheel of 8 slots of 100 ms, so it spans 800 ms
+public class TimerWheelTest {
+    private final TimerWheel<String> wheel = new TimerWheel<>(100, 8, 0);
+    private final List<String> expired = new ArrayList<>();
+
+    @Test
+    public void expiresOnlyWhatIsDue() {
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 450);
+        wheel.advance(200, expired::add);
+        assertEquals(Collections.emptyList(), expired);
+        // Due mid-tick: the rest of the slot stays for later in it
+        wheel.advance(260, expired::add);
+        assertEquals(Collections.singletonList("a"), expired);
+        wheel.advance(449, expired::add);
+        assertEquals(Collections.singletonList("a"), expired);
+        wheel.advance(1000, expired::add);
+        assertEquals(Arrays.asList("a", "b"), expired);
+    }
+
+    @Test
+    public void holdsADeadlineBeyondTheSpanUntilItsTurn() {
+        wheel.schedule("far", 2050);
+        wheel.advance(900, expired::add);
+        // Passes its slot at 1200 without expiring it
+        wheel.advance(1700, expired::add);
+        wheel.advance(2049, expired::add);
+        assertEquals(Collections.emptyList(), expired);
+        wheel.advance(2050, expired::add);
+        assertEquals(Collections.singletonList("far"), expired);
+    }
+
+    @Test
+    public void expiresEverythingOnceAfterALongStall() {
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule("item-" + i, i * 100L);
+        }
+        wheel.advance(0, expired::add);
+        assertEquals(Collections.emptyList(), expired);
+        wheel.advance(1_000_000, expired::add);
+        assertEquals(20, expired.size());
+        wheel.advance(2_000_000, expired::add);
+        assertEquals(20, expired.size());
+    }
+
+    @Test
+    public void anItemScheduledAgainFromTheCallbackWaitsForTheNextAdvance() {
+        wheel.schedule("again", 100);
+        TimerWheel.Expiry<String> reschedule = item -> {
+            expired.add(item);
+            wheel.schedule(item, 100);
+        };
+        wheel.advance(100, reschedule);
+        assertEquals(1, expired.size());
+        wheel.advance(100, reschedule);
+        assertEquals(2, expired.size());
+    }
+}
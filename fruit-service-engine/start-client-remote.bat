@@ -7,5 +7,5 @@ echo This client can connect to a remote RMI server.
 echo You will be prompted for server details.
 echo.
 echo Starting Fruit Client...
-java -cp target\classes client.FruitClient
+java -cp "target\classes;target\lib\*" client.FruitClient
 pause
@@ -1,4 +1,4 @@
 @echo off
 echo Starting Fruit Client...
-java -cp target\classes client.FruitClient
+java -cp "target\classes;target\lib\*" client.FruitClient
 pause
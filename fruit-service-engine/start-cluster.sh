@@ -0,0 +1,27 @@
+#!/bin/sh
+# Starts N Fruit Compute Engines on one machine, each with its own registry port and data directory,
+# and prints the -Dfruit.shards value to give the front ends.
+# Usage: ./start-cluster.sh [shards] [first port]   (default: 3 shards from port 1101)
+SHARDS=${1:-3}
+FIRST_PORT=${2:-1101}
+CP="target/classes:target/lib/*"
+
+if [ ! -d target/lib ]; then
+    mvn -q dependency:copy-dependencies -DincludeScope=runtime -DoutputDirectory=target/lib || exit 1
+fi
+mkdir -p logs
+
+ADDRESSES=""
+i=0
+while [ $i -lt $SHARDS ]; do
+    PORT=$((FIRST_PORT + i))
+    java -cp "$CP" -Djava.rmi.server.hostname=localhost -Dfruit.engine.port=$PORT \
+        -Dfruit.data.dir=data/shard-$PORT server.FruitComputeEngine > logs/engine-$PORT.log 2>&1 &
+    echo "Started engine on port $PORT (pid $!, data in data/shard-$PORT, log in logs/engine-$PORT.log)"
+    ADDRESSES="$ADDRESSES${ADDRESSES:+,}localhost:$PORT"
+    i=$((i + 1))
+done
+
+echo
+echo "Route to the cluster with: -Dfruit.shards=$ADDRESSES"
+echo "e.g. java -cp \"$CP\" -Dfruit.shards=$ADDRESSES server.FruitWebServer"
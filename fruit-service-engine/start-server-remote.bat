@@ -29,5 +29,5 @@ echo   Service: FruitComputeEngine
 echo ================================================
 echo.
 
-java -cp target\classes -Djava.rmi.server.hostname=%LOCAL_IP% server.FruitComputeEngine
+java -cp "target\classes;target\lib\*" -Djava.rmi.server.hostname=%LOCAL_IP% server.FruitComputeEngine
 pause
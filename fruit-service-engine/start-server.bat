@@ -7,5 +7,5 @@ echo Waiting for RMI Registry to start...
 timeout /t 3 /nobreak > nul
 echo.
 echo Starting Fruit Compute Engine...
-java -cp target\classes -Djava.rmi.server.hostname=10.50.48.187 server.FruitComputeEngine
+java -cp "target\classes;target\lib\*" -Djava.rmi.server.hostname=10.50.48.187 server.FruitComputeEngine
 pause
@@ -16,7 +16,7 @@ if errorlevel 1 (
 
 echo.
 echo Step 2: Starting RMI Server...
-start "RMI Server" cmd /k "echo Starting RMI Server... && java -cp target\classes -Djava.rmi.server.hostname=localhost server.FruitComputeEngine"
+start "RMI Server" cmd /k "echo Starting RMI Server... && java -cp target\classes;target\lib\* -Djava.rmi.server.hostname=localhost server.FruitComputeEngine"
 
 echo.
 echo Waiting for RMI server to start...
@@ -24,7 +24,7 @@ timeout /t 5 /nobreak >nul
 
 echo.
 echo Step 3: Starting REST Bridge...
-start "REST Bridge" cmd /k "echo Starting REST Bridge for Web Interface... && java -cp target\classes server.FruitRestBridge"
+start "REST Bridge" cmd /k "echo Starting REST Bridge for Web Interface... && java -cp target\classes;target\lib\* server.FruitRestBridge"
 
 echo.
 echo Waiting for REST bridge to start...
@@ -76,7 +76,7 @@ if not errorlevel 1 (
     echo and modify the JavaScript to point to your servlet container.
     echo.
     echo For now, you can use the command-line client:
-    start "Client" cmd /k "java -cp target\classes client.FruitClient"
+    start "Client" cmd /k "java -cp target\classes;target\lib\* client.FruitClient"
 )
 
 echo.